@@ -45,7 +45,19 @@ public class Asn1Buffer
      */
     public Asn1Buffer()
     {
-        buffer = new byte[DEFAULT_SIZE];
+        this( DEFAULT_SIZE );
+    }
+
+
+    /**
+     * Creates a new Asn1Buffer instance with a specific initial size. Sub-classes
+     * that manage their own storage can use a 0 size.
+     *
+     * @param initialSize The initial size of the internal byte[]
+     */
+    protected Asn1Buffer( int initialSize )
+    {
+        buffer = new byte[initialSize];
     }
 
 
@@ -107,18 +119,19 @@ public class Asn1Buffer
 
 
     /**
-     * Extend the buffer
+     * Extend the buffer. The buffer size is at least doubled, so that encoding
+     * a big PDU does not copy the already stored bytes over and over.
      * 
-     * @param size The new buffer size
+     * @param size The number of bytes we need to add
      */
     private void extend( int size )
     {
         // The buffer needs to be reallocated, it's too small
-        int newSize = ( ( size + buffer.length ) / DEFAULT_SIZE ) * DEFAULT_SIZE;
+        int newSize = Math.max( buffer.length * 2, pos + size );
 
-        if ( size % DEFAULT_SIZE != 0 )
+        if ( newSize % DEFAULT_SIZE != 0 )
         {
-            newSize += DEFAULT_SIZE;
+            newSize = ( ( newSize / DEFAULT_SIZE ) + 1 ) * DEFAULT_SIZE;
         }
 
         byte[] newBuffer = new byte[newSize];
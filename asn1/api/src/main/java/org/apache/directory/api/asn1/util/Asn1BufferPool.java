@@ -0,0 +1,252 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+
+package org.apache.directory.api.asn1.util;
+
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+
+/**
+ * A thread safe pool of direct {@link ByteBuffer}s, organized in size classes. Each
+ * size class is a power of two, from {@link #MIN_SIZE} to {@link #MAX_SIZE}. A request
+ * for a buffer is served by the smallest size class that can hold it. Requests above
+ * the largest size class are not pooled.
+ * <br>
+ * The number of buffers retained by each size class is bounded, so that a burst of
+ * big PDUs does not pin memory forever.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class Asn1BufferPool
+{
+    /** The smallest size class */
+    public static final int MIN_SIZE = 1024;
+
+    /** The biggest size class */
+    public static final int MAX_SIZE = 1024 * 1024;
+
+    /** The default number of bytes a size class can retain */
+    public static final int DEFAULT_MAX_BYTES_PER_CLASS = 4 * MAX_SIZE;
+
+    /** The number of size classes */
+    private static final int NB_CLASSES = Integer.numberOfTrailingZeros( MAX_SIZE )
+        - Integer.numberOfTrailingZeros( MIN_SIZE ) + 1;
+
+    /** The pool shared by default */
+    private static final Asn1BufferPool DEFAULT_POOL = new Asn1BufferPool();
+
+    /** The free buffers, one queue per size class */
+    private final List<Queue<ByteBuffer>> freeBuffers;
+
+    /** The number of free buffers in each size class */
+    private final AtomicIntegerArray nbFreeBuffers;
+
+    /** The maximum number of free buffers in each size class */
+    private final int[] maxFreeBuffers;
+
+
+    /**
+     * Creates a new Asn1BufferPool instance, each size class retaining at most
+     * {@link #DEFAULT_MAX_BYTES_PER_CLASS} bytes.
+     */
+    public Asn1BufferPool()
+    {
+        this( DEFAULT_MAX_BYTES_PER_CLASS );
+    }
+
+
+    /**
+     * Creates a new Asn1BufferPool instance.
+     *
+     * @param maxBytesPerClass The maximum number of bytes each size class can retain. At
+     * least one buffer is retained per size class.
+     */
+    public Asn1BufferPool( int maxBytesPerClass )
+    {
+        freeBuffers = new ArrayList<>( NB_CLASSES );
+        nbFreeBuffers = new AtomicIntegerArray( NB_CLASSES );
+        maxFreeBuffers = new int[NB_CLASSES];
+
+        for ( int i = 0; i < NB_CLASSES; i++ )
+        {
+            freeBuffers.add( new ConcurrentLinkedQueue<ByteBuffer>() );
+            maxFreeBuffers[i] = Math.max( 1, maxBytesPerClass / ( MIN_SIZE << i ) );
+        }
+    }
+
+
+    /**
+     * @return The pool shared by all the users that don't provide their own pool
+     */
+    public static Asn1BufferPool getDefault()
+    {
+        return DEFAULT_POOL;
+    }
+
+
+    /**
+     * Get the size class a size belongs to
+     *
+     * @param size The requested size
+     * @return The size class index, or -1 if the size is above {@link #MAX_SIZE}
+     */
+    private static int sizeClass( int size )
+    {
+        if ( size <= MIN_SIZE )
+        {
+            return 0;
+        }
+
+        if ( size > MAX_SIZE )
+        {
+            return -1;
+        }
+
+        return 32 - Integer.numberOfLeadingZeros( size - 1 ) - Integer.numberOfTrailingZeros( MIN_SIZE );
+    }
+
+
+    /**
+     * Compute the capacity of the buffer that will be returned for a given size.
+     *
+     * @param size The requested size
+     * @return The capacity of the buffer {@link #acquire(int)} will return
+     */
+    public static int capacityFor( int size )
+    {
+        int sizeClass = sizeClass( size );
+
+        if ( sizeClass < 0 )
+        {
+            return size;
+        }
+
+        return MIN_SIZE << sizeClass;
+    }
+
+
+    /**
+     * Get a cleared direct buffer which capacity is at least the requested size.
+     *
+     * @param size The requested size
+     * @return A direct ByteBuffer, taken from the pool if one is available
+     */
+    public ByteBuffer acquire( int size )
+    {
+        int sizeClass = sizeClass( size );
+
+        if ( sizeClass < 0 )
+        {
+            // Too big to be pooled
+            return ByteBuffer.allocateDirect( size );
+        }
+
+        ByteBuffer buffer = freeBuffers.get( sizeClass ).poll();
+
+        if ( buffer == null )
+        {
+            return ByteBuffer.allocateDirect( MIN_SIZE << sizeClass );
+        }
+
+        nbFreeBuffers.decrementAndGet( sizeClass );
+
+        return buffer;
+    }
+
+
+    /**
+     * Give back a buffer to the pool. The buffer must not be used anymore by the caller.
+     * Buffers which capacity is not a size class, and buffers that exceed the size class
+     * limit, are left to the garbage collector.
+     *
+     * @param buffer The buffer to release
+     */
+    public void release( ByteBuffer buffer )
+    {
+        if ( ( buffer == null ) || !buffer.isDirect() )
+        {
+            return;
+        }
+
+        int capacity = buffer.capacity();
+        int sizeClass = sizeClass( capacity );
+
+        if ( ( sizeClass < 0 ) || ( capacity != ( MIN_SIZE << sizeClass ) ) )
+        {
+            return;
+        }
+
+        if ( nbFreeBuffers.incrementAndGet( sizeClass ) > maxFreeBuffers[sizeClass] )
+        {
+            nbFreeBuffers.decrementAndGet( sizeClass );
+
+            return;
+        }
+
+        buffer.clear();
+        freeBuffers.get( sizeClass ).offer( buffer );
+    }
+
+
+    /**
+     * @return The number of free buffers currently retained by the pool
+     */
+    public int getFreeBuffers()
+    {
+        int nbFree = 0;
+
+        for ( int i = 0; i < NB_CLASSES; i++ )
+        {
+            nbFree += nbFreeBuffers.get( i );
+        }
+
+        return nbFree;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append( "Asn1BufferPool[" );
+
+        for ( int i = 0; i < NB_CLASSES; i++ )
+        {
+            if ( i > 0 )
+            {
+                sb.append( ", " );
+            }
+
+            sb.append( MIN_SIZE << i ).append( ':' ).append( nbFreeBuffers.get( i ) );
+        }
+
+        return sb.append( ']' ).toString();
+    }
+}
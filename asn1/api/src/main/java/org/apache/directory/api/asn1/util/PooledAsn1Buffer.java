@@ -0,0 +1,372 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+
+package org.apache.directory.api.asn1.util;
+
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.directory.api.i18n.I18n;
+
+
+/**
+ * An {@link Asn1Buffer} storing the encoded PDU in a list of direct segments taken
+ * from an {@link Asn1BufferPool}. As for the Asn1Buffer, the PDU is filled by the end :
+ * when a segment is full, a new one, twice as big (up to {@link Asn1BufferPool#MAX_SIZE}),
+ * is added in front of it. The already written bytes are never copied while the
+ * PDU is being encoded.
+ * <br>
+ * The encoded PDU can be read as a gather list (see {@link #getBuffers()}), or
+ * transferred into a single direct buffer (see {@link #detach()}). The segments must
+ * be given back to the pool by calling {@link #clear()} once the PDU is not used
+ * anymore.
+ * <br>
+ * This class is not thread safe.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class PooledAsn1Buffer extends Asn1Buffer
+{
+    /** The pool the segments are taken from */
+    private final Asn1BufferPool pool;
+
+    /** The segments, the first one containing the end of the PDU */
+    private final List<ByteBuffer> segments = new ArrayList<>();
+
+    /** The segment being filled */
+    private ByteBuffer current;
+
+    /** The position of the first written byte in the current segment */
+    private int currentStart;
+
+    /** The number of stored bytes */
+    private int pos;
+
+    /** The total capacity of the segments */
+    private int size;
+
+
+    /**
+     * Creates a new PooledAsn1Buffer instance using the default pool
+     */
+    public PooledAsn1Buffer()
+    {
+        this( Asn1BufferPool.getDefault() );
+    }
+
+
+    /**
+     * Creates a new PooledAsn1Buffer instance
+     *
+     * @param pool The pool to take the segments from
+     */
+    public PooledAsn1Buffer( Asn1BufferPool pool )
+    {
+        super( 0 );
+        this.pool = pool;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getPos()
+    {
+        return pos;
+    }
+
+
+    /**
+     * Set the current position in the buffer. The position can only be moved
+     * backward, dropping the last stored bytes.
+     *
+     * @param pos The position to move the buffer to
+     */
+    @Override
+    public void setPos( int pos )
+    {
+        if ( ( pos < 0 ) || ( pos > this.pos ) )
+        {
+            throw new IllegalArgumentException( I18n.err( I18n.ERR_00004_INVALID_BUFFER_POSITION, pos, this.pos ) );
+        }
+
+        int toDrop = this.pos - pos;
+
+        while ( toDrop > 0 )
+        {
+            int inCurrent = current.capacity() - currentStart;
+
+            if ( toDrop < inCurrent )
+            {
+                currentStart += toDrop;
+                break;
+            }
+
+            // The current segment is emptied : give it back and move to the next one
+            toDrop -= inCurrent;
+            removeCurrentSegment();
+        }
+
+        this.pos = pos;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void put( byte b )
+    {
+        if ( currentStart == 0 )
+        {
+            addSegment( 1 );
+        }
+
+        currentStart--;
+        current.put( currentStart, b );
+        pos++;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void put( byte[] bytes )
+    {
+        int remaining = bytes.length;
+
+        // The bytes are stored backward : we first fill the current segment
+        // with the end of the array
+        while ( remaining > 0 )
+        {
+            if ( currentStart == 0 )
+            {
+                addSegment( remaining );
+            }
+
+            int length = Math.min( remaining, currentStart );
+            remaining -= length;
+            currentStart -= length;
+            current.position( currentStart );
+            current.put( bytes, remaining, length );
+        }
+
+        pos += bytes.length;
+    }
+
+
+    /**
+     * Add a new segment in front of the existing ones. Its size is the double of the
+     * previous segment, up to the biggest size class.
+     *
+     * @param needed The number of bytes we are going to write
+     */
+    private void addSegment( int needed )
+    {
+        int segmentSize;
+
+        if ( current == null )
+        {
+            segmentSize = Math.min( needed, Asn1BufferPool.MAX_SIZE );
+        }
+        else
+        {
+            segmentSize = Math.min( Math.max( current.capacity() * 2, needed ), Asn1BufferPool.MAX_SIZE );
+        }
+
+        current = pool.acquire( segmentSize );
+        segments.add( current );
+        currentStart = current.capacity();
+        size += currentStart;
+    }
+
+
+    /**
+     * Give back the current segment to the pool, and make the previous one current.
+     */
+    private void removeCurrentSegment()
+    {
+        segments.remove( segments.size() - 1 );
+        size -= current.capacity();
+        pool.release( current );
+
+        if ( segments.isEmpty() )
+        {
+            current = null;
+            currentStart = 0;
+        }
+        else
+        {
+            current = segments.get( segments.size() - 1 );
+            currentStart = 0;
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ByteBuffer getBytes()
+    {
+        ByteBuffer result = ByteBuffer.allocate( pos );
+
+        for ( ByteBuffer buffer : getBuffers() )
+        {
+            result.put( buffer );
+        }
+
+        result.flip();
+
+        return result;
+    }
+
+
+    /**
+     * Get the encoded PDU as a gather list, ready to be written in a
+     * {@link java.nio.channels.GatheringByteChannel}. The returned buffers are views
+     * on the segments, which remain owned by this buffer : they are only valid until
+     * the next call to {@link #clear()}.
+     *
+     * @return The segments content, in the PDU order
+     */
+    public ByteBuffer[] getBuffers()
+    {
+        ByteBuffer[] buffers = new ByteBuffer[segments.size()];
+        int index = 0;
+
+        for ( int i = segments.size() - 1; i >= 0; i-- )
+        {
+            ByteBuffer view = segments.get( i ).duplicate();
+
+            if ( i == segments.size() - 1 )
+            {
+                view.position( currentStart );
+            }
+            else
+            {
+                // All the segments but the current one are full
+                view.position( 0 );
+            }
+
+            view.limit( view.capacity() );
+            buffers[index++] = view;
+        }
+
+        return buffers;
+    }
+
+
+    /**
+     * Transfer the encoded PDU into a single buffer, and empty this buffer. When the PDU
+     * fits in one segment, this segment is returned as is, without any copy. Otherwise,
+     * the segments are gathered in a direct buffer taken from the pool, big enough to
+     * contain the whole PDU. A PDU bigger than the biggest size class can't be pooled :
+     * it's gathered in a heap buffer, instead of allocating a direct buffer which
+     * would only be freed by the garbage collector.
+     * <br>
+     * The returned buffer is positioned on the first byte of the PDU and limited to
+     * its last byte. It is owned by the caller, who should give it back to the pool
+     * with {@link Asn1BufferPool#release(ByteBuffer)} when it is not used anymore.
+     *
+     * @return A buffer containing the encoded PDU
+     */
+    public ByteBuffer detach()
+    {
+        ByteBuffer result;
+
+        if ( segments.size() == 1 )
+        {
+            result = current;
+            result.limit( result.capacity() );
+            result.position( currentStart );
+            segments.clear();
+        }
+        else
+        {
+            if ( pos > Asn1BufferPool.MAX_SIZE )
+            {
+                result = ByteBuffer.allocate( pos );
+            }
+            else
+            {
+                result = pool.acquire( pos );
+            }
+
+            for ( ByteBuffer buffer : getBuffers() )
+            {
+                result.put( buffer );
+            }
+
+            result.flip();
+        }
+
+        clear();
+
+        return result;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getSize()
+    {
+        return size;
+    }
+
+
+    /**
+     * Clear the position, emptying the buffer, and give back all the segments
+     * to the pool.
+     */
+    @Override
+    public void clear()
+    {
+        for ( ByteBuffer segment : segments )
+        {
+            pool.release( segment );
+        }
+
+        segments.clear();
+        current = null;
+        currentStart = 0;
+        pos = 0;
+        size = 0;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        ByteBuffer bytes = getBytes();
+
+        return "[" + size + ", " + pos + ", " + segments.size() + " segments] '"
+            + Asn1StringUtils.dumpBytes( bytes.array(), 0, pos ) + '\'';
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+
+package org.apache.directory.api.asn1.util;
+
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.apache.directory.api.i18n.I18n;
+
+
+/**
+ * A reference counted wrapper around an incoming {@link ByteBuffer}. The buffer is
+ * shared by all the decoded values that point into it instead of copying their bytes.
+ * The creator holds the first reference. Each user calls {@link #retain()} and
+ * {@link #release()} ; when the last reference is released, the recycler, if any, is
+ * called, and the buffer can be reused by its owner.
+ * <br>
+ * The bytes are always read using absolute positions, so the buffer position and
+ * limit are never modified.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class RefCountedBuffer
+{
+    /** The wrapped buffer */
+    private final ByteBuffer buffer;
+
+    /** The function called when the buffer is not referenced anymore */
+    private final Consumer<ByteBuffer> recycler;
+
+    /** The number of references */
+    private final AtomicInteger refCount = new AtomicInteger( 1 );
+
+
+    /**
+     * Creates a new RefCountedBuffer instance, with no recycler.
+     *
+     * @param buffer The wrapped buffer
+     */
+    public RefCountedBuffer( ByteBuffer buffer )
+    {
+        this( buffer, null );
+    }
+
+
+    /**
+     * Creates a new RefCountedBuffer instance. The caller holds the first reference.
+     *
+     * @param buffer The wrapped buffer
+     * @param recycler The function to call when the last reference is released. May be null.
+     */
+    public RefCountedBuffer( ByteBuffer buffer, Consumer<ByteBuffer> recycler )
+    {
+        this.buffer = buffer;
+        this.recycler = recycler;
+    }
+
+
+    /**
+     * @return The wrapped buffer
+     */
+    public ByteBuffer getBuffer()
+    {
+        return buffer;
+    }
+
+
+    /**
+     * @return The current number of references
+     */
+    public int refCount()
+    {
+        return refCount.get();
+    }
+
+
+    /**
+     * Add a reference to the buffer.
+     *
+     * @return This instance
+     * @throws IllegalStateException If the buffer has already been released
+     */
+    public RefCountedBuffer retain()
+    {
+        while ( true )
+        {
+            int current = refCount.get();
+
+            if ( current <= 0 )
+            {
+                throw new IllegalStateException( I18n.err( I18n.ERR_00005_BUFFER_ALREADY_RELEASED ) );
+            }
+
+            if ( refCount.compareAndSet( current, current + 1 ) )
+            {
+                return this;
+            }
+        }
+    }
+
+
+    /**
+     * Remove a reference to the buffer. The last release recycles the buffer.
+     *
+     * @return <code>true</code> if the buffer is not referenced anymore
+     * @throws IllegalStateException If the buffer has already been released
+     */
+    public boolean release()
+    {
+        int current = refCount.decrementAndGet();
+
+        if ( current < 0 )
+        {
+            refCount.incrementAndGet();
+
+            throw new IllegalStateException( I18n.err( I18n.ERR_00005_BUFFER_ALREADY_RELEASED ) );
+        }
+
+        if ( current == 0 )
+        {
+            if ( recycler != null )
+            {
+                recycler.accept( buffer );
+            }
+
+            return true;
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Get a byte at an absolute position.
+     *
+     * @param index The byte position in the buffer
+     * @return The byte
+     */
+    public byte get( int index )
+    {
+        return buffer.get( index );
+    }
+
+
+    /**
+     * Copy some bytes into an array, without modifying the buffer position.
+     *
+     * @param index The position of the first byte to copy
+     * @param dest The array to copy the bytes into
+     * @param offset The position in the array
+     * @param length The number of bytes to copy
+     */
+    public void get( int index, byte[] dest, int offset, int length )
+    {
+        if ( buffer.hasArray() )
+        {
+            System.arraycopy( buffer.array(), buffer.arrayOffset() + index, dest, offset, length );
+        }
+        else
+        {
+            ByteBuffer view = buffer.duplicate();
+            view.position( index );
+            view.get( dest, offset, length );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return "RefCountedBuffer[" + buffer + ", refCount=" + refCount.get() + "]";
+    }
+}
@@ -0,0 +1,344 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+
+package org.apache.directory.api.asn1.util;
+
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+import org.apache.directory.api.i18n.I18n;
+
+
+/**
+ * An {@link Asn1Buffer} used to encode a PDU in two passes, so that it can be streamed
+ * front to back with a bounded amount of memory.
+ * <br>
+ * The first pass is the usual reverse encoding, which computes all the lengths. Only
+ * the small parts of the PDU (tags, lengths, integers, short strings) are stored, in a
+ * compact backward buffer. The big values (at least {@link #getReferenceThreshold()}
+ * bytes long) are not copied : a reference on the array is kept, with the position
+ * it has been inserted at.
+ * <br>
+ * The second pass, {@link #writeTo(WritableByteChannel, ByteBuffer)}, walks the PDU
+ * from its first byte to its last one, and writes it into a fixed size chunk that is
+ * flushed in the channel each time it is full.
+ * <br>
+ * The referenced arrays must not be modified before the PDU has been written. This
+ * class is not thread safe.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class StreamingAsn1Buffer extends Asn1Buffer
+{
+    /** The default minimal size of an array to be stored as a reference */
+    public static final int DEFAULT_REFERENCE_THRESHOLD = 256;
+
+    /** The inline buffer default size */
+    private static final int DEFAULT_SIZE = 1024;
+
+    /** The minimal size of an array to be stored as a reference */
+    private final int referenceThreshold;
+
+    /** The small parts of the PDU, filled by the end */
+    private byte[] inline = new byte[DEFAULT_SIZE];
+
+    /** The number of bytes stored in the inline buffer */
+    private int inlinePos;
+
+    /** The referenced arrays, in insertion order */
+    private byte[][] references = new byte[16][];
+
+    /** The number of inline bytes when each reference has been inserted */
+    private int[] referenceMarks = new int[16];
+
+    /** The number of referenced arrays */
+    private int nbReferences;
+
+    /** The number of bytes in the PDU */
+    private int pos;
+
+
+    /**
+     * Creates a new StreamingAsn1Buffer instance
+     */
+    public StreamingAsn1Buffer()
+    {
+        this( DEFAULT_REFERENCE_THRESHOLD );
+    }
+
+
+    /**
+     * Creates a new StreamingAsn1Buffer instance
+     *
+     * @param referenceThreshold The minimal size of an array to be stored as a
+     * reference instead of being copied
+     */
+    public StreamingAsn1Buffer( int referenceThreshold )
+    {
+        super( 0 );
+        this.referenceThreshold = referenceThreshold;
+    }
+
+
+    /**
+     * @return The minimal size of an array to be stored as a reference
+     */
+    public int getReferenceThreshold()
+    {
+        return referenceThreshold;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getPos()
+    {
+        return pos;
+    }
+
+
+    /**
+     * The position can't be moved in a streaming buffer.
+     *
+     * @param pos The position to move the buffer to
+     */
+    @Override
+    public void setPos( int pos )
+    {
+        throw new UnsupportedOperationException( I18n.err( I18n.ERR_00006_CANNOT_MOVE_STREAMING_BUFFER ) );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void put( byte b )
+    {
+        if ( inlinePos == inline.length )
+        {
+            extend( 1 );
+        }
+
+        inlinePos++;
+        inline[inline.length - inlinePos] = b;
+        pos++;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void put( byte[] bytes )
+    {
+        if ( bytes.length >= referenceThreshold )
+        {
+            if ( nbReferences == references.length )
+            {
+                references = Arrays.copyOf( references, nbReferences * 2 );
+                referenceMarks = Arrays.copyOf( referenceMarks, nbReferences * 2 );
+            }
+
+            references[nbReferences] = bytes;
+            referenceMarks[nbReferences] = inlinePos;
+            nbReferences++;
+        }
+        else
+        {
+            if ( inlinePos + bytes.length > inline.length )
+            {
+                extend( bytes.length );
+            }
+
+            inlinePos += bytes.length;
+            System.arraycopy( bytes, 0, inline, inline.length - inlinePos, bytes.length );
+        }
+
+        pos += bytes.length;
+    }
+
+
+    /**
+     * Extend the inline buffer, at least doubling its size.
+     *
+     * @param size The number of bytes we need to add
+     */
+    private void extend( int size )
+    {
+        int newSize = Math.max( inline.length * 2, inlinePos + size );
+        byte[] newInline = new byte[newSize];
+        System.arraycopy( inline, inline.length - inlinePos, newInline, newSize - inlinePos, inlinePos );
+
+        inline = newInline;
+    }
+
+
+    /**
+     * Write the PDU front to back in a channel. The bytes are gathered in the chunk,
+     * which is written in the channel each time it is full, and at the end.
+     *
+     * @param channel The channel to write the PDU into
+     * @param chunk The buffer used to gather the bytes before writing them
+     * @throws IOException If the channel can't be written
+     */
+    public void writeTo( WritableByteChannel channel, ByteBuffer chunk ) throws IOException
+    {
+        chunk.clear();
+
+        // The inline bytes are read from the first stored byte to the end of the array.
+        // The referenced arrays have to be inserted when we reach their mark, the last
+        // inserted one coming first
+        int cursor = inline.length - inlinePos;
+
+        for ( int i = nbReferences - 1; i >= 0; i-- )
+        {
+            int markPosition = inline.length - referenceMarks[i];
+            write( channel, chunk, inline, cursor, markPosition - cursor );
+            write( channel, chunk, references[i], 0, references[i].length );
+            cursor = markPosition;
+        }
+
+        write( channel, chunk, inline, cursor, inline.length - cursor );
+
+        flush( channel, chunk );
+    }
+
+
+    /**
+     * Copy some bytes in the chunk, flushing it each time it is full
+     *
+     * @param channel The channel to write the chunk into
+     * @param chunk The chunk
+     * @param bytes The bytes to copy
+     * @param offset The position of the first byte to copy
+     * @param length The number of bytes to copy
+     * @throws IOException If the channel can't be written
+     */
+    private static void write( WritableByteChannel channel, ByteBuffer chunk, byte[] bytes, int offset, int length )
+        throws IOException
+    {
+        int start = offset;
+        int remaining = length;
+
+        while ( remaining > 0 )
+        {
+            int nbBytes = Math.min( remaining, chunk.remaining() );
+            chunk.put( bytes, start, nbBytes );
+            start += nbBytes;
+            remaining -= nbBytes;
+
+            if ( !chunk.hasRemaining() )
+            {
+                flush( channel, chunk );
+            }
+        }
+    }
+
+
+    /**
+     * Write the chunk content in the channel, and clear it
+     *
+     * @param channel The channel to write the chunk into
+     * @param chunk The chunk
+     * @throws IOException If the channel can't be written
+     */
+    private static void flush( WritableByteChannel channel, ByteBuffer chunk ) throws IOException
+    {
+        chunk.flip();
+
+        while ( chunk.hasRemaining() )
+        {
+            channel.write( chunk );
+        }
+
+        chunk.clear();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ByteBuffer getBytes()
+    {
+        ByteBuffer result = ByteBuffer.allocate( pos );
+        int cursor = inline.length - inlinePos;
+
+        for ( int i = nbReferences - 1; i >= 0; i-- )
+        {
+            int markPosition = inline.length - referenceMarks[i];
+            result.put( inline, cursor, markPosition - cursor );
+            result.put( references[i] );
+            cursor = markPosition;
+        }
+
+        result.put( inline, cursor, inline.length - cursor );
+        result.flip();
+
+        return result;
+    }
+
+
+    /**
+     * @return The number of bytes that can be added before the inline buffer
+     * gets extended, plus the number of referenced bytes
+     */
+    @Override
+    public int getSize()
+    {
+        return inline.length - inlinePos + pos;
+    }
+
+
+    /**
+     * Clear the position, emptying the buffer and dropping the references. If the
+     * inline buffer has grown, reallocate it to its initial size.
+     */
+    @Override
+    public void clear()
+    {
+        if ( inline.length > DEFAULT_SIZE )
+        {
+            inline = new byte[DEFAULT_SIZE];
+        }
+
+        Arrays.fill( references, 0, nbReferences, null );
+        nbReferences = 0;
+        inlinePos = 0;
+        pos = 0;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return "[" + pos + ", " + nbReferences + " references] '"
+            + Asn1StringUtils.dumpBytes( getBytes().array(), 0, pos ) + '\'';
+    }
+}
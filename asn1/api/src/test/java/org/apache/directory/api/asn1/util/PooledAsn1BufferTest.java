@@ -0,0 +1,310 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.api.asn1.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+/**
+ * Test for the PooledAsn1Buffer and Asn1BufferPool classes
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class PooledAsn1BufferTest
+{
+    @Test
+    public void testPutByte()
+    {
+        PooledAsn1Buffer buffer = new PooledAsn1Buffer( new Asn1BufferPool() );
+
+        for ( int i = 0; i < 1024; i++ )
+        {
+            buffer.put( ( byte ) i );
+        }
+
+        assertEquals( 1024, buffer.getPos() );
+        assertEquals( 1024, buffer.getSize() );
+        assertEquals( 1, buffer.getBuffers().length );
+        ByteBuffer result = buffer.getBytes();
+
+        for ( int i = 0; i < 1024; i++ )
+        {
+            assertEquals( ( byte ) ( 1023 - i ), result.get( i ) );
+        }
+    }
+
+
+    @Test
+    public void testPutByteOOB()
+    {
+        PooledAsn1Buffer buffer = new PooledAsn1Buffer( new Asn1BufferPool() );
+
+        for ( int i = 0; i < 1025; i++ )
+        {
+            buffer.put( ( byte ) i );
+        }
+
+        // A second segment, twice as big, has been added
+        assertEquals( 1025, buffer.getPos() );
+        assertEquals( 3072, buffer.getSize() );
+
+        ByteBuffer[] buffers = buffer.getBuffers();
+        assertEquals( 2, buffers.length );
+        assertEquals( 1, buffers[0].remaining() );
+        assertEquals( 1024, buffers[1].remaining() );
+
+        ByteBuffer result = buffer.getBytes();
+
+        for ( int i = 0; i < 1025; i++ )
+        {
+            assertEquals( ( byte ) ( 1024 - i ), result.get( i ) );
+        }
+    }
+
+
+    @Test
+    public void testPutBytesAcrossSegments()
+    {
+        Asn1Buffer expected = new Asn1Buffer();
+        PooledAsn1Buffer buffer = new PooledAsn1Buffer( new Asn1BufferPool() );
+        byte[] bytes = new byte[700];
+
+        for ( int i = 0; i < bytes.length; i++ )
+        {
+            bytes[i] = ( byte ) i;
+        }
+
+        for ( int i = 0; i < 20; i++ )
+        {
+            buffer.put( bytes );
+            buffer.put( ( byte ) i );
+            expected.put( bytes );
+            expected.put( ( byte ) i );
+        }
+
+        assertEquals( expected.getPos(), buffer.getPos() );
+        assertEquals( expected.getBytes(), buffer.getBytes() );
+
+        // The gather list contains the same bytes, in the same order
+        ByteBuffer gathered = ByteBuffer.allocate( buffer.getPos() );
+
+        for ( ByteBuffer segment : buffer.getBuffers() )
+        {
+            assertTrue( segment.isDirect() );
+            gathered.put( segment );
+        }
+
+        gathered.flip();
+        assertEquals( expected.getBytes(), gathered );
+    }
+
+
+    @Test
+    public void testPutBigBytes()
+    {
+        PooledAsn1Buffer buffer = new PooledAsn1Buffer( new Asn1BufferPool() );
+        byte[] bytes = new byte[3 * Asn1BufferPool.MAX_SIZE + 17];
+
+        for ( int i = 0; i < bytes.length; i++ )
+        {
+            bytes[i] = ( byte ) ( i * 31 );
+        }
+
+        buffer.put( bytes );
+        buffer.put( ( byte ) 0x30 );
+
+        assertEquals( bytes.length + 1, buffer.getPos() );
+
+        ByteBuffer result = buffer.getBytes();
+        assertEquals( 0x30, result.get() );
+
+        for ( int i = 0; i < bytes.length; i++ )
+        {
+            assertEquals( bytes[i], result.get() );
+        }
+    }
+
+
+    @Test
+    public void testSetPos()
+    {
+        PooledAsn1Buffer buffer = new PooledAsn1Buffer( new Asn1BufferPool() );
+
+        for ( int i = 0; i < 5000; i++ )
+        {
+            buffer.put( ( byte ) i );
+        }
+
+        buffer.setPos( 1000 );
+        assertEquals( 1000, buffer.getPos() );
+        assertEquals( 1, buffer.getBuffers().length );
+
+        buffer.put( new byte[] { 0x01, 0x02 } );
+
+        ByteBuffer result = buffer.getBytes();
+        assertEquals( 1002, result.remaining() );
+        assertEquals( 0x01, result.get( 0 ) );
+        assertEquals( 0x02, result.get( 1 ) );
+        assertEquals( ( byte ) 999, result.get( 2 ) );
+    }
+
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testSetPosForward()
+    {
+        PooledAsn1Buffer buffer = new PooledAsn1Buffer( new Asn1BufferPool() );
+
+        buffer.put( ( byte ) 0x01 );
+        buffer.setPos( 2 );
+    }
+
+
+    @Test
+    public void testDetachOneSegment()
+    {
+        Asn1BufferPool pool = new Asn1BufferPool();
+        PooledAsn1Buffer buffer = new PooledAsn1Buffer( pool );
+
+        buffer.put( new byte[] { 0x02, 0x01, 0x05 } );
+        ByteBuffer[] segments = buffer.getBuffers();
+        ByteBuffer detached = buffer.detach();
+
+        // No copy : the segment is returned
+        assertTrue( detached.isDirect() );
+        assertEquals( 3, detached.remaining() );
+        assertEquals( 0x02, detached.get( detached.position() ) );
+        assertEquals( segments[0].position(), detached.position() );
+        assertEquals( 0, buffer.getPos() );
+        assertEquals( 0, pool.getFreeBuffers() );
+
+        pool.release( detached );
+        assertEquals( 1, pool.getFreeBuffers() );
+
+        // The segment is reused
+        buffer.put( ( byte ) 0x01 );
+        assertEquals( 0, pool.getFreeBuffers() );
+        assertSame( detached, buffer.detach() );
+    }
+
+
+    @Test
+    public void testDetachSeveralSegments()
+    {
+        Asn1BufferPool pool = new Asn1BufferPool();
+        PooledAsn1Buffer buffer = new PooledAsn1Buffer( pool );
+
+        for ( int i = 0; i < 4000; i++ )
+        {
+            buffer.put( ( byte ) i );
+        }
+
+        ByteBuffer expected = buffer.getBytes();
+        ByteBuffer detached = buffer.detach();
+
+        assertTrue( detached.isDirect() );
+        assertEquals( 4096, detached.capacity() );
+        assertEquals( expected, detached );
+
+        // The segments have been given back to the pool
+        assertEquals( 3, pool.getFreeBuffers() );
+        assertEquals( 0, buffer.getSize() );
+    }
+
+
+    @Test
+    public void testDetachUnpoolableSize()
+    {
+        Asn1BufferPool pool = new Asn1BufferPool();
+        PooledAsn1Buffer buffer = new PooledAsn1Buffer( pool );
+
+        byte[] bytes = new byte[Asn1BufferPool.MAX_SIZE + 100];
+        bytes[0] = 0x04;
+        bytes[bytes.length - 1] = 0x05;
+        buffer.put( bytes );
+
+        // Too big for the biggest size class : gathered in a heap buffer
+        ByteBuffer detached = buffer.detach();
+
+        assertFalse( detached.isDirect() );
+        assertEquals( bytes.length, detached.remaining() );
+        assertEquals( 0x04, detached.get( 0 ) );
+        assertEquals( 0x05, detached.get( bytes.length - 1 ) );
+        assertEquals( 0, buffer.getSize() );
+        assertEquals( 2, pool.getFreeBuffers() );
+    }
+
+
+    @Test
+    public void testClear()
+    {
+        Asn1BufferPool pool = new Asn1BufferPool();
+        PooledAsn1Buffer buffer = new PooledAsn1Buffer( pool );
+
+        buffer.put( new byte[10000] );
+        buffer.clear();
+
+        assertEquals( 0, buffer.getPos() );
+        assertEquals( 0, buffer.getSize() );
+        assertEquals( 1, pool.getFreeBuffers() );
+    }
+
+
+    @Test
+    public void testPoolSizeClasses()
+    {
+        assertEquals( 1024, Asn1BufferPool.capacityFor( 0 ) );
+        assertEquals( 1024, Asn1BufferPool.capacityFor( 1024 ) );
+        assertEquals( 2048, Asn1BufferPool.capacityFor( 1025 ) );
+        assertEquals( Asn1BufferPool.MAX_SIZE, Asn1BufferPool.capacityFor( Asn1BufferPool.MAX_SIZE ) );
+        assertEquals( Asn1BufferPool.MAX_SIZE + 1, Asn1BufferPool.capacityFor( Asn1BufferPool.MAX_SIZE + 1 ) );
+
+        Asn1BufferPool pool = new Asn1BufferPool();
+        assertEquals( 8192, pool.acquire( 5000 ).capacity() );
+    }
+
+
+    @Test
+    public void testPoolBounds()
+    {
+        Asn1BufferPool pool = new Asn1BufferPool( 2048 );
+
+        // Two 1 KiB buffers can be retained, but only one 2 KiB buffer
+        pool.release( pool.acquire( 10 ) );
+        pool.release( ByteBuffer.allocateDirect( 1024 ) );
+        pool.release( ByteBuffer.allocateDirect( 1024 ) );
+        assertEquals( 2, pool.getFreeBuffers() );
+
+        pool.release( ByteBuffer.allocateDirect( 2048 ) );
+        pool.release( ByteBuffer.allocateDirect( 2048 ) );
+        assertEquals( 3, pool.getFreeBuffers() );
+
+        // Heap buffers, buffers which are not a size class and unpooled buffers are ignored
+        pool.release( ByteBuffer.allocate( 4096 ) );
+        pool.release( ByteBuffer.allocateDirect( 3000 ) );
+        pool.release( pool.acquire( Asn1BufferPool.MAX_SIZE + 1 ) );
+        assertEquals( 3, pool.getFreeBuffers() );
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.api.asn1.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Test for the RefCountedBuffer class
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class RefCountedBufferTest
+{
+    @Test
+    public void testRetainRelease()
+    {
+        List<ByteBuffer> recycled = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.allocate( 16 );
+        RefCountedBuffer refCounted = new RefCountedBuffer( buffer, recycled::add );
+
+        assertEquals( 1, refCounted.refCount() );
+        refCounted.retain().retain();
+        assertEquals( 3, refCounted.refCount() );
+
+        assertFalse( refCounted.release() );
+        assertFalse( refCounted.release() );
+        assertTrue( recycled.isEmpty() );
+
+        // The last release recycles the buffer
+        assertTrue( refCounted.release() );
+        assertEquals( 1, recycled.size() );
+        assertSame( buffer, recycled.get( 0 ) );
+    }
+
+
+    @Test( expected = IllegalStateException.class )
+    public void testRetainReleased()
+    {
+        RefCountedBuffer refCounted = new RefCountedBuffer( ByteBuffer.allocate( 16 ) );
+
+        refCounted.release();
+        refCounted.retain();
+    }
+
+
+    @Test( expected = IllegalStateException.class )
+    public void testReleaseReleased()
+    {
+        RefCountedBuffer refCounted = new RefCountedBuffer( ByteBuffer.allocate( 16 ) );
+
+        refCounted.release();
+        refCounted.release();
+    }
+
+
+    @Test
+    public void testGet()
+    {
+        byte[] bytes = new byte[]
+            { 0x00, 0x01, 0x02, 0x03, 0x04 };
+        ByteBuffer heap = ByteBuffer.wrap( bytes );
+        ByteBuffer direct = ByteBuffer.allocateDirect( 5 );
+        direct.put( bytes );
+        direct.flip();
+
+        for ( ByteBuffer buffer : new ByteBuffer[] { heap, direct } )
+        {
+            RefCountedBuffer refCounted = new RefCountedBuffer( buffer );
+            byte[] dest = new byte[3];
+
+            refCounted.get( 1, dest, 0, 3 );
+
+            assertArrayEquals( new byte[] { 0x01, 0x02, 0x03 }, dest );
+            assertEquals( 0x04, refCounted.get( 4 ) );
+            assertEquals( 0, buffer.position() );
+        }
+    }
+}
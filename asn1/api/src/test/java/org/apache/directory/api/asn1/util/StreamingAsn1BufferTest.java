@@ -0,0 +1,121 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.api.asn1.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+
+import org.junit.Test;
+
+/**
+ * Test for the StreamingAsn1Buffer class
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class StreamingAsn1BufferTest
+{
+    private static byte[] toArray( ByteBuffer buffer )
+    {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get( bytes );
+
+        return bytes;
+    }
+
+
+    @Test
+    public void testMixedPuts() throws Exception
+    {
+        Asn1Buffer expected = new Asn1Buffer();
+        StreamingAsn1Buffer buffer = new StreamingAsn1Buffer( 16 );
+
+        for ( int i = 0; i < 200; i++ )
+        {
+            // Alternate small and referenced arrays, and single bytes
+            byte[] bytes = new byte[( i * 13 ) % 40];
+
+            for ( int j = 0; j < bytes.length; j++ )
+            {
+                bytes[j] = ( byte ) ( i + j );
+            }
+
+            expected.put( bytes );
+            expected.put( ( byte ) i );
+            buffer.put( bytes );
+            buffer.put( ( byte ) i );
+        }
+
+        assertEquals( expected.getPos(), buffer.getPos() );
+
+        byte[] reference = toArray( expected.getBytes() );
+        assertArrayEquals( reference, toArray( buffer.getBytes() ) );
+
+        for ( int chunkSize : new int[] { 1, 5, 64, 100000 } )
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            buffer.writeTo( Channels.newChannel( out ), ByteBuffer.allocate( chunkSize ) );
+
+            assertArrayEquals( reference, out.toByteArray() );
+        }
+    }
+
+
+    @Test
+    public void testReferencesOnly() throws Exception
+    {
+        StreamingAsn1Buffer buffer = new StreamingAsn1Buffer( 1 );
+
+        buffer.put( new byte[] { 0x03, 0x04 } );
+        buffer.put( new byte[] { 0x01, 0x02 } );
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        buffer.writeTo( Channels.newChannel( out ), ByteBuffer.allocate( 3 ) );
+
+        assertArrayEquals( new byte[] { 0x01, 0x02, 0x03, 0x04 }, out.toByteArray() );
+    }
+
+
+    @Test
+    public void testClear()
+    {
+        StreamingAsn1Buffer buffer = new StreamingAsn1Buffer();
+
+        buffer.put( new byte[5000] );
+        buffer.put( ( byte ) 0x01 );
+        buffer.clear();
+
+        assertEquals( 0, buffer.getPos() );
+        assertEquals( 0, buffer.getBytes().remaining() );
+    }
+
+
+    @Test( expected = UnsupportedOperationException.class )
+    public void testSetPos()
+    {
+        StreamingAsn1Buffer buffer = new StreamingAsn1Buffer();
+
+        buffer.put( ( byte ) 0x01 );
+        buffer.setPos( 0 );
+    }
+}
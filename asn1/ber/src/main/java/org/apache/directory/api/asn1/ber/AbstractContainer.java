@@ -20,12 +20,15 @@
 package org.apache.directory.api.asn1.ber;
 
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 
 import org.apache.directory.api.asn1.ber.grammar.Grammar;
 import org.apache.directory.api.asn1.ber.grammar.States;
 import org.apache.directory.api.asn1.ber.tlv.TLV;
 import org.apache.directory.api.asn1.ber.tlv.TLVStateEnum;
+import org.apache.directory.api.asn1.util.RefCountedBuffer;
 
 
 /**
@@ -71,6 +74,9 @@ public abstract class AbstractContainer implements Asn1Container
      * for constructed types */
     private boolean gathering = false;
 
+    /** The shared buffer wrapping the stream, when the values are not copied */
+    private RefCountedBuffer sharedStream;
+
 
     /**
      * Creates a new instance of AbstractContainer with a starting state.
@@ -223,6 +229,7 @@ public abstract class AbstractContainer implements Asn1Container
         parentTLV = null;
         transition = ( ( States ) transition ).getStartState();
         state = TLVStateEnum.TAG_STATE_START;
+        gathering = false;
     }
 
 
@@ -371,4 +378,35 @@ public ByteBuffer getStream()
         this.gathering = gathering;
     }
 
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public RefCountedBuffer getSharedStream()
+    {
+        return sharedStream;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setSharedStream( RefCountedBuffer sharedStream )
+    {
+        this.sharedStream = sharedStream;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * The values are always stored by default.
+     */
+    @Override
+    public WritableByteChannel openValueSink() throws IOException
+    {
+        return null;
+    }
 }
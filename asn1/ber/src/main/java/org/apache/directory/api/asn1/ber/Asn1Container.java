@@ -20,11 +20,14 @@
 package org.apache.directory.api.asn1.ber;
 
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 
 import org.apache.directory.api.asn1.ber.grammar.Grammar;
 import org.apache.directory.api.asn1.ber.tlv.TLV;
 import org.apache.directory.api.asn1.ber.tlv.TLVStateEnum;
+import org.apache.directory.api.asn1.util.RefCountedBuffer;
 
 
 /**
@@ -223,4 +226,35 @@ public interface Asn1Container
      * into the container. If not set, the default value is 'false'
      */
     void setGathering( boolean isGathering );
+
+
+    /**
+     * @return The reference counted buffer wrapping the stream being decoded, if
+     * the values can point into it instead of being copied. May be null.
+     */
+    RefCountedBuffer getSharedStream();
+
+
+    /**
+     * Set the reference counted buffer wrapping the stream being decoded. When set,
+     * the decoded primitive values are not copied, they point into this buffer until
+     * the associated action has been executed. The container does not hold a reference
+     * on the buffer.
+     *
+     * @param sharedStream The shared stream, or null to copy the values
+     */
+    void setSharedStream( RefCountedBuffer sharedStream );
+
+
+    /**
+     * Called by the decoder when the value of the current primitive TLV is about to
+     * be read. If a channel is returned, the value bytes are written into it as they
+     * are received, and the channel is closed when the last byte has been written :
+     * the value is never stored, and the associated action will see a streamed value
+     * (see {@link org.apache.directory.api.asn1.ber.tlv.BerValue#isStreamed()}).
+     *
+     * @return The channel to stream the current value into, or null to store the value
+     * @throws IOException If the channel can't be opened
+     */
+    WritableByteChannel openValueSink() throws IOException;
 }
@@ -20,7 +20,9 @@
 package org.apache.directory.api.asn1.ber;
 
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 
 import org.apache.directory.api.asn1.DecoderException;
 import org.apache.directory.api.asn1.ber.tlv.BerValue;
@@ -28,6 +30,7 @@ import org.apache.directory.api.asn1.ber.tlv.TLV;
 import org.apache.directory.api.asn1.ber.tlv.TLVBerDecoderMBean;
 import org.apache.directory.api.asn1.ber.tlv.TLVStateEnum;
 import org.apache.directory.api.asn1.util.Asn1StringUtils;
+import org.apache.directory.api.asn1.util.RefCountedBuffer;
 import org.apache.directory.api.i18n.I18n;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -167,9 +170,9 @@ public final class Asn1Decoder implements TLVBerDecoderMBean
 
         BerValue value = current.getValue();
 
-        if ( ( value != null ) && ( value.getData() != null ) )
+        if ( value != null )
         {
-            return current.getExpectedLength() == value.getData().length;
+            return current.getExpectedLength() == value.getDataLength();
         }
         else
         {
@@ -348,6 +351,10 @@ public final class Asn1Decoder implements TLVBerDecoderMBean
 
         int length = tlv.getLength();
 
+        // A constructed TLV which value is gathered is read as a whole, like a
+        // primitive one : it won't be the parent of the next TLVs
+        boolean isParent = tlv.isConstructed() && !container.isGathering();
+
         // We will check the length here. What we must control is
         // that the enclosing constructed TLV expected length is not
         // exceeded by the current TLV.
@@ -403,7 +410,7 @@ public final class Asn1Decoder implements TLVBerDecoderMBean
                 // one.
                 // In this case, we have to switch from this parent TLV
                 // to the parent's parent TLV.
-                if ( tlv.isConstructed() )
+                if ( isParent )
                 {
                     // here, we also have another special case : a
                     // zero length TLV. We must then unstack all
@@ -468,7 +475,7 @@ public final class Asn1Decoder implements TLVBerDecoderMBean
                 parentTLV.setExpectedLength( expectedLength - currentLength );
                 tlv.setExpectedLength( length );
 
-                if ( tlv.isConstructed() )
+                if ( isParent )
                 {
                     // We have a constructed tag, so we must switch the
                     // parentTLV
@@ -507,8 +514,10 @@ public final class Asn1Decoder implements TLVBerDecoderMBean
      * the result and other informations.
      * @return <code>true</code> if there are more bytes to read, <code>false
      * </code> otherwise
+     * @throws DecoderException If the value can't be streamed
      */
     private static  boolean treatValueStartState( ByteBuffer stream, Asn1Container container )
+        throws DecoderException
     {
         TLV currentTlv = container.getCurrentTLV();
 
@@ -523,6 +532,19 @@ public final class Asn1Decoder implements TLVBerDecoderMBean
             int length = currentTlv.getLength();
             int nbBytes = stream.remaining();
 
+            if ( !TLV.isConstructed( currentTlv.getTag() ) && ( length > 0 ) )
+            {
+                WritableByteChannel sink = openValueSink( container );
+
+                if ( sink != null )
+                {
+                    // The value is written into the sink as it comes, and never stored
+                    currentTlv.getValue().stream( sink );
+
+                    return streamValue( stream, container, Math.min( nbBytes, length ) );
+                }
+            }
+
             if ( nbBytes < length )
             {
                 currentTlv.getValue().init( length );
@@ -533,8 +555,21 @@ public final class Asn1Decoder implements TLVBerDecoderMBean
             }
             else
             {
-                currentTlv.getValue().init( length );
-                stream.get( currentTlv.getValue().getData(), 0, length );
+                RefCountedBuffer sharedStream = container.getSharedStream();
+
+                if ( ( sharedStream != null ) && ( sharedStream.getBuffer() == stream ) )
+                {
+                    // Zero copy : the value points into the incoming buffer
+                    int position = stream.position();
+                    currentTlv.getValue().wrap( sharedStream, position, length );
+                    stream.position( position + length );
+                }
+                else
+                {
+                    currentTlv.getValue().init( length );
+                    stream.get( currentTlv.getValue().getData(), 0, length );
+                }
+
                 container.setState( TLVStateEnum.TLV_STATE_DONE );
 
                 return MORE;
@@ -552,8 +587,10 @@ public final class Asn1Decoder implements TLVBerDecoderMBean
      * @return <code>MORE</code> if some bytes remain in the buffer when the
      * value has been decoded, <code>END</code> if whe still need to get some
      * more bytes.
+     * @throws DecoderException If the value can't be streamed
      */
     private static boolean treatValuePendingState( ByteBuffer stream, Asn1Container container )
+        throws DecoderException
     {
         TLV currentTlv = container.getCurrentTLV();
 
@@ -561,6 +598,11 @@ public final class Asn1Decoder implements TLVBerDecoderMBean
         int currentLength = currentTlv.getValue().getCurrentLength();
         int nbBytes = stream.remaining();
 
+        if ( currentTlv.getValue().isStreamed() )
+        {
+            return streamValue( stream, container, Math.min( nbBytes, length - currentLength ) );
+        }
+
         if ( ( currentLength + nbBytes ) < length )
         {
             currentTlv.getValue().addData( stream );
@@ -571,9 +613,7 @@ public final class Asn1Decoder implements TLVBerDecoderMBean
         else
         {
             int remaining = length - currentLength;
-            byte[] data = new byte[remaining];
-            stream.get( data, 0, remaining );
-            currentTlv.getValue().addData( data );
+            currentTlv.getValue().addData( stream, remaining );
             container.setState( TLVStateEnum.TLV_STATE_DONE );
 
             return MORE;
@@ -581,6 +621,74 @@ public final class Asn1Decoder implements TLVBerDecoderMBean
     }
 
 
+    /**
+     * Ask the container for a channel to stream the current value into.
+     *
+     * @param container The container that stores the current state
+     * @return The channel, or null if the value has to be stored
+     * @throws DecoderException If the channel can't be opened
+     */
+    private static WritableByteChannel openValueSink( Asn1Container container ) throws DecoderException
+    {
+        try
+        {
+            return container.openValueSink();
+        }
+        catch ( IOException ioe )
+        {
+            String message = I18n.err( I18n.ERR_01009_CANNOT_STREAM_VALUE, ioe.getMessage() );
+            LOG.error( message );
+            throw new DecoderException( message, ioe );
+        }
+    }
+
+
+    /**
+     * Write the available bytes of a streamed value into its sink. The sink is closed
+     * when the whole value has been written.
+     *
+     * @param stream The ByteBuffer containing the PDU to decode
+     * @param container The container that stores the current state
+     * @param nbBytes The number of bytes of the value available in the stream
+     * @return <code>MORE</code> if the value has been fully written, <code>END</code>
+     * if we still need to get some more bytes.
+     * @throws DecoderException If the value can't be written
+     */
+    private static boolean streamValue( ByteBuffer stream, Asn1Container container, int nbBytes )
+        throws DecoderException
+    {
+        TLV currentTlv = container.getCurrentTLV();
+        BerValue value = currentTlv.getValue();
+
+        try
+        {
+            value.streamData( stream, nbBytes );
+
+            // The streamed bytes are not kept in memory, they don't count in the PDU size
+            container.incrementDecodedBytes( -nbBytes );
+
+            if ( value.getCurrentLength() < currentTlv.getLength() )
+            {
+                container.setState( TLVStateEnum.VALUE_STATE_PENDING );
+
+                return END;
+            }
+
+            value.closeSink();
+        }
+        catch ( IOException ioe )
+        {
+            String message = I18n.err( I18n.ERR_01009_CANNOT_STREAM_VALUE, ioe.getMessage() );
+            LOG.error( message );
+            throw new DecoderException( message, ioe );
+        }
+
+        container.setState( TLVStateEnum.TLV_STATE_DONE );
+
+        return MORE;
+    }
+
+
     /**
      * When the TLV has been fully decoded, we have to execute the associated
      * action and switch to the next TLV, which will start with a Tag.
@@ -600,9 +708,15 @@ public final class Asn1Decoder implements TLVBerDecoderMBean
             dumpTLVTree( container );
         }
 
+        TLV currentTlv = container.getCurrentTLV();
+
         // First, we have to execute the associated action
         container.getGrammar().executeAction( container );
 
+        // The action has read the value : we don't need to keep a reference
+        // on the incoming buffer anymore
+        currentTlv.getValue().release();
+
         // Check if the PDU has been fully decoded.
         if ( isTLVDecoded( container ) )
         {
@@ -671,7 +785,10 @@ public final class Asn1Decoder implements TLVBerDecoderMBean
             throw new DecoderException( message );
         }
 
-        if ( LOG.isDebugEnabled() )
+        // Checked once per buffer, not for each step of the automaton
+        boolean isDebugEnabled = LOG.isDebugEnabled();
+
+        if ( isDebugEnabled )
         {
             LOG.debug( I18n.msg( I18n.MSG_01007_LINE_SEPARATOR1 ) );
             LOG.debug( I18n.msg( I18n.MSG_01011_DECODING_PDU ) );
@@ -680,7 +797,7 @@ public final class Asn1Decoder implements TLVBerDecoderMBean
 
         while ( hasRemaining )
         {
-            if ( LOG.isDebugEnabled() )
+            if ( isDebugEnabled )
             {
                 LOG.debug( I18n.msg( I18n.MSG_01012_STATE, container.getState() ) );
 
@@ -744,7 +861,7 @@ public final class Asn1Decoder implements TLVBerDecoderMBean
                 case PDU_DECODED:
                     // We have to deal with the case where there are
                     // more bytes in the buffer, but the PDU has been decoded.
-                    if ( LOG.isDebugEnabled() )
+                    if ( isDebugEnabled )
                     {
                         LOG.debug( I18n.err( I18n.ERR_01008_REMAINING_BYTES_FOR_DECODED_PDU ) );
                     }
@@ -758,7 +875,7 @@ public final class Asn1Decoder implements TLVBerDecoderMBean
             }
         }
 
-        if ( LOG.isDebugEnabled() )
+        if ( isDebugEnabled )
         {
             LOG.debug( I18n.msg( I18n.MSG_01009_LINE_SEPARATOR3 ) );
 
@@ -0,0 +1,300 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.asn1.ber;
+
+
+import java.nio.ByteBuffer;
+
+import org.apache.directory.api.asn1.DecoderException;
+import org.apache.directory.api.asn1.ber.tlv.TLV;
+import org.apache.directory.api.asn1.util.Asn1StringUtils;
+import org.apache.directory.api.i18n.I18n;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Splits a stream of bytes into PDUs, without decoding them. Only the outer tag and
+ * the definite length of each PDU are read, and checked against the expected tag and
+ * the maximum PDU size : the {@link Asn1Decoder} and the grammar are not involved.
+ * <br>
+ * The PDUs may be split across many incoming buffers : the bytes of an incomplete
+ * PDU are kept until the next buffer is received. A framer instance is not thread safe,
+ * one is needed for each stream.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class Asn1Framer
+{
+    /** The logger */
+    private static final Logger LOG = LoggerFactory.getLogger( Asn1Framer.class );
+
+    /** Returned by {@link #getFrameSize(ByteBuffer, byte, int)} when the header is incomplete */
+    public static final int NEED_MORE_BYTES = -1;
+
+    /** The longest header : the tag, and a 4 bytes long length */
+    private static final int MAX_HEADER_LENGTH = 6;
+
+    /** The expected outer tag */
+    private final byte tag;
+
+    /** The maximum PDU size */
+    private int maxPDUSize;
+
+    /** The header of the PDU being received */
+    private final byte[] header = new byte[MAX_HEADER_LENGTH];
+
+    /** The number of header bytes received */
+    private int headerLength;
+
+    /** The PDU being received, once its header is complete */
+    private byte[] frame;
+
+    /** The number of PDU bytes received */
+    private int frameLength;
+
+
+    /**
+     * Creates a new Asn1Framer instance, with no maximum PDU size.
+     *
+     * @param tag The expected outer tag of the PDUs
+     */
+    public Asn1Framer( byte tag )
+    {
+        this( tag, Integer.MAX_VALUE );
+    }
+
+
+    /**
+     * Creates a new Asn1Framer instance.
+     *
+     * @param tag The expected outer tag of the PDUs
+     * @param maxPDUSize The maximum PDU size, tag and length included
+     */
+    public Asn1Framer( byte tag, int maxPDUSize )
+    {
+        this.tag = tag;
+        this.maxPDUSize = maxPDUSize;
+    }
+
+
+    /**
+     * @return The maximum PDU size
+     */
+    public int getMaxPDUSize()
+    {
+        return maxPDUSize;
+    }
+
+
+    /**
+     * Set the maximum PDU size. A bigger PDU is rejected before being received.
+     *
+     * @param maxPDUSize The maximum PDU size, tag and length included
+     */
+    public void setMaxPDUSize( int maxPDUSize )
+    {
+        this.maxPDUSize = maxPDUSize;
+    }
+
+
+    /**
+     * @return <code>true</code> if the bytes of an incomplete PDU are kept
+     */
+    public boolean hasPendingBytes()
+    {
+        return ( headerLength != 0 ) || ( frame != null );
+    }
+
+
+    /**
+     * Forget the bytes of the incomplete PDU, if any.
+     */
+    public void reset()
+    {
+        headerLength = 0;
+        frame = null;
+        frameLength = 0;
+    }
+
+
+    /**
+     * Read the next complete PDU from the stream. If the whole PDU is available in the
+     * stream, the returned buffer is a view on the stream, which is only valid until the
+     * stream is reused. Otherwise, the available bytes are kept, and the PDU is returned
+     * in a new buffer once it has been completed by the next streams.
+     * <br>
+     * In any case, the stream position is moved after the bytes which have been read.
+     *
+     * @param stream The incoming bytes
+     * @return The PDU, tag and length included, or null if the stream does not contain
+     * the end of a PDU
+     * @throws DecoderException If the tag is not the expected one, if the length is
+     * invalid or if the PDU is too long. The framer is then reset.
+     */
+    public ByteBuffer nextFrame( ByteBuffer stream ) throws DecoderException
+    {
+        try
+        {
+            if ( !hasPendingBytes() )
+            {
+                int frameSize = getFrameSize( stream, tag, maxPDUSize );
+
+                if ( ( frameSize != NEED_MORE_BYTES ) && ( frameSize <= stream.remaining() ) )
+                {
+                    // Fast path : the whole PDU is available
+                    ByteBuffer view = stream.slice();
+                    view.limit( frameSize );
+                    stream.position( stream.position() + frameSize );
+
+                    return view;
+                }
+            }
+
+            while ( stream.hasRemaining() )
+            {
+                if ( frame == null )
+                {
+                    header[headerLength++] = stream.get();
+
+                    int frameSize = getFrameSize( ByteBuffer.wrap( header, 0, headerLength ), tag, maxPDUSize );
+
+                    if ( frameSize != NEED_MORE_BYTES )
+                    {
+                        frame = new byte[frameSize];
+                        System.arraycopy( header, 0, frame, 0, headerLength );
+                        frameLength = headerLength;
+                        headerLength = 0;
+                    }
+                }
+                else
+                {
+                    int nbBytes = Math.min( stream.remaining(), frame.length - frameLength );
+                    stream.get( frame, frameLength, nbBytes );
+                    frameLength += nbBytes;
+                }
+
+                if ( ( frame != null ) && ( frameLength == frame.length ) )
+                {
+                    ByteBuffer complete = ByteBuffer.wrap( frame );
+                    reset();
+
+                    return complete;
+                }
+            }
+
+            return null;
+        }
+        catch ( DecoderException de )
+        {
+            reset();
+
+            throw de;
+        }
+    }
+
+
+    /**
+     * Read the size of the PDU starting at the stream position, without moving it.
+     *
+     * @param stream The stream
+     * @param tag The expected outer tag
+     * @param maxPDUSize The maximum PDU size, tag and length included
+     * @return The PDU size, tag and length included, or {@link #NEED_MORE_BYTES} if the
+     * stream does not contain the whole tag and length
+     * @throws DecoderException If the tag is not the expected one, if the length is
+     * invalid or if the PDU is too long
+     */
+    public static int getFrameSize( ByteBuffer stream, byte tag, int maxPDUSize ) throws DecoderException
+    {
+        int position = stream.position();
+        int available = stream.remaining();
+
+        if ( available == 0 )
+        {
+            return NEED_MORE_BYTES;
+        }
+
+        byte firstByte = stream.get( position );
+
+        if ( firstByte != tag )
+        {
+            String message = I18n.err( I18n.ERR_01010_UNEXPECTED_PDU_TAG, Asn1StringUtils.dumpByte( firstByte ),
+                Asn1StringUtils.dumpByte( tag ) );
+            LOG.error( message );
+            throw new DecoderException( message );
+        }
+
+        if ( available < 2 )
+        {
+            return NEED_MORE_BYTES;
+        }
+
+        byte octet = stream.get( position + 1 );
+        long length;
+        int nbLengthBytes = 0;
+
+        if ( ( octet & TLV.LENGTH_LONG_FORM ) == 0 )
+        {
+            length = octet;
+        }
+        else
+        {
+            if ( ( octet & TLV.LENGTH_EXTENSION_RESERVED ) == TLV.LENGTH_EXTENSION_RESERVED )
+            {
+                String message = I18n.err( I18n.ERR_01001_LENGTH_EXTENSION_RESERVED );
+                LOG.error( message );
+                throw new DecoderException( message );
+            }
+
+            nbLengthBytes = octet & TLV.LENGTH_SHORT_MASK;
+
+            if ( nbLengthBytes > 4 )
+            {
+                String message = I18n.err( I18n.ERR_01000_LENGTH_OVERFLOW );
+                LOG.error( message );
+                throw new DecoderException( message );
+            }
+
+            if ( available < 2 + nbLengthBytes )
+            {
+                return NEED_MORE_BYTES;
+            }
+
+            length = 0L;
+
+            for ( int i = 0; i < nbLengthBytes; i++ )
+            {
+                length = ( length << 8 ) | ( stream.get( position + 2 + i ) & 0x00FF );
+            }
+        }
+
+        long frameSize = 2L + nbLengthBytes + length;
+
+        if ( frameSize > maxPDUSize )
+        {
+            String message = I18n.err( I18n.ERR_01007_PDU_SIZE_TOO_LONG, frameSize, maxPDUSize );
+            LOG.error( message );
+            throw new DecoderException( message );
+        }
+
+        return ( int ) frameSize;
+    }
+}
@@ -20,14 +20,17 @@
 package org.apache.directory.api.asn1.ber.tlv;
 
 
+import java.io.IOException;
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 
 import org.apache.directory.api.asn1.EncoderException;
 import org.apache.directory.api.asn1.util.Asn1Buffer;
 import org.apache.directory.api.asn1.util.Asn1StringUtils;
 import org.apache.directory.api.asn1.util.BitString;
 import org.apache.directory.api.asn1.util.Oid;
+import org.apache.directory.api.asn1.util.RefCountedBuffer;
 import org.apache.directory.api.i18n.I18n;
 import org.apache.directory.api.util.Strings;
 
@@ -45,6 +48,15 @@ public class BerValue
     /** The current position of the last byte in the data buffer */
     private int currentPos;
 
+    /** The buffer the data are read from, when they have not been copied yet */
+    private RefCountedBuffer window;
+
+    /** The position of the data in the window */
+    private int windowOffset;
+
+    /** The channel the data are written into, when they are streamed instead of being stored */
+    private WritableByteChannel sink;
+
     /** The encoded byte for a TRUE value */
     public static final byte TRUE_VALUE = ( byte ) 0xFF;
 
@@ -133,32 +145,194 @@ public class BerValue
      */
     public void init( int size )
     {
+        release();
+        sink = null;
         data = new byte[size];
         currentPos = 0;
     }
 
 
+    /**
+     * Initialize the Value with a window in a shared buffer. The bytes are not
+     * copied : they will be read from the buffer, and copied in a byte[] only if
+     * {@link #getData()} is called. A reference on the buffer is held until
+     * {@link #release()} is called.
+     *
+     * @param buffer The shared buffer containing the value
+     * @param offset The position of the first byte of the value in the buffer
+     * @param length The value length
+     */
+    public void wrap( RefCountedBuffer buffer, int offset, int length )
+    {
+        buffer.retain();
+        release();
+        sink = null;
+        window = buffer;
+        windowOffset = offset;
+        data = null;
+        currentPos = length;
+    }
+
+
+    /**
+     * Release the shared buffer this value points into, if any. The value
+     * bytes are not available anymore if they have not been read before.
+     */
+    public void release()
+    {
+        if ( window != null )
+        {
+            RefCountedBuffer buffer = window;
+            window = null;
+            buffer.release();
+        }
+    }
+
+
     /**
      * Reset the Value so that it can be reused
      */
     public void reset()
     {
+        release();
+        sink = null;
         data = null;
         currentPos = 0;
     }
 
 
     /**
-     * Get the Values'data
+     * Initialize the Value so that its bytes are written into a channel as they are
+     * received, instead of being stored. {@link #getData()} will return null, but
+     * {@link #getDataLength()} will return the number of bytes written so far.
+     *
+     * @param sink The channel the value bytes are written into
+     */
+    public void stream( WritableByteChannel sink )
+    {
+        release();
+        this.sink = sink;
+        data = null;
+        currentPos = 0;
+    }
+
+
+    /**
+     * @return <code>true</code> if the value bytes are written into a channel instead
+     * of being stored
+     */
+    public boolean isStreamed()
+    {
+        return sink != null;
+    }
+
+
+    /**
+     * Write some bytes into the channel the value is streamed to.
+     *
+     * @param buffer The buffer containing the bytes to write. Its position is moved
+     * past the written bytes
+     * @param length The number of bytes to write
+     * @throws IOException If the bytes can't be written
+     */
+    public void streamData( ByteBuffer buffer, int length ) throws IOException
+    {
+        int limit = buffer.limit();
+        buffer.limit( buffer.position() + length );
+
+        try
+        {
+            while ( buffer.hasRemaining() )
+            {
+                sink.write( buffer );
+            }
+        }
+        finally
+        {
+            buffer.limit( limit );
+        }
+
+        currentPos += length;
+    }
+
+
+    /**
+     * Close the channel the value is streamed to, once all the value bytes have
+     * been written.
+     *
+     * @throws IOException If the channel can't be closed
+     */
+    public void closeSink() throws IOException
+    {
+        sink.close();
+    }
+
+
+    /**
+     * Get the Values'data. If the value points into a shared buffer, its bytes
+     * are copied in a byte[] and the buffer is released.
      *
      * @return Returns the data.
      */
     public byte[] getData()
     {
+        if ( window != null )
+        {
+            if ( currentPos == 0 )
+            {
+                data = Strings.EMPTY_BYTES;
+            }
+            else
+            {
+                byte[] bytes = new byte[currentPos];
+                window.get( windowOffset, bytes, 0, currentPos );
+                data = bytes;
+            }
+
+            release();
+        }
+
         return data;
     }
 
 
+    /**
+     * @return The value length, without copying the value bytes. It remains
+     * available once the value has been released.
+     */
+    public int getDataLength()
+    {
+        if ( data != null )
+        {
+            return data.length;
+        }
+
+        return currentPos;
+    }
+
+
+    /**
+     * Get one byte of the value, without copying the value bytes.
+     *
+     * @param index The position of the byte in the value
+     * @return The byte
+     */
+    public byte getByte( int index )
+    {
+        if ( window != null )
+        {
+            if ( ( index < 0 ) || ( index >= currentPos ) )
+            {
+                throw new IndexOutOfBoundsException();
+            }
+
+            return window.get( windowOffset + index );
+        }
+
+        return data[index];
+    }
+
+
     /**
      * Set a block of bytes in the Value
      *
@@ -185,6 +359,19 @@ public class BerValue
     }
 
 
+    /**
+     * Append some bytes to the data buffer.
+     *
+     * @param buffer The data to append.
+     * @param length The number of bytes to read from the buffer
+     */
+    public void addData( ByteBuffer buffer, int length )
+    {
+        buffer.get( data, currentPos, length );
+        currentPos += length;
+    }
+
+
     /**
      * Set a block of bytes in the Value
      *
@@ -205,7 +392,7 @@ public class BerValue
     public void addData( byte[] array )
     {
         System.arraycopy( array, 0, this.data, currentPos, array.length );
-        currentPos = array.length;
+        currentPos += array.length;
     }
 
 
@@ -1244,12 +1431,24 @@ public class BerValue
         StringBuilder sb = new StringBuilder();
         sb.append( "DATA" );
 
-        if ( data != null )
+        if ( window != null )
+        {
+            byte[] bytes = new byte[currentPos];
+            window.get( windowOffset, bytes, 0, currentPos );
+            sb.append( '[' );
+            sb.append( Asn1StringUtils.dumpBytes( bytes ) );
+            sb.append( ']' );
+        }
+        else if ( data != null )
         {
             sb.append( '[' );
             sb.append( Asn1StringUtils.dumpBytes( data ) );
             sb.append( ']' );
         }
+        else if ( sink != null )
+        {
+            sb.append( "[streamed, " ).append( currentPos ).append( " bytes]" );
+        }
         else
         {
             return "[]";
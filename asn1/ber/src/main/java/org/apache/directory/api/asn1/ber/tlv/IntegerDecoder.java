@@ -21,7 +21,6 @@ package org.apache.directory.api.asn1.ber.tlv;
 
 
 import org.apache.directory.api.i18n.I18n;
-import org.apache.directory.api.util.Strings;
 
 
 /**
@@ -110,29 +109,29 @@ public final class IntegerDecoder
     {
         int result = 0;
 
-        byte[] bytes = value.getData();
+        int length = value.getDataLength();
 
-        if ( Strings.isEmpty( bytes ) )
+        if ( length == 0 )
         {
             throw new IntegerDecoderException( I18n.err( I18n.ERR_01304_0_BYTES_LONG_INTEGER ) );
         }
 
         boolean positive = true;
 
-        switch ( bytes.length )
+        switch ( length )
         {
             case 5:
-                if ( bytes[0] == 0x00 )
+                if ( value.getByte( 0 ) == 0x00 )
                 {
-                    if ( ( bytes[1] & ( byte ) 0x80 ) != ( byte ) 0x80 )
+                    if ( ( value.getByte( 1 ) & ( byte ) 0x80 ) != ( byte ) 0x80 )
                     {
                         throw new IntegerDecoderException( I18n.err( I18n.ERR_01304_0_BYTES_LONG_INTEGER ) );
                     }
 
-                    result = bytes[1] & 0x00FF;
-                    result = ( result << 8 ) | ( bytes[2] & 0x00FF );
-                    result = ( result << 8 ) | ( bytes[3] & 0x00FF );
-                    result = ( result << 8 ) | ( bytes[4] & 0x00FF );
+                    result = value.getByte( 1 ) & 0x00FF;
+                    result = ( result << 8 ) | ( value.getByte( 2 ) & 0x00FF );
+                    result = ( result << 8 ) | ( value.getByte( 3 ) & 0x00FF );
+                    result = ( result << 8 ) | ( value.getByte( 4 ) & 0x00FF );
                 }
                 else
                 {
@@ -142,71 +141,71 @@ public final class IntegerDecoder
                 break;
 
             case 4:
-                if ( bytes[0] == 0x00 )
+                if ( value.getByte( 0 ) == 0x00 )
                 {
-                    result = bytes[1] & 0x00FF;
+                    result = value.getByte( 1 ) & 0x00FF;
                 }
                 else
                 {
-                    result = bytes[0] & 0x00FF;
+                    result = value.getByte( 0 ) & 0x00FF;
 
-                    if ( ( bytes[0] & ( byte ) 0x80 ) == ( byte ) 0x80 )
+                    if ( ( value.getByte( 0 ) & ( byte ) 0x80 ) == ( byte ) 0x80 )
                     {
                         positive = false;
                     }
 
-                    result = ( result << 8 ) | ( bytes[1] & 0x00FF );
+                    result = ( result << 8 ) | ( value.getByte( 1 ) & 0x00FF );
                 }
 
-                result = ( result << 8 ) | ( bytes[2] & 0x00FF );
-                result = ( result << 8 ) | ( bytes[3] & 0x00FF );
+                result = ( result << 8 ) | ( value.getByte( 2 ) & 0x00FF );
+                result = ( result << 8 ) | ( value.getByte( 3 ) & 0x00FF );
 
                 break;
 
             case 3:
-                if ( bytes[0] == 0x00 )
+                if ( value.getByte( 0 ) == 0x00 )
                 {
-                    result = bytes[1] & 0x00FF;
+                    result = value.getByte( 1 ) & 0x00FF;
                 }
                 else
                 {
-                    result = bytes[0] & 0x00FF;
+                    result = value.getByte( 0 ) & 0x00FF;
 
-                    if ( ( bytes[0] & ( byte ) 0x80 ) == ( byte ) 0x80 )
+                    if ( ( value.getByte( 0 ) & ( byte ) 0x80 ) == ( byte ) 0x80 )
                     {
                         positive = false;
                     }
 
-                    result = ( result << 8 ) | ( bytes[1] & 0x00FF );
+                    result = ( result << 8 ) | ( value.getByte( 1 ) & 0x00FF );
                 }
 
-                result = ( result << 8 ) | ( bytes[2] & 0x00FF );
+                result = ( result << 8 ) | ( value.getByte( 2 ) & 0x00FF );
 
                 break;
 
             case 2:
-                if ( bytes[0] == 0x00 )
+                if ( value.getByte( 0 ) == 0x00 )
                 {
-                    result = bytes[1] & 0x00FF;
+                    result = value.getByte( 1 ) & 0x00FF;
                 }
                 else
                 {
-                    result = bytes[0] & 0x00FF;
+                    result = value.getByte( 0 ) & 0x00FF;
 
-                    if ( ( bytes[0] & ( byte ) 0x80 ) == ( byte ) 0x80 )
+                    if ( ( value.getByte( 0 ) & ( byte ) 0x80 ) == ( byte ) 0x80 )
                     {
                         positive = false;
                     }
 
-                    result = ( result << 8 ) | ( bytes[1] & 0x00FF );
+                    result = ( result << 8 ) | ( value.getByte( 1 ) & 0x00FF );
                 }
 
                 break;
 
             case 1:
-                result = ( result << 8 ) | ( bytes[0] & 0x00FF );
+                result = ( result << 8 ) | ( value.getByte( 0 ) & 0x00FF );
 
-                if ( ( bytes[0] & ( byte ) 0x80 ) == ( byte ) 0x80 )
+                if ( ( value.getByte( 0 ) & ( byte ) 0x80 ) == ( byte ) 0x80 )
                 {
                     positive = false;
                 }
@@ -219,7 +218,7 @@ public final class IntegerDecoder
 
         if ( !positive )
         {
-            result = -( ( ( ~result ) + 1 ) & MASK[bytes.length - 1] );
+            result = -( ( ( ~result ) + 1 ) & MASK[length - 1] );
         }
 
         return result;
@@ -91,26 +91,26 @@ public final class LongDecoder
     {
         long result = 0;
 
-        byte[] bytes = value.getData();
+        int length = value.getDataLength();
 
-        if ( ( bytes == null ) || ( bytes.length == 0 ) )
+        if ( length == 0 )
         {
             throw new LongDecoderException( I18n.err( I18n.ERR_01307_0_BYTES_LONG_LONG ) );
         }
 
-        if ( bytes.length > 8 )
+        if ( length > 8 )
         {
             throw new LongDecoderException( I18n.err( I18n.ERR_01307_0_BYTES_LONG_LONG ) );
         }
 
-        for ( int i = 0; ( i < bytes.length ) && ( i < 9 ); i++ )
+        for ( int i = 0; ( i < length ) && ( i < 9 ); i++ )
         {
-            result = ( result << 8 ) | ( bytes[i] & 0x00FF );
+            result = ( result << 8 ) | ( value.getByte( i ) & 0x00FF );
         }
 
-        if ( ( bytes[0] & 0x80 ) == 0x80 )
+        if ( ( value.getByte( 0 ) & 0x80 ) == 0x80 )
         {
-            result = -( ( ( ~result ) + 1 ) & MASK[bytes.length - 1] );
+            result = -( ( ( ~result ) + 1 ) & MASK[length - 1] );
         }
         
         return result;
@@ -0,0 +1,240 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.asn1.ber;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.directory.api.asn1.DecoderException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.mycila.junit.concurrent.Concurrency;
+import com.mycila.junit.concurrent.ConcurrentJunitRunner;
+
+
+/**
+ * Test the Asn1Framer class
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@RunWith(ConcurrentJunitRunner.class)
+@Concurrency()
+public class Asn1FramerTest
+{
+    /**
+     * Create a SEQUENCE PDU with a value of the given length
+     */
+    private byte[] createPdu( int length )
+    {
+        byte[] header;
+
+        if ( length < 128 )
+        {
+            header = new byte[]
+                { 0x30, ( byte ) length };
+        }
+        else
+        {
+            header = new byte[]
+                { 0x30, ( byte ) 0x82, ( byte ) ( length >> 8 ), ( byte ) length };
+        }
+
+        byte[] pdu = new byte[header.length + length];
+        System.arraycopy( header, 0, pdu, 0, header.length );
+
+        for ( int i = header.length; i < pdu.length; i++ )
+        {
+            pdu[i] = ( byte ) i;
+        }
+
+        return pdu;
+    }
+
+
+    /**
+     * Test the size of a PDU read from its header
+     */
+    @Test
+    public void testGetFrameSize() throws DecoderException
+    {
+        assertEquals( Asn1Framer.NEED_MORE_BYTES, Asn1Framer.getFrameSize( ByteBuffer.allocate( 0 ), ( byte ) 0x30, 100 ) );
+        assertEquals( Asn1Framer.NEED_MORE_BYTES, Asn1Framer.getFrameSize( ByteBuffer.wrap( new byte[]
+            { 0x30 } ), ( byte ) 0x30, 100 ) );
+        assertEquals( 7, Asn1Framer.getFrameSize( ByteBuffer.wrap( new byte[]
+            { 0x30, 0x05 } ), ( byte ) 0x30, 100 ) );
+        assertEquals( Asn1Framer.NEED_MORE_BYTES, Asn1Framer.getFrameSize( ByteBuffer.wrap( new byte[]
+            { 0x30, ( byte ) 0x82, 0x01 } ), ( byte ) 0x30, 1000 ) );
+        assertEquals( 260, Asn1Framer.getFrameSize( ByteBuffer.wrap( new byte[]
+            { 0x30, ( byte ) 0x82, 0x01, 0x00 } ), ( byte ) 0x30, 1000 ) );
+
+        // The position is not moved
+        ByteBuffer stream = ByteBuffer.wrap( new byte[]
+            { 0x00, 0x30, 0x01, 0x00 } );
+        stream.position( 1 );
+        assertEquals( 3, Asn1Framer.getFrameSize( stream, ( byte ) 0x30, 100 ) );
+        assertEquals( 1, stream.position() );
+    }
+
+
+    /**
+     * Test the invalid headers
+     */
+    @Test
+    public void testInvalidHeaders()
+    {
+        byte[][] headers = new byte[][]
+            {
+                // Wrong tag
+                { 0x31, 0x00 },
+                // Reserved length
+                { 0x30, ( byte ) 0xFF },
+                // Length on more than 4 bytes
+                { 0x30, ( byte ) 0x85, 0x00, 0x00, 0x00, 0x00, 0x01 },
+                // Too long
+                { 0x30, ( byte ) 0x84, 0x7F, ( byte ) 0xFF, ( byte ) 0xFF, ( byte ) 0xFF },
+                { 0x30, ( byte ) 0x84, ( byte ) 0xFF, ( byte ) 0xFF, ( byte ) 0xFF, ( byte ) 0xFF }
+            };
+
+        for ( byte[] header : headers )
+        {
+            try
+            {
+                Asn1Framer.getFrameSize( ByteBuffer.wrap( header ), ( byte ) 0x30, 1000 );
+                fail();
+            }
+            catch ( DecoderException de )
+            {
+                assertTrue( de.getMessage().startsWith( "ERR_010" ) );
+            }
+        }
+    }
+
+
+    /**
+     * Test that the PDUs available in a single buffer are returned as views
+     */
+    @Test
+    public void testCompleteFrames() throws DecoderException
+    {
+        byte[] pdu1 = createPdu( 10 );
+        byte[] pdu2 = createPdu( 300 );
+        ByteBuffer stream = ByteBuffer.allocate( pdu1.length + pdu2.length + 1 );
+        stream.put( pdu1 ).put( pdu2 ).put( ( byte ) 0x30 ).flip();
+
+        Asn1Framer framer = new Asn1Framer( ( byte ) 0x30 );
+
+        ByteBuffer frame = framer.nextFrame( stream );
+        assertEquals( ByteBuffer.wrap( pdu1 ), frame );
+        assertTrue( frame.array() == stream.array() );
+
+        frame = framer.nextFrame( stream );
+        assertEquals( ByteBuffer.wrap( pdu2 ), frame );
+
+        // The last byte is kept
+        assertNull( framer.nextFrame( stream ) );
+        assertFalse( stream.hasRemaining() );
+        assertTrue( framer.hasPendingBytes() );
+    }
+
+
+    /**
+     * Test that the PDUs split in many buffers are gathered
+     */
+    @Test
+    public void testSplitFrames() throws DecoderException
+    {
+        byte[] pdu1 = createPdu( 0 );
+        byte[] pdu2 = createPdu( 1000 );
+        byte[] pdu3 = createPdu( 5 );
+        byte[] bytes = new byte[pdu1.length + pdu2.length + pdu3.length];
+        System.arraycopy( pdu1, 0, bytes, 0, pdu1.length );
+        System.arraycopy( pdu2, 0, bytes, pdu1.length, pdu2.length );
+        System.arraycopy( pdu3, 0, bytes, pdu1.length + pdu2.length, pdu3.length );
+
+        for ( int chunkSize : new int[]
+            { 1, 3, 7, 100 } )
+        {
+            Asn1Framer framer = new Asn1Framer( ( byte ) 0x30, 2000 );
+            List<ByteBuffer> frames = new ArrayList<>();
+
+            for ( int pos = 0; pos < bytes.length; pos += chunkSize )
+            {
+                ByteBuffer stream = ByteBuffer.wrap( bytes, pos, Math.min( chunkSize, bytes.length - pos ) );
+
+                while ( stream.hasRemaining() )
+                {
+                    ByteBuffer frame = framer.nextFrame( stream );
+
+                    if ( frame != null )
+                    {
+                        // Copy the views, the stream would be reused
+                        ByteBuffer copy = ByteBuffer.allocate( frame.remaining() );
+                        copy.put( frame ).flip();
+                        frames.add( copy );
+                    }
+                }
+            }
+
+            assertEquals( 3, frames.size() );
+            assertEquals( ByteBuffer.wrap( pdu1 ), frames.get( 0 ) );
+            assertEquals( ByteBuffer.wrap( pdu2 ), frames.get( 1 ) );
+            assertEquals( ByteBuffer.wrap( pdu3 ), frames.get( 2 ) );
+            assertFalse( framer.hasPendingBytes() );
+        }
+    }
+
+
+    /**
+     * Test that a PDU bigger than the maximum size is rejected from its header, and
+     * that the framer is reset
+     */
+    @Test
+    public void testMaxPDUSize() throws DecoderException
+    {
+        Asn1Framer framer = new Asn1Framer( ( byte ) 0x30, 100 );
+
+        try
+        {
+            framer.nextFrame( ByteBuffer.wrap( new byte[]
+                { 0x30, ( byte ) 0x81 } ) );
+            framer.nextFrame( ByteBuffer.wrap( new byte[]
+                { ( byte ) 0xC8 } ) );
+            fail();
+        }
+        catch ( DecoderException de )
+        {
+            assertTrue( de.getMessage().startsWith( "ERR_01007" ) );
+        }
+
+        assertFalse( framer.hasPendingBytes() );
+
+        framer.setMaxPDUSize( 300 );
+        assertEquals( 204, framer.nextFrame( ByteBuffer.wrap( createPdu( 200 ) ) ).remaining() );
+    }
+}
@@ -20,6 +20,7 @@
 package org.apache.directory.api.asn1.ber.tlv;
 
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -31,6 +32,7 @@ import java.util.Arrays;
 import org.apache.directory.api.asn1.EncoderException;
 import org.apache.directory.api.asn1.util.Asn1StringUtils;
 import org.apache.directory.api.asn1.util.BitString;
+import org.apache.directory.api.asn1.util.RefCountedBuffer;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
@@ -789,5 +791,41 @@ public class ValueTest
         
         assertEquals( "0x03 0x03 0x06 0x00 0x40 ", Asn1StringUtils.dumpBytes( buffer.array() )  );
     }
-}
 
+
+    /**
+     * Test a value pointing into a shared buffer
+     */
+    @Test
+    public void testWrappedValue() throws Exception
+    {
+        ByteBuffer stream = ByteBuffer.wrap( new byte[]
+            { 0x02, 0x02, 0x01, 0x00, 0x01, 0x01, ( byte ) 0xFF } );
+        RefCountedBuffer sharedStream = new RefCountedBuffer( stream );
+
+        BerValue value = new BerValue();
+        value.wrap( sharedStream, 2, 2 );
+
+        assertEquals( 2, sharedStream.refCount() );
+        assertEquals( 2, value.getDataLength() );
+        assertEquals( 0x01, value.getByte( 0 ) );
+        assertEquals( 256, IntegerDecoder.parse( value ) );
+
+        // The bytes are copied when they are requested, and the buffer is released
+        assertArrayEquals( new byte[]
+            { 0x01, 0x00 }, value.getData() );
+        assertEquals( 1, sharedStream.refCount() );
+        stream.put( 2, ( byte ) 0x7F );
+        assertEquals( 256, IntegerDecoder.parse( value ) );
+
+        // A boolean
+        value.wrap( sharedStream, 6, 1 );
+        assertTrue( BooleanDecoder.parse( value ) );
+        value.release();
+        assertEquals( 1, sharedStream.refCount() );
+
+        // The stream position is never modified
+        assertEquals( 0, stream.position() );
+        assertTrue( sharedStream.release() );
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.benchmarks;
+
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+
+/**
+ * Runs the benchmarks and stores the results as JSON, so that they can be tracked
+ * from one build to another (the file can be loaded in any JMH visualizer).
+ * <br>
+ * The first argument, if any, is a regexp selecting the benchmarks to run (all of them
+ * by default), the second one is the result file (target/jmh-result.json by default).
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public final class BenchmarkRunner
+{
+    /** The default result file */
+    private static final String DEFAULT_RESULT_FILE = "target/jmh-result.json";
+
+
+    private BenchmarkRunner()
+    {
+        // Nothing to do
+    }
+
+
+    /**
+     * Run the benchmarks
+     *
+     * @param args The benchmarks to run and the result file
+     * @throws RunnerException If the benchmarks failed
+     */
+    public static void main( String[] args ) throws RunnerException
+    {
+        String include = args.length > 0 ? args[0] : BenchmarkRunner.class.getPackage().getName() + ".*";
+        String resultFile = args.length > 1 ? args[1] : DEFAULT_RESULT_FILE;
+
+        Options options = new OptionsBuilder()
+            .include( include )
+            .resultFormat( ResultFormatType.JSON )
+            .result( resultFile )
+            .build();
+
+        new Runner( options ).run();
+    }
+}
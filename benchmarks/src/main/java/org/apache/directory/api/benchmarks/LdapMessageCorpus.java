@@ -0,0 +1,380 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.benchmarks;
+
+
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.DefaultModification;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.ModificationOperation;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.message.AbandonRequestImpl;
+import org.apache.directory.api.ldap.model.message.AddRequestImpl;
+import org.apache.directory.api.ldap.model.message.AddResponseImpl;
+import org.apache.directory.api.ldap.model.message.AliasDerefMode;
+import org.apache.directory.api.ldap.model.message.BindRequestImpl;
+import org.apache.directory.api.ldap.model.message.BindResponseImpl;
+import org.apache.directory.api.ldap.model.message.CompareRequestImpl;
+import org.apache.directory.api.ldap.model.message.CompareResponseImpl;
+import org.apache.directory.api.ldap.model.message.DeleteRequestImpl;
+import org.apache.directory.api.ldap.model.message.DeleteResponseImpl;
+import org.apache.directory.api.ldap.model.message.IntermediateResponseImpl;
+import org.apache.directory.api.ldap.model.message.LdapResult;
+import org.apache.directory.api.ldap.model.message.Message;
+import org.apache.directory.api.ldap.model.message.MessageTypeEnum;
+import org.apache.directory.api.ldap.model.message.ModifyDnRequestImpl;
+import org.apache.directory.api.ldap.model.message.ModifyDnResponseImpl;
+import org.apache.directory.api.ldap.model.message.ModifyRequestImpl;
+import org.apache.directory.api.ldap.model.message.ModifyResponseImpl;
+import org.apache.directory.api.ldap.model.message.OpaqueExtendedRequest;
+import org.apache.directory.api.ldap.model.message.OpaqueExtendedResponse;
+import org.apache.directory.api.ldap.model.message.ReferralImpl;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.message.ResultResponse;
+import org.apache.directory.api.ldap.model.message.SearchRequestImpl;
+import org.apache.directory.api.ldap.model.message.SearchResultDoneImpl;
+import org.apache.directory.api.ldap.model.message.SearchResultEntryImpl;
+import org.apache.directory.api.ldap.model.message.SearchResultReferenceImpl;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.message.UnbindRequestImpl;
+import org.apache.directory.api.ldap.model.message.controls.ManageDsaITImpl;
+import org.apache.directory.api.ldap.model.message.controls.PagedResultsImpl;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.name.Rdn;
+import org.apache.directory.api.util.Base64;
+import org.apache.directory.api.util.Strings;
+
+
+/**
+ * The corpus of LDAP messages, Dn and filters used by the benchmarks. The messages
+ * are built to look like what a directory proxy sees on the wire : entries with
+ * dozens of attributes, deep Dns, requests carrying controls.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public final class LdapMessageCorpus
+{
+    /** The number of attributes in the SearchResultEntry and AddRequest entries */
+    public static final int NB_ATTRIBUTES = 50;
+
+    /** A typical user Dn */
+    public static final String USER_DN = "uid=jdoe,ou=people,ou=engineering,o=acme,dc=example,dc=com";
+
+    /** A simple Dn, handled by the FastDnParser */
+    public static final String SIMPLE_DN = "dc=example,dc=com";
+
+    /** A deep Dn, handled by the FastDnParser */
+    public static final String DEEP_DN = "cn=printer-0042,ou=devices,ou=floor-3,ou=building-b,ou=site-paris,"
+        + "ou=region-emea,ou=infrastructure,ou=it,o=acme,dc=corp,dc=example,dc=com";
+
+    /** A Dn with multi-valued RDNs, escaped characters and hex values, handled by the ComplexDnParser */
+    public static final String COMPLEX_DN = "cn=Doe\\, John+uid=jdoe,ou=R\\C3\\A9seau \\+ T\\C3\\A9l\\C3\\A9com,"
+        + "ou=people,o=\"Acme, Inc.\",1.3.6.1.4.1.1466.0=#04024869,dc=example,dc=com";
+
+    /** A private OID, not known by the codec, used for the extended and intermediate operations */
+    public static final String PRIVATE_OID = "1.3.6.1.4.1.18060.0.4.99.1";
+
+    /** A simple equality filter */
+    public static final String SIMPLE_FILTER = "(uid=jdoe)";
+
+    /** A typical application filter */
+    public static final String AND_FILTER = "(&(objectClass=inetOrgPerson)(|(uid=jdoe)(mail=jdoe@example.com))"
+        + "(!(employeeType=contractor)))";
+
+    /** A substring filter */
+    public static final String SUBSTRING_FILTER = "(&(objectClass=person)(cn=Jo*n*D*e)(sn=*oe))";
+
+    /** A group membership filter, with a lot of ORed members */
+    public static final String BIG_OR_FILTER = buildBigOrFilter( 200 );
+
+
+    private LdapMessageCorpus()
+    {
+        // Nothing to do
+    }
+
+
+    /**
+     * Build a filter ORing many equality assertions, like the ones produced when
+     * checking the membership of a list of users.
+     *
+     * @param nbClauses The number of clauses in the filter
+     * @return The filter
+     */
+    private static String buildBigOrFilter( int nbClauses )
+    {
+        StringBuilder sb = new StringBuilder( "(|" );
+
+        for ( int i = 0; i < nbClauses; i++ )
+        {
+            sb.append( "(member=uid=user" ).append( i ).append( ",ou=people,dc=example,dc=com)" );
+        }
+
+        return sb.append( ')' ).toString();
+    }
+
+
+    /**
+     * Build a realistic user entry
+     *
+     * @param dn The entry Dn
+     * @param nbAttributes The number of attributes the entry will contain
+     * @return The entry
+     * @throws LdapException If the entry can't be created
+     */
+    public static Entry createEntry( String dn, int nbAttributes ) throws LdapException
+    {
+        Entry entry = new DefaultEntry( dn,
+            "objectClass: top",
+            "objectClass: person",
+            "objectClass: organizationalPerson",
+            "objectClass: inetOrgPerson",
+            "cn: John Doe",
+            "sn: Doe",
+            "givenName: John",
+            "uid: jdoe",
+            "mail: jdoe@example.com",
+            "telephoneNumber: +1 408 555 1234" );
+
+        // Pad the entry with extension attributes, some multi-valued
+        for ( int i = entry.size(); i < nbAttributes; i++ )
+        {
+            if ( ( i % 5 ) == 0 )
+            {
+                entry.add( "x-acme-attribute-" + i, "value-" + i + "-a", "value-" + i + "-b", "value-" + i + "-c" );
+            }
+            else
+            {
+                entry.add( "x-acme-attribute-" + i, "a reasonably long value for the attribute number " + i );
+            }
+        }
+
+        // And a binary value
+        byte[] certificate = new byte[2048];
+
+        for ( int i = 0; i < certificate.length; i++ )
+        {
+            certificate[i] = ( byte ) i;
+        }
+
+        entry.add( "userCertificate;binary", certificate );
+
+        return entry;
+    }
+
+
+    /**
+     * Set the result of a response
+     *
+     * @param response The response to update
+     * @return The response
+     * @throws LdapException If the matched Dn is invalid
+     */
+    private static Message withResult( ResultResponse response ) throws LdapException
+    {
+        LdapResult result = response.getLdapResult();
+        result.setResultCode( ResultCodeEnum.SUCCESS );
+        result.setMatchedDn( new Dn( SIMPLE_DN ) );
+        result.setDiagnosticMessage( "Operation completed" );
+
+        return response;
+    }
+
+
+    /**
+     * Create a message of the given type, with a realistic content
+     *
+     * @param type The message type
+     * @param messageId The message ID
+     * @return The created message
+     * @throws LdapException If the message can't be created
+     */
+    public static Message createMessage( MessageTypeEnum type, int messageId ) throws LdapException
+    {
+        switch ( type )
+        {
+            case ABANDON_REQUEST:
+                return new AbandonRequestImpl( messageId - 1 ).setMessageId( messageId );
+
+            case ADD_REQUEST:
+                AddRequestImpl addRequest = new AddRequestImpl();
+                addRequest.setMessageId( messageId );
+                addRequest.setEntry( createEntry( USER_DN, NB_ATTRIBUTES ) );
+
+                return addRequest;
+
+            case ADD_RESPONSE:
+                return withResult( new AddResponseImpl( messageId ) );
+
+            case BIND_REQUEST:
+                return new BindRequestImpl()
+                    .setMessageId( messageId )
+                    .setSimple( true )
+                    .setDn( new Dn( USER_DN ) )
+                    .setCredentials( Strings.getBytesUtf8( "secret" ) );
+
+            case BIND_RESPONSE:
+                return withResult( new BindResponseImpl( messageId ) );
+
+            case COMPARE_REQUEST:
+                return new CompareRequestImpl()
+                    .setMessageId( messageId )
+                    .setName( new Dn( USER_DN ) )
+                    .setAttributeId( "mail" )
+                    .setAssertionValue( "jdoe@example.com" );
+
+            case COMPARE_RESPONSE:
+                return withResult( new CompareResponseImpl( messageId ) );
+
+            case DEL_REQUEST:
+                return new DeleteRequestImpl().setMessageId( messageId ).setName( new Dn( USER_DN ) );
+
+            case DEL_RESPONSE:
+                return withResult( new DeleteResponseImpl( messageId ) );
+
+            case EXTENDED_REQUEST:
+                return new OpaqueExtendedRequest( PRIVATE_OID ).setMessageId( messageId );
+
+            case EXTENDED_RESPONSE:
+                return withResult( new OpaqueExtendedResponse( messageId, PRIVATE_OID ) );
+
+            case INTERMEDIATE_RESPONSE:
+                IntermediateResponseImpl intermediateResponse = new IntermediateResponseImpl( messageId,
+                    PRIVATE_OID );
+                intermediateResponse.setResponseValue( new byte[]
+                    { 0x30, 0x03, 0x04, 0x01, 0x00 } );
+
+                return intermediateResponse;
+
+            case MODIFY_REQUEST:
+                ModifyRequestImpl modifyRequest = new ModifyRequestImpl();
+                modifyRequest.setMessageId( messageId );
+                modifyRequest.setName( new Dn( USER_DN ) );
+                modifyRequest.addModification( new DefaultModification( ModificationOperation.REPLACE_ATTRIBUTE,
+                    "mail", "john.doe@example.com" ) );
+                modifyRequest.addModification( new DefaultModification( ModificationOperation.ADD_ATTRIBUTE,
+                    "telephoneNumber", "+1 408 555 4321", "+1 408 555 9876" ) );
+                modifyRequest.addModification( new DefaultModification( ModificationOperation.REMOVE_ATTRIBUTE,
+                    "description" ) );
+
+                return modifyRequest;
+
+            case MODIFY_RESPONSE:
+                return withResult( new ModifyResponseImpl( messageId ) );
+
+            case MODIFYDN_REQUEST:
+                return new ModifyDnRequestImpl()
+                    .setMessageId( messageId )
+                    .setName( new Dn( USER_DN ) )
+                    .setNewRdn( new Rdn( "uid=john.doe" ) )
+                    .setDeleteOldRdn( true )
+                    .setNewSuperior( new Dn( "ou=people,ou=sales,o=acme,dc=example,dc=com" ) );
+
+            case MODIFYDN_RESPONSE:
+                return withResult( new ModifyDnResponseImpl( messageId ) );
+
+            case SEARCH_REQUEST:
+                SearchRequestImpl searchRequest = new SearchRequestImpl();
+                searchRequest.setMessageId( messageId );
+                searchRequest.setBase( new Dn( "ou=people,ou=engineering,o=acme,dc=example,dc=com" ) );
+                searchRequest.setScope( SearchScope.SUBTREE );
+                searchRequest.setDerefAliases( AliasDerefMode.NEVER_DEREF_ALIASES );
+                searchRequest.setSizeLimit( 1000L );
+                searchRequest.setTimeLimit( 30 );
+                searchRequest.setFilter( AND_FILTER );
+                searchRequest.addAttributes( "cn", "sn", "givenName", "mail", "uid", "memberOf" );
+                PagedResultsImpl pagedResults = new PagedResultsImpl();
+                pagedResults.setSize( 500 );
+                pagedResults.setCookie( Strings.getBytesUtf8( "cookie" ) );
+                searchRequest.addControl( pagedResults );
+                searchRequest.addControl( new ManageDsaITImpl() );
+
+                return searchRequest;
+
+            case SEARCH_RESULT_DONE:
+                return withResult( new SearchResultDoneImpl( messageId ) );
+
+            case SEARCH_RESULT_ENTRY:
+                SearchResultEntryImpl searchResultEntry = new SearchResultEntryImpl( messageId );
+                searchResultEntry.setEntry( createEntry( USER_DN, NB_ATTRIBUTES ) );
+
+                return searchResultEntry;
+
+            case SEARCH_RESULT_REFERENCE:
+                SearchResultReferenceImpl searchResultReference = new SearchResultReferenceImpl( messageId );
+                ReferralImpl referral = new ReferralImpl();
+                referral.addLdapUrl( "ldap://replica1.example.com:389/ou=people,dc=example,dc=com??sub" );
+                referral.addLdapUrl( "ldap://replica2.example.com:389/ou=people,dc=example,dc=com??sub" );
+                searchResultReference.setReferral( referral );
+
+                return searchResultReference;
+
+            case UNBIND_REQUEST:
+                UnbindRequestImpl unbindRequest = new UnbindRequestImpl();
+                unbindRequest.setMessageId( messageId );
+
+                return unbindRequest;
+
+            default:
+                throw new IllegalArgumentException( "Unexpected message type " + type );
+        }
+    }
+
+
+    /**
+     * Create a LDIF content with the given number of entries
+     *
+     * @param nbEntries The number of entries
+     * @return The LDIF content
+     */
+    public static String createLdif( int nbEntries )
+    {
+        byte[] photo = new byte[1024];
+
+        for ( int i = 0; i < photo.length; i++ )
+        {
+            photo[i] = ( byte ) ( i * 31 );
+        }
+
+        String encodedPhoto = new String( Base64.encode( photo ) );
+        StringBuilder sb = new StringBuilder();
+        sb.append( "version: 1\n\n" );
+
+        for ( int i = 0; i < nbEntries; i++ )
+        {
+            sb.append( "dn: uid=user" ).append( i ).append( ",ou=people,dc=example,dc=com\n" );
+            sb.append( "objectClass: top\n" );
+            sb.append( "objectClass: person\n" );
+            sb.append( "objectClass: organizationalPerson\n" );
+            sb.append( "objectClass: inetOrgPerson\n" );
+            sb.append( "uid: user" ).append( i ).append( '\n' );
+            sb.append( "cn: User " ).append( i ).append( '\n' );
+            sb.append( "sn: " ).append( i ).append( '\n' );
+            sb.append( "mail: user" ).append( i ).append( "@example.com\n" );
+            sb.append( "description: a description long enough to be folded by most LDIF writers, so we" ).append(
+                '\n' );
+            sb.append( "  add a continuation line for entry " ).append( i ).append( '\n' );
+            sb.append( "jpegPhoto:: " ).append( encodedPhoto ).append( '\n' );
+            sb.append( '\n' );
+        }
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.benchmarks.codec;
+
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.api.asn1.DecoderException;
+import org.apache.directory.api.asn1.EncoderException;
+import org.apache.directory.api.asn1.ber.Asn1Decoder;
+import org.apache.directory.api.asn1.util.Asn1Buffer;
+import org.apache.directory.api.benchmarks.LdapMessageCorpus;
+import org.apache.directory.api.ldap.codec.api.LdapApiService;
+import org.apache.directory.api.ldap.codec.api.LdapApiServiceFactory;
+import org.apache.directory.api.ldap.codec.api.LdapEncoder;
+import org.apache.directory.api.ldap.codec.api.LdapMessageContainer;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.message.Message;
+import org.apache.directory.api.ldap.model.message.MessageTypeEnum;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Benchmarks the LDAP BER codec, encoding with {@link LdapEncoder} and decoding
+ * with {@link Asn1Decoder} and a {@link LdapMessageContainer}, for every LDAP message type.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LdapCodecBenchmark
+{
+    /** The type of message to encode and decode. All the types are benchmarked by default */
+    @Param
+    private MessageTypeEnum messageType;
+
+    /** The LDAP codec */
+    private LdapApiService codec;
+
+    /** The message to encode */
+    private Message message;
+
+    /** The buffer used to encode the message */
+    private Asn1Buffer buffer;
+
+    /** The encoded message */
+    private byte[] pdu;
+
+    /** The container used to decode the PDU */
+    private LdapMessageContainer<Message> container;
+
+
+    /**
+     * Create the message and its encoded form
+     *
+     * @throws LdapException If the message can't be created
+     * @throws EncoderException If the message can't be encoded
+     */
+    @Setup
+    public void setup() throws LdapException, EncoderException
+    {
+        codec = LdapApiServiceFactory.getSingleton();
+        message = LdapMessageCorpus.createMessage( messageType, 42 );
+        buffer = new Asn1Buffer();
+
+        ByteBuffer encoded = LdapEncoder.encodeMessage( buffer, codec, message );
+        pdu = new byte[encoded.remaining()];
+        encoded.get( pdu );
+        buffer.clear();
+
+        container = new LdapMessageContainer<>( codec );
+    }
+
+
+    /**
+     * Encode the message
+     *
+     * @return The encoded PDU
+     * @throws EncoderException If the message can't be encoded
+     */
+    @Benchmark
+    public ByteBuffer encode() throws EncoderException
+    {
+        try
+        {
+            return LdapEncoder.encodeMessage( buffer, codec, message );
+        }
+        finally
+        {
+            buffer.clear();
+        }
+    }
+
+
+    /**
+     * Decode the PDU
+     *
+     * @return The decoded message
+     * @throws DecoderException If the PDU can't be decoded
+     */
+    @Benchmark
+    public Message decode() throws DecoderException
+    {
+        Asn1Decoder.decode( ByteBuffer.wrap( pdu ), container );
+        Message decoded = container.getMessage();
+        container.clean();
+
+        return decoded;
+    }
+}
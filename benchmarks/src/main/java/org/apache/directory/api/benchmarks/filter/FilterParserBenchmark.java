@@ -0,0 +1,93 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.benchmarks.filter;
+
+
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.api.benchmarks.LdapMessageCorpus;
+import org.apache.directory.api.ldap.model.filter.ExprNode;
+import org.apache.directory.api.ldap.model.filter.FilterParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Benchmarks the {@link FilterParser}, from a single assertion up to a filter
+ * ORing a few hundreds of membership assertions.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterParserBenchmark
+{
+    /**
+     * @return The parsed equality filter
+     * @throws ParseException If the filter is invalid
+     */
+    @Benchmark
+    public ExprNode parseSimpleFilter() throws ParseException
+    {
+        return FilterParser.parse( LdapMessageCorpus.SIMPLE_FILTER );
+    }
+
+
+    /**
+     * @return The parsed AND filter
+     * @throws ParseException If the filter is invalid
+     */
+    @Benchmark
+    public ExprNode parseAndFilter() throws ParseException
+    {
+        return FilterParser.parse( LdapMessageCorpus.AND_FILTER );
+    }
+
+
+    /**
+     * @return The parsed substring filter
+     * @throws ParseException If the filter is invalid
+     */
+    @Benchmark
+    public ExprNode parseSubstringFilter() throws ParseException
+    {
+        return FilterParser.parse( LdapMessageCorpus.SUBSTRING_FILTER );
+    }
+
+
+    /**
+     * @return The parsed OR filter
+     * @throws ParseException If the filter is invalid
+     */
+    @Benchmark
+    public ExprNode parseBigOrFilter() throws ParseException
+    {
+        return FilterParser.parse( LdapMessageCorpus.BIG_OR_FILTER );
+    }
+}
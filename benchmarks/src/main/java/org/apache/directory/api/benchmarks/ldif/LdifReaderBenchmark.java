@@ -0,0 +1,124 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.benchmarks.ldif;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.api.benchmarks.LdapMessageCorpus;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.ldif.LdifEntry;
+import org.apache.directory.api.ldap.model.ldif.LdifReader;
+import org.apache.directory.api.util.Strings;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Benchmarks the {@link LdifReader} over a LDIF file containing many user entries.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LdifReaderBenchmark
+{
+    /** The number of entries in the LDIF file */
+    @Param({ "1000", "20000" })
+    private int nbEntries;
+
+    /** The LDIF file */
+    private File ldifFile;
+
+
+    /**
+     * Write the LDIF file
+     *
+     * @throws IOException If the file can't be written
+     */
+    @Setup
+    public void setup() throws IOException
+    {
+        ldifFile = File.createTempFile( "benchmark", ".ldif" );
+
+        try ( OutputStream out = Files.newOutputStream( ldifFile.toPath() ) )
+        {
+            out.write( Strings.getBytesUtf8( LdapMessageCorpus.createLdif( nbEntries ) ) );
+        }
+    }
+
+
+    /**
+     * Delete the LDIF file
+     */
+    @TearDown
+    public void tearDown()
+    {
+        if ( !ldifFile.delete() )
+        {
+            ldifFile.deleteOnExit();
+        }
+    }
+
+
+    /**
+     * Read all the entries from the LDIF file
+     *
+     * @return The number of read entries
+     * @throws LdapException If the file can't be parsed
+     * @throws IOException If the file can't be read
+     */
+    @Benchmark
+    public int readLdifFile() throws LdapException, IOException
+    {
+        int count = 0;
+
+        try ( LdifReader reader = new LdifReader( ldifFile ) )
+        {
+            for ( LdifEntry entry : reader )
+            {
+                if ( entry != null )
+                {
+                    count++;
+                }
+            }
+        }
+
+        return count;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.benchmarks.name;
+
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.api.benchmarks.LdapMessageCorpus;
+import org.apache.directory.api.ldap.model.exception.LdapInvalidDnException;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Benchmarks the Dn parsing. Simple Dns are handled by the FastDnParser, Dns with
+ * escaped characters or multi-valued RDNs fall back to the ComplexDnParser. The schema
+ * aware variants also measure the values normalization.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DnParserBenchmark
+{
+    /** The schema manager used for the schema aware parsing */
+    private SchemaManager schemaManager;
+
+
+    /**
+     * Load the schema
+     */
+    @Setup
+    public void setup()
+    {
+        schemaManager = new DefaultSchemaManager();
+    }
+
+
+    /**
+     * @return The parsed simple Dn
+     * @throws LdapInvalidDnException If the Dn is invalid
+     */
+    @Benchmark
+    public Dn parseSimpleDn() throws LdapInvalidDnException
+    {
+        return new Dn( LdapMessageCorpus.SIMPLE_DN );
+    }
+
+
+    /**
+     * @return The parsed user Dn
+     * @throws LdapInvalidDnException If the Dn is invalid
+     */
+    @Benchmark
+    public Dn parseUserDn() throws LdapInvalidDnException
+    {
+        return new Dn( LdapMessageCorpus.USER_DN );
+    }
+
+
+    /**
+     * @return The parsed deep Dn
+     * @throws LdapInvalidDnException If the Dn is invalid
+     */
+    @Benchmark
+    public Dn parseDeepDn() throws LdapInvalidDnException
+    {
+        return new Dn( LdapMessageCorpus.DEEP_DN );
+    }
+
+
+    /**
+     * @return The parsed complex Dn
+     * @throws LdapInvalidDnException If the Dn is invalid
+     */
+    @Benchmark
+    public Dn parseComplexDn() throws LdapInvalidDnException
+    {
+        return new Dn( LdapMessageCorpus.COMPLEX_DN );
+    }
+
+
+    /**
+     * @return The parsed and normalized user Dn
+     * @throws LdapInvalidDnException If the Dn is invalid
+     */
+    @Benchmark
+    public Dn parseUserDnWithSchema() throws LdapInvalidDnException
+    {
+        return new Dn( schemaManager, LdapMessageCorpus.USER_DN );
+    }
+
+
+    /**
+     * @return The parsed and normalized deep Dn
+     * @throws LdapInvalidDnException If the Dn is invalid
+     */
+    @Benchmark
+    public Dn parseDeepDnWithSchema() throws LdapInvalidDnException
+    {
+        return new Dn( schemaManager, LdapMessageCorpus.DEEP_DN );
+    }
+}
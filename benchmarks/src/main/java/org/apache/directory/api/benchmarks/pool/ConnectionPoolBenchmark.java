@@ -0,0 +1,190 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.benchmarks.pool;
+
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.pool2.BasePooledObjectFactory;
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.impl.DefaultPooledObject;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.apache.directory.api.ldap.codec.api.LdapApiService;
+import org.apache.directory.api.ldap.codec.api.LdapApiServiceFactory;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.ldap.client.api.ConcurrentLdapConnectionPool;
+import org.apache.directory.ldap.client.api.LdapConnection;
+import org.apache.directory.ldap.client.api.LdapConnectionConfig;
+import org.apache.directory.ldap.client.api.LdapConnectionPool;
+import org.apache.directory.ldap.client.api.LdapNetworkConnection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Benchmarks the borrow and release of a connection by many threads, with the commons-pool
+ * based {@link LdapConnectionPool} and with the {@link ConcurrentLdapConnectionPool}. The
+ * connections are never connected, so that only the pools are measured.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(32)
+@State(Scope.Benchmark)
+public class ConnectionPoolBenchmark
+{
+    /**
+     * The benchmarked pools
+     */
+    public enum PoolType
+    {
+        /** The LdapConnectionPool */
+        COMMONS,
+
+        /** The ConcurrentLdapConnectionPool */
+        CONCURRENT
+    }
+
+    /** The benchmarked pool */
+    @Param
+    private PoolType poolType;
+
+    /** The maximum number of connections. With less connections than threads, the threads wait for each other */
+    @Param({ "8", "64" })
+    private int maxTotal;
+
+    /** The commons-pool based pool */
+    private LdapConnectionPool commonsPool;
+
+    /** The lock-free pool */
+    private ConcurrentLdapConnectionPool concurrentPool;
+
+
+    /**
+     * A factory creating connections which are never connected
+     */
+    private static final class UnconnectedConnectionFactory extends BasePooledObjectFactory<LdapConnection>
+    {
+        /** The connections configuration */
+        private final LdapConnectionConfig config = new LdapConnectionConfig();
+
+        /** The LDAP codec */
+        private final LdapApiService codec = LdapApiServiceFactory.getSingleton();
+
+
+        @Override
+        public LdapConnection create()
+        {
+            return new LdapNetworkConnection( config, codec );
+        }
+
+
+        @Override
+        public PooledObject<LdapConnection> wrap( LdapConnection connection )
+        {
+            return new DefaultPooledObject<>( connection );
+        }
+
+
+        @Override
+        public void destroyObject( PooledObject<LdapConnection> pooledObject ) throws Exception
+        {
+            pooledObject.getObject().close();
+        }
+    }
+
+
+    /**
+     * Create the pool
+     */
+    @Setup
+    public void setup()
+    {
+        GenericObjectPoolConfig poolConfig = new GenericObjectPoolConfig();
+        poolConfig.setMaxTotal( maxTotal );
+        poolConfig.setMaxIdle( maxTotal );
+
+        if ( poolType == PoolType.COMMONS )
+        {
+            commonsPool = new LdapConnectionPool( new UnconnectedConnectionFactory(), poolConfig );
+        }
+        else
+        {
+            concurrentPool = new ConcurrentLdapConnectionPool( new UnconnectedConnectionFactory(), poolConfig );
+        }
+    }
+
+
+    /**
+     * Close the pool
+     */
+    @TearDown
+    public void tearDown()
+    {
+        if ( commonsPool != null )
+        {
+            commonsPool.close();
+        }
+
+        if ( concurrentPool != null )
+        {
+            concurrentPool.close();
+        }
+    }
+
+
+    /**
+     * @return The borrowed connection
+     * @throws LdapException If the connection can't be borrowed or released
+     */
+    @Benchmark
+    public LdapConnection borrowAndRelease() throws LdapException
+    {
+        LdapConnection connection;
+
+        if ( commonsPool != null )
+        {
+            connection = commonsPool.getConnection();
+            commonsPool.releaseConnection( connection );
+        }
+        else
+        {
+            connection = concurrentPool.getConnection();
+            concurrentPool.releaseConnection( connection );
+        }
+
+        return connection;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.benchmarks.schema;
+
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.model.schema.registries.SchemaLoader;
+import org.apache.directory.api.ldap.schema.loader.JarLdifSchemaLoader;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Benchmarks the schema loading. This is a costly operation done once per
+ * application, so it's measured in single shot mode.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SchemaManagerBenchmark
+{
+    /** The schema loader, read once */
+    private SchemaLoader schemaLoader;
+
+
+    /**
+     * Read the schema files
+     *
+     * @throws IOException If the schema files can't be read
+     * @throws LdapException If the schema files can't be parsed
+     */
+    @Setup
+    public void setup() throws IOException, LdapException
+    {
+        schemaLoader = new JarLdifSchemaLoader();
+    }
+
+
+    /**
+     * Load all the enabled schemas from an already read loader
+     *
+     * @return The loaded schema manager
+     * @throws LdapException If the schemas can't be loaded
+     */
+    @Benchmark
+    public SchemaManager loadAllEnabled() throws LdapException
+    {
+        SchemaManager schemaManager = new DefaultSchemaManager( schemaLoader );
+        schemaManager.loadAllEnabled();
+
+        return schemaManager;
+    }
+
+
+    /**
+     * Read the schema files and load all the enabled schemas, as an application does at startup
+     *
+     * @return The loaded schema manager
+     */
+    @Benchmark
+    public SchemaManager loadDefaultSchemaManager()
+    {
+        return new DefaultSchemaManager();
+    }
+}
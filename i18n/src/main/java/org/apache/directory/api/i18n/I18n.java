@@ -40,6 +40,9 @@ public enum I18n
     ERR_00001_BIT_NUMBER_OUT_OF_BOUND( "ERR_00001_BIT_NUMBER_OUT_OF_BOUND" ),
     ERR_00002_CANNOT_FIND_BIT( "ERR_00002_CANNOT_FIND_BIT" ),
     ERR_00003_INVALID_OID( "ERR_00003_INVALID_OID" ),
+    ERR_00004_INVALID_BUFFER_POSITION( "ERR_00004_INVALID_BUFFER_POSITION" ),
+    ERR_00005_BUFFER_ALREADY_RELEASED( "ERR_00005_BUFFER_ALREADY_RELEASED" ),
+    ERR_00006_CANNOT_MOVE_STREAMING_BUFFER( "ERR_00006_CANNOT_MOVE_STREAMING_BUFFER" ),
 
     // api-asn1-ber                     1000 -  1999
     //     <>                           1000 -  1099
@@ -52,6 +55,8 @@ public enum I18n
     ERR_01006_LENGTH_TOO_LONG_FOR_DEFINITE_FORM( "ERR_01006_LENGTH_TOO_LONG_FOR_DEFINITE_FORM" ),
     ERR_01007_PDU_SIZE_TOO_LONG( "ERR_01007_PDU_SIZE_TOO_LONG" ),
     ERR_01008_REMAINING_BYTES_FOR_DECODED_PDU( "ERR_01008_REMAINING_BYTES_FOR_DECODED_PDU" ),
+    ERR_01009_CANNOT_STREAM_VALUE( "ERR_01009_CANNOT_STREAM_VALUE" ),
+    ERR_01010_UNEXPECTED_PDU_TAG( "ERR_01010_UNEXPECTED_PDU_TAG" ),
     ERR_01308_ZERO_LENGTH_TLV( "ERR_01308_ZERO_LENGTH_TLV" ),
     ERR_01309_EMPTY_TLV( "ERR_01309_EMPTY_TLV" ),
     ERR_01310_INTEGER_DECODING_ERROR( "ERR_01310_INTEGER_DECODING_ERROR" ),
@@ -214,6 +219,20 @@ public enum I18n
     ERR_04178_CANT_LOAD_KEY_STORE( "ERR_04178_CANT_LOAD_KEY_STORE" ),
     ERR_04179_TRUST_STORE_CANT_BE_READ( "ERR_04179_TRUST_STORE_CANT_BE_READ" ),
     ERR_04180_FILE_DOES_NOT_EXIST_ON_CLASSPATH( "ERR_04180_FILE_DOES_NOT_EXIST_ON_CLASSPATH" ),
+    ERR_04181_NOT_A_SEARCH_REQUEST( "ERR_04181_NOT_A_SEARCH_REQUEST" ),
+    ERR_04182_TOO_MANY_OUTSTANDING_REQUESTS( "ERR_04182_TOO_MANY_OUTSTANDING_REQUESTS" ),
+    ERR_04183_INVALID_DEMAND( "ERR_04183_INVALID_DEMAND" ),
+    ERR_04184_ALREADY_SUBSCRIBED( "ERR_04184_ALREADY_SUBSCRIBED" ),
+    ERR_04185_CANNOT_PIPELINE_REQUEST( "ERR_04185_CANNOT_PIPELINE_REQUEST" ),
+    ERR_04186_PIPELINE_CLOSED( "ERR_04186_PIPELINE_CLOSED" ),
+    ERR_04187_NOT_AN_LDIF_ENTRY( "ERR_04187_NOT_AN_LDIF_ENTRY" ),
+    ERR_04188_TRANSACTION_NOT_STARTED( "ERR_04188_TRANSACTION_NOT_STARTED" ),
+    ERR_04189_NO_SERVER_AVAILABLE( "ERR_04189_NO_SERVER_AVAILABLE" ),
+    ERR_04190_EMPTY_SERVER_SET( "ERR_04190_EMPTY_SERVER_SET" ),
+    ERR_04191_POOL_CLOSED( "ERR_04191_POOL_CLOSED" ),
+    ERR_04192_CONNECTION_NOT_BORROWED( "ERR_04192_CONNECTION_NOT_BORROWED" ),
+    ERR_04193_POOL_EXHAUSTED( "ERR_04193_POOL_EXHAUSTED" ),
+    ERR_04194_REPLICA_ALREADY_STARTED( "ERR_04194_REPLICA_ALREADY_STARTED" ),
 
     //     template                     4200-4300
     // None
@@ -308,6 +327,7 @@ public enum I18n
     ERR_05308_CHANGE_ONLY_DECODING_ERROR( "ERR_05308_CHANGE_ONLY_DECODING_ERROR" ),
     ERR_05309_RETURN_ECS_DECODING_ERROR( "ERR_05309_RETURN_ECS_DECODING_ERROR" ),
     ERR_05310_INVALID_VISIBILITY_FLAG( "ERR_05310_INVALID_VISIBILITY_FLAG" ),
+    ERR_05311_INVALID_RAW_ATTRIBUTES( "ERR_05311_INVALID_RAW_ATTRIBUTES" ),
 
     //     osgi                         5400-5499
     ERR_05400_CONTROL_ARGUMENT_WAS_NULL( "ERR_05400_CONTROL_ARGUMENT_WAS_NULL" ),
@@ -1158,6 +1178,12 @@ public enum I18n
     MSG_04174_CREATING_NEW_CONNECTION_TEMPLATE( "MSG_04174_CREATING_NEW_CONNECTION_TEMPLATE" ),
     MSG_04175_TRUST_MANAGER_IO_EXCEPTION( "MSG_04175_TRUST_MANAGER_IO_EXCEPTION" ),
     MSG_04176_TRUST_MANAGER_ON_CLASSPATH( "MSG_04176_TRUST_MANAGER_ON_CLASSPATH" ),
+    MSG_04177_SERVER_CONNECTION_FAILED( "MSG_04177_SERVER_CONNECTION_FAILED" ),
+    MSG_04178_SERVER_QUARANTINED( "MSG_04178_SERVER_QUARANTINED" ),
+    MSG_04179_ENTRY_NOT_CACHED( "MSG_04179_ENTRY_NOT_CACHED" ),
+    MSG_04180_REPLICA_USES_PERSISTENT_SEARCH( "MSG_04180_REPLICA_USES_PERSISTENT_SEARCH" ),
+    MSG_04181_REPLICA_STOPPED( "MSG_04181_REPLICA_STOPPED" ),
+    MSG_04182_PARALLEL_SEARCH_PARTITIONS( "MSG_04182_PARALLEL_SEARCH_PARTITIONS" ),
 
     // api-ldap-codec-core              5000-5999
     //     <>                               5000-5099
@@ -1264,6 +1290,8 @@ public enum I18n
     MSG_05308_REVERSE_ORDER( "MSG_05308_REVERSE_ORDER" ),
     MSG_05309_MATCHING_RULE_OID( "MSG_05309_MATCHING_RULE_OID" ),
     MSG_05310_ATTRIBUTE_TYPE( "MSG_05310_ATTRIBUTE_TYPE" ),
+    MSG_05311_STREAMED_ATTRIBUTE_VALUE( "MSG_05311_STREAMED_ATTRIBUTE_VALUE" ),
+    MSG_05312_RAW_ATTRIBUTES( "MSG_05312_RAW_ATTRIBUTES" ),
 
     //     osgi                             5400-5499
     // none
@@ -0,0 +1,302 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.ldap.codec.protocol.mina;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+
+import org.apache.directory.api.asn1.util.Asn1BufferPool;
+import org.apache.directory.api.ldap.codec.api.LdapApiService;
+import org.apache.directory.api.ldap.codec.api.LdapApiServiceFactory;
+import org.apache.directory.api.ldap.codec.api.LdapDecoder;
+import org.apache.directory.api.ldap.codec.api.LdapMessageContainer;
+import org.apache.directory.api.ldap.model.message.DeleteRequest;
+import org.apache.directory.api.ldap.model.message.DeleteRequestImpl;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.ldap.client.api.NoVerificationTrustManager;
+import org.apache.mina.core.future.ConnectFuture;
+import org.apache.mina.core.future.WriteFuture;
+import org.apache.mina.core.service.IoHandlerAdapter;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.filter.codec.ProtocolCodecFactory;
+import org.apache.mina.filter.codec.ProtocolCodecFilter;
+import org.apache.mina.filter.codec.ProtocolDecoder;
+import org.apache.mina.filter.codec.ProtocolEncoder;
+import org.apache.mina.filter.ssl.SslFilter;
+import org.apache.mina.transport.socket.nio.NioSocketAcceptor;
+import org.apache.mina.transport.socket.nio.NioSocketConnector;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Test that the LdapProtocolEncoder gives back the sent buffers to its pool, on clear
+ * and on TLS sessions.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LdapProtocolEncoderTest
+{
+    /** The number of messages written by the client */
+    private static final int NB_MESSAGES = 50;
+
+    /** The LDAP codec */
+    private LdapApiService codec;
+
+    /** The pool used by the client encoder, counting the acquired and released buffers */
+    private CountingPool pool;
+
+    /** The server, counting down the received messages */
+    private NioSocketAcceptor acceptor;
+
+    /** The received messages */
+    private CountDownLatch received;
+
+    /** The client */
+    private NioSocketConnector connector;
+
+
+    /**
+     * A pool counting the direct buffers acquired and released
+     */
+    private static class CountingPool extends Asn1BufferPool
+    {
+        private final AtomicInteger acquired = new AtomicInteger();
+        private final AtomicInteger released = new AtomicInteger();
+
+
+        @Override
+        public ByteBuffer acquire( int size )
+        {
+            acquired.incrementAndGet();
+
+            return super.acquire( size );
+        }
+
+
+        @Override
+        public void release( ByteBuffer buffer )
+        {
+            released.incrementAndGet();
+            super.release( buffer );
+        }
+    }
+
+
+    @Before
+    public void setup()
+    {
+        codec = LdapApiServiceFactory.getSingleton();
+        pool = new CountingPool();
+        received = new CountDownLatch( NB_MESSAGES );
+    }
+
+
+    @After
+    public void shutdown()
+    {
+        if ( connector != null )
+        {
+            connector.dispose();
+        }
+
+        if ( acceptor != null )
+        {
+            acceptor.dispose();
+        }
+    }
+
+
+    /**
+     * @return A SSLContext using the test keystore, trusting any certificate
+     */
+    private static SSLContext sslContext() throws Exception
+    {
+        KeyStore keyStore = KeyStore.getInstance( "JKS" );
+
+        try ( InputStream in = LdapProtocolEncoderTest.class.getResourceAsStream( "localhost.ks" ) )
+        {
+            keyStore.load( in, "secret".toCharArray() );
+        }
+
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance( KeyManagerFactory.getDefaultAlgorithm() );
+        keyManagerFactory.init( keyStore, "secret".toCharArray() );
+
+        SSLContext sslContext = SSLContext.getInstance( "TLS" );
+        sslContext.init( keyManagerFactory.getKeyManagers(), new TrustManager[]
+            { new NoVerificationTrustManager() }, new SecureRandom() );
+
+        return sslContext;
+    }
+
+
+    /**
+     * Start the server and connect the client, with or without TLS
+     *
+     * @return The client session
+     */
+    private IoSession connect( boolean tls ) throws Exception
+    {
+        SSLContext sslContext = tls ? sslContext() : null;
+
+        acceptor = new NioSocketAcceptor();
+
+        if ( tls )
+        {
+            acceptor.getFilterChain().addLast( "sslFilter", new SslFilter( sslContext ) );
+        }
+
+        acceptor.getFilterChain().addLast( "codec", new ProtocolCodecFilter( new LdapProtocolCodecFactory( codec ) ) );
+        acceptor.setHandler( new IoHandlerAdapter()
+        {
+            @Override
+            public void sessionCreated( IoSession session )
+            {
+                session.setAttribute( LdapDecoder.MESSAGE_CONTAINER_ATTR, new LdapMessageContainer<>( codec ) );
+            }
+
+
+            @Override
+            public void messageReceived( IoSession session, Object message )
+            {
+                received.countDown();
+            }
+        } );
+        acceptor.bind( new InetSocketAddress( "localhost", 0 ) );
+
+        connector = new NioSocketConnector();
+
+        if ( tls )
+        {
+            SslFilter sslFilter = new SslFilter( sslContext );
+            sslFilter.setUseClientMode( true );
+            connector.getFilterChain().addLast( "sslFilter", sslFilter );
+        }
+
+        LdapProtocolEncoder encoder = new LdapProtocolEncoder( codec, pool );
+
+        connector.getFilterChain().addLast( "codec", new ProtocolCodecFilter( new ProtocolCodecFactory()
+        {
+            @Override
+            public ProtocolEncoder getEncoder( IoSession session )
+            {
+                return encoder;
+            }
+
+
+            @Override
+            public ProtocolDecoder getDecoder( IoSession session )
+            {
+                return new LdapProtocolDecoder();
+            }
+        } ) );
+        connector.setHandler( new IoHandlerAdapter() );
+
+        ConnectFuture connectFuture = connector.connect( acceptor.getLocalAddress() );
+        assertTrue( connectFuture.await( 10L, TimeUnit.SECONDS ) );
+
+        return connectFuture.getSession();
+    }
+
+
+    /**
+     * Wait for the pool to get some buffers back
+     *
+     * @return The number of released buffers
+     */
+    private int awaitReleased( int expected ) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + 10000L;
+
+        while ( ( pool.released.get() < expected ) && ( System.currentTimeMillis() < deadline ) )
+        {
+            Thread.sleep( 10L );
+        }
+
+        return pool.released.get();
+    }
+
+
+    /**
+     * Write the messages, and check that the buffers are given back to the pool while
+     * the session is still open : only the last sent one is kept
+     */
+    private void writeMessages( IoSession session ) throws Exception
+    {
+        Dn dn = new Dn( "cn=test,dc=example,dc=com" );
+        WriteFuture writeFuture = null;
+
+        for ( int i = 1; i <= NB_MESSAGES; i++ )
+        {
+            DeleteRequest deleteRequest = new DeleteRequestImpl();
+            deleteRequest.setMessageId( i );
+            deleteRequest.setName( dn );
+            writeFuture = session.write( deleteRequest );
+        }
+
+        assertTrue( writeFuture.await( 10L, TimeUnit.SECONDS ) );
+        assertTrue( writeFuture.isWritten() );
+        assertTrue( received.await( 10L, TimeUnit.SECONDS ) );
+        assertEquals( NB_MESSAGES, pool.acquired.get() );
+
+        // The release happens once the messageSent event has gone through the chain
+        assertEquals( NB_MESSAGES - 1, awaitReleased( NB_MESSAGES - 1 ) );
+
+        // The last buffer is given back when the session is closed
+        session.closeNow();
+        assertEquals( NB_MESSAGES, awaitReleased( NB_MESSAGES ) );
+    }
+
+
+    /**
+     * Test that the buffers are released on a clear session
+     */
+    @Test
+    public void testReleaseBuffers() throws Exception
+    {
+        writeMessages( connect( false ) );
+    }
+
+
+    /**
+     * Test that the buffers are released on a TLS session, where the SslFilter replaces
+     * the message of the write requests by an encrypted copy
+     */
+    @Test
+    public void testReleaseBuffersTls() throws Exception
+    {
+        writeMessages( connect( true ) );
+    }
+}
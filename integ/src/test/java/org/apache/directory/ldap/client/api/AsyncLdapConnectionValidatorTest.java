@@ -0,0 +1,152 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.apache.directory.api.ldap.codec.api.LdapApiService;
+import org.apache.directory.api.ldap.codec.standalone.StandaloneLdapApiService;
+import org.apache.directory.api.ldap.extras.extended.ads_impl.whoAmI.WhoAmIFactory;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ * Check that the connections are validated without blocking, and kept alive in the background
+ * by the ConcurrentLdapConnectionPool.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class AsyncLdapConnectionValidatorTest
+{
+    /** The codec */
+    private static LdapApiService codec;
+
+    /** The server */
+    private static StandInLdapServer server;
+
+
+    @BeforeClass
+    public static void startServer() throws Exception
+    {
+        codec = new StandaloneLdapApiService();
+        WhoAmIFactory whoAmIFactory = new WhoAmIFactory( codec );
+        codec.registerExtendedRequest( whoAmIFactory );
+        codec.registerExtendedResponse( whoAmIFactory );
+        server = new StandInLdapServer( codec );
+    }
+
+
+    @AfterClass
+    public static void stopServer() throws Exception
+    {
+        server.close();
+    }
+
+
+    /**
+     * @return A factory creating bound connections to the server
+     */
+    private DefaultLdapConnectionFactory newConnectionFactory()
+    {
+        LdapConnectionConfig config = new LdapConnectionConfig();
+        config.setLdapHost( "localhost" );
+        config.setLdapPort( server.getPort() );
+        config.setName( "uid=admin,ou=system" );
+        config.setCredentials( "secret" );
+
+        DefaultLdapConnectionFactory factory = new DefaultLdapConnectionFactory( config );
+        factory.setLdapApiService( codec );
+
+        return factory;
+    }
+
+
+    @Test
+    public void testValidateAsync() throws Exception
+    {
+        LdapConnection connection = newConnectionFactory().newLdapConnection();
+        LdapConnection monitored = new MonitoringLdapConnection( connection );
+
+        try
+        {
+            assertTrue( new LookupLdapConnectionValidator().validateAsync( monitored )
+                .toCompletableFuture().get( 10L, TimeUnit.SECONDS ) );
+            assertTrue( new WhoAmILdapConnectionValidator().validateAsync( monitored )
+                .toCompletableFuture().get( 10L, TimeUnit.SECONDS ) );
+        }
+        finally
+        {
+            connection.close();
+        }
+
+        assertFalse( new LookupLdapConnectionValidator().validateAsync( monitored )
+            .toCompletableFuture().get( 10L, TimeUnit.SECONDS ) );
+    }
+
+
+    @Test
+    public void testKeepAlive() throws Exception
+    {
+        GenericObjectPoolConfig poolConfig = new GenericObjectPoolConfig();
+        poolConfig.setTestOnBorrow( true );
+        ConcurrentLdapConnectionPool pool = new ConcurrentLdapConnectionPool(
+            new ValidatingPoolableLdapConnectionFactory( newConnectionFactory() ), poolConfig );
+
+        try
+        {
+            LdapConnection first = pool.getConnection();
+            LdapConnection second = pool.getConnection();
+            pool.releaseConnection( first );
+            pool.releaseConnection( second );
+
+            int requestCount = server.getRequestCount();
+            pool.setHealthyWindow( 60000L );
+            pool.setKeepAliveValidator( new WhoAmILdapConnectionValidator() );
+            pool.setKeepAliveInterval( 20L );
+
+            long deadline = System.currentTimeMillis() + 10000L;
+
+            while ( ( server.getRequestCount() < requestCount + 2 ) && ( System.currentTimeMillis() < deadline ) )
+            {
+                Thread.sleep( 10L );
+            }
+
+            // Both connections have been probed, and are healthy : borrowing them costs no request
+            Thread.sleep( 100L );
+            assertEquals( requestCount + 2, server.getRequestCount() );
+            assertEquals( 2, pool.getNumIdle() );
+
+            pool.releaseConnection( pool.getConnection() );
+            assertEquals( requestCount + 2, server.getRequestCount() );
+        }
+        finally
+        {
+            pool.close();
+        }
+    }
+}
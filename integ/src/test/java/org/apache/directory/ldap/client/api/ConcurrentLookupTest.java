@@ -0,0 +1,142 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.api.ldap.codec.api.LdapApiService;
+import org.apache.directory.api.ldap.codec.standalone.StandaloneLdapApiService;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ * Check that many threads can do blocking lookups on a shared connection. The lookups
+ * are run by virtual threads when the JVM provides them, and by a pool of platform
+ * threads otherwise.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class ConcurrentLookupTest
+{
+    /** The number of lookups */
+    private static final int NB_LOOKUPS = 20000;
+
+    /** The number of platform threads doing the lookups, when there are no virtual threads */
+    private static final int NB_PLATFORM_THREADS = 200;
+
+    /** The codec */
+    private static LdapApiService codec;
+
+    /** The server */
+    private static StandInLdapServer server;
+
+
+    @BeforeClass
+    public static void startServer() throws Exception
+    {
+        codec = new StandaloneLdapApiService();
+        server = new StandInLdapServer( codec );
+    }
+
+
+    @AfterClass
+    public static void stopServer() throws Exception
+    {
+        server.close();
+    }
+
+
+    /**
+     * Create the executor running the lookups : one virtual thread per lookup if the JVM
+     * supports it, a pool of platform threads otherwise
+     */
+    private ExecutorService newExecutor()
+    {
+        try
+        {
+            return ( ExecutorService ) Executors.class.getMethod( "newVirtualThreadPerTaskExecutor" ).invoke( null );
+        }
+        catch ( ReflectiveOperationException roe )
+        {
+            return Executors.newFixedThreadPool( NB_PLATFORM_THREADS );
+        }
+    }
+
+
+    /**
+     * Test that all the lookups sent concurrently on one connection get their entry
+     */
+    @Test
+    public void testConcurrentLookups() throws Exception
+    {
+        LdapConnectionConfig config = new LdapConnectionConfig();
+        config.setLdapHost( "localhost" );
+        config.setLdapPort( server.getPort() );
+        config.setTimeout( 60000L );
+
+        ExecutorService executor = newExecutor();
+
+        try ( LdapNetworkConnection connection = new LdapNetworkConnection( config, codec ) )
+        {
+            connection.connect();
+
+            List<Callable<Entry>> lookups = new ArrayList<>( NB_LOOKUPS );
+
+            for ( int i = 0; i < NB_LOOKUPS; i++ )
+            {
+                String dn = "cn=user" + i + ",dc=example,dc=com";
+                lookups.add( () -> connection.lookup( dn ) );
+            }
+
+            int requestCount = server.getRequestCount();
+            List<Future<Entry>> entries = executor.invokeAll( lookups );
+
+            for ( int i = 0; i < NB_LOOKUPS; i++ )
+            {
+                Entry entry = entries.get( i ).get();
+
+                assertNotNull( entry );
+                assertEquals( "cn=user" + i + ",dc=example,dc=com", entry.getDn().getName() );
+                assertTrue( entry.contains( "cn", "user" + i ) );
+            }
+
+            assertEquals( requestCount + NB_LOOKUPS, server.getRequestCount() );
+        }
+        finally
+        {
+            executor.shutdown();
+            executor.awaitTermination( 10, TimeUnit.SECONDS );
+        }
+    }
+}
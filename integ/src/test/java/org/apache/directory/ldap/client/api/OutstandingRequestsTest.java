@@ -0,0 +1,138 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import org.apache.directory.api.ldap.codec.api.LdapApiService;
+import org.apache.directory.api.ldap.codec.standalone.StandaloneLdapApiService;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.message.DeleteRequestImpl;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.mina.core.future.DefaultWriteFuture;
+import org.apache.mina.core.future.WriteFuture;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Check that the outstanding requests permits of a connection are given back when a
+ * request can't be sent.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class OutstandingRequestsTest
+{
+    /** The codec */
+    private LdapApiService codec;
+
+    /** The server */
+    private StandInLdapServer server;
+
+
+    /**
+     * A connection which writes can be stalled
+     */
+    private static class StalledWritesConnection extends LdapNetworkConnection
+    {
+        /** Tells if the writes never complete */
+        private volatile boolean writesStalled;
+
+
+        StalledWritesConnection( LdapConnectionConfig config, LdapApiService codec )
+        {
+            super( config, codec );
+        }
+
+
+        @Override
+        WriteFuture write( Object message )
+        {
+            if ( writesStalled )
+            {
+                // A write which is never done
+                return new DefaultWriteFuture( null );
+            }
+
+            return super.write( message );
+        }
+    }
+
+
+    @Before
+    public void setup() throws Exception
+    {
+        codec = new StandaloneLdapApiService();
+        server = new StandInLdapServer( codec );
+    }
+
+
+    @After
+    public void shutdown() throws Exception
+    {
+        server.close();
+    }
+
+
+    /**
+     * Test that a request which write times out gives back its permit, so that the
+     * next requests can still be sent
+     */
+    @Test
+    public void testWriteTimeout() throws Exception
+    {
+        LdapConnectionConfig config = new LdapConnectionConfig();
+        config.setLdapHost( "localhost" );
+        config.setLdapPort( server.getPort() );
+        config.setTimeout( 500L );
+        config.setMaxOutstandingRequests( 1 );
+
+        try ( StalledWritesConnection connection = new StalledWritesConnection( config, codec ) )
+        {
+            connection.connect();
+            connection.writesStalled = true;
+
+            DeleteRequestImpl deleteRequest = new DeleteRequestImpl();
+            deleteRequest.setName( new Dn( "cn=test,dc=example,dc=com" ) );
+
+            try
+            {
+                connection.deleteAsync( deleteRequest );
+                fail();
+            }
+            catch ( LdapException le )
+            {
+                assertEquals( LdapNetworkConnection.TIME_OUT_ERROR, le.getMessage() );
+            }
+
+            assertEquals( 0, connection.getOutstandingRequestCount() );
+            assertFalse( connection.isOutstandingRequestsLimitReached() );
+
+            // The next request gets the permit
+            connection.writesStalled = false;
+            connection.delete( "cn=test,dc=example,dc=com" );
+            assertEquals( 0, connection.getOutstandingRequestCount() );
+        }
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.directory.api.ldap.codec.api.LdapApiService;
+import org.apache.directory.api.ldap.codec.protocol.mina.LdapProtocolCodecFactory;
+import org.apache.directory.api.ldap.codec.protocol.mina.LdapProtocolDecoder;
+import org.apache.directory.api.ldap.codec.standalone.StandaloneLdapApiService;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.message.Response;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchRequestImpl;
+import org.apache.directory.api.ldap.model.message.SearchResultDone;
+import org.apache.directory.api.ldap.model.message.SearchResultEntry;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.schema.loader.JarLdifSchemaLoader;
+import org.apache.directory.ldap.client.api.future.SearchFuture;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Check that the responses decoded in parallel are delivered in order for each search,
+ * when the entries of several searches are interleaved, and that they are decoded with
+ * the current configuration of the session.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class ParallelDecodingTest
+{
+    /** The number of searches answered together */
+    private static final int NB_SEARCHES = 8;
+
+    /** The number of entries returned by each search */
+    private static final int NB_ENTRIES = 2000;
+
+    /** The threads decoding the responses */
+    private ExecutorService decodingExecutor;
+
+    /** The codec, using the parallel decoder */
+    private LdapApiService codec;
+
+    /** The server */
+    private StandInLdapServer server;
+
+
+    @Before
+    public void setup() throws Exception
+    {
+        decodingExecutor = Executors.newFixedThreadPool( 4 );
+        codec = new StandaloneLdapApiService();
+
+        // A small bound, so that the reads are suspended and resumed many times
+        LdapProtocolCodecFactory protocolCodecFactory = new LdapProtocolCodecFactory( codec, decodingExecutor );
+        ( ( LdapProtocolDecoder ) protocolCodecFactory.getDecoder( null ) ).setMaxFramesInFlight( 16 );
+        codec.registerProtocolCodecFactory( protocolCodecFactory );
+
+        server = new StandInLdapServer( codec );
+        server.setInterleavedSearches( NB_SEARCHES, NB_ENTRIES );
+    }
+
+
+    @After
+    public void shutdown() throws Exception
+    {
+        server.close();
+        decodingExecutor.shutdown();
+        decodingExecutor.awaitTermination( 10, TimeUnit.SECONDS );
+    }
+
+
+    /**
+     * @return The configuration of a connection to the server
+     */
+    private LdapConnectionConfig config()
+    {
+        LdapConnectionConfig config = new LdapConnectionConfig();
+        config.setLdapHost( "localhost" );
+        config.setLdapPort( server.getPort() );
+        config.setTimeout( 60000L );
+
+        return config;
+    }
+
+
+    /**
+     * Send the searches, and check that the entries of each search are received in order,
+     * followed by the SearchResultDone
+     */
+    private void searchInterleaved( LdapConnectionConfig config ) throws Exception
+    {
+        try ( LdapNetworkConnection connection = new LdapNetworkConnection( config, codec ) )
+        {
+            connection.connect();
+
+            List<SearchFuture> searchFutures = new ArrayList<>();
+
+            for ( int i = 0; i < NB_SEARCHES; i++ )
+            {
+                SearchRequest searchRequest = new SearchRequestImpl();
+                searchRequest.setBase( new Dn( "ou=search" + i + ",dc=example,dc=com" ) );
+                searchRequest.setScope( SearchScope.ONELEVEL );
+                searchRequest.setFilter( "(objectClass=*)" );
+                searchFutures.add( connection.searchAsync( searchRequest ) );
+            }
+
+            for ( int i = 0; i < NB_SEARCHES; i++ )
+            {
+                SearchFuture searchFuture = searchFutures.get( i );
+
+                for ( int j = 0; j < NB_ENTRIES; j++ )
+                {
+                    Response response = searchFuture.get( 30L, TimeUnit.SECONDS );
+
+                    assertTrue( response instanceof SearchResultEntry );
+                    assertEquals( "cn=" + j + ",ou=search" + i + ",dc=example,dc=com",
+                        ( ( SearchResultEntry ) response ).getObjectName().getName() );
+                }
+
+                Response done = searchFuture.get( 30L, TimeUnit.SECONDS );
+
+                assertTrue( done instanceof SearchResultDone );
+                assertEquals( ResultCodeEnum.SUCCESS, ( ( SearchResultDone ) done ).getLdapResult().getResultCode() );
+            }
+        }
+    }
+
+
+    /**
+     * Test that the entries of each search are received in order, followed by the
+     * SearchResultDone
+     */
+    @Test
+    public void testInterleavedSearches() throws Exception
+    {
+        searchInterleaved( config() );
+    }
+
+
+    /**
+     * Test that the entries of each search are received in order when the connection
+     * decodes the values without copying them
+     */
+    @Test
+    public void testInterleavedSearchesZeroCopy() throws Exception
+    {
+        LdapConnectionConfig config = config();
+        config.setZeroCopy( true );
+
+        searchInterleaved( config );
+    }
+
+
+    /**
+     * Test that the responses are decoded with the binary attribute detector of the
+     * schema once it has been loaded, and not with the one the decoding containers have
+     * been created with
+     */
+    @Test
+    public void testLoadSchemaWhileConnected() throws Exception
+    {
+        server.setInterleavedSearches( 0, 0 );
+
+        // Count the attributes checked by the detector used before the schema is loaded
+        AtomicInteger detectorCalls = new AtomicInteger();
+        LdapConnectionConfig config = config();
+        config.setBinaryAttributeDetector( attributeId ->
+        {
+            detectorCalls.incrementAndGet();
+
+            return false;
+        } );
+
+        try ( LdapNetworkConnection connection = new LdapNetworkConnection( config, codec ) )
+        {
+            connection.connect();
+
+            for ( int i = 0; i < NB_SEARCHES; i++ )
+            {
+                connection.lookup( "cn=test" + i + ",dc=example,dc=com" );
+            }
+
+            assertTrue( detectorCalls.get() > 0 );
+
+            connection.loadSchema( new JarLdifSchemaLoader() );
+            detectorCalls.set( 0 );
+
+            for ( int i = 0; i < NB_SEARCHES; i++ )
+            {
+                Entry entry = connection.lookup( "cn=test" + i + ",dc=example,dc=com" );
+                assertEquals( "test" + i, entry.get( "cn" ).getString() );
+            }
+
+            assertEquals( 0, detectorCalls.get() );
+        }
+    }
+
+
+    /**
+     * Test that the big values are stored in the entries, and not streamed to the
+     * LargeValueHandler from the decoding threads
+     */
+    @Test
+    public void testLargeValueHandlerNotUsed() throws Exception
+    {
+        server.setInterleavedSearches( 0, 0 );
+
+        AtomicInteger handlerCalls = new AtomicInteger();
+        LdapConnectionConfig config = config();
+        config.setLargeValueThreshold( 1 );
+        config.setLargeValueHandler( ( entry, attribute, length ) ->
+        {
+            handlerCalls.incrementAndGet();
+
+            return null;
+        } );
+
+        try ( LdapNetworkConnection connection = new LdapNetworkConnection( config, codec ) )
+        {
+            connection.connect();
+
+            for ( int i = 0; i < NB_SEARCHES; i++ )
+            {
+                Entry entry = connection.lookup( "cn=test" + i + ",dc=example,dc=com" );
+                assertEquals( "test" + i, entry.get( "cn" ).getString() );
+            }
+
+            assertEquals( 0, handlerCalls.get() );
+        }
+    }
+}
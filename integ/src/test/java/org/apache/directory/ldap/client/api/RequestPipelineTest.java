@@ -0,0 +1,239 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.api.ldap.codec.api.LdapApiService;
+import org.apache.directory.api.ldap.codec.standalone.StandaloneLdapApiService;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.message.AddRequestImpl;
+import org.apache.directory.api.ldap.model.message.AddResponse;
+import org.apache.directory.api.ldap.model.message.DeleteRequestImpl;
+import org.apache.directory.api.ldap.model.message.Request;
+import org.apache.directory.api.ldap.model.message.Response;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.message.ResultResponse;
+import org.apache.directory.api.ldap.model.message.ResultResponseRequest;
+import org.apache.directory.api.ldap.model.message.SearchRequestImpl;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.ldap.client.api.future.AddFuture;
+import org.apache.directory.ldap.client.api.future.ResponseFuture;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ * Check that the requests sent through a pipeline are written by batches, and that
+ * their futures get their responses.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class RequestPipelineTest
+{
+    /** The number of pipelined requests */
+    private static final int NB_REQUESTS = 1000;
+
+    /** The codec */
+    private static LdapApiService codec;
+
+    /** The server */
+    private static StandInLdapServer server;
+
+
+    @BeforeClass
+    public static void startServer() throws Exception
+    {
+        codec = new StandaloneLdapApiService();
+        server = new StandInLdapServer( codec );
+    }
+
+
+    @AfterClass
+    public static void stopServer() throws Exception
+    {
+        server.close();
+    }
+
+
+    /**
+     * @return A configuration to connect to the server
+     */
+    private LdapConnectionConfig newConfig()
+    {
+        LdapConnectionConfig config = new LdapConnectionConfig();
+        config.setLdapHost( "localhost" );
+        config.setLdapPort( server.getPort() );
+
+        return config;
+    }
+
+
+    /**
+     * Create a request adding an entry
+     *
+     * @param i The entry number
+     * @return The request
+     * @throws Exception If the entry can't be created
+     */
+    private AddRequestImpl newAddRequest( int i ) throws Exception
+    {
+        AddRequestImpl addRequest = new AddRequestImpl();
+        addRequest.setEntry( new DefaultEntry( "cn=user" + i + ",dc=example,dc=com",
+            "objectClass: person",
+            "cn: user" + i,
+            "sn: user" + i ) );
+
+        return addRequest;
+    }
+
+
+    /**
+     * Test that many requests written by small batches all get their response
+     */
+    @Test
+    public void testPipelinedRequests() throws Exception
+    {
+        LdapConnectionConfig config = newConfig();
+        config.setPipelineMaxBatchBytes( 1024 );
+
+        try ( LdapNetworkConnection connection = new LdapNetworkConnection( config, codec ) )
+        {
+            List<Request> requests = new ArrayList<>();
+
+            for ( int i = 0; i < NB_REQUESTS; i++ )
+            {
+                requests.add( newAddRequest( i ) );
+                requests.add( new DeleteRequestImpl().setName( new Dn( "cn=user" + i + ",dc=example,dc=com" ) ) );
+            }
+
+            List<ResponseFuture<? extends Response>> futures = connection.pipeline( requests );
+
+            assertEquals( requests.size(), futures.size() );
+
+            for ( int i = 0; i < futures.size(); i++ )
+            {
+                Response response = futures.get( i ).get( 10, TimeUnit.SECONDS );
+
+                assertNotNull( response );
+                assertEquals( ( ( ResultResponseRequest ) requests.get( i ) ).getResultResponse().getType(),
+                    response.getType() );
+                assertEquals( requests.get( i ).getMessageId(), response.getMessageId() );
+                assertEquals( ResultCodeEnum.SUCCESS,
+                    ( ( ResultResponse ) response ).getLdapResult().getResultCode() );
+            }
+        }
+    }
+
+
+    /**
+     * Test that a batch is not written before being flushed when there is no linger time
+     */
+    @Test
+    public void testFlush() throws Exception
+    {
+        try ( LdapNetworkConnection connection = new LdapNetworkConnection( newConfig(), codec );
+            RequestPipeline pipeline = connection.pipeline() )
+        {
+            int requestCount = server.getRequestCount();
+            AddFuture addFuture = pipeline.add( newAddRequest( 0 ) );
+
+            Thread.sleep( 200L );
+            assertEquals( requestCount, server.getRequestCount() );
+            assertFalse( addFuture.isDone() );
+
+            pipeline.flush();
+
+            AddResponse addResponse = addFuture.get( 10, TimeUnit.SECONDS );
+            assertNotNull( addResponse );
+            assertEquals( ResultCodeEnum.SUCCESS, addResponse.getLdapResult().getResultCode() );
+        }
+    }
+
+
+    /**
+     * Test that a batch is written when its linger time has expired
+     */
+    @Test
+    public void testLinger() throws Exception
+    {
+        LdapConnectionConfig config = newConfig();
+        config.setPipelineLinger( 50L );
+
+        try ( LdapNetworkConnection connection = new LdapNetworkConnection( config, codec );
+            RequestPipeline pipeline = connection.pipeline() )
+        {
+            AddFuture addFuture = pipeline.add( newAddRequest( 0 ) );
+
+            assertNotNull( addFuture.get( 10, TimeUnit.SECONDS ) );
+        }
+    }
+
+
+    /**
+     * Test that a batch is written before waiting for an outstanding request to be answered
+     */
+    @Test
+    public void testOutstandingRequestsLimit() throws Exception
+    {
+        LdapConnectionConfig config = newConfig();
+        config.setMaxOutstandingRequests( 4 );
+
+        try ( LdapNetworkConnection connection = new LdapNetworkConnection( config, codec );
+            RequestPipeline pipeline = connection.pipeline() )
+        {
+            List<AddFuture> futures = new ArrayList<>();
+
+            for ( int i = 0; i < 20; i++ )
+            {
+                futures.add( pipeline.add( newAddRequest( i ) ) );
+            }
+
+            pipeline.flush();
+
+            for ( AddFuture addFuture : futures )
+            {
+                assertNotNull( addFuture.get( 10, TimeUnit.SECONDS ) );
+            }
+        }
+    }
+
+
+    /**
+     * Test that a search can't be pipelined
+     */
+    @Test( expected = IllegalArgumentException.class )
+    public void testSearchNotPipelined() throws Exception
+    {
+        try ( LdapNetworkConnection connection = new LdapNetworkConnection( newConfig(), codec );
+            RequestPipeline pipeline = connection.pipeline() )
+        {
+            pipeline.send( new SearchRequestImpl() );
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.api.ldap.codec.api.LdapApiService;
+import org.apache.directory.api.ldap.codec.api.ReadSuspensions;
+import org.apache.directory.api.ldap.codec.standalone.StandaloneLdapApiService;
+import org.apache.directory.api.ldap.model.message.Response;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchRequestImpl;
+import org.apache.directory.api.ldap.model.message.SearchResultDone;
+import org.apache.directory.api.ldap.model.message.SearchResultEntry;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.ldap.client.api.future.SearchFuture;
+import org.apache.mina.core.session.IoSession;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Check that the suspension of the reads by a search which responses are not read
+ * does not outlive the session.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class SearchReadSuspensionTest
+{
+    /** The number of entries returned by each search */
+    private static final int NB_ENTRIES = 3;
+
+    /** The codec */
+    private LdapApiService codec;
+
+    /** The server */
+    private StandInLdapServer server;
+
+    /** The last session created by the connection */
+    private volatile IoSession session;
+
+
+    @Before
+    public void setup() throws Exception
+    {
+        codec = new StandaloneLdapApiService();
+        server = new StandInLdapServer( codec );
+        server.setInterleavedSearches( 1, NB_ENTRIES );
+    }
+
+
+    @After
+    public void shutdown() throws Exception
+    {
+        server.close();
+    }
+
+
+    /**
+     * Send a search, and wait for all its responses to be queued
+     *
+     * @return The search future, which has suspended the reads
+     */
+    private SearchFuture search( LdapNetworkConnection connection ) throws Exception
+    {
+        SearchRequest searchRequest = new SearchRequestImpl();
+        searchRequest.setBase( new Dn( "ou=search,dc=example,dc=com" ) );
+        searchRequest.setScope( SearchScope.ONELEVEL );
+        searchRequest.setFilter( "(objectClass=*)" );
+
+        SearchFuture searchFuture = connection.searchAsync( searchRequest );
+        long deadline = System.currentTimeMillis() + 10000L;
+
+        while ( ( searchFuture.getQueuedResponses() < NB_ENTRIES + 1 ) && ( System.currentTimeMillis() < deadline ) )
+        {
+            Thread.sleep( 10L );
+        }
+
+        assertEquals( NB_ENTRIES + 1, searchFuture.getQueuedResponses() );
+
+        return searchFuture;
+    }
+
+
+    /**
+     * Test that a search which SearchResultDone has been received, and which responses
+     * are never read, does not keep the reads suspended once the connection is closed,
+     * and does not disable the suspension of the next session
+     */
+    @Test
+    public void testCloseWhileSuspended() throws Exception
+    {
+        LdapConnectionConfig config = new LdapConnectionConfig();
+        config.setLdapHost( "localhost" );
+        config.setLdapPort( server.getPort() );
+        config.setTimeout( 10000L );
+        config.setMaxQueuedSearchResponses( NB_ENTRIES + 1 );
+
+        try ( LdapNetworkConnection connection = new LdapNetworkConnection( config, codec )
+        {
+            @Override
+            public void sessionCreated( IoSession ioSession ) throws Exception
+            {
+                session = ioSession;
+                super.sessionCreated( ioSession );
+            }
+        } )
+        {
+            connection.connect();
+            IoSession firstSession = session;
+
+            // The search is done, and not known by the connection anymore
+            search( connection );
+            assertEquals( 1, ReadSuspensions.getSuspensions( firstSession ) );
+
+            connection.close();
+            connection.connect();
+            assertNotSame( firstSession, session );
+            assertEquals( 0, ReadSuspensions.getSuspensions( session ) );
+
+            // The reads of the new session are suspended, and resumed, by a search
+            SearchFuture searchFuture = search( connection );
+            assertEquals( 1, ReadSuspensions.getSuspensions( session ) );
+
+            for ( int i = 0; i < NB_ENTRIES; i++ )
+            {
+                Response response = searchFuture.get( 10L, TimeUnit.SECONDS );
+                assertTrue( response instanceof SearchResultEntry );
+            }
+
+            assertEquals( 0, ReadSuspensions.getSuspensions( session ) );
+            assertTrue( searchFuture.get( 10L, TimeUnit.SECONDS ) instanceof SearchResultDone );
+
+            // The connection still works
+            server.setInterleavedSearches( 0, 0 );
+            assertEquals( "cn=test,dc=example,dc=com", connection.lookup( "cn=test,dc=example,dc=com" ).getDn()
+                .getName() );
+        }
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.directory.api.ldap.codec.api.LdapApiService;
+import org.apache.directory.api.ldap.codec.standalone.StandaloneLdapApiService;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Check that a ServerSetLdapConnectionFactory spreads the connections over its servers, and
+ * skips the servers which can't be reached.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class ServerSetLdapConnectionFactoryTest
+{
+    /** The codec */
+    private LdapApiService codec;
+
+    /** The running servers */
+    private List<StandInLdapServer> standInServers;
+
+    /** The connections to close after each test */
+    private List<LdapConnection> connections;
+
+
+    @Before
+    public void startServers() throws Exception
+    {
+        codec = new StandaloneLdapApiService();
+        standInServers = new ArrayList<>();
+        connections = new ArrayList<>();
+
+        for ( int i = 0; i < 3; i++ )
+        {
+            standInServers.add( new StandInLdapServer( codec ) );
+        }
+    }
+
+
+    @After
+    public void stopServers() throws Exception
+    {
+        for ( LdapConnection connection : connections )
+        {
+            connection.close();
+        }
+
+        for ( StandInLdapServer standInServer : standInServers )
+        {
+            standInServer.close();
+        }
+    }
+
+
+    /**
+     * @param index The index of a running server
+     * @return The server, as seen by the factory
+     */
+    private LdapServer server( int index )
+    {
+        return new LdapServer( "localhost", standInServers.get( index ).getPort() );
+    }
+
+
+    /**
+     * @return A server no one listens to
+     * @throws Exception If no free port can be found
+     */
+    private LdapServer deadServer() throws Exception
+    {
+        try ( ServerSocket serverSocket = new ServerSocket( 0 ) )
+        {
+            return new LdapServer( "localhost", serverSocket.getLocalPort() );
+        }
+    }
+
+
+    /**
+     * Create a factory
+     *
+     * @param strategy The way the servers are ordered
+     * @param servers The servers
+     * @return The factory
+     */
+    private ServerSetLdapConnectionFactory newFactory( ServerSelectionStrategy strategy, LdapServer... servers )
+    {
+        LdapConnectionConfig config = new LdapConnectionConfig();
+        config.setName( "uid=admin,ou=system" );
+        config.setCredentials( "secret" );
+
+        ServerSetLdapConnectionFactory factory = new ServerSetLdapConnectionFactory( config, strategy, servers );
+        factory.setLdapApiService( codec );
+        factory.setConnectTimeout( 200L );
+
+        return factory;
+    }
+
+
+    /**
+     * Open some connections
+     *
+     * @param factory The factory
+     * @param nbConnections The number of connections
+     * @throws LdapException If a connection can't be established
+     */
+    private void connect( ServerSetLdapConnectionFactory factory, int nbConnections ) throws LdapException
+    {
+        for ( int i = 0; i < nbConnections; i++ )
+        {
+            LdapConnection connection = factory.newLdapConnection();
+            connections.add( connection );
+
+            assertTrue( connection.isConnected() );
+            assertTrue( connection.isAuthenticated() );
+        }
+    }
+
+
+    @Test
+    public void testRoundRobin() throws Exception
+    {
+        ServerSetLdapConnectionFactory factory = newFactory( ServerSelectionStrategy.ROUND_ROBIN,
+            server( 0 ), server( 1 ), server( 2 ) );
+
+        connect( factory, 6 );
+
+        for ( LdapServer server : factory.getServers() )
+        {
+            assertEquals( 2, server.getOpenConnections() );
+            assertTrue( server.getLatency() >= 0L );
+        }
+    }
+
+
+    @Test
+    public void testFewestOutstandingRequests() throws Exception
+    {
+        ServerSetLdapConnectionFactory factory = newFactory( ServerSelectionStrategy.FEWEST_OUTSTANDING_REQUESTS,
+            server( 0 ), server( 1 ) );
+
+        connect( factory, 4 );
+
+        assertEquals( 2, factory.getServers().get( 0 ).getOpenConnections() );
+        assertEquals( 2, factory.getServers().get( 1 ).getOpenConnections() );
+        assertEquals( 0, factory.getServers().get( 0 ).getOutstandingRequests() );
+
+        // A closed connection is not counted anymore
+        connections.get( 0 ).close();
+        connect( factory, 1 );
+
+        assertEquals( 2, factory.getServers().get( 0 ).getOpenConnections() );
+        assertEquals( 2, factory.getServers().get( 1 ).getOpenConnections() );
+    }
+
+
+    @Test
+    public void testLatencyWeighted() throws Exception
+    {
+        ServerSetLdapConnectionFactory factory = newFactory( ServerSelectionStrategy.LATENCY_WEIGHTED,
+            server( 0 ), server( 1 ), server( 2 ) );
+
+        connect( factory, 12 );
+
+        int openConnections = 0;
+
+        for ( LdapServer server : factory.getServers() )
+        {
+            openConnections += server.getOpenConnections();
+        }
+
+        assertEquals( 12, openConnections );
+    }
+
+
+    @Test
+    public void testFailoverQuarantinesDeadServer() throws Exception
+    {
+        LdapServer deadServer = deadServer();
+        ServerSetLdapConnectionFactory factory = newFactory( ServerSelectionStrategy.FAILOVER,
+            deadServer, server( 0 ), server( 1 ) );
+
+        connect( factory, 3 );
+
+        assertTrue( deadServer.isQuarantined() );
+        assertEquals( 1, deadServer.getConsecutiveFailures() );
+        assertEquals( 0, deadServer.getOpenConnections() );
+        assertEquals( 3, factory.getServers().get( 1 ).getOpenConnections() );
+        assertEquals( 0, factory.getServers().get( 2 ).getOpenConnections() );
+
+        // The quarantined server comes last
+        assertEquals( deadServer, factory.selectServers().get( 2 ) );
+    }
+
+
+    @Test
+    public void testQuarantineThreshold() throws Exception
+    {
+        LdapServer deadServer = deadServer();
+        ServerSetLdapConnectionFactory factory = newFactory( ServerSelectionStrategy.FAILOVER,
+            deadServer, server( 0 ) );
+        factory.setFailureThreshold( 2 );
+
+        connect( factory, 1 );
+
+        assertFalse( deadServer.isQuarantined() );
+        assertEquals( deadServer, factory.selectServers().get( 0 ) );
+
+        connect( factory, 1 );
+
+        assertTrue( deadServer.isQuarantined() );
+        assertEquals( 2, deadServer.getConsecutiveFailures() );
+    }
+
+
+    @Test( expected = LdapException.class )
+    public void testNoServerAvailable() throws Exception
+    {
+        ServerSetLdapConnectionFactory factory = newFactory( ServerSelectionStrategy.ROUND_ROBIN,
+            deadServer(), deadServer() );
+
+        connect( factory, 1 );
+    }
+
+
+    @Test
+    public void testPool() throws Exception
+    {
+        ServerSetLdapConnectionFactory factory = newFactory( ServerSelectionStrategy.ROUND_ROBIN,
+            server( 0 ), server( 1 ) );
+        LdapConnectionPool pool = new LdapConnectionPool( new DefaultPoolableLdapConnectionFactory( factory ) );
+
+        try
+        {
+            List<LdapConnection> borrowed = new ArrayList<>();
+
+            for ( int i = 0; i < 4; i++ )
+            {
+                LdapConnection connection = pool.getConnection();
+                assertNotNull( connection.lookup( "cn=test,dc=example,dc=com" ) );
+                borrowed.add( connection );
+            }
+
+            assertEquals( 2, factory.getServers().get( 0 ).getOpenConnections() );
+            assertEquals( 2, factory.getServers().get( 1 ).getOpenConnections() );
+
+            for ( LdapConnection connection : borrowed )
+            {
+                pool.releaseConnection( connection );
+            }
+        }
+        finally
+        {
+            pool.close();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.directory.api.ldap.codec.api.LdapApiService;
+import org.apache.directory.api.ldap.codec.standalone.StandaloneLdapApiService;
+import org.apache.mina.core.service.SimpleIoProcessorPool;
+import org.apache.mina.transport.socket.nio.NioProcessor;
+import org.apache.mina.transport.socket.nio.NioSession;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ * Check that the connections created from a configuration holding an I/O processor
+ * share its threads.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class SharedIoProcessorTest
+{
+    /** The number of connections */
+    private static final int NB_CONNECTIONS = 20;
+
+    /** The number of threads of the shared processor */
+    private static final int NB_PROCESSORS = 2;
+
+    /** The codec */
+    private static LdapApiService codec;
+
+    /** The server */
+    private static StandInLdapServer server;
+
+
+    @BeforeClass
+    public static void startServer() throws Exception
+    {
+        codec = new StandaloneLdapApiService();
+        server = new StandInLdapServer( codec );
+    }
+
+
+    @AfterClass
+    public static void stopServer() throws Exception
+    {
+        server.close();
+    }
+
+
+    /**
+     * @return The number of live I/O processor threads
+     */
+    private int countProcessorThreads()
+    {
+        int count = 0;
+
+        for ( Thread thread : Thread.getAllStackTraces().keySet() )
+        {
+            if ( thread.isAlive() && thread.getName().startsWith( "NioProcessor" ) )
+            {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+
+    /**
+     * Test that many connections are served by the threads of the shared processor, and
+     * that closing them does not dispose it
+     */
+    @Test
+    public void testSharedProcessor() throws Exception
+    {
+        SimpleIoProcessorPool<NioSession> ioProcessor = new SimpleIoProcessorPool<>( NioProcessor.class,
+            NB_PROCESSORS );
+
+        LdapConnectionConfig config = new LdapConnectionConfig();
+        config.setLdapHost( "localhost" );
+        config.setLdapPort( server.getPort() );
+        config.setIoProcessor( ioProcessor );
+
+        int nbThreads = countProcessorThreads();
+        List<LdapNetworkConnection> connections = new ArrayList<>();
+
+        try
+        {
+            for ( int i = 0; i < NB_CONNECTIONS; i++ )
+            {
+                LdapNetworkConnection connection = new LdapNetworkConnection( config, codec );
+                connection.connect();
+                connections.add( connection );
+            }
+
+            for ( LdapNetworkConnection connection : connections )
+            {
+                assertTrue( connection.lookup( "cn=test,dc=example,dc=com" ).contains( "cn", "test" ) );
+            }
+
+            assertTrue( countProcessorThreads() - nbThreads <= NB_PROCESSORS );
+
+            for ( LdapNetworkConnection connection : connections )
+            {
+                connection.close();
+            }
+
+            connections.clear();
+
+            assertFalse( ioProcessor.isDisposed() );
+
+            // The processor is still usable
+            try ( LdapNetworkConnection connection = new LdapNetworkConnection( config, codec ) )
+            {
+                connection.connect();
+
+                assertEquals( "cn=other,dc=example,dc=com",
+                    connection.lookup( "cn=other,dc=example,dc=com" ).getDn().getName() );
+            }
+        }
+        finally
+        {
+            for ( LdapNetworkConnection connection : connections )
+            {
+                connection.close();
+            }
+
+            ioProcessor.dispose();
+        }
+    }
+}
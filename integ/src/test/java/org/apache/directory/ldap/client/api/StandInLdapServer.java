@@ -0,0 +1,345 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api;
+
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.directory.api.asn1.DecoderException;
+import org.apache.directory.api.asn1.EncoderException;
+import org.apache.directory.api.asn1.ber.Asn1Decoder;
+import org.apache.directory.api.asn1.ber.Asn1Framer;
+import org.apache.directory.api.asn1.ber.tlv.UniversalTag;
+import org.apache.directory.api.asn1.util.Asn1Buffer;
+import org.apache.directory.api.ldap.codec.api.LdapApiService;
+import org.apache.directory.api.ldap.codec.api.LdapEncoder;
+import org.apache.directory.api.ldap.codec.api.LdapMessageContainer;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.message.AbstractMessage;
+import org.apache.directory.api.ldap.model.message.ExtendedRequest;
+import org.apache.directory.api.ldap.model.message.Message;
+import org.apache.directory.api.ldap.model.message.OpaqueExtendedResponse;
+import org.apache.directory.api.ldap.model.message.ResultResponseRequest;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchResultEntryImpl;
+import org.apache.directory.api.ldap.model.message.UnbindRequest;
+import org.apache.directory.api.ldap.model.name.Dn;
+
+
+/**
+ * A minimal LDAP server, used to check the client against real sockets. Every request
+ * is successful : a search returns its base entry, with a cn attribute holding the
+ * value of the base Rdn, an extended request gets an empty extended response, and the
+ * other requests get their default response. The
+ * requests are answered in the order they are received, by one thread per connection.
+ * <br>
+ * The searches can also be held until a given number of them has been received on a
+ * connection, and then answered together : each one gets many entries, interleaved
+ * with the entries of the other searches, followed by its SearchResultDone.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class StandInLdapServer implements Closeable
+{
+    /** The codec used to decode the requests and encode the responses */
+    private final LdapApiService codec;
+
+    /** The listening socket */
+    private final ServerSocket serverSocket;
+
+    /** The accepted connections */
+    private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+
+    /** The number of requests received */
+    private final AtomicInteger requestCount = new AtomicInteger();
+
+    /** The number of searches answered together, 0 if they are answered one by one */
+    private volatile int interleavedSearches;
+
+    /** The number of entries returned by each interleaved search */
+    private volatile int entriesPerSearch;
+
+
+    /**
+     * Creates a new StandInLdapServer instance, listening on a free port of the loopback
+     * address.
+     *
+     * @param codec The codec used to decode the requests and encode the responses
+     * @throws IOException If the server socket can't be created
+     */
+    public StandInLdapServer( LdapApiService codec ) throws IOException
+    {
+        this.codec = codec;
+        serverSocket = new ServerSocket( 0 );
+
+        Thread acceptor = new Thread( this::accept, "StandInLdapServer-acceptor" );
+        acceptor.setDaemon( true );
+        acceptor.start();
+    }
+
+
+    /**
+     * @return The port the server is listening on
+     */
+    public int getPort()
+    {
+        return serverSocket.getLocalPort();
+    }
+
+
+    /**
+     * @return The number of requests received since the server has been started
+     */
+    public int getRequestCount()
+    {
+        return requestCount.get();
+    }
+
+
+    /**
+     * Hold the searches until the given number of them has been received on a connection,
+     * and answer them together : the search of the base B gets the entries cn=0,B to
+     * cn=(nbEntries - 1),B, interleaved with the entries of the other searches.
+     *
+     * @param nbSearches The number of searches answered together, 0 to answer them one by one
+     * @param nbEntries The number of entries returned by each search
+     */
+    public void setInterleavedSearches( int nbSearches, int nbEntries )
+    {
+        entriesPerSearch = nbEntries;
+        interleavedSearches = nbSearches;
+    }
+
+
+    /**
+     * Accept the connections, until the server is closed
+     */
+    private void accept()
+    {
+        try
+        {
+            while ( true )
+            {
+                Socket socket = serverSocket.accept();
+                sockets.add( socket );
+
+                Thread handler = new Thread( () -> serve( socket ), "StandInLdapServer-" + socket.getPort() );
+                handler.setDaemon( true );
+                handler.start();
+            }
+        }
+        catch ( IOException ioe )
+        {
+            // The server has been closed
+        }
+    }
+
+
+    /**
+     * Read the requests of a connection, and answer them
+     *
+     * @param socket The connection
+     */
+    private void serve( Socket socket )
+    {
+        Asn1Framer framer = new Asn1Framer( UniversalTag.SEQUENCE.getValue() );
+        LdapMessageContainer<AbstractMessage> container = new LdapMessageContainer<>( codec );
+        List<SearchRequest> heldSearches = new ArrayList<>();
+        byte[] bytes = new byte[65536];
+
+        try ( InputStream in = socket.getInputStream();
+            OutputStream out = new BufferedOutputStream( socket.getOutputStream() ) )
+        {
+            while ( true )
+            {
+                int nbRead = in.read( bytes );
+
+                if ( nbRead < 0 )
+                {
+                    return;
+                }
+
+                ByteBuffer stream = ByteBuffer.wrap( bytes, 0, nbRead );
+                ByteBuffer frame = framer.nextFrame( stream );
+
+                while ( frame != null )
+                {
+                    Asn1Decoder.decode( frame, container );
+                    Message request = container.getMessage();
+                    container.clean();
+                    requestCount.incrementAndGet();
+
+                    if ( request instanceof UnbindRequest )
+                    {
+                        return;
+                    }
+
+                    if ( ( interleavedSearches > 0 ) && ( request instanceof SearchRequest ) )
+                    {
+                        heldSearches.add( ( SearchRequest ) request );
+
+                        if ( heldSearches.size() == interleavedSearches )
+                        {
+                            answerInterleaved( heldSearches, out );
+                            heldSearches.clear();
+                        }
+                    }
+                    else
+                    {
+                        answer( request, out );
+                    }
+
+                    frame = framer.nextFrame( stream );
+                }
+
+                out.flush();
+            }
+        }
+        catch ( IOException | DecoderException | EncoderException | LdapException e )
+        {
+            // The connection has been closed, or the request is not supported
+        }
+        finally
+        {
+            sockets.remove( socket );
+        }
+    }
+
+
+    /**
+     * Write the responses to a request
+     *
+     * @param request The request
+     * @param out The connection output
+     * @throws IOException If the responses can't be written
+     * @throws EncoderException If the responses can't be encoded
+     * @throws LdapException If the searched entry can't be created
+     */
+    private void answer( Message request, OutputStream out ) throws IOException, EncoderException, LdapException
+    {
+        if ( request instanceof SearchRequest )
+        {
+            Dn base = ( ( SearchRequest ) request ).getBase();
+            Entry entry = new DefaultEntry( base );
+            entry.add( "objectClass", "top" );
+
+            if ( !base.isEmpty() )
+            {
+                entry.add( "cn", base.getRdn().getValue() );
+            }
+
+            SearchResultEntryImpl searchResultEntry = new SearchResultEntryImpl( request.getMessageId() );
+            searchResultEntry.setEntry( entry );
+            write( searchResultEntry, out );
+        }
+
+        if ( request instanceof ExtendedRequest )
+        {
+            // A successful response, without any name nor value
+            write( new OpaqueExtendedResponse( request.getMessageId() ), out );
+
+            return;
+        }
+
+        if ( request instanceof ResultResponseRequest )
+        {
+            write( ( ( ResultResponseRequest ) request ).getResultResponse(), out );
+        }
+    }
+
+
+    /**
+     * Write the entries of the held searches, interleaved, and then their SearchResultDone
+     *
+     * @param searches The held searches
+     * @param out The connection output
+     * @throws IOException If the responses can't be written
+     * @throws EncoderException If the responses can't be encoded
+     * @throws LdapException If an entry can't be created
+     */
+    private void answerInterleaved( List<SearchRequest> searches, OutputStream out )
+        throws IOException, EncoderException, LdapException
+    {
+        for ( int i = 0; i < entriesPerSearch; i++ )
+        {
+            for ( SearchRequest search : searches )
+            {
+                Entry entry = new DefaultEntry( "cn=" + i + "," + search.getBase().getName(),
+                    "objectClass: top",
+                    "cn", Integer.toString( i ) );
+
+                SearchResultEntryImpl searchResultEntry = new SearchResultEntryImpl( search.getMessageId() );
+                searchResultEntry.setEntry( entry );
+                write( searchResultEntry, out );
+            }
+        }
+
+        for ( SearchRequest search : searches )
+        {
+            write( search.getResultResponse(), out );
+        }
+    }
+
+
+    /**
+     * Encode a message on the connection output
+     *
+     * @param message The message
+     * @param out The connection output
+     * @throws IOException If the message can't be written
+     * @throws EncoderException If the message can't be encoded
+     */
+    private void write( Message message, OutputStream out ) throws IOException, EncoderException
+    {
+        ByteBuffer encoded = LdapEncoder.encodeMessage( new Asn1Buffer(), codec, message );
+        byte[] bytes = new byte[encoded.remaining()];
+        encoded.get( bytes );
+        out.write( bytes );
+    }
+
+
+    /**
+     * Close the server and all its connections
+     */
+    @Override
+    public void close() throws IOException
+    {
+        serverSocket.close();
+
+        for ( Socket socket : sockets )
+        {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api;
+
+
+import java.util.concurrent.CompletionStage;
+
+
+/**
+ * An LdapConnection validator which does not block the calling thread while the
+ * server is probed, so that many connections can be validated concurrently.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public interface AsyncLdapConnectionValidator
+{
+    /**
+     * Probe the connection. The returned CompletionStage is completed with true if
+     * the connection is still valid, false otherwise : it's never completed exceptionally.
+     *
+     * @param ldapConnection The connection to test
+     * @return A CompletionStage completed with the validation result
+     */
+    CompletionStage<Boolean> validateAsync( LdapConnection ldapConnection );
+}
@@ -0,0 +1,50 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api;
+
+
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.message.LdapResult;
+
+
+/**
+ * A listener informed of the outcome of each entry loaded by a {@link BulkLoader}. It's
+ * called by the thread running the load.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public interface BulkLoadListener
+{
+    /**
+     * Called when an entry has been added
+     *
+     * @param entry The added entry
+     */
+    void entryAdded( Entry entry );
+
+
+    /**
+     * Called when an entry could not be added, once its retries have been exhausted
+     *
+     * @param entry The entry which has not been added
+     * @param result The result of the last attempt
+     */
+    void entryFailed( Entry entry, LdapResult result );
+}
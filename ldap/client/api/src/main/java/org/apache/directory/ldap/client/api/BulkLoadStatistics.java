@@ -0,0 +1,150 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api;
+
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * The statistics of a {@link BulkLoader} run.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class BulkLoadStatistics
+{
+    /** The number of added entries */
+    private long added;
+
+    /** The number of entries which have not been added */
+    private long failed;
+
+    /** The number of retried adds or transactions */
+    private long retries;
+
+    /** The duration of the load, in nanoseconds */
+    private long elapsedNanos;
+
+
+    /**
+     * @return The number of added entries
+     */
+    public long getAdded()
+    {
+        return added;
+    }
+
+
+    /**
+     * @return The number of entries which have not been added
+     */
+    public long getFailed()
+    {
+        return failed;
+    }
+
+
+    /**
+     * @return The number of times an add, or a transaction, has been retried
+     */
+    public long getRetries()
+    {
+        return retries;
+    }
+
+
+    /**
+     * @return The duration of the load, in milliseconds
+     */
+    public long getElapsedMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis( elapsedNanos );
+    }
+
+
+    /**
+     * @return The number of entries processed, added or not, per second
+     */
+    public double getThroughput()
+    {
+        if ( elapsedNanos == 0L )
+        {
+            return 0d;
+        }
+
+        return ( added + failed ) * ( double ) TimeUnit.SECONDS.toNanos( 1L ) / elapsedNanos;
+    }
+
+
+    /**
+     * Count an added entry
+     */
+    void entryAdded()
+    {
+        added++;
+    }
+
+
+    /**
+     * Count an entry which has not been added
+     */
+    void entryFailed()
+    {
+        failed++;
+    }
+
+
+    /**
+     * Count a retry
+     */
+    void retried()
+    {
+        retries++;
+    }
+
+
+    /**
+     * @param elapsedNanos The duration of the load, in nanoseconds
+     */
+    void setElapsedNanos( long elapsedNanos )
+    {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append( "BulkLoadStatistics :" );
+        sb.append( "\n    added : " ).append( added );
+        sb.append( "\n    failed : " ).append( failed );
+        sb.append( "\n    retries : " ).append( retries );
+        sb.append( "\n    elapsed : " ).append( getElapsedMillis() ).append( " ms" );
+        sb.append( "\n    throughput : " ).append( String.format( Locale.ROOT, "%.1f", getThroughput() ) ).append( " entries/s" );
+
+        return sb.toString();
+    }
+}
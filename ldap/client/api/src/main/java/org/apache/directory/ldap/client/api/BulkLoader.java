@@ -0,0 +1,669 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api;
+
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.api.i18n.I18n;
+import org.apache.directory.api.ldap.extras.controls.transaction.TransactionSpecification;
+import org.apache.directory.api.ldap.extras.controls.transaction.TransactionSpecificationImpl;
+import org.apache.directory.api.ldap.extras.extended.endTransaction.EndTransactionRequest;
+import org.apache.directory.api.ldap.extras.extended.endTransaction.EndTransactionRequestImpl;
+import org.apache.directory.api.ldap.extras.extended.startTransaction.StartTransactionRequestImpl;
+import org.apache.directory.api.ldap.extras.extended.startTransaction.StartTransactionResponse;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.ldif.LdifEntry;
+import org.apache.directory.api.ldap.model.ldif.LdifReader;
+import org.apache.directory.api.ldap.model.message.AddRequest;
+import org.apache.directory.api.ldap.model.message.AddRequestImpl;
+import org.apache.directory.api.ldap.model.message.AddResponse;
+import org.apache.directory.api.ldap.model.message.ExtendedResponse;
+import org.apache.directory.api.ldap.model.message.LdapResult;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.ldap.client.api.future.AddFuture;
+
+
+/**
+ * Load many entries on a connection, keeping a window of adds waiting for their
+ * responses instead of waiting for each add before sending the next one.
+ * <br>
+ * An add rejected with a retryable result code (busy, unavailable or timeLimitExceeded
+ * by default) is sent again after a delay, doubled at each attempt, until the maximum
+ * number of retries has been reached. The outcome of every entry is given to the
+ * {@link BulkLoadListener}, if any, and the load returns its {@link BulkLoadStatistics}.
+ * <br>
+ * When a transaction size is set, the entries are added by groups, each group being
+ * added in a transaction (RFC 5805). A group is committed only if all its entries have
+ * been accepted : otherwise, the transaction is aborted, and all the entries of the
+ * group are reported as failed, with the result of the first rejected add. A group
+ * which transaction has failed with a retryable result code is retried as a whole.
+ * <br>
+ * A BulkLoader is not thread safe : it's used by the thread running the load.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class BulkLoader
+{
+    /** The default number of adds waiting for their response */
+    public static final int DEFAULT_WINDOW_SIZE = 64;
+
+    /** The default number of retries of a rejected add */
+    public static final int DEFAULT_MAX_RETRIES = 3;
+
+    /** The default delay before the first retry, in milliseconds */
+    public static final long DEFAULT_RETRY_DELAY = 100L;
+
+    /** The maximum shift of the retry delay, so that it does not overflow */
+    private static final int MAX_BACKOFF_SHIFT = 16;
+
+    /** The connection the entries are added on */
+    private final LdapAsyncConnection connection;
+
+    /** The number of adds waiting for their response */
+    private int windowSize = DEFAULT_WINDOW_SIZE;
+
+    /** The number of retries of a rejected add */
+    private int maxRetries = DEFAULT_MAX_RETRIES;
+
+    /** The delay before the first retry, in milliseconds */
+    private long retryDelay = DEFAULT_RETRY_DELAY;
+
+    /** The result codes for which an add is retried */
+    private Set<ResultCodeEnum> retryableResultCodes = EnumSet.of( ResultCodeEnum.BUSY, ResultCodeEnum.UNAVAILABLE,
+        ResultCodeEnum.TIME_LIMIT_EXCEEDED );
+
+    /** The number of entries added in a transaction, 0 to add them without transactions */
+    private int transactionSize;
+
+    /** The time to wait for a response, in milliseconds */
+    private long timeout = LdapConnectionConfig.DEFAULT_TIMEOUT;
+
+    /** The listener informed of the outcome of each entry */
+    private BulkLoadListener listener;
+
+
+    /**
+     * An entry which add is waiting for its response
+     */
+    private static final class PendingAdd
+    {
+        /** The entry */
+        private final Entry entry;
+
+        /** The future of the last add */
+        private AddFuture future;
+
+        /** The number of times the entry has been sent */
+        private int attempts;
+
+
+        /**
+         * Creates a new PendingAdd instance
+         *
+         * @param entry The entry
+         */
+        private PendingAdd( Entry entry )
+        {
+            this.entry = entry;
+        }
+    }
+
+
+    /**
+     * Creates a new BulkLoader instance
+     *
+     * @param connection The connection the entries are added on
+     */
+    public BulkLoader( LdapAsyncConnection connection )
+    {
+        this.connection = connection;
+    }
+
+
+    /**
+     * @return The number of adds waiting for their response
+     */
+    public int getWindowSize()
+    {
+        return windowSize;
+    }
+
+
+    /**
+     * @param windowSize The number of adds waiting for their response. Defaults to 64
+     */
+    public void setWindowSize( int windowSize )
+    {
+        this.windowSize = Math.max( 1, windowSize );
+    }
+
+
+    /**
+     * @return The number of retries of a rejected add
+     */
+    public int getMaxRetries()
+    {
+        return maxRetries;
+    }
+
+
+    /**
+     * @param maxRetries The number of retries of a rejected add, 0 to never retry. Defaults to 3
+     */
+    public void setMaxRetries( int maxRetries )
+    {
+        this.maxRetries = Math.max( 0, maxRetries );
+    }
+
+
+    /**
+     * @return The delay before the first retry, in milliseconds
+     */
+    public long getRetryDelay()
+    {
+        return retryDelay;
+    }
+
+
+    /**
+     * @param retryDelay The delay before the first retry, in milliseconds. It's doubled at
+     * each retry. Defaults to 100
+     */
+    public void setRetryDelay( long retryDelay )
+    {
+        this.retryDelay = Math.max( 0L, retryDelay );
+    }
+
+
+    /**
+     * @return The result codes for which an add is retried
+     */
+    public Set<ResultCodeEnum> getRetryableResultCodes()
+    {
+        return retryableResultCodes;
+    }
+
+
+    /**
+     * @param retryableResultCodes The result codes for which an add is retried
+     */
+    public void setRetryableResultCodes( ResultCodeEnum... retryableResultCodes )
+    {
+        this.retryableResultCodes = EnumSet.noneOf( ResultCodeEnum.class );
+        this.retryableResultCodes.addAll( Arrays.asList( retryableResultCodes ) );
+    }
+
+
+    /**
+     * @return The number of entries added in a transaction, 0 if the entries are added
+     * without transactions
+     */
+    public int getTransactionSize()
+    {
+        return transactionSize;
+    }
+
+
+    /**
+     * @param transactionSize The number of entries added in a transaction, 0 to add them
+     * without transactions. Defaults to 0
+     */
+    public void setTransactionSize( int transactionSize )
+    {
+        this.transactionSize = Math.max( 0, transactionSize );
+    }
+
+
+    /**
+     * @return The time to wait for a response, in milliseconds
+     */
+    public long getTimeout()
+    {
+        return timeout;
+    }
+
+
+    /**
+     * @param timeout The time to wait for a response, in milliseconds
+     */
+    public void setTimeout( long timeout )
+    {
+        this.timeout = timeout;
+    }
+
+
+    /**
+     * @param listener The listener informed of the outcome of each entry
+     */
+    public void setListener( BulkLoadListener listener )
+    {
+        this.listener = listener;
+    }
+
+
+    /**
+     * Load the entries read from a LDIF. The records must be entries, or Add changes : an
+     * IllegalArgumentException is thrown when another record is read, or when the LDIF
+     * can't be parsed.
+     *
+     * @param ldifReader The LDIF reader
+     * @return The statistics of the load
+     * @throws LdapException If a response has not been received before the timeout, or
+     * if a transaction can't be started
+     */
+    public BulkLoadStatistics load( LdifReader ldifReader ) throws LdapException
+    {
+        Iterator<LdifEntry> records = ldifReader.iterator();
+
+        return load( new Iterator<Entry>()
+        {
+            @Override
+            public boolean hasNext()
+            {
+                return records.hasNext();
+            }
+
+
+            @Override
+            public Entry next()
+            {
+                LdifEntry record = records.next();
+
+                if ( record == null )
+                {
+                    // The LDIF can't be parsed
+                    Exception error = ldifReader.getError();
+
+                    throw new IllegalArgumentException( ( error == null ) ? null : error.getMessage(), error );
+                }
+
+                if ( !record.isEntry() )
+                {
+                    throw new IllegalArgumentException( I18n.err( I18n.ERR_04187_NOT_AN_LDIF_ENTRY, record ) );
+                }
+
+                return record.getEntry();
+            }
+        } );
+    }
+
+
+    /**
+     * Load some entries
+     *
+     * @param entries The entries
+     * @return The statistics of the load
+     * @throws LdapException If a response has not been received before the timeout, or
+     * if a transaction can't be started
+     */
+    public BulkLoadStatistics load( Iterator<Entry> entries ) throws LdapException
+    {
+        BulkLoadStatistics statistics = new BulkLoadStatistics();
+        long start = System.nanoTime();
+
+        try
+        {
+            if ( transactionSize > 0 )
+            {
+                loadTransactions( entries, statistics );
+            }
+            else
+            {
+                loadEntries( entries, statistics );
+            }
+        }
+        finally
+        {
+            statistics.setElapsedNanos( System.nanoTime() - start );
+        }
+
+        return statistics;
+    }
+
+
+    /**
+     * Add the entries without transactions
+     *
+     * @param entries The entries
+     * @param statistics The statistics of the load
+     * @throws LdapException If a response has not been received before the timeout
+     */
+    private void loadEntries( Iterator<Entry> entries, BulkLoadStatistics statistics ) throws LdapException
+    {
+        Deque<PendingAdd> window = new ArrayDeque<>( windowSize );
+
+        while ( entries.hasNext() )
+        {
+            if ( window.size() >= windowSize )
+            {
+                complete( window, statistics );
+            }
+
+            PendingAdd pendingAdd = new PendingAdd( entries.next() );
+            send( pendingAdd, null );
+            window.add( pendingAdd );
+        }
+
+        while ( !window.isEmpty() )
+        {
+            complete( window, statistics );
+        }
+    }
+
+
+    /**
+     * Wait for the oldest add of the window, and report its outcome. An add rejected
+     * with a retryable result code is sent again, at the end of the window.
+     *
+     * @param window The adds waiting for their response
+     * @param statistics The statistics of the load
+     * @throws LdapException If the response has not been received before the timeout
+     */
+    private void complete( Deque<PendingAdd> window, BulkLoadStatistics statistics ) throws LdapException
+    {
+        PendingAdd pendingAdd = window.poll();
+        LdapResult result = getResponse( pendingAdd ).getLdapResult();
+
+        if ( result.getResultCode() == ResultCodeEnum.SUCCESS )
+        {
+            statistics.entryAdded();
+
+            if ( listener != null )
+            {
+                listener.entryAdded( pendingAdd.entry );
+            }
+        }
+        else if ( canRetry( result, pendingAdd.attempts ) )
+        {
+            statistics.retried();
+            backOff( pendingAdd.attempts );
+            send( pendingAdd, null );
+            window.add( pendingAdd );
+        }
+        else
+        {
+            statistics.entryFailed();
+
+            if ( listener != null )
+            {
+                listener.entryFailed( pendingAdd.entry, result );
+            }
+        }
+    }
+
+
+    /**
+     * Add the entries by groups, each one in a transaction
+     *
+     * @param entries The entries
+     * @param statistics The statistics of the load
+     * @throws LdapException If a response has not been received before the timeout, or
+     * if a transaction can't be started
+     */
+    private void loadTransactions( Iterator<Entry> entries, BulkLoadStatistics statistics ) throws LdapException
+    {
+        List<Entry> group = new ArrayList<>( transactionSize );
+
+        while ( entries.hasNext() )
+        {
+            group.add( entries.next() );
+
+            if ( group.size() == transactionSize )
+            {
+                loadTransaction( group, statistics );
+                group.clear();
+            }
+        }
+
+        if ( !group.isEmpty() )
+        {
+            loadTransaction( group, statistics );
+        }
+    }
+
+
+    /**
+     * Add a group of entries in a transaction, retrying it if it fails with a retryable
+     * result code, and report the outcome of its entries
+     *
+     * @param group The entries
+     * @param statistics The statistics of the load
+     * @throws LdapException If a response has not been received before the timeout, or
+     * if the transaction can't be started
+     */
+    private void loadTransaction( List<Entry> group, BulkLoadStatistics statistics ) throws LdapException
+    {
+        int attempts = 1;
+        LdapResult result = runTransaction( group );
+
+        while ( ( result.getResultCode() != ResultCodeEnum.SUCCESS ) && canRetry( result, attempts ) )
+        {
+            statistics.retried();
+            backOff( attempts );
+            attempts++;
+            result = runTransaction( group );
+        }
+
+        for ( Entry entry : group )
+        {
+            if ( result.getResultCode() == ResultCodeEnum.SUCCESS )
+            {
+                statistics.entryAdded();
+
+                if ( listener != null )
+                {
+                    listener.entryAdded( entry );
+                }
+            }
+            else
+            {
+                statistics.entryFailed();
+
+                if ( listener != null )
+                {
+                    listener.entryFailed( entry, result );
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Add a group of entries in a transaction, which is committed if all the adds have
+     * been accepted, and aborted otherwise. No add is sent once one has been rejected.
+     *
+     * @param group The entries
+     * @return The result of the first rejected add, or the result of the transaction end
+     * @throws LdapException If a response has not been received before the timeout, or
+     * if the transaction can't be started
+     */
+    private LdapResult runTransaction( List<Entry> group ) throws LdapException
+    {
+        ExtendedResponse startResponse = connection.extended( new StartTransactionRequestImpl() );
+
+        if ( startResponse.getLdapResult().getResultCode() != ResultCodeEnum.SUCCESS )
+        {
+            return startResponse.getLdapResult();
+        }
+
+        if ( !( startResponse instanceof StartTransactionResponse ) )
+        {
+            throw new LdapException( I18n.err( I18n.ERR_04188_TRANSACTION_NOT_STARTED, startResponse ) );
+        }
+
+        byte[] transactionId = ( ( StartTransactionResponse ) startResponse ).getTransactionId();
+        Deque<PendingAdd> window = new ArrayDeque<>( windowSize );
+        LdapResult failure = null;
+        Iterator<Entry> entries = group.iterator();
+
+        while ( ( failure == null ) && entries.hasNext() )
+        {
+            if ( window.size() >= windowSize )
+            {
+                failure = getFailure( window.poll() );
+            }
+
+            if ( failure == null )
+            {
+                PendingAdd pendingAdd = new PendingAdd( entries.next() );
+                send( pendingAdd, transactionId );
+                window.add( pendingAdd );
+            }
+        }
+
+        while ( !window.isEmpty() )
+        {
+            LdapResult result = getFailure( window.poll() );
+
+            if ( failure == null )
+            {
+                failure = result;
+            }
+        }
+
+        EndTransactionRequest endRequest = new EndTransactionRequestImpl();
+        endRequest.setTransactionId( transactionId );
+        endRequest.setCommit( failure == null );
+
+        ExtendedResponse endResponse = connection.extended( endRequest );
+
+        return ( failure == null ) ? endResponse.getLdapResult() : failure;
+    }
+
+
+    /**
+     * Wait for an add of a transaction
+     *
+     * @param pendingAdd The add
+     * @return The result of the add if it has been rejected, <code>null</code> otherwise
+     * @throws LdapException If the response has not been received before the timeout
+     */
+    private LdapResult getFailure( PendingAdd pendingAdd ) throws LdapException
+    {
+        LdapResult result = getResponse( pendingAdd ).getLdapResult();
+
+        return ( result.getResultCode() == ResultCodeEnum.SUCCESS ) ? null : result;
+    }
+
+
+    /**
+     * Send the add of an entry
+     *
+     * @param pendingAdd The entry to add
+     * @param transactionId The identifier of the transaction the entry is added in, if any
+     * @throws LdapException If the add can't be sent
+     */
+    private void send( PendingAdd pendingAdd, byte[] transactionId ) throws LdapException
+    {
+        AddRequest addRequest = new AddRequestImpl();
+        addRequest.setEntry( pendingAdd.entry );
+
+        if ( transactionId != null )
+        {
+            TransactionSpecification transactionSpecification = new TransactionSpecificationImpl();
+            transactionSpecification.setIdentifier( transactionId );
+            addRequest.addControl( transactionSpecification );
+        }
+
+        pendingAdd.future = connection.addAsync( addRequest );
+        pendingAdd.attempts++;
+    }
+
+
+    /**
+     * Wait for the response to an add. The add is abandoned if no response has been
+     * received before the timeout.
+     *
+     * @param pendingAdd The add
+     * @return The response
+     * @throws LdapException If the response has not been received before the timeout
+     */
+    private AddResponse getResponse( PendingAdd pendingAdd ) throws LdapException
+    {
+        AddResponse response;
+
+        try
+        {
+            response = pendingAdd.future.get( timeout, TimeUnit.MILLISECONDS );
+        }
+        catch ( InterruptedException ie )
+        {
+            Thread.currentThread().interrupt();
+
+            throw new LdapException( ie.getMessage(), ie );
+        }
+
+        if ( response == null )
+        {
+            pendingAdd.future.cancel( true );
+
+            throw new LdapException( I18n.err( I18n.ERR_04112_OP_FAILED_TIMEOUT, "Add" ) );
+        }
+
+        return response;
+    }
+
+
+    /**
+     * Tells if a rejected add, or transaction, can be retried
+     *
+     * @param result The result of the last attempt
+     * @param attempts The number of attempts
+     * @return <code>true</code> if the result code is retryable, and the maximum number of
+     * retries has not been reached
+     */
+    private boolean canRetry( LdapResult result, int attempts )
+    {
+        return ( attempts <= maxRetries ) && retryableResultCodes.contains( result.getResultCode() );
+    }
+
+
+    /**
+     * Wait before a retry, twice as long as before the previous one
+     *
+     * @param attempts The number of attempts
+     * @throws LdapException If the thread has been interrupted
+     */
+    private void backOff( int attempts ) throws LdapException
+    {
+        long delay = retryDelay << Math.min( attempts - 1, MAX_BACKOFF_SHIFT );
+
+        try
+        {
+            Thread.sleep( delay );
+        }
+        catch ( InterruptedException ie )
+        {
+            Thread.currentThread().interrupt();
+
+            throw new LdapException( ie.getMessage(), ie );
+        }
+    }
+}
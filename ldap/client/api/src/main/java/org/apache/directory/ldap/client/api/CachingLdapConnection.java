@@ -0,0 +1,430 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api;
+
+
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Modification;
+import org.apache.directory.api.ldap.model.entry.ModificationOperation;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapInvalidDnException;
+import org.apache.directory.api.ldap.model.message.AddRequest;
+import org.apache.directory.api.ldap.model.message.AddResponse;
+import org.apache.directory.api.ldap.model.message.Control;
+import org.apache.directory.api.ldap.model.message.DeleteRequest;
+import org.apache.directory.api.ldap.model.message.DeleteResponse;
+import org.apache.directory.api.ldap.model.message.ModifyDnRequest;
+import org.apache.directory.api.ldap.model.message.ModifyDnResponse;
+import org.apache.directory.api.ldap.model.message.ModifyRequest;
+import org.apache.directory.api.ldap.model.message.ModifyResponse;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.name.Rdn;
+
+
+/**
+ * A connection reading the looked up entries through a {@link LdapEntryCache}. The cache is
+ * usually shared by all the connections of a pool. The lookups done with controls are not
+ * cached.
+ * <br>
+ * The entries added, modified or deleted through this connection are invalidated once the
+ * operation is done, whatever its result. A renamed or moved entry is invalidated with all
+ * its descendants.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class CachingLdapConnection extends LdapConnectionWrapper
+{
+    /** The cache */
+    private final LdapEntryCache entryCache;
+
+
+    /**
+     * Creates a new instance of CachingLdapConnection.
+     *
+     * @param connection The wrapped connection
+     * @param entryCache The cache
+     */
+    public CachingLdapConnection( LdapConnection connection, LdapEntryCache entryCache )
+    {
+        super( connection );
+        this.entryCache = entryCache;
+    }
+
+
+    /**
+     * @return The cache
+     */
+    public LdapEntryCache getEntryCache()
+    {
+        return entryCache;
+    }
+
+
+    /**
+     * Parse a Dn with the connection's SchemaManager
+     */
+    private Dn toDn( String dn ) throws LdapInvalidDnException
+    {
+        return new Dn( connection.getSchemaManager(), dn );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Entry lookup( Dn dn ) throws LdapException
+    {
+        return entryCache.lookup( connection, dn );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Entry lookup( String dn ) throws LdapException
+    {
+        return entryCache.lookup( connection, toDn( dn ) );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Entry lookup( Dn dn, String... attributes ) throws LdapException
+    {
+        return entryCache.lookup( connection, dn, attributes );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Entry lookup( Dn dn, Control[] controls, String... attributes ) throws LdapException
+    {
+        if ( ( controls == null ) || ( controls.length == 0 ) )
+        {
+            return entryCache.lookup( connection, dn, attributes );
+        }
+
+        return connection.lookup( dn, controls, attributes );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Entry lookup( String dn, String... attributes ) throws LdapException
+    {
+        return entryCache.lookup( connection, toDn( dn ), attributes );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Entry lookup( String dn, Control[] controls, String... attributes ) throws LdapException
+    {
+        return lookup( toDn( dn ), controls, attributes );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void add( Entry entry ) throws LdapException
+    {
+        try
+        {
+            connection.add( entry );
+        }
+        finally
+        {
+            entryCache.invalidate( entry.getDn() );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AddResponse add( AddRequest addRequest ) throws LdapException
+    {
+        try
+        {
+            return connection.add( addRequest );
+        }
+        finally
+        {
+            entryCache.invalidate( addRequest.getEntryDn() );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void modify( Dn dn, Modification... modifications ) throws LdapException
+    {
+        try
+        {
+            connection.modify( dn, modifications );
+        }
+        finally
+        {
+            entryCache.invalidate( dn );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void modify( String dn, Modification... modifications ) throws LdapException
+    {
+        modify( toDn( dn ), modifications );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void modify( Entry entry, ModificationOperation modOp ) throws LdapException
+    {
+        try
+        {
+            connection.modify( entry, modOp );
+        }
+        finally
+        {
+            entryCache.invalidate( entry.getDn() );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ModifyResponse modify( ModifyRequest modRequest ) throws LdapException
+    {
+        try
+        {
+            return connection.modify( modRequest );
+        }
+        finally
+        {
+            entryCache.invalidate( modRequest.getName() );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void rename( String entryDn, String newRdn ) throws LdapException
+    {
+        rename( toDn( entryDn ), new Rdn( connection.getSchemaManager(), newRdn ), true );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void rename( Dn entryDn, Rdn newRdn ) throws LdapException
+    {
+        rename( entryDn, newRdn, true );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void rename( String entryDn, String newRdn, boolean deleteOldRdn ) throws LdapException
+    {
+        rename( toDn( entryDn ), new Rdn( connection.getSchemaManager(), newRdn ), deleteOldRdn );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void rename( Dn entryDn, Rdn newRdn, boolean deleteOldRdn ) throws LdapException
+    {
+        try
+        {
+            connection.rename( entryDn, newRdn, deleteOldRdn );
+        }
+        finally
+        {
+            entryCache.invalidateSubtree( entryDn );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void move( String entryDn, String newSuperiorDn ) throws LdapException
+    {
+        move( toDn( entryDn ), toDn( newSuperiorDn ) );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void move( Dn entryDn, Dn newSuperiorDn ) throws LdapException
+    {
+        try
+        {
+            connection.move( entryDn, newSuperiorDn );
+        }
+        finally
+        {
+            entryCache.invalidateSubtree( entryDn );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void moveAndRename( Dn entryDn, Dn newDn ) throws LdapException
+    {
+        moveAndRename( entryDn, newDn, true );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void moveAndRename( String entryDn, String newDn ) throws LdapException
+    {
+        moveAndRename( toDn( entryDn ), toDn( newDn ), true );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void moveAndRename( Dn entryDn, Dn newDn, boolean deleteOldRdn ) throws LdapException
+    {
+        try
+        {
+            connection.moveAndRename( entryDn, newDn, deleteOldRdn );
+        }
+        finally
+        {
+            entryCache.invalidateSubtree( entryDn );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void moveAndRename( String entryDn, String newDn, boolean deleteOldRdn ) throws LdapException
+    {
+        moveAndRename( toDn( entryDn ), toDn( newDn ), deleteOldRdn );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ModifyDnResponse modifyDn( ModifyDnRequest modDnRequest ) throws LdapException
+    {
+        try
+        {
+            return connection.modifyDn( modDnRequest );
+        }
+        finally
+        {
+            entryCache.invalidateSubtree( modDnRequest.getName() );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void delete( String dn ) throws LdapException
+    {
+        delete( toDn( dn ) );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void delete( Dn dn ) throws LdapException
+    {
+        try
+        {
+            connection.delete( dn );
+        }
+        finally
+        {
+            entryCache.invalidate( dn );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DeleteResponse delete( DeleteRequest deleteRequest ) throws LdapException
+    {
+        try
+        {
+            return connection.delete( deleteRequest );
+        }
+        finally
+        {
+            // The request may carry a tree delete control
+            entryCache.invalidateSubtree( deleteRequest.getName() );
+        }
+    }
+}
@@ -0,0 +1,944 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api;
+
+
+import java.io.Closeable;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedTransferQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.PooledObjectFactory;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.apache.directory.api.i18n.I18n;
+import org.apache.directory.api.ldap.codec.api.LdapApiService;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapOtherException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A pool of LdapConnection objects which borrow and release paths don't take any lock,
+ * an alternative to {@link LdapConnectionPool} for heavily contended pools. It uses the
+ * same {@link PooledObjectFactory}, so the connections are created, activated, validated
+ * and destroyed the same way.
+ * <ul>
+ * <li>Each thread first tries the connections it has released lately, so that a thread
+ * borrowing and releasing a connection in a loop gets the same one without contention</li>
+ * <li>It then steals any idle connection, with a compare-and-set on its state</li>
+ * <li>A new connection is created if the pool is not full</li>
+ * <li>Otherwise, the thread waits for a connection to be handed off by a releasing thread</li>
+ * </ul>
+ * The maxTotal, maxWaitMillis, blockWhenExhausted and testOnBorrow settings of the given
+ * GenericObjectPoolConfig are honored. When testOnBorrow is set, the validation can be
+ * restricted to the connections which have been idle for some time, see
+ * {@link #setValidationIdleTime(long)}.
+ * <br>
+ * The idle connections can also be probed in the background, see {@link #setKeepAliveInterval(long)} :
+ * all the probes are sent at once, without waiting for their responses, the broken connections
+ * are destroyed, and the sound ones are considered healthy for {@link #setHealthyWindow(long)}
+ * milliseconds, during which they are not validated when they are borrowed.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class ConcurrentLdapConnectionPool implements Closeable
+{
+    /** The logger */
+    private static final Logger LOG = LoggerFactory.getLogger( ConcurrentLdapConnectionPool.class );
+
+    /** The number of connections each thread remembers */
+    private static final int THREAD_LOCAL_SIZE = 16;
+
+    /** The connection is available */
+    private static final int IDLE = 0;
+
+    /** The connection has been borrowed */
+    private static final int IN_USE = 1;
+
+    /** The connection is being released */
+    private static final int RELEASING = 2;
+
+    /** The connection is being probed in the background */
+    private static final int VALIDATING = 3;
+
+    /** The connection has been destroyed */
+    private static final int REMOVED = 4;
+
+    /** The marker handed to a waiting thread when a connection has been destroyed, or the pool closed */
+    private static final Entry SLOT_FREED = new Entry( null );
+
+    /** The factory creating the connections */
+    private final PooledObjectFactory<LdapConnection> factory;
+
+    /** The pooled connections */
+    private final List<Entry> entries = new CopyOnWriteArrayList<>();
+
+    /** The pooled connections, per connection */
+    private final Map<LdapConnection, Entry> entryByConnection = new ConcurrentHashMap<>();
+
+    /** The connections each thread has released lately */
+    private final ThreadLocal<List<WeakReference<Entry>>> threadEntries = ThreadLocal.withInitial( ArrayList::new );
+
+    /** The connections handed off to the waiting threads */
+    private final LinkedTransferQueue<Entry> handoff = new LinkedTransferQueue<>();
+
+    /** The number of pooled connections, including the ones being created */
+    private final AtomicInteger size = new AtomicInteger();
+
+    /** The number of threads waiting for a connection */
+    private final AtomicInteger waiters = new AtomicInteger();
+
+    /** The maximum number of connections */
+    private final int maxTotal;
+
+    /** The maximum time to wait for a connection, in milliseconds, negative to wait forever */
+    private final long maxWaitMillis;
+
+    /** Tells if a thread waits for a connection when the pool is full */
+    private final boolean blockWhenExhausted;
+
+    /** Tells if the connections are validated when they are borrowed */
+    private final boolean testOnBorrow;
+
+    /** The time a connection has to be idle to be validated when it's borrowed, in milliseconds */
+    private volatile long validationIdleTime;
+
+    /** The time a validated connection is considered healthy, in milliseconds */
+    private volatile long healthyWindow;
+
+    /** The validator probing the idle connections in the background */
+    private volatile AsyncLdapConnectionValidator keepAliveValidator = new LookupLdapConnectionValidator();
+
+    /** The interval between two background probes of the idle connections, in milliseconds, 0 if disabled */
+    private long keepAliveInterval;
+
+    /** The background probing task */
+    private ScheduledFuture<?> keepAliveTask;
+
+    /** Tells if the pool has been closed */
+    private volatile boolean closed;
+
+
+    /**
+     * A pooled connection, with its state
+     */
+    private static final class Entry
+    {
+        /** The connection */
+        private final PooledObject<LdapConnection> pooledObject;
+
+        /** The connection state */
+        private final AtomicInteger state = new AtomicInteger( IN_USE );
+
+        /** The date the connection has been released, in System.nanoTime() terms */
+        private volatile long releaseDate = System.nanoTime();
+
+        /** The date the connection has been successfully validated, in System.nanoTime() terms */
+        private volatile long validationDate;
+
+        /** Tells if the connection has been successfully validated once */
+        private volatile boolean validated;
+
+        /** The date the connection background probe has been sent, in System.nanoTime() terms */
+        private volatile long probeDate;
+
+
+        /**
+         * Creates a new Entry, borrowed
+         *
+         * @param pooledObject The connection
+         */
+        private Entry( PooledObject<LdapConnection> pooledObject )
+        {
+            this.pooledObject = pooledObject;
+        }
+    }
+
+
+    /**
+     * The timer running the background probes of all the pools. It only sends the probes,
+     * it does not wait for their responses.
+     */
+    private static final class KeepAliveTimer
+    {
+        /** The timer */
+        private static final ScheduledThreadPoolExecutor INSTANCE = createTimer();
+
+
+        /**
+         * Private constructor
+         */
+        private KeepAliveTimer()
+        {
+        }
+
+
+        /**
+         * @return A timer with a single daemon thread
+         */
+        private static ScheduledThreadPoolExecutor createTimer()
+        {
+            ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor( 1, runnable ->
+            {
+                Thread thread = new Thread( runnable, "ConcurrentLdapConnectionPool-keepalive" );
+                thread.setDaemon( true );
+
+                return thread;
+            } );
+
+            timer.setRemoveOnCancelPolicy( true );
+
+            return timer;
+        }
+    }
+
+
+    /**
+     * Instantiates a new LDAP connection pool.
+     *
+     * @param connectionConfig The connection configuration
+     * @param apiService The api service (codec)
+     * @param timeout The connection timeout in millis
+     */
+    public ConcurrentLdapConnectionPool( LdapConnectionConfig connectionConfig, LdapApiService apiService,
+        long timeout )
+    {
+        this( newPoolableConnectionFactory( connectionConfig, apiService, timeout ), null );
+    }
+
+
+    /**
+     * Instantiates a new LDAP connection pool.
+     *
+     * @param factory The LDAP connection factory
+     */
+    public ConcurrentLdapConnectionPool( PooledObjectFactory<LdapConnection> factory )
+    {
+        this( factory, null );
+    }
+
+
+    /**
+     * Instantiates a new LDAP connection pool.
+     *
+     * @param factory The LDAP connection factory
+     * @param poolConfig The pool configuration
+     */
+    public ConcurrentLdapConnectionPool( PooledObjectFactory<LdapConnection> factory, GenericObjectPoolConfig poolConfig )
+    {
+        GenericObjectPoolConfig config = poolConfig == null ? new GenericObjectPoolConfig() : poolConfig;
+
+        this.factory = factory;
+        this.maxTotal = config.getMaxTotal() < 0 ? Integer.MAX_VALUE : config.getMaxTotal();
+        this.maxWaitMillis = config.getMaxWaitMillis();
+        this.blockWhenExhausted = config.getBlockWhenExhausted();
+        this.testOnBorrow = config.getTestOnBorrow();
+    }
+
+
+    private static ValidatingPoolableLdapConnectionFactory newPoolableConnectionFactory(
+        LdapConnectionConfig connectionConfig, LdapApiService apiService, long timeout )
+    {
+        DefaultLdapConnectionFactory connectionFactory = new DefaultLdapConnectionFactory( connectionConfig );
+        connectionFactory.setLdapApiService( apiService );
+        connectionFactory.setTimeOut( timeout );
+
+        return new ValidatingPoolableLdapConnectionFactory( connectionFactory );
+    }
+
+
+    /**
+     * Returns the LdapApiService instance used by this connection pool.
+     *
+     * @return The LdapApiService instance used by this connection pool.
+     */
+    public LdapApiService getLdapApiService()
+    {
+        return ( ( AbstractPoolableLdapConnectionFactory ) factory ).getLdapApiService();
+    }
+
+
+    /**
+     * @return The time a connection has to be idle to be validated when it's borrowed, in milliseconds
+     */
+    public long getValidationIdleTime()
+    {
+        return validationIdleTime;
+    }
+
+
+    /**
+     * Restricts the validation of the borrowed connections, when testOnBorrow is set, to the
+     * connections which have been idle for at least the given time. A connection which has
+     * just been released by another thread is then given without any round trip to the server.
+     *
+     * @param validationIdleTime The time a connection has to be idle to be validated when
+     * it's borrowed, in milliseconds. 0 validates all the borrowed connections.
+     */
+    public void setValidationIdleTime( long validationIdleTime )
+    {
+        this.validationIdleTime = validationIdleTime;
+    }
+
+
+    /**
+     * @return The time a validated connection is considered healthy, in milliseconds
+     */
+    public long getHealthyWindow()
+    {
+        return healthyWindow;
+    }
+
+
+    /**
+     * Sets the time a connection which has been successfully validated, on borrow or in the
+     * background, is considered healthy : it won't be validated again when it's borrowed
+     * during this time.
+     *
+     * @param healthyWindow The time a validated connection is considered healthy, in milliseconds
+     */
+    public void setHealthyWindow( long healthyWindow )
+    {
+        this.healthyWindow = healthyWindow;
+    }
+
+
+    /**
+     * Sets the validator probing the idle connections in the background. The
+     * {@link LookupLdapConnectionValidator} is used by default.
+     *
+     * @param keepAliveValidator The validator
+     */
+    public void setKeepAliveValidator( AsyncLdapConnectionValidator keepAliveValidator )
+    {
+        this.keepAliveValidator = keepAliveValidator;
+    }
+
+
+    /**
+     * @return The interval between two background probes of the idle connections, in milliseconds,
+     * 0 if the connections are not probed
+     */
+    public synchronized long getKeepAliveInterval()
+    {
+        return keepAliveInterval;
+    }
+
+
+    /**
+     * Probes the idle connections in the background. Every interval, the connections which have
+     * been idle for the whole interval and are not healthy anymore are probed concurrently, which keeps them alive on the server side
+     * too. A probe which has not been answered at the next run is considered failed.
+     *
+     * @param keepAliveInterval The interval between two probes, in milliseconds, 0 to stop probing
+     */
+    public synchronized void setKeepAliveInterval( long keepAliveInterval )
+    {
+        if ( keepAliveTask != null )
+        {
+            keepAliveTask.cancel( false );
+            keepAliveTask = null;
+        }
+
+        this.keepAliveInterval = keepAliveInterval;
+
+        if ( ( keepAliveInterval > 0L ) && !closed )
+        {
+            keepAliveTask = KeepAliveTimer.INSTANCE.scheduleWithFixedDelay( this::keepAlive, keepAliveInterval,
+                keepAliveInterval, TimeUnit.MILLISECONDS );
+        }
+    }
+
+
+    /**
+     * @return The number of borrowed connections
+     */
+    public int getNumActive()
+    {
+        return countEntries( IN_USE );
+    }
+
+
+    /**
+     * @return The number of connections available in the pool
+     */
+    public int getNumIdle()
+    {
+        return countEntries( IDLE ) + countEntries( VALIDATING );
+    }
+
+
+    /**
+     * @param state A connection state
+     * @return The number of connections in this state
+     */
+    private int countEntries( int state )
+    {
+        int count = 0;
+
+        for ( Entry entry : entries )
+        {
+            if ( entry.state.get() == state )
+            {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+
+    /**
+     * Gives a LdapConnection fetched from the pool.
+     *
+     * @return an LdapConnection object from pool
+     * @throws LdapException if an error occurs while obtaining a connection from the factory
+     */
+    public LdapConnection getConnection() throws LdapException
+    {
+        while ( true )
+        {
+            if ( closed )
+            {
+                throw new IllegalStateException( I18n.err( I18n.ERR_04191_POOL_CLOSED ) );
+            }
+
+            Entry entry = pollThreadEntries();
+            boolean created = false;
+
+            if ( entry == null )
+            {
+                entry = steal();
+            }
+
+            if ( entry == null )
+            {
+                entry = create();
+                created = entry != null;
+            }
+
+            if ( entry == null )
+            {
+                entry = await();
+            }
+
+            if ( activate( entry, created ) )
+            {
+                LdapConnection connection = entry.pooledObject.getObject();
+
+                if ( LOG.isTraceEnabled() )
+                {
+                    LOG.trace( I18n.msg( I18n.MSG_04163_BORROWED_CONNECTION, connection ) );
+                }
+
+                return connection;
+            }
+        }
+    }
+
+
+    /**
+     * Take one of the connections the current thread has released lately
+     *
+     * @return The connection, or null if they have all been taken by other threads
+     */
+    private Entry pollThreadEntries()
+    {
+        List<WeakReference<Entry>> references = threadEntries.get();
+
+        for ( int i = references.size() - 1; i >= 0; i-- )
+        {
+            Entry entry = references.remove( i ).get();
+
+            if ( ( entry != null ) && entry.state.compareAndSet( IDLE, IN_USE ) )
+            {
+                return entry;
+            }
+        }
+
+        return null;
+    }
+
+
+    /**
+     * Take any idle connection
+     *
+     * @return The connection, or null if there is no idle connection
+     */
+    private Entry steal()
+    {
+        for ( Entry entry : entries )
+        {
+            if ( entry.state.compareAndSet( IDLE, IN_USE ) )
+            {
+                return entry;
+            }
+        }
+
+        return null;
+    }
+
+
+    /**
+     * Create a new connection, if the pool is not full
+     *
+     * @return The connection, or null if the pool is full
+     * @throws LdapException If the connection can't be created
+     */
+    private Entry create() throws LdapException
+    {
+        int current = size.get();
+
+        while ( current < maxTotal )
+        {
+            if ( size.compareAndSet( current, current + 1 ) )
+            {
+                try
+                {
+                    Entry entry = new Entry( factory.makeObject() );
+                    entryByConnection.put( entry.pooledObject.getObject(), entry );
+                    entries.add( entry );
+
+                    return entry;
+                }
+                catch ( Exception e )
+                {
+                    size.decrementAndGet();
+                    signalWaiter();
+
+                    throw wrap( e );
+                }
+            }
+
+            current = size.get();
+        }
+
+        return null;
+    }
+
+
+    /**
+     * Wait for a connection to be released, or destroyed
+     *
+     * @return The connection
+     * @throws LdapException If the wait has been interrupted, or if a connection can't be created
+     */
+    private Entry await() throws LdapException
+    {
+        long start = System.nanoTime();
+
+        if ( !blockWhenExhausted )
+        {
+            throw new NoSuchElementException( I18n.err( I18n.ERR_04193_POOL_EXHAUSTED, 0L ) );
+        }
+
+        waiters.incrementAndGet();
+
+        try
+        {
+            while ( true )
+            {
+                // A connection may have been released before we were counted as waiting
+                Entry entry = steal();
+
+                if ( entry == null )
+                {
+                    entry = create();
+                }
+
+                if ( entry != null )
+                {
+                    return entry;
+                }
+
+                Entry handedOff;
+
+                if ( maxWaitMillis < 0L )
+                {
+                    handedOff = handoff.take();
+                }
+                else
+                {
+                    long remaining = TimeUnit.MILLISECONDS.toNanos( maxWaitMillis ) - ( System.nanoTime() - start );
+
+                    if ( remaining <= 0L )
+                    {
+                        throw new NoSuchElementException( I18n.err( I18n.ERR_04193_POOL_EXHAUSTED, maxWaitMillis ) );
+                    }
+
+                    handedOff = handoff.poll( remaining, TimeUnit.NANOSECONDS );
+                }
+
+                if ( closed )
+                {
+                    throw new IllegalStateException( I18n.err( I18n.ERR_04191_POOL_CLOSED ) );
+                }
+
+                if ( ( handedOff != null ) && handedOff.state.compareAndSet( IDLE, IN_USE ) )
+                {
+                    return handedOff;
+                }
+            }
+        }
+        catch ( InterruptedException ie )
+        {
+            Thread.currentThread().interrupt();
+
+            throw new LdapOtherException( ie.getMessage(), ie );
+        }
+        finally
+        {
+            waiters.decrementAndGet();
+        }
+    }
+
+
+    /**
+     * Activate, and validate if needed, a borrowed connection. It's destroyed if it's not usable.
+     *
+     * @param entry The connection
+     * @param created Tells if the connection has just been created
+     * @return <code>true</code> if the connection can be used
+     * @throws LdapException If a newly created connection can't be activated
+     */
+    private boolean activate( Entry entry, boolean created ) throws LdapException
+    {
+        try
+        {
+            factory.activateObject( entry.pooledObject );
+
+            if ( !created && testOnBorrow && isIdleFor( entry, validationIdleTime ) && !isHealthy( entry ) )
+            {
+                if ( !factory.validateObject( entry.pooledObject ) )
+                {
+                    destroy( entry );
+
+                    return false;
+                }
+
+                validated( entry );
+            }
+
+            return true;
+        }
+        catch ( Exception e )
+        {
+            destroy( entry );
+
+            if ( created )
+            {
+                throw wrap( e );
+            }
+
+            return false;
+        }
+    }
+
+
+    /**
+     * @param entry The connection
+     * @param idleTime A time, in milliseconds
+     * @return <code>true</code> if the connection has been idle for at least this time
+     */
+    private boolean isIdleFor( Entry entry, long idleTime )
+    {
+        return System.nanoTime() - entry.releaseDate >= TimeUnit.MILLISECONDS.toNanos( idleTime );
+    }
+
+
+    /**
+     * @param entry The connection
+     * @return <code>true</code> if the connection has been validated during the healthy window
+     */
+    private boolean isHealthy( Entry entry )
+    {
+        return entry.validated
+            && ( System.nanoTime() - entry.validationDate < TimeUnit.MILLISECONDS.toNanos( healthyWindow ) );
+    }
+
+
+    /**
+     * Record a successful validation
+     *
+     * @param entry The validated connection
+     */
+    private void validated( Entry entry )
+    {
+        entry.validationDate = System.nanoTime();
+        entry.validated = true;
+    }
+
+
+    /**
+     * Probe the connections which have been idle for an interval and are not healthy anymore,
+     * and destroy the ones which are disconnected, or which previous probe has not been answered.
+     */
+    private void keepAlive()
+    {
+        AsyncLdapConnectionValidator validator = keepAliveValidator;
+        long interval = getKeepAliveInterval();
+        long probeTimeout = TimeUnit.MILLISECONDS.toNanos( interval );
+
+        for ( Entry entry : entries )
+        {
+            if ( entry.state.get() == VALIDATING )
+            {
+                if ( ( System.nanoTime() - entry.probeDate >= probeTimeout )
+                    && entry.state.compareAndSet( VALIDATING, REMOVED ) )
+                {
+                    destroy( entry );
+                }
+
+                continue;
+            }
+
+            // A connection which has just been used does not need to be probed
+            if ( isHealthy( entry ) || !isIdleFor( entry, interval )
+                || !entry.state.compareAndSet( IDLE, VALIDATING ) )
+            {
+                continue;
+            }
+
+            LdapConnection connection = entry.pooledObject.getObject();
+
+            if ( !connection.isConnected() )
+            {
+                entry.state.set( REMOVED );
+                destroy( entry );
+
+                continue;
+            }
+
+            entry.probeDate = System.nanoTime();
+
+            try
+            {
+                validator.validateAsync( connection ).thenAccept( valid -> probed( entry, valid ) );
+            }
+            catch ( RuntimeException re )
+            {
+                probed( entry, false );
+            }
+        }
+    }
+
+
+    /**
+     * Called when a background probe has been answered. The probing timer destroys the
+     * connection if it's broken, not the thread which has received the answer.
+     *
+     * @param entry The probed connection
+     * @param valid Tells if the connection is valid
+     */
+    private void probed( Entry entry, boolean valid )
+    {
+        if ( !valid )
+        {
+            if ( entry.state.compareAndSet( VALIDATING, REMOVED ) )
+            {
+                KeepAliveTimer.INSTANCE.execute( () -> destroy( entry ) );
+            }
+
+            return;
+        }
+
+        validated( entry );
+
+        if ( entry.state.compareAndSet( VALIDATING, IDLE ) )
+        {
+            if ( closed )
+            {
+                if ( entry.state.compareAndSet( IDLE, REMOVED ) )
+                {
+                    KeepAliveTimer.INSTANCE.execute( () -> destroy( entry ) );
+                }
+            }
+            else if ( waiters.get() > 0 )
+            {
+                handoff.offer( entry );
+            }
+        }
+    }
+
+
+    /**
+     * Places the given LdapConnection back in the pool.
+     *
+     * @param connection the LdapConnection to be released
+     * @throws LdapException if an error occurs while releasing the connection
+     */
+    public void releaseConnection( LdapConnection connection ) throws LdapException
+    {
+        Entry entry = entryByConnection.get( connection );
+
+        if ( ( entry == null ) || !entry.state.compareAndSet( IN_USE, RELEASING ) )
+        {
+            throw new IllegalStateException( I18n.err( I18n.ERR_04192_CONNECTION_NOT_BORROWED, connection ) );
+        }
+
+        try
+        {
+            factory.passivateObject( entry.pooledObject );
+        }
+        catch ( Exception e )
+        {
+            destroy( entry );
+
+            return;
+        }
+
+        entry.releaseDate = System.nanoTime();
+        entry.state.set( IDLE );
+
+        if ( closed )
+        {
+            if ( entry.state.compareAndSet( IDLE, REMOVED ) )
+            {
+                destroy( entry );
+            }
+
+            return;
+        }
+
+        if ( waiters.get() > 0 )
+        {
+            handoff.offer( entry );
+        }
+
+        List<WeakReference<Entry>> references = threadEntries.get();
+
+        if ( references.size() >= THREAD_LOCAL_SIZE )
+        {
+            references.remove( 0 );
+        }
+
+        references.add( new WeakReference<>( entry ) );
+
+        if ( LOG.isTraceEnabled() )
+        {
+            LOG.trace( I18n.msg( I18n.MSG_04164_RETURNED_CONNECTION, connection ) );
+        }
+    }
+
+
+    /**
+     * Destroy a connection, and remove it from the pool
+     *
+     * @param entry The connection
+     */
+    private void destroy( Entry entry )
+    {
+        entry.state.set( REMOVED );
+        entries.remove( entry );
+        entryByConnection.remove( entry.pooledObject.getObject() );
+        size.decrementAndGet();
+
+        try
+        {
+            factory.destroyObject( entry.pooledObject );
+        }
+        catch ( Exception e )
+        {
+            LOG.error( I18n.err( I18n.ERR_04107_UNEXPECTED_THROWN_EXCEPTION, e.getMessage() ), e );
+        }
+
+        signalWaiter();
+    }
+
+
+    /**
+     * Wake up a waiting thread, if any, so that it can create a connection
+     */
+    private void signalWaiter()
+    {
+        if ( waiters.get() > 0 )
+        {
+            handoff.offer( SLOT_FREED );
+        }
+    }
+
+
+    /**
+     * @param e An exception thrown by the factory
+     * @return The exception to throw
+     */
+    private LdapException wrap( Exception e )
+    {
+        if ( e instanceof LdapException )
+        {
+            return ( LdapException ) e;
+        }
+
+        if ( e instanceof RuntimeException )
+        {
+            throw ( RuntimeException ) e;
+        }
+
+        // This should NEVER happen, our PoolableLdapConnectionFactory only throws LdapException
+        LOG.error( I18n.err( I18n.ERR_04107_UNEXPECTED_THROWN_EXCEPTION, e.getMessage() ), e );
+
+        throw new RuntimeException( e );
+    }
+
+
+    /**
+     * Closes the pool : the idle connections are destroyed, the borrowed ones will be
+     * destroyed when they are released, and the waiting threads get an IllegalStateException.
+     */
+    @Override
+    public void close()
+    {
+        closed = true;
+        setKeepAliveInterval( 0L );
+
+        for ( Entry entry : entries )
+        {
+            if ( entry.state.compareAndSet( IDLE, REMOVED ) )
+            {
+                destroy( entry );
+            }
+        }
+
+        for ( int i = waiters.get(); i > 0; i-- )
+        {
+            handoff.offer( SLOT_FREED );
+        }
+    }
+
+
+    /**
+     * @return <code>true</code> if the pool has been closed
+     */
+    public boolean isClosed()
+    {
+        return closed;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api;
+
+
+/**
+ * The interfaces of a flow-controlled publication, with the same methods and
+ * semantics as the Reactive Streams ones, which are part of the JDK as
+ * <code>java.util.concurrent.Flow</code> since Java 9. They can be adapted with a
+ * method reference on each side.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public final class Flow
+{
+    /**
+     * Make this final class impossible to instanciate
+     */
+    private Flow()
+    {
+        // Nothing to do
+    }
+
+
+    /**
+     * A producer of items, which are received by the subscribers as they request them.
+     *
+     * @param <T> The items type
+     */
+    @FunctionalInterface
+    public interface Publisher<T>
+    {
+        /**
+         * Add a subscriber. Its onSubscribe method is called before any other.
+         *
+         * @param subscriber The subscriber
+         */
+        void subscribe( Subscriber<? super T> subscriber );
+    }
+
+
+    /**
+     * A receiver of items. The methods are called in sequence, never concurrently.
+     *
+     * @param <T> The items type
+     */
+    public interface Subscriber<T>
+    {
+        /**
+         * Called once, before any other method, with the subscription to request items from
+         *
+         * @param subscription The subscription
+         */
+        void onSubscribe( Subscription subscription );
+
+
+        /**
+         * Called with each requested item
+         *
+         * @param item The item
+         */
+        void onNext( T item );
+
+
+        /**
+         * Called once when the publication fails. No other method is called after.
+         *
+         * @param throwable The error
+         */
+        void onError( Throwable throwable );
+
+
+        /**
+         * Called once when all the items have been received. No other method is called after.
+         */
+        void onComplete();
+    }
+
+
+    /**
+     * The link between a publisher and a subscriber.
+     */
+    public interface Subscription
+    {
+        /**
+         * Request more items. The publisher does not send more items than requested.
+         *
+         * @param n The number of additional items, strictly positive
+         */
+        void request( long n );
+
+
+        /**
+         * Stop receiving items. Some items may still be received after this call.
+         */
+        void cancel();
+    }
+}
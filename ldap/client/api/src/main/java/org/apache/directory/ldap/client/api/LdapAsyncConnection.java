@@ -21,17 +21,28 @@ package org.apache.directory.ldap.client.api;
 
 
 import java.io.IOException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Consumer;
 
 import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.message.AddRequest;
+import org.apache.directory.api.ldap.model.message.AddResponse;
 import org.apache.directory.api.ldap.model.message.BindRequest;
+import org.apache.directory.api.ldap.model.message.BindResponse;
 import org.apache.directory.api.ldap.model.message.CompareRequest;
+import org.apache.directory.api.ldap.model.message.CompareResponse;
 import org.apache.directory.api.ldap.model.message.DeleteRequest;
+import org.apache.directory.api.ldap.model.message.DeleteResponse;
 import org.apache.directory.api.ldap.model.message.ExtendedRequest;
+import org.apache.directory.api.ldap.model.message.ExtendedResponse;
 import org.apache.directory.api.ldap.model.message.ModifyDnRequest;
+import org.apache.directory.api.ldap.model.message.ModifyDnResponse;
 import org.apache.directory.api.ldap.model.message.ModifyRequest;
+import org.apache.directory.api.ldap.model.message.ModifyResponse;
+import org.apache.directory.api.ldap.model.message.Response;
 import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchResultDone;
 import org.apache.directory.api.ldap.model.message.SearchScope;
 import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.ldap.client.api.future.AddFuture;
@@ -46,6 +57,10 @@ import org.apache.directory.ldap.client.api.future.SearchFuture;
 
 /**
  * Root interface for all asynchronous LDAP connections.
+ * <br>
+ * The <code>xxxStage</code> methods return a CompletionStage, completed by the thread
+ * which receives the response : the dependent actions must not block. The requests they
+ * send from a dependent action are not blocking either.
  *
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
@@ -247,6 +262,88 @@ public interface LdapAsyncConnection extends LdapConnection
     ExtendedFuture extendedAsync( ExtendedRequest extendedRequest ) throws LdapException;
 
 
+    /**
+     * Add an entry to the server, without blocking.
+     *
+     * @param addRequest The AddRequest to send
+     * @return A CompletionStage completed with the AddResponse, or with the error which
+     * prevented the request from being sent
+     */
+    CompletionStage<AddResponse> addStage( AddRequest addRequest );
+
+
+    /**
+     * Bind on a server, without blocking.
+     *
+     * @param bindRequest The BindRequest to send
+     * @return A CompletionStage completed with the BindResponse, or with the error which
+     * prevented the request from being sent
+     */
+    CompletionStage<BindResponse> bindStage( BindRequest bindRequest );
+
+
+    /**
+     * Compare a value with an attribute of an entry, without blocking.
+     *
+     * @param compareRequest The CompareRequest to send
+     * @return A CompletionStage completed with the CompareResponse, or with the error which
+     * prevented the request from being sent
+     */
+    CompletionStage<CompareResponse> compareStage( CompareRequest compareRequest );
+
+
+    /**
+     * Delete an entry, without blocking.
+     *
+     * @param deleteRequest The DeleteRequest to send
+     * @return A CompletionStage completed with the DeleteResponse, or with the error which
+     * prevented the request from being sent
+     */
+    CompletionStage<DeleteResponse> deleteStage( DeleteRequest deleteRequest );
+
+
+    /**
+     * Perform an extended operation, without blocking.
+     *
+     * @param extendedRequest The ExtendedRequest to send
+     * @return A CompletionStage completed with the ExtendedResponse, or with the error which
+     * prevented the request from being sent
+     */
+    CompletionStage<ExtendedResponse> extendedStage( ExtendedRequest extendedRequest );
+
+
+    /**
+     * Modify an entry, without blocking.
+     *
+     * @param modifyRequest The ModifyRequest to send
+     * @return A CompletionStage completed with the ModifyResponse, or with the error which
+     * prevented the request from being sent
+     */
+    CompletionStage<ModifyResponse> modifyStage( ModifyRequest modifyRequest );
+
+
+    /**
+     * Rename or move an entry, without blocking.
+     *
+     * @param modifyDnRequest The ModifyDnRequest to send
+     * @return A CompletionStage completed with the ModifyDnResponse, or with the error which
+     * prevented the request from being sent
+     */
+    CompletionStage<ModifyDnResponse> modifyDnStage( ModifyDnRequest modifyDnRequest );
+
+
+    /**
+     * Search, without blocking. The entries, references and intermediate responses are
+     * passed to the consumer, by the thread which receives them.
+     *
+     * @param searchRequest The SearchRequest to send
+     * @param responseConsumer The consumer of the search responses
+     * @return A CompletionStage completed with the SearchResultDone, or with the error which
+     * prevented the request from being sent
+     */
+    CompletionStage<SearchResultDone> searchStage( SearchRequest searchRequest, Consumer<Response> responseConsumer );
+
+
     /**
      * Configuration of LdapNetworkConnection
      * 
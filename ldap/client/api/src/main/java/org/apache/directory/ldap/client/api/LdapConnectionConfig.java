@@ -32,8 +32,11 @@ import javax.net.ssl.TrustManagerFactory;
 
 import org.apache.directory.api.i18n.I18n;
 import org.apache.directory.api.ldap.codec.api.BinaryAttributeDetector;
+import org.apache.directory.api.ldap.codec.api.LargeValueHandler;
 import org.apache.directory.api.ldap.codec.api.LdapApiService;
 import org.apache.directory.api.util.Network;
+import org.apache.mina.core.service.IoProcessor;
+import org.apache.mina.transport.socket.nio.NioSession;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -66,6 +69,12 @@ public class LdapConnectionConfig
     /** the default protocol used for creating SSL context */
     public static final String DEFAULT_SSL_PROTOCOL = "TLS";
 
+    /** The default minimal length of an attribute value to be streamed to the LargeValueHandler, 1 MiB */
+    public static final int DEFAULT_LARGE_VALUE_THRESHOLD = 1024 * 1024;
+
+    /** The default maximum size of a batch of pipelined requests */
+    public static final int DEFAULT_PIPELINE_MAX_BATCH_BYTES = 64 * 1024;
+
     // --- private members ----
     /** A flag indicating if we are using SSL or not, default value is false */
     private boolean useSsl = false;
@@ -112,6 +121,36 @@ public class LdapConnectionConfig
     /** The Service to use internally when creating connections */
     private LdapApiService ldapApiService;
 
+    /** The handler the big attribute values of the received entries are streamed to, if any */
+    private LargeValueHandler largeValueHandler;
+
+    /** The minimal length of an attribute value to be streamed to the handler */
+    private int largeValueThreshold = DEFAULT_LARGE_VALUE_THRESHOLD;
+
+    /** Tells if the received entries are decoded on demand */
+    private boolean lazySearchResultEntries;
+
+    /** The maximum number of requests waiting for their response, 0 for no limit */
+    private int maxOutstandingRequests;
+
+    /** The I/O processor shared by the connections, if any */
+    private IoProcessor<NioSession> ioProcessor;
+
+    /** The maximum size of a batch of pipelined requests */
+    private int pipelineMaxBatchBytes = DEFAULT_PIPELINE_MAX_BATCH_BYTES;
+
+    /** The time a batch of pipelined requests waits for more requests, 0 to wait for a flush */
+    private long pipelineLinger;
+
+    /** The number of queued responses of a search above which the reads are suspended, 0 for no limit */
+    private int maxQueuedSearchResponses;
+
+    /** The approximate size of the queued responses of a search above which the reads are suspended, 0 for no limit */
+    private long maxQueuedSearchBytes;
+
+    /** Tells if the received values are decoded without being copied */
+    private boolean zeroCopy;
+
 
     /**
      * Creates a default LdapConnectionConfig instance
@@ -122,6 +161,41 @@ public class LdapConnectionConfig
     }
 
 
+    /**
+     * Creates a LdapConnectionConfig instance holding the same settings than another one
+     *
+     * @param config The configuration to copy
+     */
+    public LdapConnectionConfig( LdapConnectionConfig config )
+    {
+        useSsl = config.useSsl;
+        timeout = config.timeout;
+        useTls = config.useTls;
+        ldapPort = config.ldapPort;
+        ldapHost = config.ldapHost;
+        name = config.name;
+        credentials = config.credentials;
+        keyManagers = config.keyManagers;
+        secureRandom = config.secureRandom;
+        trustManagers = config.trustManagers;
+        enabledCipherSuites = config.enabledCipherSuites;
+        enabledProtocols = config.enabledProtocols;
+        sslProtocol = config.sslProtocol;
+        binaryAttributeDetector = config.binaryAttributeDetector;
+        ldapApiService = config.ldapApiService;
+        largeValueHandler = config.largeValueHandler;
+        largeValueThreshold = config.largeValueThreshold;
+        lazySearchResultEntries = config.lazySearchResultEntries;
+        maxOutstandingRequests = config.maxOutstandingRequests;
+        ioProcessor = config.ioProcessor;
+        pipelineMaxBatchBytes = config.pipelineMaxBatchBytes;
+        pipelineLinger = config.pipelineLinger;
+        maxQueuedSearchResponses = config.maxQueuedSearchResponses;
+        maxQueuedSearchBytes = config.maxQueuedSearchBytes;
+        zeroCopy = config.zeroCopy;
+    }
+
+
     /**
      * Sets the default trust manager based on the SunX509 trustManagement algorithm
      * 
@@ -525,4 +599,234 @@ public class LdapConnectionConfig
     {
         this.ldapApiService = ldapApiService;
     }
+
+
+    /**
+     * @return the handler the big attribute values of the received entries are streamed to
+     */
+    public LargeValueHandler getLargeValueHandler()
+    {
+        return largeValueHandler;
+    }
+
+
+    /**
+     * Set a handler the big attribute values of the received SearchResultEntries will be
+     * streamed to, instead of being stored in the entries. This keeps the memory used by
+     * the decoder bounded, whatever the size of the values.
+     *
+     * @param largeValueHandler the handler to set, or null to store all the values
+     */
+    public void setLargeValueHandler( LargeValueHandler largeValueHandler )
+    {
+        this.largeValueHandler = largeValueHandler;
+    }
+
+
+    /**
+     * @return the minimal length of an attribute value to be streamed to the handler
+     */
+    public int getLargeValueThreshold()
+    {
+        return largeValueThreshold;
+    }
+
+
+    /**
+     * @param largeValueThreshold the minimal length of an attribute value to be streamed
+     * to the handler
+     */
+    public void setLargeValueThreshold( int largeValueThreshold )
+    {
+        this.largeValueThreshold = largeValueThreshold;
+    }
+
+
+    /**
+     * @return <code>true</code> if the received SearchResultEntries keep their attributes
+     * undecoded until they are accessed
+     */
+    public boolean isLazySearchResultEntries()
+    {
+        return lazySearchResultEntries;
+    }
+
+
+    /**
+     * @param lazySearchResultEntries <code>true</code> if the received SearchResultEntries
+     * keep their attributes undecoded until they are accessed. The LargeValueHandler is
+     * then not used.
+     */
+    public void setLazySearchResultEntries( boolean lazySearchResultEntries )
+    {
+        this.lazySearchResultEntries = lazySearchResultEntries;
+    }
+
+
+    /**
+     * @return The maximum number of requests a connection sends without having received
+     * their response, 0 if there is no limit
+     */
+    public int getMaxOutstandingRequests()
+    {
+        return maxOutstandingRequests;
+    }
+
+
+    /**
+     * Set the maximum number of requests a connection sends without having received their
+     * response. Once the limit is reached, the threads sending a new request wait for a
+     * response, in the order they have arrived, up to the connection timeout.
+     *
+     * @param maxOutstandingRequests The maximum number of outstanding requests, 0 for no limit
+     */
+    public void setMaxOutstandingRequests( int maxOutstandingRequests )
+    {
+        this.maxOutstandingRequests = maxOutstandingRequests;
+    }
+
+
+    /**
+     * @return The I/O processor shared by the connections using this configuration, or
+     * null if each connection has its own I/O thread
+     */
+    public IoProcessor<NioSession> getIoProcessor()
+    {
+        return ioProcessor;
+    }
+
+
+    /**
+     * Set the I/O processor shared by the connections using this configuration. The
+     * sessions are spread over its selector threads, instead of each connection having
+     * its own one : a <code>SimpleIoProcessorPool</code> of <code>NioProcessor</code>s,
+     * sized to the number of cores, serves many connections with a few threads.
+     * <br>
+     * The processor is not disposed when the connections are closed : it must be
+     * disposed by its creator, once all the connections have been closed.
+     *
+     * @param ioProcessor The shared I/O processor, or null to give each connection its own
+     * I/O thread
+     */
+    public void setIoProcessor( IoProcessor<NioSession> ioProcessor )
+    {
+        this.ioProcessor = ioProcessor;
+    }
+
+
+    /**
+     * @return The maximum number of bytes a pipeline gathers before writing them
+     */
+    public int getPipelineMaxBatchBytes()
+    {
+        return pipelineMaxBatchBytes;
+    }
+
+
+    /**
+     * Set the maximum number of bytes a pipeline gathers before writing them. A request
+     * bigger than this size is written alone.
+     *
+     * @param pipelineMaxBatchBytes The maximum size of a batch of pipelined requests
+     */
+    public void setPipelineMaxBatchBytes( int pipelineMaxBatchBytes )
+    {
+        this.pipelineMaxBatchBytes = pipelineMaxBatchBytes;
+    }
+
+
+    /**
+     * @return The time, in milliseconds, a batch of pipelined requests is kept before it
+     * is written, 0 if it's only written when it's full or flushed
+     */
+    public long getPipelineLinger()
+    {
+        return pipelineLinger;
+    }
+
+
+    /**
+     * Set the time a batch of pipelined requests is kept, waiting for more requests,
+     * before it is written. With the default value, 0, a batch is only written when it's
+     * full, or when the pipeline is flushed or closed.
+     *
+     * @param pipelineLinger The linger time of the batches, in milliseconds
+     */
+    public void setPipelineLinger( long pipelineLinger )
+    {
+        this.pipelineLinger = pipelineLinger;
+    }
+
+
+    /**
+     * @return The number of responses of a search, received and not read yet, above which
+     * the reads are suspended on the connection, 0 if there is no limit
+     */
+    public int getMaxQueuedSearchResponses()
+    {
+        return maxQueuedSearchResponses;
+    }
+
+
+    /**
+     * Set the number of responses of a search, received and not read yet from its cursor,
+     * above which the reads are suspended on the connection, until half of them have been
+     * read. With the default value, 0, the responses are queued without limit.
+     * <br>
+     * While the reads are suspended, the responses of the other operations sent on the same
+     * connection are not read either : the responses of a search must be read before another
+     * operation is sent on its connection.
+     *
+     * @param maxQueuedSearchResponses The maximum number of queued responses of a search
+     */
+    public void setMaxQueuedSearchResponses( int maxQueuedSearchResponses )
+    {
+        this.maxQueuedSearchResponses = maxQueuedSearchResponses;
+    }
+
+
+    /**
+     * @return The approximate size of the responses of a search, received and not read yet,
+     * above which the reads are suspended on the connection, 0 if there is no limit
+     */
+    public long getMaxQueuedSearchBytes()
+    {
+        return maxQueuedSearchBytes;
+    }
+
+
+    /**
+     * Set the approximate size of the responses of a search, received and not read yet from
+     * its cursor, above which the reads are suspended on the connection, until half of them
+     * have been read. The size of an entry is estimated from the length of its values. With
+     * the default value, 0, the responses are queued without limit.
+     *
+     * @param maxQueuedSearchBytes The maximum size of the queued responses of a search
+     */
+    public void setMaxQueuedSearchBytes( long maxQueuedSearchBytes )
+    {
+        this.maxQueuedSearchBytes = maxQueuedSearchBytes;
+    }
+
+
+    /**
+     * @return true if the received values are decoded without being copied
+     */
+    public boolean isZeroCopy()
+    {
+        return zeroCopy;
+    }
+
+
+    /**
+     * Tells the decoder to read the values of the received messages from the incoming
+     * buffers instead of copying them, a byte[] being only created when a value is used.
+     * This is disabled by default.
+     *
+     * @param zeroCopy true to decode the values without copying them
+     */
+    public void setZeroCopy( boolean zeroCopy )
+    {
+        this.zeroCopy = zeroCopy;
+    }
 }
@@ -90,6 +90,27 @@ public class LdapConnectionWrapper implements LdapConnection, Wrapper<LdapConnec
     }
 
 
+    /**
+     * Get the asynchronous connection a connection wraps, if any
+     *
+     * @param connection The connection, possibly wrapped
+     * @return The connection itself if it's asynchronous, the first asynchronous connection
+     * it wraps, or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    static LdapAsyncConnection unwrapAsync( LdapConnection connection )
+    {
+        LdapConnection current = connection;
+
+        while ( !( current instanceof LdapAsyncConnection ) && ( current instanceof Wrapper ) )
+        {
+            current = ( ( Wrapper<LdapConnection> ) current ).wrapped();
+        }
+
+        return current instanceof LdapAsyncConnection ? ( LdapAsyncConnection ) current : null;
+    }
+
+
     /**
      * {@inheritDoc}
      */
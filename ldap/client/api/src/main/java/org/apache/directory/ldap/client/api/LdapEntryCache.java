@@ -0,0 +1,528 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api;
+
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.directory.api.asn1.EncoderException;
+import org.apache.directory.api.i18n.I18n;
+import org.apache.directory.api.ldap.codec.api.LdapApiService;
+import org.apache.directory.api.ldap.codec.api.LdapApiServiceFactory;
+import org.apache.directory.api.ldap.codec.api.LdapEncoder;
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.message.SearchResultEntry;
+import org.apache.directory.api.ldap.model.message.SearchResultEntryImpl;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.util.Strings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A read-through cache for the entries read by a lookup. The entries are cached for a given time,
+ * by Dn and requested attributes : a lookup of the same entry with other attributes is
+ * a distinct cache entry. The Dns are compared as {@link Dn#equals(Object)} does, which requires a
+ * schema aware Dn to ignore the case of the values.
+ * <br>
+ * The cache is bounded by the total size of the entries, measured as the length of their encoded
+ * SearchResultEntry. When this size is exceeded, the least recently read Dns are evicted.
+ * <br>
+ * The cached entries are never modified : a copy is returned on each hit. The entries modified
+ * through the cache users ({@link CachingLdapConnection}, the LdapConnectionTemplate) are
+ * invalidated, the modifications done by other clients are seen once the cached entry has
+ * expired, or once {@link #invalidate(Dn)} has been called.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LdapEntryCache
+{
+    /** The logger */
+    private static final Logger LOG = LoggerFactory.getLogger( LdapEntryCache.class );
+
+    /** The codec used to weigh the entries */
+    private final LdapApiService codec;
+
+    /** The maximum total weight of the cached entries */
+    private final long maxWeight;
+
+    /** The time an entry is kept, in nanoseconds */
+    private final long timeToLive;
+
+    /** The cached entries by Dn, in access order. Guarded by the cache */
+    private final LinkedHashMap<Dn, CachedDn> cachedDns = new LinkedHashMap<>( 16, 0.75f, true );
+
+    /** The total weight of the cached entries. Guarded by the cache */
+    private long weight;
+
+    /** Incremented on each invalidation, so that an entry read before an invalidation is not cached */
+    private final AtomicLong generation = new AtomicLong();
+
+    /** The number of lookups answered by the cache */
+    private final AtomicLong hitCount = new AtomicLong();
+
+    /** The number of lookups sent to the server */
+    private final AtomicLong missCount = new AtomicLong();
+
+    /** The number of entries evicted because the cache was full */
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /** The number of entries removed by an invalidation */
+    private final AtomicLong invalidationCount = new AtomicLong();
+
+
+    /**
+     * The entries cached for a Dn, by requested attributes
+     */
+    private static final class CachedDn
+    {
+        /** The Dn */
+        private final Dn dn;
+
+        /** The entries */
+        private final Map<String, CachedEntry> entries = new HashMap<>();
+
+        /** The total weight of the entries */
+        private long weight;
+
+
+        private CachedDn( Dn dn )
+        {
+            this.dn = dn;
+        }
+    }
+
+
+    /**
+     * A cached entry
+     */
+    private static final class CachedEntry
+    {
+        /** The entry */
+        private final Entry entry;
+
+        /** The encoded size of the entry */
+        private final long weight;
+
+        /** The date the entry expires, as a System.nanoTime() value */
+        private final long expiration;
+
+
+        private CachedEntry( Entry entry, long weight, long expiration )
+        {
+            this.entry = entry;
+            this.weight = weight;
+            this.expiration = expiration;
+        }
+    }
+
+
+    /**
+     * Creates a new instance of LdapEntryCache, weighing the entries with the default codec.
+     *
+     * @param maxWeight The maximum total size of the encoded entries, in bytes
+     * @param timeToLive The time an entry is kept, in milliseconds
+     */
+    public LdapEntryCache( long maxWeight, long timeToLive )
+    {
+        this( LdapApiServiceFactory.getSingleton(), maxWeight, timeToLive );
+    }
+
+
+    /**
+     * Creates a new instance of LdapEntryCache.
+     *
+     * @param codec The codec used to weigh the entries
+     * @param maxWeight The maximum total size of the encoded entries, in bytes
+     * @param timeToLive The time an entry is kept, in milliseconds
+     */
+    public LdapEntryCache( LdapApiService codec, long maxWeight, long timeToLive )
+    {
+        this.codec = codec;
+        this.maxWeight = maxWeight;
+        this.timeToLive = TimeUnit.MILLISECONDS.toNanos( timeToLive );
+    }
+
+
+    /**
+     * Reads an entry from the cache, or looks it up and caches it if it's not there.
+     *
+     * @param connection The connection used on a cache miss
+     * @param dn The Dn of the entry
+     * @param attributes The requested attributes. All the user attributes are returned if none is given
+     * @return The entry, or null if the entry does not exist
+     * @throws LdapException If the entry can't be looked up
+     */
+    public Entry lookup( LdapConnection connection, Dn dn, String... attributes ) throws LdapException
+    {
+        Entry entry = get( dn, attributes );
+
+        if ( entry != null )
+        {
+            return entry;
+        }
+
+        return load( connection, dn, attributes );
+    }
+
+
+    /**
+     * Looks up an entry on the server, and caches it. The cache is not read : this is used
+     * after a miss.
+     *
+     * @param connection The connection used to look up the entry
+     * @param dn The Dn of the entry
+     * @param attributes The requested attributes. All the user attributes are returned if none is given
+     * @return The entry, or null if the entry does not exist
+     * @throws LdapException If the entry can't be looked up
+     */
+    public Entry load( LdapConnection connection, Dn dn, String... attributes ) throws LdapException
+    {
+        long lookupGeneration = generation.get();
+        Entry entry;
+
+        if ( ( attributes == null ) || ( attributes.length == 0 ) )
+        {
+            entry = connection.lookup( dn );
+        }
+        else
+        {
+            entry = connection.lookup( dn, attributes );
+        }
+
+        if ( entry != null )
+        {
+            put( dn, attributesKey( attributes ), entry, lookupGeneration );
+        }
+
+        return entry;
+    }
+
+
+    /**
+     * Reads an entry from the cache.
+     *
+     * @param dn The Dn of the entry
+     * @param attributes The requested attributes. All the user attributes are requested if none is given
+     * @return A copy of the cached entry, or null if it's not cached
+     */
+    public Entry get( Dn dn, String... attributes )
+    {
+        return cached( dn, attributesKey( attributes ) );
+    }
+
+
+    /**
+     * Reads an entry from the cache, and counts the hit or the miss
+     */
+    private Entry cached( Dn dn, String attributesKey )
+    {
+        CachedEntry cachedEntry;
+
+        synchronized ( this )
+        {
+            CachedDn cachedDn = cachedDns.get( dn );
+            cachedEntry = cachedDn == null ? null : cachedDn.entries.get( attributesKey );
+
+            if ( ( cachedEntry != null ) && ( System.nanoTime() - cachedEntry.expiration >= 0L ) )
+            {
+                remove( cachedDn, attributesKey );
+                cachedEntry = null;
+            }
+        }
+
+        if ( cachedEntry == null )
+        {
+            missCount.incrementAndGet();
+
+            return null;
+        }
+
+        hitCount.incrementAndGet();
+
+        return cachedEntry.entry.clone();
+    }
+
+
+    /**
+     * Caches an entry read from the server, unless an invalidation has been done since the lookup
+     * has been sent : the entry may be obsolete.
+     */
+    private void put( Dn dn, String attributesKey, Entry entry, long lookupGeneration )
+    {
+        long entryWeight = weigh( entry );
+
+        if ( ( entryWeight < 0L ) || ( entryWeight > maxWeight ) )
+        {
+            return;
+        }
+
+        CachedEntry cachedEntry = new CachedEntry( entry.clone(), entryWeight, System.nanoTime() + timeToLive );
+
+        synchronized ( this )
+        {
+            if ( generation.get() != lookupGeneration )
+            {
+                return;
+            }
+
+            CachedDn cachedDn = cachedDns.computeIfAbsent( dn, CachedDn::new );
+            CachedEntry replaced = cachedDn.entries.put( attributesKey, cachedEntry );
+            long addedWeight = replaced == null ? entryWeight : entryWeight - replaced.weight;
+            cachedDn.weight += addedWeight;
+            weight += addedWeight;
+
+            // Evict the least recently read Dns, the one just read excepted
+            Iterator<CachedDn> eldest = cachedDns.values().iterator();
+
+            while ( ( weight > maxWeight ) && eldest.hasNext() )
+            {
+                CachedDn evicted = eldest.next();
+
+                if ( evicted != cachedDn )
+                {
+                    eldest.remove();
+                    weight -= evicted.weight;
+                    evictionCount.addAndGet( evicted.entries.size() );
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Removes an entry cached for a Dn, and the Dn itself if it has no more entries. Must be
+     * called while holding the cache lock.
+     */
+    private void remove( CachedDn cachedDn, String attributesKey )
+    {
+        CachedEntry removed = cachedDn.entries.remove( attributesKey );
+
+        if ( removed != null )
+        {
+            cachedDn.weight -= removed.weight;
+            weight -= removed.weight;
+        }
+
+        if ( cachedDn.entries.isEmpty() )
+        {
+            cachedDns.remove( cachedDn.dn );
+        }
+    }
+
+
+    /**
+     * @return The size of the encoded SearchResultEntry, or -1 if the entry can't be encoded
+     */
+    private long weigh( Entry entry )
+    {
+        SearchResultEntry searchResultEntry = new SearchResultEntryImpl();
+        searchResultEntry.setEntry( entry );
+
+        try
+        {
+            return LdapEncoder.preEncode( codec, searchResultEntry ).getBodyLength();
+        }
+        catch ( EncoderException ee )
+        {
+            if ( LOG.isDebugEnabled() )
+            {
+                LOG.debug( I18n.msg( I18n.MSG_04179_ENTRY_NOT_CACHED, entry.getDn(), ee.getMessage() ) );
+            }
+
+            return -1L;
+        }
+    }
+
+
+    /**
+     * @return The key of the requested attributes : their lower cased names, sorted
+     */
+    private static String attributesKey( String... attributes )
+    {
+        if ( ( attributes == null ) || ( attributes.length == 0 ) )
+        {
+            return SchemaConstants.ALL_USER_ATTRIBUTES;
+        }
+
+        if ( attributes.length == 1 )
+        {
+            return Strings.toLowerCaseAscii( attributes[0] );
+        }
+
+        TreeSet<String> sorted = new TreeSet<>();
+
+        for ( String attribute : attributes )
+        {
+            sorted.add( Strings.toLowerCaseAscii( attribute ) );
+        }
+
+        return String.join( ",", sorted );
+    }
+
+
+    /**
+     * Removes the entries cached for a Dn.
+     *
+     * @param dn The Dn of the modified entry
+     */
+    public void invalidate( Dn dn )
+    {
+        synchronized ( this )
+        {
+            generation.incrementAndGet();
+            CachedDn removed = cachedDns.remove( dn );
+
+            if ( removed != null )
+            {
+                weight -= removed.weight;
+                invalidationCount.addAndGet( removed.entries.size() );
+            }
+        }
+    }
+
+
+    /**
+     * Removes the entries cached for a Dn and for all its descendants, when an entry is
+     * renamed or moved.
+     *
+     * @param dn The Dn of the root of the modified subtree
+     */
+    public void invalidateSubtree( Dn dn )
+    {
+        synchronized ( this )
+        {
+            generation.incrementAndGet();
+            Iterator<CachedDn> iterator = cachedDns.values().iterator();
+
+            while ( iterator.hasNext() )
+            {
+                CachedDn cachedDn = iterator.next();
+
+                if ( cachedDn.dn.isDescendantOf( dn ) )
+                {
+                    iterator.remove();
+                    weight -= cachedDn.weight;
+                    invalidationCount.addAndGet( cachedDn.entries.size() );
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Removes all the cached entries.
+     */
+    public void invalidateAll()
+    {
+        synchronized ( this )
+        {
+            generation.incrementAndGet();
+
+            for ( CachedDn cachedDn : cachedDns.values() )
+            {
+                invalidationCount.addAndGet( cachedDn.entries.size() );
+            }
+
+            cachedDns.clear();
+            weight = 0L;
+        }
+    }
+
+
+    /**
+     * @return The number of lookups answered by the cache
+     */
+    public long getHitCount()
+    {
+        return hitCount.get();
+    }
+
+
+    /**
+     * @return The number of lookups which were not answered by the cache
+     */
+    public long getMissCount()
+    {
+        return missCount.get();
+    }
+
+
+    /**
+     * @return The number of entries evicted because the cache was full
+     */
+    public long getEvictionCount()
+    {
+        return evictionCount.get();
+    }
+
+
+    /**
+     * @return The number of entries removed by an invalidation
+     */
+    public long getInvalidationCount()
+    {
+        return invalidationCount.get();
+    }
+
+
+    /**
+     * @return The number of cached entries
+     */
+    public synchronized int getSize()
+    {
+        int size = 0;
+
+        for ( CachedDn cachedDn : cachedDns.values() )
+        {
+            size += cachedDn.entries.size();
+        }
+
+        return size;
+    }
+
+
+    /**
+     * @return The total size of the cached entries, in bytes
+     */
+    public synchronized long getWeight()
+    {
+        return weight;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return "LdapEntryCache[hits=" + hitCount + ", misses=" + missCount + ", evictions=" + evictionCount
+            + ", invalidations=" + invalidationCount + "]";
+    }
+}
@@ -35,14 +35,20 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.security.PrivilegedExceptionAction;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManager;
@@ -63,6 +69,8 @@ import org.apache.directory.api.ldap.codec.api.LdapApiServiceFactory;
 import org.apache.directory.api.ldap.codec.api.LdapDecoder;
 import org.apache.directory.api.ldap.codec.api.LdapMessageContainer;
 import org.apache.directory.api.ldap.codec.api.MessageEncoderException;
+import org.apache.directory.api.ldap.codec.api.PreEncodedMessage;
+import org.apache.directory.api.ldap.codec.api.ReadSuspensions;
 import org.apache.directory.api.ldap.codec.api.SchemaBinaryAttributeDetector;
 import org.apache.directory.api.ldap.extras.extended.startTls.StartTlsRequestImpl;
 import org.apache.directory.api.ldap.model.constants.LdapConstants;
@@ -106,6 +114,7 @@ import org.apache.directory.api.ldap.model.message.ExtendedResponse;
 import org.apache.directory.api.ldap.model.message.IntermediateResponse;
 import org.apache.directory.api.ldap.model.message.LdapResult;
 import org.apache.directory.api.ldap.model.message.Message;
+import org.apache.directory.api.ldap.model.message.MessageTypeEnum;
 import org.apache.directory.api.ldap.model.message.ModifyDnRequest;
 import org.apache.directory.api.ldap.model.message.ModifyDnRequestImpl;
 import org.apache.directory.api.ldap.model.message.ModifyDnResponse;
@@ -163,8 +172,10 @@ import org.apache.directory.ldap.client.api.future.SearchFuture;
 import org.apache.mina.core.filterchain.IoFilter;
 import org.apache.mina.core.future.CloseFuture;
 import org.apache.mina.core.future.ConnectFuture;
+import org.apache.mina.core.future.IoFuture;
 import org.apache.mina.core.future.WriteFuture;
 import org.apache.mina.core.service.IoConnector;
+import org.apache.mina.core.service.IoProcessor;
 import org.apache.mina.core.session.IoSession;
 import org.apache.mina.filter.FilterEvent;
 import org.apache.mina.filter.codec.ProtocolCodecFilter;
@@ -172,6 +183,7 @@ import org.apache.mina.filter.codec.ProtocolEncoderException;
 import org.apache.mina.filter.ssl.SslEvent;
 import org.apache.mina.filter.ssl.SslFilter;
 import org.apache.mina.transport.socket.SocketSessionConfig;
+import org.apache.mina.transport.socket.nio.NioSession;
 import org.apache.mina.transport.socket.nio.NioSocketConnector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -184,6 +196,23 @@ import org.slf4j.LoggerFactory;
  * A connection instance is necessary to send requests to the server. The connection
  * is valid until either the client closes it, the server closes it or the
  * client does an unbind.
+ * <br>
+ * The operations can be sent concurrently by many threads on the same connection : each
+ * request gets its own message ID, and the responses are dispatched to the request
+ * futures, whatever the order they are received in. The bind and unbind operations,
+ * the StartTLS extended operation and the connection and closure are not
+ * multiplexed though : they change the state of the whole connection, and must not be
+ * sent while other operations are in progress. A cursor must only be read by one
+ * thread.
+ * <br>
+ * When {@link LdapConnectionConfig#setMaxOutstandingRequests(int)} is set, the number of
+ * requests waiting for their response is bounded : the threads sending a request when
+ * the limit is reached wait, in their arrival order, until a response is received.
+ * <br>
+ * The blocking operations never wait on a monitor : the threads waiting for a write, a
+ * connection or a response are parked on a lock or a latch, and signaled as soon as the
+ * awaited event happens. Many virtual threads can then share a connection without
+ * pinning their carrier threads.
  *
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
@@ -207,6 +236,9 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
     /** A mutex used to avoid a double close of the connector */
     private ReentrantLock connectorMutex = new ReentrantLock();
 
+    /** A mutex serializing the writes, as the codec filter shares one output queue per session */
+    private final ReentrantLock writeMutex = new ReentrantLock();
+
     /**
      * The created session, created when we open a connection with
      * the Ldap server.
@@ -216,6 +248,12 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
     /** a map to hold the ResponseFutures for all operations */
     private Map<Integer, ResponseFuture<? extends Response>> futureMap = new ConcurrentHashMap<>();
 
+    /** The permits for the requests waiting for their response, if their number is bounded */
+    private Semaphore outstandingRequests;
+
+    /** Set while a thread passes a received response to its future */
+    private static final ThreadLocal<Boolean> RECEIVING_RESPONSE = new ThreadLocal<>();
+
     /** list of controls supported by the server */
     private List<String> supportedControls;
 
@@ -293,6 +331,12 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
         }
         
         this.timeout = config.getTimeout();
+
+        if ( config.getMaxOutstandingRequests() > 0 )
+        {
+            // A fair semaphore, so that the waiting requests are sent in order
+            outstandingRequests = new Semaphore( config.getMaxOutstandingRequests(), true );
+        }
     }
 
 
@@ -498,8 +542,18 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
      */
     private void createConnector() throws LdapException
     {
-        // Use only one thread inside the connector
-        connector = new NioSocketConnector( 1 );
+        IoProcessor<NioSession> ioProcessor = config.getIoProcessor();
+
+        if ( ioProcessor == null )
+        {
+            // Use only one thread inside the connector
+            connector = new NioSocketConnector( 1 );
+        }
+        else
+        {
+            // Attach to the shared processor, which is not disposed with the connector
+            connector = new NioSocketConnector( ioProcessor );
+        }
         
         if ( connectionConfig != null )
         {
@@ -576,14 +630,62 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
     }
 
 
-    private void addToFutureMap( int messageId, ResponseFuture<? extends Response> future )
+    /**
+     * Register the future of a request, before it is sent. If the number of outstanding
+     * requests is bounded and has been reached, wait until a response is received.
+     *
+     * @param messageId The request message ID
+     * @param future The request future
+     * @throws LdapException If no response has been received before the timeout, or if
+     * the thread has been interrupted
+     */
+    private void addToFutureMap( int messageId, ResponseFuture<? extends Response> future ) throws LdapException
     {
         if ( LOG.isDebugEnabled() )
         {
             LOG.debug( I18n.msg( I18n.MSG_04106_ADDING, messageId, future.getClass().getName() ) );
         }
-        
-        futureMap.put( messageId, future );
+
+        if ( outstandingRequests != null )
+        {
+            acquireOutstandingRequest();
+        }
+
+        if ( ( futureMap.put( messageId, future ) != null ) && ( outstandingRequests != null ) )
+        {
+            // The message ID was already used, its permit is not needed anymore
+            outstandingRequests.release();
+        }
+    }
+
+
+    /**
+     * Wait until the number of outstanding requests is below the limit
+     *
+     * @throws LdapException If no response has been received before the timeout, or if
+     * the thread has been interrupted
+     */
+    private void acquireOutstandingRequest() throws LdapException
+    {
+        try
+        {
+            // Don't wait when a response is processed, as it would block the I/O thread
+            long wait = ( RECEIVING_RESPONSE.get() == null ) ? timeout : 0L;
+
+            if ( !outstandingRequests.tryAcquire( wait, TimeUnit.MILLISECONDS ) )
+            {
+                String msg = I18n.err( I18n.ERR_04182_TOO_MANY_OUTSTANDING_REQUESTS, wait, futureMap.size() );
+                LOG.error( msg );
+
+                throw new LdapException( msg );
+            }
+        }
+        catch ( InterruptedException ie )
+        {
+            Thread.currentThread().interrupt();
+
+            throw new LdapException( ie.getMessage(), ie );
+        }
     }
 
 
@@ -591,9 +693,17 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
     {
         ResponseFuture<? extends Response> future = futureMap.remove( messageId );
 
-        if ( LOG.isDebugEnabled() && ( future != null ) )
+        if ( future != null )
         {
-            LOG.debug( I18n.msg( I18n.MSG_04126_REMOVING, messageId, future.getClass().getName() ) );
+            if ( LOG.isDebugEnabled() )
+            {
+                LOG.debug( I18n.msg( I18n.MSG_04126_REMOVING, messageId, future.getClass().getName() ) );
+            }
+
+            if ( outstandingRequests != null )
+            {
+                outstandingRequests.release();
+            }
         }
 
         return future;
@@ -708,7 +818,7 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
             // Wait until it's established
             try
             {
-                result = connectionFuture.await( timeout );
+                result = await( connectionFuture, timeout );
             }
             catch ( InterruptedException e )
             {
@@ -749,10 +859,10 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
                             LOG.debug( I18n.msg( I18n.MSG_04143_CONNECTION_RETRYING ) );
                         }
 
-                        // Wait 500 ms and retry
+                        // Wait 500 ms, without going past the timeout, and retry
                         try
                         {
-                            Thread.sleep( 500 );
+                            Thread.sleep( Math.max( 0L, Math.min( 500L, maxRetry - System.currentTimeMillis() ) ) );
                         }
                         catch ( InterruptedException e )
                         {
@@ -877,10 +987,9 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
                         LOG.error( I18n.err( I18n.ERR_04113_ERROR_PROCESSING_NOD, responseFuture ), e );
                     }
 
-                    futureMap.remove( messageId.get() );
                 }
 
-                futureMap.clear();
+                clearMaps();
             } );
 
         // Get back the session
@@ -908,8 +1017,7 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
                 atDetector = new SchemaBinaryAttributeDetector( schemaManager );
             }
 
-            ldapSession.setAttribute( LdapDecoder.MESSAGE_CONTAINER_ATTR,
-                new LdapMessageContainer<Message>( codec, atDetector ) );
+            ldapSession.setAttribute( LdapDecoder.MESSAGE_CONTAINER_ATTR, createMessageContainer( atDetector ) );
         }
 
         // Initialize the MessageId
@@ -1137,7 +1245,7 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
         addToFutureMap( newId, addFuture );
 
         // Send the request to the server
-        writeRequest( addRequest );
+        writeRequest( newId, addRequest );
 
         // Ok, done return the future
         return addFuture;
@@ -1209,7 +1317,7 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
         abandonRequest.setMessageId( newId );
 
         // Send the request to the server
-        ldapSession.write( abandonRequest );
+        write( abandonRequest );
 
         // remove the associated listener if any
         int abandonId = abandonRequest.getAbandoned();
@@ -1559,7 +1667,7 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
 
         addToFutureMap( newId, bindFuture );
 
-        writeRequest( bindRequest );
+        writeRequest( newId, bindRequest );
 
         // Ok, done return the future
         return bindFuture;
@@ -2261,11 +2369,80 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
             LOG.debug( I18n.msg( I18n.MSG_04104_SENDING_REQUEST, searchRequest ) );
         }
 
-        SearchFuture searchFuture = new SearchFuture( this, searchRequest.getMessageId() );
+        SearchFuture searchFuture = newSearchFuture( searchRequest.getMessageId() );
         addToFutureMap( searchRequest.getMessageId(), searchFuture );
 
         // Send the request to the server
-        writeRequest( searchRequest );
+        writeRequest( searchRequest.getMessageId(), searchRequest );
+
+        // Check that the future hasn't be canceled
+        if ( searchFuture.isCancelled() )
+        {
+            // Throw an exception here
+            throw new LdapException( searchFuture.getCause() );
+        }
+
+        // Ok, done return the future
+        return searchFuture;
+    }
+
+
+    /**
+     * Performs a search using a SearchRequest which has been pre-encoded with
+     * {@link org.apache.directory.api.ldap.codec.api.LdapEncoder#preEncode(LdapApiService, Message)}.
+     * Only the message ID is encoded, so sending the same request many times is cheap.
+     * <br>
+     * The request has been frozen when it was pre-encoded : if the referrals have to be
+     * ignored, the ManageDsaIT control must have been added to the request before.
+     *
+     * @param searchRequest The pre-encoded SearchRequest
+     * @return A future
+     * @throws LdapException If the search request can't be sent
+     */
+    public SearchFuture searchAsync( PreEncodedMessage searchRequest ) throws LdapException
+    {
+        if ( searchRequest == null )
+        {
+            String msg = I18n.err( I18n.ERR_04130_CANNOT_PROCESS_NULL_SEARCH_REQ );
+
+            if ( LOG.isDebugEnabled() )
+            {
+                LOG.debug( msg );
+            }
+
+            throw new IllegalArgumentException( msg );
+        }
+
+        if ( searchRequest.getMessageType() != MessageTypeEnum.SEARCH_REQUEST )
+        {
+            String msg = I18n.err( I18n.ERR_04181_NOT_A_SEARCH_REQUEST, searchRequest.getMessageType() );
+
+            if ( LOG.isDebugEnabled() )
+            {
+                LOG.debug( msg );
+            }
+
+            throw new IllegalArgumentException( msg );
+        }
+
+        // try to connect, if we aren't already connected.
+        connect();
+
+        // If the session has not been establish, or is closed, we get out immediately
+        checkSession();
+
+        PreEncodedMessage request = searchRequest.withMessageId( messageId.incrementAndGet() );
+
+        if ( LOG.isDebugEnabled() )
+        {
+            LOG.debug( I18n.msg( I18n.MSG_04104_SENDING_REQUEST, request ) );
+        }
+
+        SearchFuture searchFuture = newSearchFuture( request.getMessageId() );
+        addToFutureMap( request.getMessageId(), searchFuture );
+
+        // Send the request to the server
+        writeRequest( request.getMessageId(), request );
 
         // Check that the future hasn't be canceled
         if ( searchFuture.isCancelled() )
@@ -2279,6 +2456,213 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
     }
 
 
+    /**
+     * Create a search which responses are published as the subscriber requests them. The
+     * search is sent when the subscriber subscribes. The reads are suspended on the
+     * connection when more than {@link SearchPublisher#DEFAULT_MAX_PENDING_RESPONSES}
+     * responses have not been requested yet.
+     *
+     * @param searchRequest The SearchRequest
+     * @return The publisher of the search responses
+     */
+    public SearchPublisher searchPublisher( SearchRequest searchRequest )
+    {
+        return searchPublisher( searchRequest, SearchPublisher.DEFAULT_MAX_PENDING_RESPONSES );
+    }
+
+
+    /**
+     * Create a search which responses are published as the subscriber requests them. The
+     * search is sent when the subscriber subscribes.
+     *
+     * @param searchRequest The SearchRequest
+     * @param maxPendingResponses The number of responses not requested yet above which
+     * the reads are suspended on the connection
+     * @return The publisher of the search responses
+     */
+    public SearchPublisher searchPublisher( SearchRequest searchRequest, int maxPendingResponses )
+    {
+        if ( searchRequest == null )
+        {
+            String msg = I18n.err( I18n.ERR_04130_CANNOT_PROCESS_NULL_SEARCH_REQ );
+
+            if ( LOG.isDebugEnabled() )
+            {
+                LOG.debug( msg );
+            }
+
+            throw new IllegalArgumentException( msg );
+        }
+
+        return new SearchPublisher( this, searchRequest, maxPendingResponses );
+    }
+
+
+    /**
+     * Create the future of a search, which queue is bounded as configured
+     *
+     * @param searchId The search message ID
+     * @return The SearchFuture
+     */
+    private SearchFuture newSearchFuture( int searchId )
+    {
+        SearchFuture searchFuture = new SearchFuture( this, searchId );
+        IoSession session = ldapSession;
+
+        if ( ( session != null )
+            && ( ( config.getMaxQueuedSearchResponses() > 0 ) || ( config.getMaxQueuedSearchBytes() > 0 ) ) )
+        {
+            // The suspensions are bound to the session the search is sent on : they are
+            // dropped with it, and a new session is not suspended by a search of the old one
+            searchFuture.setQueueCapacity( config.getMaxQueuedSearchResponses(), config.getMaxQueuedSearchBytes(),
+                () -> ReadSuspensions.suspendRead( session ), () -> ReadSuspensions.resumeRead( session ) );
+        }
+
+        return searchFuture;
+    }
+
+
+    /**
+     * Stop reading the responses sent by the server, until {@link #resumeRead()} is called.
+     * The suspensions are counted : the reads are resumed once each suspension has been
+     * followed by a resumption. They are dropped when the session is closed.
+     */
+    void suspendRead()
+    {
+        IoSession session = ldapSession;
+
+        if ( session != null )
+        {
+            ReadSuspensions.suspendRead( session );
+        }
+    }
+
+
+    /**
+     * Resume reading the responses sent by the server, if no other suspension is pending
+     */
+    void resumeRead()
+    {
+        IoSession session = ldapSession;
+
+        if ( session != null )
+        {
+            ReadSuspensions.resumeRead( session );
+        }
+    }
+
+
+    /**
+     * Create a pipeline, which writes the requests by batches, using the maximum batch
+     * size and linger time of the connection configuration.
+     *
+     * @return The request pipeline
+     * @throws LdapException If the connection can't be established
+     */
+    public RequestPipeline pipeline() throws LdapException
+    {
+        // try to connect, if we aren't already connected.
+        connect();
+
+        return new RequestPipeline( this, config.getPipelineMaxBatchBytes(), config.getPipelineLinger() );
+    }
+
+
+    /**
+     * Send some Add, Modify, Delete, ModifyDn or Compare requests without waiting for
+     * their responses. They are encoded together, and written in as few batches as the
+     * maximum batch size of the connection configuration permits.
+     *
+     * @param requests The requests to send
+     * @return The futures of the requests, in the same order
+     * @throws LdapException If one of the requests can't be sent
+     */
+    public List<ResponseFuture<? extends Response>> pipeline( Collection<? extends Request> requests )
+        throws LdapException
+    {
+        List<ResponseFuture<? extends Response>> futures = new ArrayList<>( requests.size() );
+
+        try ( RequestPipeline pipeline = pipeline() )
+        {
+            for ( Request request : requests )
+            {
+                futures.add( pipeline.send( request ) );
+            }
+        }
+
+        return futures;
+    }
+
+
+    /**
+     * Give a message ID to a request, and register its future
+     *
+     * @param request The request, which can be an Add, Modify, Delete, ModifyDn or Compare
+     * request
+     * @return The future of the request
+     * @throws LdapException If the connection is closed, or if no response has been
+     * received before the timeout while the number of outstanding requests is at its limit
+     */
+    ResponseFuture<? extends Response> register( Request request ) throws LdapException
+    {
+        checkSession();
+
+        int newId = messageId.incrementAndGet();
+        ResponseFuture<? extends Response> future;
+
+        switch ( request.getType() )
+        {
+            case ADD_REQUEST:
+                future = new AddFuture( this, newId );
+                break;
+
+            case MODIFY_REQUEST:
+                future = new ModifyFuture( this, newId );
+                break;
+
+            case DEL_REQUEST:
+                future = new DeleteFuture( this, newId );
+                break;
+
+            case MODIFYDN_REQUEST:
+                future = new ModifyDnFuture( this, newId );
+                break;
+
+            case COMPARE_REQUEST:
+                future = new CompareFuture( this, newId );
+                break;
+
+            default:
+                throw new IllegalArgumentException( I18n.err( I18n.ERR_04185_CANNOT_PIPELINE_REQUEST,
+                    request.getType() ) );
+        }
+
+        request.setMessageId( newId );
+        addToFutureMap( newId, future );
+
+        return future;
+    }
+
+
+    /**
+     * @return <code>true</code> if registering a new request would wait for a response,
+     * as the maximum number of outstanding requests has been reached
+     */
+    boolean isOutstandingRequestsLimitReached()
+    {
+        return ( outstandingRequests != null ) && ( outstandingRequests.availablePermits() == 0 );
+    }
+
+
+    /**
+     * @return The number of requests waiting for their response
+     */
+    int getOutstandingRequestCount()
+    {
+        return futureMap.size();
+    }
+
+
     /**
      * {@inheritDoc}
      */
@@ -2332,9 +2716,9 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
 
         // Send the request to the server
         // Use this for logging instead: WriteFuture unbindFuture = ldapSession.write( unbindRequest )
-        WriteFuture unbindFuture = ldapSession.write( unbindRequest );
+        WriteFuture unbindFuture = write( unbindRequest );
 
-        unbindFuture.awaitUninterruptibly( timeout );
+        awaitUninterruptibly( unbindFuture, timeout );
 
         authenticated.set( false );
 
@@ -2482,11 +2866,12 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
             }
         }
 
+        // Remove the future from the map first, so that its permit is available
+        // to the requests sent when the response is set
+        removeFromFutureMaps( responseId );
+
         // Store the response into the future
         addFuture.set( addResponse );
-
-        // Remove the future from the map
-        removeFromFutureMaps( responseId );
     }
 
 
@@ -2521,11 +2906,12 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
             }
         }
 
+        // Remove the future from the map first, so that its permit is available
+        // to the requests sent when the response is set
+        removeFromFutureMaps( responseId );
+
         // Store the response into the future
         bindFuture.set( bindResponse );
-
-        // Remove the future from the map
-        removeFromFutureMaps( responseId );
     }
 
 
@@ -2555,11 +2941,12 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
             }
         }
 
+        // Remove the future from the map first, so that its permit is available
+        // to the requests sent when the response is set
+        removeFromFutureMaps( responseId );
+
         // Store the response into the future
         compareFuture.set( compareResponse );
-
-        // Remove the future from the map
-        removeFromFutureMaps( responseId );
     }
 
 
@@ -2588,11 +2975,12 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
             }
         }
 
+        // Remove the future from the map first, so that its permit is available
+        // to the requests sent when the response is set
+        removeFromFutureMaps( responseId );
+
         // Store the response into the future
         deleteFuture.set( deleteResponse );
-
-        // Remove the future from the map
-        removeFromFutureMaps( responseId );
     }
 
 
@@ -2624,11 +3012,12 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
         
         extendedResponse = handleOpaqueResponse( extendedResponse, extendedFuture );
 
+        // Remove the future from the map first, so that its permit is available
+        // to the requests sent when the response is set
+        removeFromFutureMaps( responseId );
+
         // Store the response into the future
         extendedFuture.set( extendedResponse );
-
-        // Remove the future from the map
-        removeFromFutureMaps( responseId );
     }
 
 
@@ -2693,11 +3082,12 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
             }
         }
 
+        // Remove the future from the map first, so that its permit is available
+        // to the requests sent when the response is set
+        removeFromFutureMaps( responseId );
+
         // Store the response into the future
         modifyFuture.set( modifyResponse );
-
-        // Remove the future from the map
-        removeFromFutureMaps( responseId );
     }
 
 
@@ -2726,11 +3116,12 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
             }
         }
 
+        // Remove the future from the map first, so that its permit is available
+        // to the requests sent when the response is set
+        removeFromFutureMaps( responseId );
+
         // Store the response into the future
         modifyDnFuture.set( modifyDnResponse );
-
-        // Remove the future from the map
-        removeFromFutureMaps( responseId );
     }
 
 
@@ -2759,11 +3150,12 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
             }
         }
 
+        // Remove the future from the map first, so that its permit is available
+        // to the requests sent when the response is set
+        removeFromFutureMaps( responseId );
+
         // Store the response into the future
         searchFuture.set( searchResultDone );
-
-        // Remove the future from the map
-        removeFromFutureMaps( responseId );
     }
 
 
@@ -2823,6 +3215,29 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
      */
     @Override
     public void messageReceived( IoSession session, Object message ) throws Exception
+    {
+        // The actions depending on the future may send requests, which must not block
+        RECEIVING_RESPONSE.set( Boolean.TRUE );
+
+        try
+        {
+            dispatchResponse( session, message );
+        }
+        finally
+        {
+            RECEIVING_RESPONSE.remove();
+        }
+    }
+
+
+    /**
+     * Pass a received response to the future of its request
+     *
+     * @param session The session that received a message
+     * @param message The received message
+     * @throws Exception If there is some error while processing the message
+     */
+    private void dispatchResponse( IoSession session, Object message ) throws Exception
     {
         // Feed the response and store it into the session
         Response response = ( Response ) message;
@@ -3167,7 +3582,7 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
         addToFutureMap( newId, modifyFuture );
 
         // Send the request to the server
-        writeRequest( modRequest );
+        writeRequest( newId, modRequest );
 
         // Ok, done return the future
         return modifyFuture;
@@ -3569,7 +3984,7 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
         addToFutureMap( newId, modifyDnFuture );
 
         // Send the request to the server
-        writeRequest( modDnRequest );
+        writeRequest( newId, modDnRequest );
 
         // Ok, done return the future
         return modifyDnFuture;
@@ -3782,7 +4197,7 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
         addToFutureMap( newId, deleteFuture );
 
         // Send the request to the server
-        writeRequest( deleteRequest );
+        writeRequest( newId, deleteRequest );
 
         // Ok, done return the future
         return deleteFuture;
@@ -3994,7 +4409,7 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
         addToFutureMap( newId, compareFuture );
 
         // Send the request to the server
-        writeRequest( compareRequest );
+        writeRequest( newId, compareRequest );
 
         // Ok, done return the future
         return compareFuture;
@@ -4188,13 +4603,168 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
         addToFutureMap( newId, extendedFuture );
 
         // Send the request to the server
-        writeRequest( extendedRequest );
+        writeRequest( newId, extendedRequest );
 
         // Ok, done return the future
         return extendedFuture;
     }
 
 
+    /**
+     * Create a CompletionStage completed with an error
+     *
+     * @param cause The error
+     * @return The failed CompletionStage
+     */
+    private static <T> CompletionStage<T> failedStage( Throwable cause )
+    {
+        CompletableFuture<T> failed = new CompletableFuture<>();
+        failed.completeExceptionally( cause );
+
+        return failed;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletionStage<AddResponse> addStage( AddRequest addRequest )
+    {
+        try
+        {
+            return addAsync( addRequest ).getCompletionStage();
+        }
+        catch ( LdapException le )
+        {
+            return failedStage( le );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletionStage<BindResponse> bindStage( BindRequest bindRequest )
+    {
+        try
+        {
+            return bindAsync( bindRequest ).getCompletionStage();
+        }
+        catch ( LdapException le )
+        {
+            return failedStage( le );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletionStage<CompareResponse> compareStage( CompareRequest compareRequest )
+    {
+        try
+        {
+            return compareAsync( compareRequest ).getCompletionStage();
+        }
+        catch ( LdapException le )
+        {
+            return failedStage( le );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletionStage<DeleteResponse> deleteStage( DeleteRequest deleteRequest )
+    {
+        try
+        {
+            return deleteAsync( deleteRequest ).getCompletionStage();
+        }
+        catch ( LdapException le )
+        {
+            return failedStage( le );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletionStage<ExtendedResponse> extendedStage( ExtendedRequest extendedRequest )
+    {
+        try
+        {
+            return extendedAsync( extendedRequest ).getCompletionStage().thenApply( ExtendedResponse.class::cast );
+        }
+        catch ( LdapException le )
+        {
+            return failedStage( le );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletionStage<ModifyResponse> modifyStage( ModifyRequest modifyRequest )
+    {
+        try
+        {
+            return modifyAsync( modifyRequest ).getCompletionStage();
+        }
+        catch ( LdapException le )
+        {
+            return failedStage( le );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletionStage<ModifyDnResponse> modifyDnStage( ModifyDnRequest modifyDnRequest )
+    {
+        try
+        {
+            return modifyDnAsync( modifyDnRequest ).getCompletionStage();
+        }
+        catch ( LdapException le )
+        {
+            return failedStage( le );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletionStage<SearchResultDone> searchStage( SearchRequest searchRequest,
+        Consumer<Response> responseConsumer )
+    {
+        try
+        {
+            SearchFuture searchFuture = searchAsync( searchRequest );
+            searchFuture.setResponseConsumer( responseConsumer );
+
+            return searchFuture.getCompletionStage().thenApply( SearchResultDone.class::cast );
+        }
+        catch ( LdapException le )
+        {
+            return failedStage( le );
+        }
+    }
+
+
     /**
      * {@inheritDoc}
      */
@@ -4451,8 +5021,7 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
 
             // Change the container's BinaryDetector
             ldapSession.setAttribute( LdapDecoder.MESSAGE_CONTAINER_ATTR,
-                new LdapMessageContainer<>( codec,
-                    new SchemaBinaryAttributeDetector( schemaManager ) ) );
+                createMessageContainer( new SchemaBinaryAttributeDetector( schemaManager ) ) );
 
         }
         catch ( LdapException le )
@@ -4620,7 +5189,7 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
      *
      * @param msgId id of the message
      */
-    private void removeFromFutureMaps( int msgId )
+    void removeFromFutureMaps( int msgId )
     {
         getFromFutureMap( msgId );
     }
@@ -4631,7 +5200,11 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
      */
     private void clearMaps()
     {
-        futureMap.clear();
+        // Remove the futures one by one, to give back their permits
+        for ( Integer id : futureMap.keySet() )
+        {
+            getFromFutureMap( id );
+        }
     }
 
 
@@ -4684,6 +5257,29 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
     }
 
 
+    /**
+     * Create the container used to decode the messages received on the session.
+     *
+     * @param binaryAttributeDetector The detector used to know if an attribute is binary
+     * @return The container, configured with the LargeValueHandler, if any, and the
+     * lazy SearchResultEntries flag
+     */
+    private LdapMessageContainer<Message> createMessageContainer( BinaryAttributeDetector binaryAttributeDetector )
+    {
+        LdapMessageContainer<Message> ldapMessageContainer =
+            new LdapMessageContainer<>( codec, binaryAttributeDetector );
+
+        if ( config.getLargeValueHandler() != null )
+        {
+            ldapMessageContainer.setLargeValueHandler( config.getLargeValueHandler(), config.getLargeValueThreshold() );
+        }
+
+        ldapMessageContainer.setLazySearchResultEntries( config.isLazySearchResultEntries() );
+
+        return ldapMessageContainer;
+    }
+
+
     /**
      * This method is called when a new session is created. We will store some
      * informations that the session will need to process incoming requests.
@@ -4695,10 +5291,15 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
     {
         // Last, store the message container
         LdapMessageContainer<Message> ldapMessageContainer =
-            new LdapMessageContainer<>(
-                codec, config.getBinaryAttributeDetector() );
+            createMessageContainer( config.getBinaryAttributeDetector() );
 
         session.setAttribute( LdapDecoder.MESSAGE_CONTAINER_ATTR, ldapMessageContainer );
+
+        if ( config.isZeroCopy() )
+        {
+            session.setAttribute( LdapDecoder.ZERO_COPY_ATTR, Boolean.TRUE );
+        }
+
         connected.set( true );
     }
 
@@ -4978,7 +5579,7 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
 
                 // Stores the challenge's response, and send it to the server
                 bindRequest.setCredentials( challengeResponse );
-                writeRequest( bindRequest );
+                writeRequest( newId, bindRequest );
 
                 // Get the server's response, blocking
                 bindResponse = bindFuture.get( timeout, TimeUnit.MILLISECONDS );
@@ -5008,7 +5609,7 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
                 bindRequestCopy.setVersion3( bindRequest.getVersion3() );
                 bindRequestCopy.addAllControls( bindRequest.getControls().values().toArray( new Control[0] ) );
 
-                writeRequest( bindRequestCopy );
+                writeRequest( newId, bindRequestCopy );
 
                 bindResponse = bindFuture.get( timeout, TimeUnit.MILLISECONDS );
 
@@ -5046,7 +5647,7 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
 
                     addToFutureMap( newId, bindFuture );
 
-                    writeRequest( bindRequest );
+                    writeRequest( newId, bindRequest );
 
                     bindResponse = bindFuture.get( timeout, TimeUnit.MILLISECONDS );
 
@@ -5082,60 +5683,178 @@ public class LdapNetworkConnection extends AbstractLdapConnection implements Lda
 
 
     /**
-     * A reusable code block to be used in various bind methods
+     * A reusable code block to be used in various bind methods. If the request can't be
+     * sent, its future is removed, and its outstanding request permit given back.
      * 
-     * @param request The request to send
+     * @param messageId The message ID the request future has been registered with
+     * @param request The request to send, a Request or a PreEncodedMessage
      * @throws LdapException If the request was ot properly sent
      */
-    private void writeRequest( Request request ) throws LdapException
+    private void writeRequest( int messageId, Object request ) throws LdapException
     {
-        // Send the request to the server
-        WriteFuture writeFuture = ldapSession.write( request );
+        try
+        {
+            // Send the request to the server
+            awaitWrite( write( request ) );
+        }
+        catch ( LdapException le )
+        {
+            removeFromFutureMaps( messageId );
+
+            throw le;
+        }
+    }
 
-        long localTimeout = timeout;
 
-        while ( localTimeout > 0 )
+    /**
+     * Wait for a message to have been written, up to the connection timeout
+     *
+     * @param writeFuture The future of the write
+     * @throws LdapException If the session has been closed, or if the timeout has expired
+     */
+    void awaitWrite( WriteFuture writeFuture ) throws LdapException
+    {
+        if ( RECEIVING_RESPONSE.get() != null )
         {
-            // Wait only 100 ms
-            boolean done = writeFuture.awaitUninterruptibly( 100 );
+            // Sent while a response is processed : waiting would block the I/O thread. A
+            // failed write closes the session, which cancels the futures
+            return;
+        }
 
-            if ( done )
+        // Wait for the message to be sent to the server. A closed session fails the
+        // pending writes, so there is no need to poll it
+        boolean done = awaitUninterruptibly( writeFuture, timeout );
+
+        if ( done && writeFuture.isWritten() )
+        {
+            return;
+        }
+
+        if ( !ldapSession.isConnected() )
+        {
+            // We didn't received anything : this is an error
+            if ( LOG.isErrorEnabled() )
             {
-                return;
+                LOG.error( I18n.err( I18n.ERR_04118_SOMETHING_WRONG_HAPPENED ) );
             }
 
-            // Wait for the message to be sent to the server
-            if ( !ldapSession.isConnected() )
+            Exception exception = ( Exception ) ldapSession.removeAttribute( EXCEPTION_KEY );
+
+            if ( exception instanceof LdapException )
             {
-                // We didn't received anything : this is an error
-                if ( LOG.isErrorEnabled() )
-                {
-                    LOG.error( I18n.err( I18n.ERR_04118_SOMETHING_WRONG_HAPPENED ) );
-                }
+                throw ( LdapException ) exception;
+            }
+            else if ( exception != null )
+            {
+                throw new InvalidConnectionException( exception.getMessage(), exception );
+            }
+
+            throw new InvalidConnectionException( I18n.err( I18n.ERR_04160_SESSION_HAS_BEEN_CLOSED ) );
+        }
+
+        if ( done )
+        {
+            return;
+        }
+
+        if ( LOG.isErrorEnabled() )
+        {
+            LOG.error( I18n.err( I18n.ERR_04119_TIMEOUT ) );
+        }
+
+        throw new LdapException( TIME_OUT_ERROR );
+    }
+
+
+    /**
+     * Write a message on the session. The messages are encoded and queued one at a time :
+     * the codec filter writes the messages encoded by all the threads from a single
+     * queue, so that a concurrent write could send a message in place of another.
+     *
+     * @param message The message to write, a Message, a PreEncodedMessage or an IoBuffer
+     * holding encoded messages
+     * @return The future of the write
+     */
+    WriteFuture write( Object message )
+    {
+        writeMutex.lock();
+
+        try
+        {
+            return ldapSession.write( message );
+        }
+        finally
+        {
+            writeMutex.unlock();
+        }
+    }
 
-                Exception exception = ( Exception ) ldapSession.removeAttribute( EXCEPTION_KEY );
 
-                if ( exception instanceof LdapException )
+    /**
+     * Wait for a MINA future to be done. The waiting thread is parked until a listener
+     * of the future signals it, instead of waiting on the future monitor : a virtual
+     * thread waiting for the server does not pin its carrier thread.
+     *
+     * @param ioFuture The future to wait for
+     * @param timeout The maximum time to wait, in milliseconds
+     * @return <code>true</code> if the future is done
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    private static boolean await( IoFuture ioFuture, long timeout ) throws InterruptedException
+    {
+        if ( ioFuture.isDone() )
+        {
+            return true;
+        }
+
+        CountDownLatch latch = new CountDownLatch( 1 );
+        ioFuture.addListener( future -> latch.countDown() );
+
+        return latch.await( timeout, TimeUnit.MILLISECONDS );
+    }
+
+
+    /**
+     * Wait for a MINA future to be done, as {@link #await(IoFuture, long)} does, without
+     * being interrupted. The interrupted status of the thread is restored on exit.
+     *
+     * @param ioFuture The future to wait for
+     * @param timeout The maximum time to wait, in milliseconds
+     * @return <code>true</code> if the future is done
+     */
+    private static boolean awaitUninterruptibly( IoFuture ioFuture, long timeout )
+    {
+        long start = System.currentTimeMillis();
+        long remaining = timeout;
+        boolean interrupted = false;
+
+        try
+        {
+            while ( true )
+            {
+                try
                 {
-                    throw ( LdapException ) exception;
+                    return await( ioFuture, remaining );
                 }
-                else if ( exception != null )
+                catch ( InterruptedException ie )
                 {
-                    throw new InvalidConnectionException( exception.getMessage(), exception );
-                }
+                    interrupted = true;
+                    remaining = timeout - ( System.currentTimeMillis() - start );
 
-                throw new InvalidConnectionException( I18n.err( I18n.ERR_04160_SESSION_HAS_BEEN_CLOSED ) );
+                    if ( remaining <= 0L )
+                    {
+                        return ioFuture.isDone();
+                    }
+                }
             }
-
-            localTimeout -= 100;
         }
-
-        if ( LOG.isErrorEnabled() )
+        finally
         {
-            LOG.error( I18n.err( I18n.ERR_04119_TIMEOUT ) );
+            if ( interrupted )
+            {
+                Thread.currentThread().interrupt();
+            }
         }
-        
-        throw new LdapException( TIME_OUT_ERROR );
     }
 
 
@@ -0,0 +1,912 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api;
+
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.apache.directory.api.i18n.I18n;
+import org.apache.directory.api.ldap.extras.controls.SynchronizationModeEnum;
+import org.apache.directory.api.ldap.extras.controls.syncrepl.syncDone.SyncDoneValue;
+import org.apache.directory.api.ldap.extras.controls.syncrepl.syncRequest.SyncRequestValue;
+import org.apache.directory.api.ldap.extras.controls.syncrepl.syncRequest.SyncRequestValueImpl;
+import org.apache.directory.api.ldap.extras.controls.syncrepl.syncState.SyncStateValue;
+import org.apache.directory.api.ldap.extras.intermediate.syncrepl.SyncInfoValue;
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.message.Response;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchRequestImpl;
+import org.apache.directory.api.ldap.model.message.SearchResultDone;
+import org.apache.directory.api.ldap.model.message.SearchResultEntry;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.message.controls.EntryChange;
+import org.apache.directory.api.ldap.model.message.controls.PersistentSearch;
+import org.apache.directory.api.ldap.model.message.controls.PersistentSearchImpl;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.util.Strings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A local copy of the entries of a subtree, kept up to date by a refreshAndPersist syncrepl
+ * session (RFC 4533). When the server does not support the syncrepl control, the changes are
+ * read with a persistent search, once the entries have been loaded with a plain search.
+ * <br>
+ * The changes are applied as they are received, and the entries they modify are invalidated in
+ * the {@link LdapEntryCache} given to {@link #setEntryCache(LdapEntryCache)}, if any. A lookup is
+ * answered locally while the replication is running, and during the configured maximum staleness
+ * once it has stopped. The entries which are not replicated, and the ones which are not in the
+ * replica, are looked up on the server.
+ * <br>
+ * A stopped replication is resumed by calling {@link #start()} again. The syncrepl sessions
+ * resume from the last cookie received, the persistent searches reload the whole subtree.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LdapReplicaCache implements Closeable
+{
+    /** The logger */
+    private static final Logger LOG = LoggerFactory.getLogger( LdapReplicaCache.class );
+
+    /**
+     * The ways the entries are replicated
+     */
+    public enum ReplicationProtocol
+    {
+        /** A refreshAndPersist syncrepl session */
+        SYNCREPL,
+
+        /** A persistent search, after the entries have been loaded */
+        PERSISTENT_SEARCH
+    }
+
+    /** The connection the replication is done on */
+    private final LdapAsyncConnection connection;
+
+    /** The root of the replicated subtree */
+    private final Dn baseDn;
+
+    /** The filter of the replicated entries */
+    private final String filter;
+
+    /** The replicated attributes */
+    private final String[] attributes;
+
+    /** The lower cased names of the replicated attributes, or null if all the user attributes are replicated */
+    private final Set<String> replicatedAttributes;
+
+    /** The replicated entries */
+    private final Map<Dn, Entry> entries = new ConcurrentHashMap<>();
+
+    /** The Dn of the replicated entries, by entryUUID. Guarded by the replica */
+    private final Map<String, Dn> dnByUuid = new HashMap<>();
+
+    /** The entryUUIDs received during a syncrepl present phase. Guarded by the replica */
+    private Set<String> presentUuids;
+
+    /** The Dns changed while the entries are loaded before a persistent search. Guarded by the replica */
+    private Set<Dn> changedDuringLoad;
+
+    /** The way the entries are replicated */
+    private volatile ReplicationProtocol protocol = ReplicationProtocol.SYNCREPL;
+
+    /** The last syncrepl cookie received */
+    private volatile byte[] cookie;
+
+    /** The message ID of the running search */
+    private volatile int messageId;
+
+    /** Tells if the replication is running */
+    private volatile boolean live;
+
+    /** Tells if the replica has been closed */
+    private volatile boolean closed;
+
+    /** The date the replication has stopped, as a System.nanoTime() value */
+    private volatile long stoppedAt;
+
+    /** The time the entries are still read locally once the replication has stopped, in nanoseconds */
+    private volatile long maxStaleness;
+
+    /** Completed once the entries have been loaded for the first time */
+    private final CompletableFuture<Void> refreshed = new CompletableFuture<>();
+
+    /** The cache invalidated by the changes */
+    private volatile LdapEntryCache entryCache;
+
+    /** The number of lookups answered locally */
+    private final AtomicLong hitCount = new AtomicLong();
+
+    /** The number of lookups sent to the server */
+    private final AtomicLong missCount = new AtomicLong();
+
+    /** The number of entries added, modified, renamed or deleted */
+    private final AtomicLong changeCount = new AtomicLong();
+
+
+    /**
+     * Creates a new instance of LdapReplicaCache. The replication is not started.
+     *
+     * @param connection The connection the replication is done on. It's not closed by the replica
+     * @param baseDn The root of the replicated subtree
+     * @param filter The filter of the replicated entries
+     * @param attributes The replicated attributes. All the user attributes are replicated if none is given
+     */
+    public LdapReplicaCache( LdapAsyncConnection connection, Dn baseDn, String filter, String... attributes )
+    {
+        this.connection = connection;
+        this.baseDn = baseDn;
+        this.filter = filter;
+        this.attributes = attributes;
+
+        Set<String> names = new HashSet<>();
+
+        if ( attributes != null )
+        {
+            for ( String attribute : attributes )
+            {
+                names.add( Strings.toLowerCaseAscii( attribute ) );
+            }
+        }
+
+        replicatedAttributes = names.isEmpty() || names.contains( SchemaConstants.ALL_USER_ATTRIBUTES ) ? null : names;
+    }
+
+
+    /**
+     * Sets the cache invalidated by the replicated changes.
+     *
+     * @param entryCache The cache
+     */
+    public void setEntryCache( LdapEntryCache entryCache )
+    {
+        this.entryCache = entryCache;
+    }
+
+
+    /**
+     * Sets the time the entries are still read locally once the replication has stopped. By
+     * default, the lookups are sent to the server as soon as the replication has stopped.
+     *
+     * @param maxStaleness The time, in milliseconds
+     */
+    public void setMaxStaleness( long maxStaleness )
+    {
+        this.maxStaleness = TimeUnit.MILLISECONDS.toNanos( maxStaleness );
+    }
+
+
+    /**
+     * Starts, or resumes, the replication. This method does not wait for the entries to be loaded.
+     *
+     * @throws LdapException If the search can't be sent
+     */
+    public synchronized void start() throws LdapException
+    {
+        if ( live )
+        {
+            throw new IllegalStateException( I18n.err( I18n.ERR_04194_REPLICA_ALREADY_STARTED, baseDn ) );
+        }
+
+        closed = false;
+
+        if ( protocol == ReplicationProtocol.SYNCREPL )
+        {
+            startSyncRepl();
+        }
+        else
+        {
+            startPersistentSearch();
+        }
+    }
+
+
+    /**
+     * Waits until the entries have been loaded for the first time.
+     *
+     * @param timeout The maximum time to wait
+     * @param unit The unit of the timeout
+     * @return true if the entries have been loaded, false if the timeout has expired
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public boolean awaitRefresh( long timeout, TimeUnit unit ) throws InterruptedException
+    {
+        try
+        {
+            refreshed.get( timeout, unit );
+
+            return true;
+        }
+        catch ( TimeoutException | ExecutionException e )
+        {
+            return false;
+        }
+    }
+
+
+    /**
+     * @return A new search request on the replicated subtree
+     */
+    private SearchRequest newSearchRequest() throws LdapException
+    {
+        SearchRequest searchRequest = new SearchRequestImpl();
+        searchRequest.setBase( baseDn );
+        searchRequest.setFilter( filter );
+        searchRequest.setScope( SearchScope.SUBTREE );
+
+        if ( attributes != null )
+        {
+            searchRequest.addAttributes( attributes );
+        }
+
+        return searchRequest;
+    }
+
+
+    /**
+     * Sends the search doing the replication
+     */
+    private void send( SearchRequest searchRequest, Consumer<Response> changeConsumer,
+        Consumer<SearchResultDone> doneConsumer )
+    {
+        live = true;
+
+        connection.searchStage( searchRequest, changeConsumer ).whenComplete( ( done, error ) ->
+        {
+            if ( error != null )
+            {
+                stopped( error.getMessage() );
+            }
+            else
+            {
+                doneConsumer.accept( done );
+            }
+        } );
+
+        messageId = searchRequest.getMessageId();
+    }
+
+
+    /**
+     * Starts a refreshAndPersist syncrepl session, from the last cookie received. Without
+     * cookie, the entries are reloaded.
+     */
+    private void startSyncRepl() throws LdapException
+    {
+        SearchRequest searchRequest = newSearchRequest();
+        SyncRequestValue syncRequest = new SyncRequestValueImpl( true );
+        syncRequest.setMode( SynchronizationModeEnum.REFRESH_AND_PERSIST );
+        syncRequest.setCookie( cookie );
+        searchRequest.addControl( syncRequest );
+
+        synchronized ( this )
+        {
+            if ( cookie == null )
+            {
+                clear();
+            }
+
+            // The entries not seen during the present phase, if the server does one, will be deleted
+            presentUuids = new HashSet<>();
+        }
+
+        send( searchRequest, this::syncReplReceived, this::syncReplDone );
+    }
+
+
+    /**
+     * Starts a persistent search, then loads the entries with a plain search. The entries
+     * changed while they are loaded are not overwritten by the loaded ones.
+     */
+    private void startPersistentSearch() throws LdapException
+    {
+        SearchRequest searchRequest = newSearchRequest();
+        PersistentSearch persistentSearch = new PersistentSearchImpl();
+        persistentSearch.setCritical( true );
+        persistentSearch.setChangesOnly( true );
+        persistentSearch.setReturnECs( true );
+        searchRequest.addControl( persistentSearch );
+
+        synchronized ( this )
+        {
+            clear();
+            changedDuringLoad = new HashSet<>();
+        }
+
+        send( searchRequest, this::changeReceived, done -> stopped( done.getLdapResult().getResultCode() ) );
+
+        connection.searchStage( newSearchRequest(), this::loadedEntryReceived ).whenComplete( ( done, error ) ->
+        {
+            if ( error != null )
+            {
+                stopped( error.getMessage() );
+            }
+            else if ( done.getLdapResult().getResultCode() != ResultCodeEnum.SUCCESS )
+            {
+                stopped( done.getLdapResult().getResultCode() );
+            }
+            else
+            {
+                synchronized ( this )
+                {
+                    changedDuringLoad = null;
+                }
+
+                refreshed.complete( null );
+            }
+        } );
+    }
+
+
+    /**
+     * Applies a syncrepl response
+     */
+    private void syncReplReceived( Response response )
+    {
+        if ( response instanceof SearchResultEntry )
+        {
+            SearchResultEntry resultEntry = ( SearchResultEntry ) response;
+            SyncStateValue syncState = ( SyncStateValue ) resultEntry.getControl( SyncStateValue.OID );
+
+            if ( syncState != null )
+            {
+                syncStateReceived( resultEntry.getEntry(), syncState );
+            }
+        }
+        else if ( response instanceof SyncInfoValue )
+        {
+            syncInfoReceived( ( SyncInfoValue ) response );
+        }
+    }
+
+
+    /**
+     * Applies an entry received in a syncrepl session
+     */
+    private synchronized void syncStateReceived( Entry entry, SyncStateValue syncState )
+    {
+        String uuid = Strings.uuidToString( syncState.getEntryUUID() );
+        Dn dn = entry.getDn();
+
+        switch ( syncState.getSyncStateType() )
+        {
+            case PRESENT:
+                present( uuid );
+                break;
+
+            case ADD:
+            case MODIFY:
+            case MODDN:
+                Dn previousDn = dnByUuid.put( uuid, dn );
+
+                if ( ( previousDn != null ) && !previousDn.equals( dn ) )
+                {
+                    renamed( previousDn );
+                }
+
+                updated( entry );
+                present( uuid );
+                break;
+
+            case DELETE:
+                Dn deletedDn = dnByUuid.remove( uuid );
+                deleted( deletedDn == null ? dn : deletedDn );
+                break;
+
+            default:
+                break;
+        }
+
+        if ( syncState.getCookie() != null )
+        {
+            cookie = syncState.getCookie();
+        }
+    }
+
+
+    /**
+     * Applies a syncrepl intermediate response
+     */
+    private synchronized void syncInfoReceived( SyncInfoValue syncInfo )
+    {
+        switch ( syncInfo.getSyncInfoValueType() )
+        {
+            case REFRESH_DELETE:
+                if ( syncInfo.isRefreshDone() )
+                {
+                    presentUuids = null;
+                    refreshed.complete( null );
+                }
+
+                break;
+
+            case REFRESH_PRESENT:
+                // The entries which have not been seen during the present phase have been deleted
+                Iterator<Map.Entry<String, Dn>> iterator = dnByUuid.entrySet().iterator();
+
+                while ( ( presentUuids != null ) && iterator.hasNext() )
+                {
+                    Map.Entry<String, Dn> replicated = iterator.next();
+
+                    if ( !presentUuids.contains( replicated.getKey() ) )
+                    {
+                        iterator.remove();
+                        deleted( replicated.getValue() );
+                    }
+                }
+
+                presentUuids = null;
+
+                if ( syncInfo.isRefreshDone() )
+                {
+                    refreshed.complete( null );
+                }
+
+                break;
+
+            case SYNC_ID_SET:
+                for ( byte[] syncUuid : syncInfo.getSyncUUIDs() )
+                {
+                    String uuid = Strings.uuidToString( syncUuid );
+
+                    if ( syncInfo.isRefreshDeletes() )
+                    {
+                        Dn deletedDn = dnByUuid.remove( uuid );
+
+                        if ( deletedDn != null )
+                        {
+                            deleted( deletedDn );
+                        }
+                    }
+                    else
+                    {
+                        present( uuid );
+                    }
+                }
+
+                break;
+
+            default:
+                break;
+        }
+
+        if ( syncInfo.getCookie() != null )
+        {
+            cookie = syncInfo.getCookie();
+        }
+    }
+
+
+    /**
+     * Handles the end of a syncrepl session. If the server does not support syncrepl, a
+     * persistent search is started.
+     */
+    private void syncReplDone( SearchResultDone done )
+    {
+        ResultCodeEnum resultCode = done.getLdapResult().getResultCode();
+
+        if ( ( resultCode == ResultCodeEnum.UNAVAILABLE_CRITICAL_EXTENSION ) && !refreshed.isDone() && !closed )
+        {
+            if ( LOG.isInfoEnabled() )
+            {
+                LOG.info( I18n.msg( I18n.MSG_04180_REPLICA_USES_PERSISTENT_SEARCH, baseDn ) );
+            }
+
+            protocol = ReplicationProtocol.PERSISTENT_SEARCH;
+
+            try
+            {
+                startPersistentSearch();
+            }
+            catch ( LdapException le )
+            {
+                stopped( le.getMessage() );
+            }
+
+            return;
+        }
+
+        SyncDoneValue syncDone = ( SyncDoneValue ) done.getControl( SyncDoneValue.OID );
+
+        if ( resultCode == ResultCodeEnum.E_SYNC_REFRESH_REQUIRED )
+        {
+            // The next session reloads the entries
+            cookie = null;
+        }
+        else if ( ( syncDone != null ) && ( syncDone.getCookie() != null ) )
+        {
+            cookie = syncDone.getCookie();
+        }
+
+        stopped( resultCode );
+    }
+
+
+    /**
+     * Applies a change received by the persistent search
+     */
+    private void changeReceived( Response response )
+    {
+        if ( !( response instanceof SearchResultEntry ) )
+        {
+            return;
+        }
+
+        SearchResultEntry resultEntry = ( SearchResultEntry ) response;
+        EntryChange entryChange = ( EntryChange ) resultEntry.getControl( EntryChange.OID );
+        Entry entry = resultEntry.getEntry();
+
+        synchronized ( this )
+        {
+            if ( changedDuringLoad != null )
+            {
+                changedDuringLoad.add( entry.getDn() );
+            }
+
+            if ( entryChange == null )
+            {
+                updated( entry );
+
+                return;
+            }
+
+            switch ( entryChange.getChangeType() )
+            {
+                case DELETE:
+                    deleted( entry.getDn() );
+                    break;
+
+                case MODDN:
+                    if ( entryChange.getPreviousDn() != null )
+                    {
+                        renamed( entryChange.getPreviousDn() );
+                    }
+
+                    updated( entry );
+                    break;
+
+                default:
+                    updated( entry );
+                    break;
+            }
+        }
+    }
+
+
+    /**
+     * Stores an entry loaded before the persistent search, unless it has been changed meanwhile
+     */
+    private void loadedEntryReceived( Response response )
+    {
+        if ( response instanceof SearchResultEntry )
+        {
+            Entry entry = ( ( SearchResultEntry ) response ).getEntry();
+
+            synchronized ( this )
+            {
+                if ( ( changedDuringLoad != null ) && !changedDuringLoad.contains( entry.getDn() ) )
+                {
+                    updated( entry );
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Marks an entry as seen during a present phase
+     */
+    private void present( String uuid )
+    {
+        if ( presentUuids != null )
+        {
+            presentUuids.add( uuid );
+        }
+    }
+
+
+    /**
+     * Stores an added or modified entry
+     */
+    private void updated( Entry entry )
+    {
+        entries.put( entry.getDn(), entry );
+        changeCount.incrementAndGet();
+        invalidate( entry.getDn(), false );
+    }
+
+
+    /**
+     * Removes a deleted entry
+     */
+    private void deleted( Dn dn )
+    {
+        entries.remove( dn );
+        changeCount.incrementAndGet();
+        invalidate( dn, false );
+    }
+
+
+    /**
+     * Removes a renamed entry and its descendants, whose Dns have changed too
+     */
+    private void renamed( Dn previousDn )
+    {
+        entries.keySet().removeIf( dn -> dn.isDescendantOf( previousDn ) );
+        invalidate( previousDn, true );
+    }
+
+
+    /**
+     * Removes all the entries, before reloading them
+     */
+    private void clear()
+    {
+        entries.clear();
+        dnByUuid.clear();
+        invalidate( baseDn, true );
+    }
+
+
+    /**
+     * Invalidates the entries of the cache, if any
+     */
+    private void invalidate( Dn dn, boolean subtree )
+    {
+        LdapEntryCache cache = entryCache;
+
+        if ( cache == null )
+        {
+            return;
+        }
+
+        if ( subtree )
+        {
+            cache.invalidateSubtree( dn );
+        }
+        else
+        {
+            cache.invalidate( dn );
+        }
+    }
+
+
+    /**
+     * Records the end of the replication
+     */
+    private void stopped( Object reason )
+    {
+        stoppedAt = System.nanoTime();
+        live = false;
+
+        if ( LOG.isInfoEnabled() && !closed )
+        {
+            LOG.info( I18n.msg( I18n.MSG_04181_REPLICA_STOPPED, baseDn, reason ) );
+        }
+    }
+
+
+    /**
+     * Tells if the entries are read locally : they have been loaded, and the replication is
+     * running or has stopped for less than the maximum staleness.
+     *
+     * @return true if the replica is up to date
+     */
+    public boolean isFresh()
+    {
+        return refreshed.isDone() && !closed && ( live || ( System.nanoTime() - stoppedAt <= maxStaleness ) );
+    }
+
+
+    /**
+     * @return true if the replication is running
+     */
+    public boolean isLive()
+    {
+        return live;
+    }
+
+
+    /**
+     * @return The way the entries are replicated
+     */
+    public ReplicationProtocol getProtocol()
+    {
+        return protocol;
+    }
+
+
+    /**
+     * Reads an entry from the replica, whether it's fresh or not.
+     *
+     * @param dn The Dn of the entry
+     * @return A copy of the replicated entry, or null if it's not replicated
+     */
+    public Entry get( Dn dn )
+    {
+        Entry entry = entries.get( dn );
+
+        return entry == null ? null : entry.clone();
+    }
+
+
+    /**
+     * Reads an entry from the replica if it's fresh, or looks it up on the server, through the
+     * entry cache if any.
+     *
+     * @param lookupConnection The connection used when the entry is not read locally
+     * @param dn The Dn of the entry
+     * @param requestedAttributes The requested attributes. All the user attributes are returned if none is given
+     * @return The entry, or null if the entry does not exist
+     * @throws LdapException If the entry can't be looked up
+     */
+    public Entry lookup( LdapConnection lookupConnection, Dn dn, String... requestedAttributes ) throws LdapException
+    {
+        if ( isFresh() && dn.isDescendantOf( baseDn ) )
+        {
+            Entry replicated = entries.get( dn );
+            Entry entry = replicated == null ? null : select( replicated, requestedAttributes );
+
+            if ( entry != null )
+            {
+                hitCount.incrementAndGet();
+
+                return entry;
+            }
+        }
+
+        missCount.incrementAndGet();
+
+        LdapEntryCache cache = entryCache;
+
+        if ( cache != null )
+        {
+            return cache.lookup( lookupConnection, dn, requestedAttributes );
+        }
+
+        if ( ( requestedAttributes == null ) || ( requestedAttributes.length == 0 ) )
+        {
+            return lookupConnection.lookup( dn );
+        }
+
+        return lookupConnection.lookup( dn, requestedAttributes );
+    }
+
+
+    /**
+     * Copies the requested attributes of a replicated entry.
+     *
+     * @return The copy, or null if some requested attributes may not be replicated
+     */
+    private Entry select( Entry replicated, String... requestedAttributes ) throws LdapException
+    {
+        if ( ( requestedAttributes == null ) || ( requestedAttributes.length == 0 ) )
+        {
+            return replicatedAttributes == null ? replicated.clone() : null;
+        }
+
+        Entry entry = new DefaultEntry( replicated.getDn() );
+
+        for ( String requested : requestedAttributes )
+        {
+            String name = Strings.toLowerCaseAscii( requested );
+
+            if ( SchemaConstants.ALL_USER_ATTRIBUTES.equals( name ) )
+            {
+                if ( replicatedAttributes != null )
+                {
+                    return null;
+                }
+
+                for ( Attribute attribute : replicated )
+                {
+                    entry.put( attribute.clone() );
+                }
+            }
+            else if ( !SchemaConstants.NO_ATTRIBUTE.equals( name ) )
+            {
+                Attribute attribute = replicated.get( requested );
+
+                if ( attribute != null )
+                {
+                    entry.put( attribute.clone() );
+                }
+                else if ( ( replicatedAttributes == null ) || !replicatedAttributes.contains( name ) )
+                {
+                    // May be an operational attribute, or an attribute which is not replicated
+                    return null;
+                }
+            }
+        }
+
+        return entry;
+    }
+
+
+    /**
+     * @return The number of replicated entries
+     */
+    public int getSize()
+    {
+        return entries.size();
+    }
+
+
+    /**
+     * @return The number of lookups answered locally
+     */
+    public long getHitCount()
+    {
+        return hitCount.get();
+    }
+
+
+    /**
+     * @return The number of lookups sent to the server
+     */
+    public long getMissCount()
+    {
+        return missCount.get();
+    }
+
+
+    /**
+     * @return The number of entries added, modified, renamed or deleted in the replica
+     */
+    public long getChangeCount()
+    {
+        return changeCount.get();
+    }
+
+
+    /**
+     * Stops the replication. The entries are not read locally anymore. The connection is
+     * not closed.
+     */
+    @Override
+    public void close()
+    {
+        closed = true;
+
+        if ( live )
+        {
+            connection.abandon( messageId );
+            stopped( ResultCodeEnum.CANCELED );
+        }
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api;
+
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * A server of a {@link ServerSetLdapConnectionFactory}, with its health : the consecutive
+ * connection failures, the quarantine they lead to, the time it takes to connect and bind,
+ * and the load of the connections opened on it.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LdapServer
+{
+    /** The weight of a new sample in the latency moving average */
+    private static final double LATENCY_SMOOTHING = 0.2d;
+
+    /** The server host */
+    private final String host;
+
+    /** The server port */
+    private final int port;
+
+    /** The open connections */
+    private final Set<LdapNetworkConnection> connections = Collections.newSetFromMap( new ConcurrentHashMap<>() );
+
+    /** The number of connection failures since the last success */
+    private int consecutiveFailures;
+
+    /** The date the quarantine ends, in System.nanoTime() terms */
+    private long quarantineEnd;
+
+    /** Tells if the server is quarantined */
+    private boolean quarantined;
+
+    /** The moving average of the time it takes to connect and bind, in nanoseconds, 0 if unknown */
+    private double latency;
+
+
+    /**
+     * Creates a new instance of LdapServer.
+     *
+     * @param host The server host
+     * @param port The server port
+     */
+    public LdapServer( String host, int port )
+    {
+        this.host = host;
+        this.port = port;
+    }
+
+
+    /**
+     * @return The server host
+     */
+    public String getHost()
+    {
+        return host;
+    }
+
+
+    /**
+     * @return The server port
+     */
+    public int getPort()
+    {
+        return port;
+    }
+
+
+    /**
+     * @return The number of connection failures since the last success
+     */
+    public synchronized int getConsecutiveFailures()
+    {
+        return consecutiveFailures;
+    }
+
+
+    /**
+     * @return <code>true</code> if the server is quarantined, and won't be used unless
+     * all the other servers are quarantined too
+     */
+    public boolean isQuarantined()
+    {
+        return isQuarantined( System.nanoTime() );
+    }
+
+
+    /**
+     * @param now The current time, in System.nanoTime() terms
+     * @return <code>true</code> if the server is still quarantined at this time
+     */
+    synchronized boolean isQuarantined( long now )
+    {
+        return quarantined && ( now - quarantineEnd < 0L );
+    }
+
+
+    /**
+     * @return The date the quarantine ends, in System.nanoTime() terms
+     */
+    synchronized long getQuarantineEnd()
+    {
+        return quarantineEnd;
+    }
+
+
+    /**
+     * @return The average time it takes to connect and bind, in milliseconds, or 0 if
+     * no connection has been established yet
+     */
+    public synchronized long getLatency()
+    {
+        return TimeUnit.NANOSECONDS.toMillis( ( long ) latency );
+    }
+
+
+    /**
+     * @return The average time it takes to connect and bind, in nanoseconds, or 0 if
+     * no connection has been established yet
+     */
+    synchronized double getLatencyNanos()
+    {
+        return latency;
+    }
+
+
+    /**
+     * @return The number of connections opened on this server
+     */
+    public int getOpenConnections()
+    {
+        pruneClosedConnections();
+
+        return connections.size();
+    }
+
+
+    /**
+     * @return The number of requests waiting for their response on the connections opened on this server
+     */
+    public int getOutstandingRequests()
+    {
+        pruneClosedConnections();
+
+        int outstandingRequests = 0;
+
+        for ( LdapNetworkConnection connection : connections )
+        {
+            outstandingRequests += connection.getOutstandingRequestCount();
+        }
+
+        return outstandingRequests;
+    }
+
+
+    /**
+     * Forget about the connections which have been closed
+     */
+    private void pruneClosedConnections()
+    {
+        connections.removeIf( connection -> !connection.isConnected() );
+    }
+
+
+    /**
+     * Record a connection established on this server. The server gets out of quarantine.
+     *
+     * @param connection The connection
+     * @param elapsedNanos The time it took to connect and bind, in nanoseconds
+     */
+    void connected( LdapNetworkConnection connection, long elapsedNanos )
+    {
+        synchronized ( this )
+        {
+            consecutiveFailures = 0;
+            quarantined = false;
+
+            if ( latency == 0d )
+            {
+                latency = elapsedNanos;
+            }
+            else
+            {
+                latency += LATENCY_SMOOTHING * ( elapsedNanos - latency );
+            }
+        }
+
+        connections.add( connection );
+        connection.addConnectionClosedEventListener( () -> connections.remove( connection ) );
+    }
+
+
+    /**
+     * Record a connection failure.
+     *
+     * @param failureThreshold The number of consecutive failures leading to a quarantine
+     * @param quarantineDuration The quarantine duration, in milliseconds
+     * @return <code>true</code> if the server has just been quarantined
+     */
+    synchronized boolean failed( int failureThreshold, long quarantineDuration )
+    {
+        consecutiveFailures++;
+
+        if ( consecutiveFailures < failureThreshold )
+        {
+            return false;
+        }
+
+        quarantined = true;
+        quarantineEnd = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos( quarantineDuration );
+
+        return true;
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return host + ":" + port;
+    }
+}
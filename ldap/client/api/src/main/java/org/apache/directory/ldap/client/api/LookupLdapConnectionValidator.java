@@ -20,18 +20,27 @@
 package org.apache.directory.ldap.client.api;
 
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
 import org.apache.directory.api.ldap.model.constants.SchemaConstants;
 import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.filter.PresenceNode;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchRequestImpl;
+import org.apache.directory.api.ldap.model.message.SearchScope;
 import org.apache.directory.api.ldap.model.name.Dn;
 
 
 /**
  * An implementation of {@link LdapConnectionValidator} that attempts a simple
- * lookup on the rootDSE.
+ * lookup on the rootDSE. The asynchronous validation does the same lookup, without
+ * waiting for the response.
  * 
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
-public final class LookupLdapConnectionValidator implements LdapConnectionValidator
+public final class LookupLdapConnectionValidator implements LdapConnectionValidator, AsyncLdapConnectionValidator
 {
     /**
      * Returns true if <code>connection</code> is connected, authenticated, and
@@ -54,4 +63,37 @@ public final class LookupLdapConnectionValidator implements LdapConnectionValida
             return false;
         }
     }
-}
\ No newline at end of file
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletionStage<Boolean> validateAsync( LdapConnection connection )
+    {
+        LdapAsyncConnection asyncConnection = LdapConnectionWrapper.unwrapAsync( connection );
+
+        if ( asyncConnection == null )
+        {
+            // We can't send the request without waiting for the response
+            return CompletableFuture.completedFuture( validate( connection ) );
+        }
+
+        if ( !connection.isConnected() || !connection.isAuthenticated() )
+        {
+            return CompletableFuture.completedFuture( false );
+        }
+
+        SearchRequest searchRequest = new SearchRequestImpl();
+        searchRequest.setBase( Dn.ROOT_DSE );
+        searchRequest.setScope( SearchScope.OBJECT );
+        searchRequest.setFilter( new PresenceNode( SchemaConstants.OBJECT_CLASS_AT ) );
+        searchRequest.addAttributes( SchemaConstants.NO_ATTRIBUTE );
+
+        return asyncConnection.searchStage( searchRequest, response ->
+            {
+                // The root DSE entry content does not matter
+            } ).handle( ( done, error ) -> ( error == null )
+                && ( done.getLdapResult().getResultCode() == ResultCodeEnum.SUCCESS ) );
+    }
+}
@@ -0,0 +1,588 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api;
+
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.api.i18n.I18n;
+import org.apache.directory.api.ldap.model.constants.Loggers;
+import org.apache.directory.api.ldap.model.cursor.AbstractCursor;
+import org.apache.directory.api.ldap.model.cursor.CursorException;
+import org.apache.directory.api.ldap.model.cursor.InvalidCursorPositionException;
+import org.apache.directory.api.ldap.model.cursor.SearchCursor;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapReferralException;
+import org.apache.directory.api.ldap.model.message.Control;
+import org.apache.directory.api.ldap.model.message.IntermediateResponse;
+import org.apache.directory.api.ldap.model.message.Referral;
+import org.apache.directory.api.ldap.model.message.Response;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchResultDone;
+import org.apache.directory.api.ldap.model.message.SearchResultDoneImpl;
+import org.apache.directory.api.ldap.model.message.SearchResultEntry;
+import org.apache.directory.api.ldap.model.message.SearchResultReference;
+import org.apache.directory.api.ldap.model.message.controls.PagedResults;
+import org.apache.directory.api.ldap.model.message.controls.PagedResultsImpl;
+import org.apache.directory.api.util.Strings;
+import org.apache.directory.ldap.client.api.exception.LdapConnectionTimeOutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A SearchCursor reading all the pages of a search with a PagedResults control. The responses
+ * of all the pages are returned in a row, followed by the SearchResultDone of the last page.
+ * <br>
+ * The next page is requested as soon as the current page is done, while its responses are
+ * still being read, unless more responses than the configured maximum are waiting to be read :
+ * the next page is then requested once enough responses have been read. There are never more
+ * than this maximum plus one page of responses in memory.
+ * <br>
+ * Note: This is a forward only cursor hence the only valid operations are next(), get() and close()
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class PagedSearchCursor extends AbstractCursor<Response> implements SearchCursor
+{
+    /** A dedicated log for cursors */
+    private static final Logger LOG_CURSOR = LoggerFactory.getLogger( Loggers.CURSOR_LOG.getName() );
+
+    /** Put in the queue when a page can't be read */
+    private static final SearchResultDone FAILED = new SearchResultDoneImpl();
+
+    /** The connection */
+    private final LdapAsyncConnection connection;
+
+    /** The search request, sent for each page */
+    private final SearchRequest searchRequest;
+
+    /** The PagedResults control of the request */
+    private final PagedResults pagedResults;
+
+    /** wait time while polling for a SearchResponse */
+    private final long timeout;
+
+    /** time units of timeout value */
+    private final TimeUnit timeUnit;
+
+    /** The responses received, and not read yet */
+    private final BlockingQueue<Response> responses = new LinkedBlockingQueue<>();
+
+    /** The number of waiting responses above which the next page is not requested */
+    private volatile int maxBufferedResponses;
+
+    /** The cookie of the next page, when it has not been requested yet. Guarded by the cursor */
+    private byte[] nextCookie;
+
+    /** Tells if a page is being received. Guarded by the cursor */
+    private boolean pageInProgress;
+
+    /** The number of pages requested */
+    private int pageCount;
+
+    /** The error which prevented a page from being read */
+    private volatile Throwable error;
+
+    /** a reference to hold the retrieved response */
+    private Response response;
+
+    /** the done flag */
+    private boolean done;
+
+    /** a reference to hold the SearchResultDone response */
+    private SearchResultDone searchDoneResp;
+
+
+    /**
+     * Creates a new instance of PagedSearchCursor, and requests the first page. A PagedResults
+     * control is added to the request, replacing any existing one.
+     *
+     * @param connection The connection
+     * @param searchRequest The search request
+     * @param pageSize The number of entries requested in each page
+     * @param timeout The maximum time to wait for a response
+     * @param timeUnit The unit of the timeout
+     */
+    public PagedSearchCursor( LdapAsyncConnection connection, SearchRequest searchRequest, int pageSize,
+        long timeout, TimeUnit timeUnit )
+    {
+        if ( LOG_CURSOR.isDebugEnabled() )
+        {
+            LOG_CURSOR.debug( I18n.msg( I18n.MSG_04170_CREATING_SEARCH_CURSOR, this ) );
+        }
+
+        this.connection = connection;
+        this.searchRequest = searchRequest;
+        this.timeout = timeout;
+        this.timeUnit = timeUnit;
+        this.maxBufferedResponses = 2 * pageSize;
+
+        pagedResults = new PagedResultsImpl();
+        pagedResults.setSize( pageSize );
+        searchRequest.addControl( pagedResults );
+
+        synchronized ( this )
+        {
+            sendPage();
+        }
+    }
+
+
+    /**
+     * Sets the number of received responses above which the next page is not requested. It
+     * defaults to twice the page size.
+     *
+     * @param maxBufferedResponses The maximum number of waiting responses
+     */
+    public void setMaxBufferedResponses( int maxBufferedResponses )
+    {
+        this.maxBufferedResponses = maxBufferedResponses;
+    }
+
+
+    /**
+     * @return The number of pages requested so far
+     */
+    public synchronized int getPageCount()
+    {
+        return pageCount;
+    }
+
+
+    /**
+     * Sends the request for a page. Must be called while holding the cursor lock.
+     */
+    private void sendPage()
+    {
+        pageInProgress = true;
+        pageCount++;
+
+        connection.searchStage( searchRequest, responses::add ).whenComplete( ( pageDone, pageError ) ->
+        {
+            if ( pageError != null )
+            {
+                error = pageError;
+                responses.add( FAILED );
+            }
+            else
+            {
+                pageDone( pageDone );
+            }
+        } );
+    }
+
+
+    /**
+     * Requests the next page, or ends the search if it was the last one
+     */
+    private void pageDone( SearchResultDone pageDone )
+    {
+        byte[] cookie = null;
+        Control control = pageDone.getControl( PagedResults.OID );
+
+        if ( ( pageDone.getLdapResult().getResultCode() == ResultCodeEnum.SUCCESS ) && ( control instanceof PagedResults ) )
+        {
+            cookie = ( ( PagedResults ) control ).getCookie();
+        }
+
+        synchronized ( this )
+        {
+            pageInProgress = false;
+
+            if ( Strings.isEmpty( cookie ) || isClosed() )
+            {
+                responses.add( pageDone );
+
+                return;
+            }
+
+            nextCookie = cookie;
+            requestNextPage();
+        }
+    }
+
+
+    /**
+     * Requests the next page, if it's known and if there is room for it. Must be called while
+     * holding the cursor lock.
+     */
+    private void requestNextPage()
+    {
+        if ( ( nextCookie != null ) && !pageInProgress && ( responses.size() < maxBufferedResponses ) )
+        {
+            pagedResults.setCookie( nextCookie );
+            nextCookie = null;
+            sendPage();
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean next() throws LdapException, CursorException
+    {
+        if ( done )
+        {
+            return false;
+        }
+
+        checkNotClosed();
+
+        try
+        {
+            response = responses.poll( timeout, timeUnit );
+        }
+        catch ( InterruptedException ie )
+        {
+            Thread.currentThread().interrupt();
+            LdapException ldapException = new LdapException( LdapNetworkConnection.NO_RESPONSE_ERROR, ie );
+            closeQuietly( ldapException );
+
+            throw ldapException;
+        }
+
+        if ( response == null )
+        {
+            closeQuietly( null );
+
+            throw new LdapConnectionTimeOutException( LdapNetworkConnection.TIME_OUT_ERROR );
+        }
+
+        if ( response == FAILED )
+        {
+            response = null;
+            LdapException ldapException = new LdapException( LdapNetworkConnection.NO_RESPONSE_ERROR, error );
+            closeQuietly( ldapException );
+
+            throw ldapException;
+        }
+
+        synchronized ( this )
+        {
+            requestNextPage();
+        }
+
+        done = response instanceof SearchResultDone;
+
+        if ( done )
+        {
+            searchDoneResp = ( SearchResultDone ) response;
+            response = null;
+        }
+
+        return !done;
+    }
+
+
+    /**
+     * Closes the cursor after an error, ignoring the errors of the closure
+     */
+    private void closeQuietly( Exception cause )
+    {
+        try
+        {
+            close( cause );
+        }
+        catch ( IOException ioe )
+        {
+            // Nothing to do, the original error is reported
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Response get() throws InvalidCursorPositionException
+    {
+        if ( !available() )
+        {
+            throw new InvalidCursorPositionException();
+        }
+
+        return response;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SearchResultDone getSearchResultDone()
+    {
+        return searchDoneResp;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean available()
+    {
+        return response != null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException
+    {
+        close( null );
+    }
+
+
+    /**
+     * Closes the cursor. The page being received is abandoned, and the server is told to
+     * release the paged search when the next page has not been requested yet.
+     *
+     * @param cause The reason of the closure, if any
+     * @throws IOException Never
+     */
+    @Override
+    public void close( Exception cause ) throws IOException
+    {
+        if ( LOG_CURSOR.isDebugEnabled() )
+        {
+            LOG_CURSOR.debug( I18n.msg( I18n.MSG_04171_CLOSING_SEARCH_CURSOR, this ) );
+        }
+
+        synchronized ( this )
+        {
+            if ( !done && !isClosed() )
+            {
+                if ( pageInProgress )
+                {
+                    connection.abandon( searchRequest.getMessageId() );
+                }
+                else if ( nextCookie != null )
+                {
+                    // A page of size 0 ends the paged search
+                    pagedResults.setCookie( nextCookie );
+                    pagedResults.setSize( 0 );
+                    nextCookie = null;
+                    connection.searchStage( searchRequest, ignored ->
+                    {
+                        // The page is empty
+                    } );
+                }
+            }
+
+            if ( cause != null )
+            {
+                super.close( cause );
+            }
+            else
+            {
+                super.close();
+            }
+        }
+
+        responses.clear();
+    }
+
+
+    // rest of all operations will throw UnsupportedOperationException
+
+    /**
+     * This operation is not supported in SearchCursor.
+     * {@inheritDoc}
+     */
+    @Override
+    public void after( Response element ) throws LdapException, CursorException
+    {
+        throw new UnsupportedOperationException( I18n.err( I18n.ERR_13102_UNSUPPORTED_OPERATION, getClass().getName()
+            .concat( "." ).concat( "after( Response element )" ) ) );
+    }
+
+
+    /**
+     * This operation is not supported in SearchCursor.
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterLast() throws LdapException, CursorException
+    {
+        throw new UnsupportedOperationException( I18n.err( I18n.ERR_13102_UNSUPPORTED_OPERATION, getClass().getName()
+            .concat( "." ).concat( "afterLast()" ) ) );
+    }
+
+
+    /**
+     * This operation is not supported in SearchCursor.
+     * {@inheritDoc}
+     */
+    @Override
+    public void before( Response element ) throws LdapException, CursorException
+    {
+        throw new UnsupportedOperationException( I18n.err( I18n.ERR_13102_UNSUPPORTED_OPERATION, getClass().getName()
+            .concat( "." ).concat( "before( Response element )" ) ) );
+    }
+
+
+    /**
+     * This operation is not supported in SearchCursor.
+     * {@inheritDoc}
+     */
+    @Override
+    public void beforeFirst() throws LdapException, CursorException
+    {
+        throw new UnsupportedOperationException( I18n.err( I18n.ERR_13102_UNSUPPORTED_OPERATION, getClass().getName()
+            .concat( "." ).concat( "beforeFirst()" ) ) );
+    }
+
+
+    /**
+     * This operation is not supported in SearchCursor.
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean first() throws LdapException, CursorException
+    {
+        throw new UnsupportedOperationException( I18n.err( I18n.ERR_13102_UNSUPPORTED_OPERATION, getClass().getName()
+            .concat( "." ).concat( "first()" ) ) );
+    }
+
+
+    /**
+     * This operation is not supported in SearchCursor.
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean last() throws LdapException, CursorException
+    {
+        throw new UnsupportedOperationException( I18n.err( I18n.ERR_13102_UNSUPPORTED_OPERATION, getClass().getName()
+            .concat( "." ).concat( "last()" ) ) );
+    }
+
+
+    /**
+     * This operation is not supported in SearchCursor.
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean previous() throws LdapException, CursorException
+    {
+        throw new UnsupportedOperationException( I18n.err( I18n.ERR_13102_UNSUPPORTED_OPERATION, getClass().getName()
+            .concat( "." ).concat( "previous()" ) ) );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isDone()
+    {
+        return done;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isReferral()
+    {
+        return response instanceof SearchResultReference;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Referral getReferral() throws LdapException
+    {
+        if ( isReferral() )
+        {
+            return ( ( SearchResultReference ) response ).getReferral();
+        }
+
+        throw new LdapException();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isEntry()
+    {
+        return response instanceof SearchResultEntry;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Entry getEntry() throws LdapException
+    {
+        if ( isEntry() )
+        {
+            return ( ( SearchResultEntry ) response ).getEntry();
+        }
+
+        if ( isReferral() )
+        {
+            Referral referral = ( ( SearchResultReference ) response ).getReferral();
+            throw new LdapReferralException( referral.getLdapUrls() );
+        }
+
+        throw new LdapException();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isIntermediate()
+    {
+        return response instanceof IntermediateResponse;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public IntermediateResponse getIntermediate() throws LdapException
+    {
+        if ( isIntermediate() )
+        {
+            return ( IntermediateResponse ) response;
+        }
+
+        throw new LdapException();
+    }
+}
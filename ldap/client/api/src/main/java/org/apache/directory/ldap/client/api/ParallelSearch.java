@@ -0,0 +1,415 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api;
+
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.api.i18n.I18n;
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.cursor.CursorException;
+import org.apache.directory.api.ldap.model.cursor.SearchCursor;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapInvalidSearchFilterException;
+import org.apache.directory.api.ldap.model.filter.AndNode;
+import org.apache.directory.api.ldap.model.filter.ExprNode;
+import org.apache.directory.api.ldap.model.filter.FilterParser;
+import org.apache.directory.api.ldap.model.filter.PresenceNode;
+import org.apache.directory.api.ldap.model.message.Control;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchRequestImpl;
+import org.apache.directory.api.ldap.model.message.SearchResultDone;
+import org.apache.directory.api.ldap.model.message.SearchResultEntry;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Runs a search as several smaller searches, sent concurrently on connections borrowed
+ * from a pool. The responses of all the searches are returned by a single
+ * {@link ParallelSearchCursor}, in no particular order.
+ * <br>
+ * A subtree search is split by the children of its base : the base entry is searched
+ * alone, and each of its children is the base of a subtree search. Those partitions never
+ * overlap. When the children can't be listed, the search is sent as is. The other scopes
+ * are not split.
+ * <br>
+ * A search can also be split by filters, each partition searching the entries matching
+ * both the request filter and one of the given filters, for instance a range of values of
+ * an attribute. As those partitions may overlap, an entry is returned only once, unless
+ * the de-duplication has been disabled : the names of all the returned entries are then
+ * kept until the search is done.
+ * <br>
+ * The controls, size limit and time limit of the request apply to each partition.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class ParallelSearch
+{
+    /** The logger */
+    private static final Logger LOG = LoggerFactory.getLogger( ParallelSearch.class );
+
+    /** The default number of partitions searched at the same time */
+    public static final int DEFAULT_PARALLELISM = 4;
+
+    /** The default number of responses received and not read yet above which the searches wait */
+    public static final int DEFAULT_MAX_BUFFERED_RESPONSES = 1024;
+
+    /** The pool the connections are borrowed from */
+    private final LdapConnectionPool connectionPool;
+
+    /** The executor running the searches */
+    private final Executor executor;
+
+    /** The number of partitions searched at the same time */
+    private int parallelism = DEFAULT_PARALLELISM;
+
+    /** The number of responses received and not read yet above which the searches wait */
+    private int maxBufferedResponses = DEFAULT_MAX_BUFFERED_RESPONSES;
+
+    /** Tells if the entries found in several partitions are returned only once */
+    private boolean deduplicate = true;
+
+    /** The time to wait for a response, in milliseconds */
+    private long timeout = LdapConnectionConfig.DEFAULT_TIMEOUT;
+
+
+    /**
+     * Lazily creates the executor shared by the instances which don't have their own
+     */
+    private static final class SharedExecutor
+    {
+        /** The executor */
+        private static final ThreadPoolExecutor INSTANCE = createExecutor();
+
+
+        /**
+         * Private constructor
+         */
+        private SharedExecutor()
+        {
+        }
+
+
+        /**
+         * @return An executor with daemon threads, created when needed and stopped when idle
+         */
+        private static ThreadPoolExecutor createExecutor()
+        {
+            return new ThreadPoolExecutor( 0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+                runnable ->
+                {
+                    Thread thread = new Thread( runnable, "ParallelSearch-worker" );
+                    thread.setDaemon( true );
+
+                    return thread;
+                } );
+        }
+    }
+
+
+    /**
+     * Creates a new ParallelSearch instance, which searches are run by a shared executor
+     *
+     * @param connectionPool The pool the connections are borrowed from
+     */
+    public ParallelSearch( LdapConnectionPool connectionPool )
+    {
+        this( connectionPool, null );
+    }
+
+
+    /**
+     * Creates a new ParallelSearch instance
+     *
+     * @param connectionPool The pool the connections are borrowed from
+     * @param executor The executor running the searches. It must be able to run as many
+     * tasks at the same time as the parallelism
+     */
+    public ParallelSearch( LdapConnectionPool connectionPool, Executor executor )
+    {
+        this.connectionPool = connectionPool;
+        this.executor = executor;
+    }
+
+
+    /**
+     * @return The number of partitions searched at the same time
+     */
+    public int getParallelism()
+    {
+        return parallelism;
+    }
+
+
+    /**
+     * @param parallelism The number of partitions searched at the same time, hence the number
+     * of connections borrowed from the pool. Defaults to 4
+     */
+    public void setParallelism( int parallelism )
+    {
+        this.parallelism = Math.max( 1, parallelism );
+    }
+
+
+    /**
+     * @return The number of responses received and not read yet above which the searches wait
+     */
+    public int getMaxBufferedResponses()
+    {
+        return maxBufferedResponses;
+    }
+
+
+    /**
+     * @param maxBufferedResponses The number of responses received and not read yet above
+     * which the searches wait. Defaults to 1024
+     */
+    public void setMaxBufferedResponses( int maxBufferedResponses )
+    {
+        this.maxBufferedResponses = Math.max( 1, maxBufferedResponses );
+    }
+
+
+    /**
+     * @return <tt>true</tt> if the entries found in several partitions are returned only once
+     */
+    public boolean isDeduplicate()
+    {
+        return deduplicate;
+    }
+
+
+    /**
+     * @param deduplicate Tells if the entries found in several filter partitions are returned
+     * only once. Defaults to true
+     */
+    public void setDeduplicate( boolean deduplicate )
+    {
+        this.deduplicate = deduplicate;
+    }
+
+
+    /**
+     * @return The time to wait for a response, in milliseconds
+     */
+    public long getTimeout()
+    {
+        return timeout;
+    }
+
+
+    /**
+     * @param timeout The time to wait for a response, in milliseconds
+     */
+    public void setTimeout( long timeout )
+    {
+        this.timeout = timeout;
+    }
+
+
+    /**
+     * Searches the entries, a subtree search being split by the children of its base.
+     *
+     * @param searchRequest The search request
+     * @return A cursor on the responses of all the partitions
+     * @throws LdapException If the children of the base can't be listed
+     */
+    public SearchCursor search( SearchRequest searchRequest ) throws LdapException
+    {
+        Queue<SearchRequest> partitions = new ConcurrentLinkedQueue<>();
+
+        if ( searchRequest.getScope() == SearchScope.SUBTREE )
+        {
+            List<Dn> children = listChildren( searchRequest );
+
+            if ( children != null )
+            {
+                partitions.add( partition( searchRequest, searchRequest.getBase(), SearchScope.OBJECT,
+                    searchRequest.getFilter() ) );
+
+                for ( Dn child : children )
+                {
+                    partitions.add( partition( searchRequest, child, SearchScope.SUBTREE, searchRequest.getFilter() ) );
+                }
+            }
+        }
+
+        if ( partitions.isEmpty() )
+        {
+            partitions.add( searchRequest );
+        }
+
+        return start( searchRequest, partitions, false );
+    }
+
+
+    /**
+     * Searches the entries, the search being split by the given filters.
+     *
+     * @param searchRequest The search request
+     * @param partitionFilters The filters of the partitions, and-ed with the request filter
+     * @return A cursor on the responses of all the partitions
+     */
+    public SearchCursor search( SearchRequest searchRequest, ExprNode... partitionFilters )
+    {
+        Queue<SearchRequest> partitions = new ConcurrentLinkedQueue<>();
+
+        for ( ExprNode partitionFilter : partitionFilters )
+        {
+            partitions.add( partition( searchRequest, searchRequest.getBase(), searchRequest.getScope(),
+                new AndNode( searchRequest.getFilter(), partitionFilter ) ) );
+        }
+
+        return start( searchRequest, partitions, deduplicate );
+    }
+
+
+    /**
+     * Searches the entries, the search being split by the given filters.
+     *
+     * @param searchRequest The search request
+     * @param partitionFilters The filters of the partitions, and-ed with the request filter
+     * @return A cursor on the responses of all the partitions
+     * @throws LdapException If a filter is invalid
+     */
+    public SearchCursor search( SearchRequest searchRequest, String... partitionFilters ) throws LdapException
+    {
+        ExprNode[] filters = new ExprNode[partitionFilters.length];
+
+        for ( int i = 0; i < partitionFilters.length; i++ )
+        {
+            try
+            {
+                filters[i] = FilterParser.parse( partitionFilters[i] );
+            }
+            catch ( ParseException pe )
+            {
+                throw new LdapInvalidSearchFilterException( I18n.err( I18n.ERR_13508_INVALID_FILTER,
+                    partitionFilters[i] ) );
+            }
+        }
+
+        return search( searchRequest, filters );
+    }
+
+
+    /**
+     * Lists the children of the search base
+     *
+     * @return The children names, or null if the server has not returned all of them
+     */
+    private List<Dn> listChildren( SearchRequest searchRequest ) throws LdapException
+    {
+        SearchRequest childrenRequest = new SearchRequestImpl();
+        childrenRequest.setBase( searchRequest.getBase() );
+        childrenRequest.setScope( SearchScope.ONELEVEL );
+        childrenRequest.setFilter( new PresenceNode( SchemaConstants.OBJECT_CLASS_AT ) );
+        childrenRequest.setDerefAliases( searchRequest.getDerefAliases() );
+        childrenRequest.addAttributes( SchemaConstants.NO_ATTRIBUTE );
+
+        List<Dn> children = new ArrayList<>();
+        LdapConnection connection = connectionPool.getConnection();
+
+        try ( SearchCursor cursor = connection.search( childrenRequest ) )
+        {
+            while ( cursor.next() )
+            {
+                if ( cursor.isEntry() )
+                {
+                    children.add( ( ( SearchResultEntry ) cursor.get() ).getObjectName() );
+                }
+            }
+
+            SearchResultDone done = cursor.getSearchResultDone();
+
+            if ( ( done == null ) || ( done.getLdapResult().getResultCode() != ResultCodeEnum.SUCCESS ) )
+            {
+                return null;
+            }
+
+            return children;
+        }
+        catch ( CursorException | IOException e )
+        {
+            throw new LdapException( e.getMessage(), e );
+        }
+        finally
+        {
+            connectionPool.releaseConnection( connection );
+        }
+    }
+
+
+    /**
+     * Creates the request of a partition, with the parameters and the controls of the search
+     */
+    private static SearchRequest partition( SearchRequest searchRequest, Dn base, SearchScope scope, ExprNode filter )
+    {
+        SearchRequest partition = new SearchRequestImpl();
+        partition.setBase( base );
+        partition.setScope( scope );
+        partition.setFilter( filter );
+        partition.setDerefAliases( searchRequest.getDerefAliases() );
+        partition.setSizeLimit( searchRequest.getSizeLimit() );
+        partition.setTimeLimit( searchRequest.getTimeLimit() );
+        partition.setTypesOnly( searchRequest.getTypesOnly() );
+        partition.addAttributes( searchRequest.getAttributes().toArray( new String[0] ) );
+        partition.addAllControls( searchRequest.getControls().values().toArray( new Control[0] ) );
+
+        return partition;
+    }
+
+
+    /**
+     * Starts searching the partitions
+     */
+    private SearchCursor start( SearchRequest searchRequest, Queue<SearchRequest> partitions, boolean deduplicateEntries )
+    {
+        if ( LOG.isDebugEnabled() )
+        {
+            LOG.debug( I18n.msg( I18n.MSG_04182_PARALLEL_SEARCH_PARTITIONS, searchRequest.getBase(),
+                partitions.size() ) );
+        }
+
+        int nbWorkers = Math.min( parallelism, partitions.size() );
+        ParallelSearchCursor cursor = new ParallelSearchCursor( connectionPool, searchRequest, partitions, nbWorkers,
+            deduplicateEntries, maxBufferedResponses, timeout );
+
+        for ( int i = 0; i < nbWorkers; i++ )
+        {
+            ( executor == null ? SharedExecutor.INSTANCE : executor ).execute( cursor::searchPartitions );
+        }
+
+        return cursor;
+    }
+}
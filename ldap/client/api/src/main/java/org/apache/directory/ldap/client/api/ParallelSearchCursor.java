@@ -0,0 +1,590 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api;
+
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.directory.api.i18n.I18n;
+import org.apache.directory.api.ldap.model.constants.Loggers;
+import org.apache.directory.api.ldap.model.cursor.AbstractCursor;
+import org.apache.directory.api.ldap.model.cursor.CursorException;
+import org.apache.directory.api.ldap.model.cursor.InvalidCursorPositionException;
+import org.apache.directory.api.ldap.model.cursor.SearchCursor;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapReferralException;
+import org.apache.directory.api.ldap.model.message.IntermediateResponse;
+import org.apache.directory.api.ldap.model.message.Referral;
+import org.apache.directory.api.ldap.model.message.Response;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchResultDone;
+import org.apache.directory.api.ldap.model.message.SearchResultDoneImpl;
+import org.apache.directory.api.ldap.model.message.SearchResultEntry;
+import org.apache.directory.api.ldap.model.message.SearchResultReference;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.ldap.client.api.exception.LdapConnectionTimeOutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A SearchCursor returning the responses of the partitions of a {@link ParallelSearch}, as
+ * they are received. The SearchResultDone of the partitions are not returned : the cursor
+ * ends with a SearchResultDone which result is the first failure of a partition, if any.
+ * A partition which base has been deleted since the children of the search base have been
+ * listed is ignored.
+ * <br>
+ * When too many responses are waiting to be read, the partitions searches wait for them
+ * to be read. Closing the cursor stops all the searches.
+ * <br>
+ * Note: This is a forward only cursor hence the only valid operations are next(), get() and close()
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class ParallelSearchCursor extends AbstractCursor<Response> implements SearchCursor
+{
+    /** A dedicated log for cursors */
+    private static final Logger LOG_CURSOR = LoggerFactory.getLogger( Loggers.CURSOR_LOG.getName() );
+
+    /** Put in the queue when a partition can't be searched */
+    private static final SearchResultDone FAILED = new SearchResultDoneImpl();
+
+    /** The time a search waits for room in the queue before checking if the cursor is closed, in milliseconds */
+    private static final long OFFER_DELAY = 100L;
+
+    /** The pool the connections are borrowed from */
+    private final LdapConnectionPool connectionPool;
+
+    /** The search request */
+    private final SearchRequest searchRequest;
+
+    /** The partitions not searched yet */
+    private final Queue<SearchRequest> partitions;
+
+    /** The number of searches still running */
+    private final AtomicInteger runningSearches;
+
+    /** The names of the returned entries, or null if the entries are not de-duplicated */
+    private final Set<Dn> returnedEntries;
+
+    /** The responses received, and not read yet */
+    private final BlockingQueue<Response> responses;
+
+    /** The time to wait for a response, in milliseconds */
+    private final long timeout;
+
+    /** The first SearchResultDone of a partition which has failed */
+    private final AtomicReference<SearchResultDone> failedDone = new AtomicReference<>();
+
+    /** The error which stopped the search */
+    private volatile Exception error;
+
+    /** Tells if the cursor has been closed, the searches being stopped */
+    private volatile boolean stopped;
+
+    /** a reference to hold the retrieved response */
+    private Response response;
+
+    /** the done flag */
+    private boolean done;
+
+    /** a reference to hold the SearchResultDone response */
+    private SearchResultDone searchDoneResp;
+
+
+    /**
+     * Creates a new instance of ParallelSearchCursor. The searches are started by the
+     * {@link ParallelSearch}, calling {@link #searchPartitions()} once per search.
+     *
+     * @param connectionPool The pool the connections are borrowed from
+     * @param searchRequest The search request
+     * @param partitions The requests of the partitions
+     * @param nbSearches The number of partitions searched at the same time
+     * @param deduplicate Tells if the entries found in several partitions are returned only once
+     * @param maxBufferedResponses The number of responses waiting to be read above which the searches wait
+     * @param timeout The time to wait for a response, in milliseconds
+     */
+    ParallelSearchCursor( LdapConnectionPool connectionPool, SearchRequest searchRequest,
+        Queue<SearchRequest> partitions, int nbSearches, boolean deduplicate, int maxBufferedResponses, long timeout )
+    {
+        if ( LOG_CURSOR.isDebugEnabled() )
+        {
+            LOG_CURSOR.debug( I18n.msg( I18n.MSG_04170_CREATING_SEARCH_CURSOR, this ) );
+        }
+
+        this.connectionPool = connectionPool;
+        this.searchRequest = searchRequest;
+        this.partitions = partitions;
+        this.runningSearches = new AtomicInteger( nbSearches );
+        this.returnedEntries = deduplicate ? ConcurrentHashMap.<Dn>newKeySet() : null;
+        this.responses = new LinkedBlockingQueue<>( maxBufferedResponses );
+        this.timeout = timeout;
+    }
+
+
+    /**
+     * Searches the partitions one after the other, until there are no more partitions or
+     * the cursor has been closed. The last search to end adds the final SearchResultDone.
+     */
+    void searchPartitions()
+    {
+        try
+        {
+            SearchRequest partition = partitions.poll();
+
+            while ( ( partition != null ) && !stopped && ( error == null ) )
+            {
+                searchPartition( partition );
+                partition = partitions.poll();
+            }
+        }
+        catch ( Exception e )
+        {
+            error = e;
+        }
+        finally
+        {
+            if ( runningSearches.decrementAndGet() == 0 )
+            {
+                if ( error != null )
+                {
+                    enqueue( FAILED );
+                }
+                else
+                {
+                    SearchResultDone searchResultDone = failedDone.get();
+
+                    if ( searchResultDone == null )
+                    {
+                        searchResultDone = new SearchResultDoneImpl( searchRequest.getMessageId() );
+                        searchResultDone.getLdapResult().setResultCode( ResultCodeEnum.SUCCESS );
+                    }
+
+                    enqueue( searchResultDone );
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Searches a partition on a connection borrowed for this search
+     */
+    private void searchPartition( SearchRequest partition ) throws LdapException, CursorException, IOException
+    {
+        LdapConnection connection = connectionPool.getConnection();
+
+        try ( SearchCursor cursor = connection.search( partition ) )
+        {
+            while ( !stopped && ( error == null ) && cursor.next() )
+            {
+                Response partitionResponse = cursor.get();
+
+                if ( ( returnedEntries == null ) || !( partitionResponse instanceof SearchResultEntry )
+                    || returnedEntries.add( ( ( SearchResultEntry ) partitionResponse ).getObjectName() ) )
+                {
+                    enqueue( partitionResponse );
+                }
+            }
+
+            SearchResultDone partitionDone = cursor.getSearchResultDone();
+
+            if ( ( partitionDone != null ) && !isIgnored( partition, partitionDone.getLdapResult().getResultCode() ) )
+            {
+                failedDone.compareAndSet( null, partitionDone );
+            }
+        }
+        finally
+        {
+            connectionPool.releaseConnection( connection );
+        }
+    }
+
+
+    /**
+     * Tells if the result of a partition is not a failure of the search
+     */
+    private boolean isIgnored( SearchRequest partition, ResultCodeEnum resultCode )
+    {
+        if ( resultCode == ResultCodeEnum.SUCCESS )
+        {
+            return true;
+        }
+
+        // A child of the base deleted since it has been listed
+        return ( resultCode == ResultCodeEnum.NO_SUCH_OBJECT ) && !partition.getBase().equals( searchRequest.getBase() );
+    }
+
+
+    /**
+     * Adds a response to the queue, waiting for room while the cursor is not closed
+     */
+    private void enqueue( Response partitionResponse )
+    {
+        try
+        {
+            boolean queued = false;
+
+            while ( !queued && !stopped )
+            {
+                // Waits while the responses are not read fast enough
+                queued = responses.offer( partitionResponse, OFFER_DELAY, TimeUnit.MILLISECONDS );
+            }
+        }
+        catch ( InterruptedException ie )
+        {
+            Thread.currentThread().interrupt();
+            error = ie;
+            stopped = true;
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean next() throws LdapException, CursorException
+    {
+        if ( done )
+        {
+            return false;
+        }
+
+        checkNotClosed();
+
+        try
+        {
+            response = responses.poll( timeout, TimeUnit.MILLISECONDS );
+        }
+        catch ( InterruptedException ie )
+        {
+            Thread.currentThread().interrupt();
+            LdapException ldapException = new LdapException( LdapNetworkConnection.NO_RESPONSE_ERROR, ie );
+            closeQuietly( ldapException );
+
+            throw ldapException;
+        }
+
+        if ( response == null )
+        {
+            closeQuietly( null );
+
+            throw new LdapConnectionTimeOutException( LdapNetworkConnection.TIME_OUT_ERROR );
+        }
+
+        if ( response == FAILED )
+        {
+            response = null;
+            LdapException ldapException = error instanceof LdapException ? ( LdapException ) error
+                : new LdapException( LdapNetworkConnection.NO_RESPONSE_ERROR, error );
+            closeQuietly( ldapException );
+
+            throw ldapException;
+        }
+
+        done = response instanceof SearchResultDone;
+
+        if ( done )
+        {
+            searchDoneResp = ( SearchResultDone ) response;
+            response = null;
+        }
+
+        return !done;
+    }
+
+
+    /**
+     * Closes the cursor after an error, ignoring the errors of the closure
+     */
+    private void closeQuietly( Exception cause )
+    {
+        try
+        {
+            close( cause );
+        }
+        catch ( IOException ioe )
+        {
+            // Nothing to do, the original error is reported
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Response get() throws InvalidCursorPositionException
+    {
+        if ( !available() )
+        {
+            throw new InvalidCursorPositionException();
+        }
+
+        return response;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SearchResultDone getSearchResultDone()
+    {
+        return searchDoneResp;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean available()
+    {
+        return response != null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException
+    {
+        close( null );
+    }
+
+
+    /**
+     * Closes the cursor. The searches still running are abandoned, and the partitions not
+     * searched yet are skipped.
+     *
+     * @param cause The reason of the closure, if any
+     * @throws IOException Never
+     */
+    @Override
+    public void close( Exception cause ) throws IOException
+    {
+        if ( LOG_CURSOR.isDebugEnabled() )
+        {
+            LOG_CURSOR.debug( I18n.msg( I18n.MSG_04171_CLOSING_SEARCH_CURSOR, this ) );
+        }
+
+        stopped = true;
+        responses.clear();
+
+        if ( cause != null )
+        {
+            super.close( cause );
+        }
+        else
+        {
+            super.close();
+        }
+    }
+
+
+    // rest of all operations will throw UnsupportedOperationException
+
+    /**
+     * This operation is not supported in SearchCursor.
+     * {@inheritDoc}
+     */
+    @Override
+    public void after( Response element ) throws LdapException, CursorException
+    {
+        throw new UnsupportedOperationException( I18n.err( I18n.ERR_13102_UNSUPPORTED_OPERATION, getClass().getName()
+            .concat( "." ).concat( "after( Response element )" ) ) );
+    }
+
+
+    /**
+     * This operation is not supported in SearchCursor.
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterLast() throws LdapException, CursorException
+    {
+        throw new UnsupportedOperationException( I18n.err( I18n.ERR_13102_UNSUPPORTED_OPERATION, getClass().getName()
+            .concat( "." ).concat( "afterLast()" ) ) );
+    }
+
+
+    /**
+     * This operation is not supported in SearchCursor.
+     * {@inheritDoc}
+     */
+    @Override
+    public void before( Response element ) throws LdapException, CursorException
+    {
+        throw new UnsupportedOperationException( I18n.err( I18n.ERR_13102_UNSUPPORTED_OPERATION, getClass().getName()
+            .concat( "." ).concat( "before( Response element )" ) ) );
+    }
+
+
+    /**
+     * This operation is not supported in SearchCursor.
+     * {@inheritDoc}
+     */
+    @Override
+    public void beforeFirst() throws LdapException, CursorException
+    {
+        throw new UnsupportedOperationException( I18n.err( I18n.ERR_13102_UNSUPPORTED_OPERATION, getClass().getName()
+            .concat( "." ).concat( "beforeFirst()" ) ) );
+    }
+
+
+    /**
+     * This operation is not supported in SearchCursor.
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean first() throws LdapException, CursorException
+    {
+        throw new UnsupportedOperationException( I18n.err( I18n.ERR_13102_UNSUPPORTED_OPERATION, getClass().getName()
+            .concat( "." ).concat( "first()" ) ) );
+    }
+
+
+    /**
+     * This operation is not supported in SearchCursor.
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean last() throws LdapException, CursorException
+    {
+        throw new UnsupportedOperationException( I18n.err( I18n.ERR_13102_UNSUPPORTED_OPERATION, getClass().getName()
+            .concat( "." ).concat( "last()" ) ) );
+    }
+
+
+    /**
+     * This operation is not supported in SearchCursor.
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean previous() throws LdapException, CursorException
+    {
+        throw new UnsupportedOperationException( I18n.err( I18n.ERR_13102_UNSUPPORTED_OPERATION, getClass().getName()
+            .concat( "." ).concat( "previous()" ) ) );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isDone()
+    {
+        return done;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isReferral()
+    {
+        return response instanceof SearchResultReference;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Referral getReferral() throws LdapException
+    {
+        if ( isReferral() )
+        {
+            return ( ( SearchResultReference ) response ).getReferral();
+        }
+
+        throw new LdapException();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isEntry()
+    {
+        return response instanceof SearchResultEntry;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Entry getEntry() throws LdapException
+    {
+        if ( isEntry() )
+        {
+            return ( ( SearchResultEntry ) response ).getEntry();
+        }
+
+        if ( isReferral() )
+        {
+            Referral referral = ( ( SearchResultReference ) response ).getReferral();
+            throw new LdapReferralException( referral.getLdapUrls() );
+        }
+
+        throw new LdapException();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isIntermediate()
+    {
+        return response instanceof IntermediateResponse;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public IntermediateResponse getIntermediate() throws LdapException
+    {
+        if ( isIntermediate() )
+        {
+            return ( IntermediateResponse ) response;
+        }
+
+        throw new LdapException();
+    }
+}
@@ -0,0 +1,412 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api;
+
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.directory.api.asn1.EncoderException;
+import org.apache.directory.api.asn1.util.Asn1Buffer;
+import org.apache.directory.api.i18n.I18n;
+import org.apache.directory.api.ldap.codec.api.LdapEncoder;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.message.AddRequest;
+import org.apache.directory.api.ldap.model.message.CompareRequest;
+import org.apache.directory.api.ldap.model.message.DeleteRequest;
+import org.apache.directory.api.ldap.model.message.ModifyDnRequest;
+import org.apache.directory.api.ldap.model.message.ModifyRequest;
+import org.apache.directory.api.ldap.model.message.Request;
+import org.apache.directory.api.ldap.model.message.Response;
+import org.apache.directory.ldap.client.api.future.AddFuture;
+import org.apache.directory.ldap.client.api.future.CompareFuture;
+import org.apache.directory.ldap.client.api.future.DeleteFuture;
+import org.apache.directory.ldap.client.api.future.ModifyDnFuture;
+import org.apache.directory.ldap.client.api.future.ModifyFuture;
+import org.apache.directory.ldap.client.api.future.ResponseFuture;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.future.WriteFuture;
+
+
+/**
+ * A pipeline sending requests on a {@link LdapNetworkConnection} without waiting for
+ * their responses. The requests are encoded one after the other into a batch, which is
+ * written at once when it has reached its maximum size, when its linger time has
+ * expired, or when the pipeline is flushed or closed. The futures of the requests are
+ * completed as their responses are received.
+ * <br>
+ * Only the Add, Modify, Delete, ModifyDn and Compare requests can be pipelined. A
+ * pipeline can be shared by many threads, the requests being written in the order they
+ * have been sent.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class RequestPipeline implements AutoCloseable
+{
+    /** The initial size of a batch */
+    private static final int INITIAL_BATCH_SIZE = 4096;
+
+    /** The connection the requests are sent on */
+    private final LdapNetworkConnection connection;
+
+    /** The size a batch is written at */
+    private final int maxBatchBytes;
+
+    /** The time a batch waits for other requests, in milliseconds. 0 to wait for a flush */
+    private final long lingerMillis;
+
+    /** The lock protecting the batch */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** The buffer the requests are encoded in */
+    private final Asn1Buffer asn1Buffer = new Asn1Buffer();
+
+    /** The requests encoded since the last write, if any */
+    private IoBuffer batch;
+
+    /** The scheduled write of the current batch, if any */
+    private ScheduledFuture<?> lingerTask;
+
+    /** Tells if the pipeline has been closed */
+    private boolean closed;
+
+
+    /**
+     * The timer writing the batches which linger time has expired. It's created the first
+     * time a pipeline with a linger time is used, and shared by all the pipelines.
+     */
+    private static final class LingerTimer
+    {
+        /** The timer */
+        private static final ScheduledThreadPoolExecutor INSTANCE = createTimer();
+
+
+        /**
+         * Private constructor
+         */
+        private LingerTimer()
+        {
+        }
+
+
+        /**
+         * @return A timer with a single daemon thread
+         */
+        private static ScheduledThreadPoolExecutor createTimer()
+        {
+            ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor( 1, runnable ->
+            {
+                Thread thread = new Thread( runnable, "RequestPipeline-linger" );
+                thread.setDaemon( true );
+
+                return thread;
+            } );
+
+            timer.setRemoveOnCancelPolicy( true );
+
+            return timer;
+        }
+    }
+
+
+    /**
+     * Creates a new RequestPipeline instance
+     *
+     * @param connection The connection the requests are sent on
+     * @param maxBatchBytes The size a batch is written at
+     * @param lingerMillis The time a batch waits for other requests, in milliseconds. 0 to
+     * wait for the batch to be full, or for the pipeline to be flushed
+     */
+    RequestPipeline( LdapNetworkConnection connection, int maxBatchBytes, long lingerMillis )
+    {
+        this.connection = connection;
+        this.maxBatchBytes = maxBatchBytes;
+        this.lingerMillis = lingerMillis;
+    }
+
+
+    /**
+     * Send an Add request, without waiting for its response
+     *
+     * @param addRequest The request to send
+     * @return The future of the request
+     * @throws LdapException If the request can't be sent
+     */
+    public AddFuture add( AddRequest addRequest ) throws LdapException
+    {
+        return ( AddFuture ) send( addRequest );
+    }
+
+
+    /**
+     * Send a Modify request, without waiting for its response
+     *
+     * @param modifyRequest The request to send
+     * @return The future of the request
+     * @throws LdapException If the request can't be sent
+     */
+    public ModifyFuture modify( ModifyRequest modifyRequest ) throws LdapException
+    {
+        return ( ModifyFuture ) send( modifyRequest );
+    }
+
+
+    /**
+     * Send a Delete request, without waiting for its response
+     *
+     * @param deleteRequest The request to send
+     * @return The future of the request
+     * @throws LdapException If the request can't be sent
+     */
+    public DeleteFuture delete( DeleteRequest deleteRequest ) throws LdapException
+    {
+        return ( DeleteFuture ) send( deleteRequest );
+    }
+
+
+    /**
+     * Send a ModifyDn request, without waiting for its response
+     *
+     * @param modDnRequest The request to send
+     * @return The future of the request
+     * @throws LdapException If the request can't be sent
+     */
+    public ModifyDnFuture modifyDn( ModifyDnRequest modDnRequest ) throws LdapException
+    {
+        return ( ModifyDnFuture ) send( modDnRequest );
+    }
+
+
+    /**
+     * Send a Compare request, without waiting for its response
+     *
+     * @param compareRequest The request to send
+     * @return The future of the request
+     * @throws LdapException If the request can't be sent
+     */
+    public CompareFuture compare( CompareRequest compareRequest ) throws LdapException
+    {
+        return ( CompareFuture ) send( compareRequest );
+    }
+
+
+    /**
+     * Send a request, without waiting for its response. The request is added to the
+     * current batch, which is written if it's full.
+     *
+     * @param request The request to send, an Add, Modify, Delete, ModifyDn or Compare request
+     * @return The future of the request
+     * @throws LdapException If the request can't be encoded, or if the connection is closed
+     */
+    public ResponseFuture<? extends Response> send( Request request ) throws LdapException
+    {
+        ResponseFuture<? extends Response> future;
+        WriteFuture writeFuture = null;
+
+        lock.lock();
+
+        try
+        {
+            checkOpen();
+
+            if ( ( batch != null ) && connection.isOutstandingRequestsLimitReached() )
+            {
+                // Registering the request waits for a response to one of the batched
+                // requests : they must be written first
+                writeFuture = writeBatch();
+            }
+
+            future = connection.register( request );
+            ByteBuffer encoded;
+
+            try
+            {
+                encoded = LdapEncoder.encodeMessage( asn1Buffer, connection.getCodecService(), request );
+            }
+            catch ( EncoderException ee )
+            {
+                connection.removeFromFutureMaps( request.getMessageId() );
+
+                throw new LdapException( ee.getMessage(), ee );
+            }
+            finally
+            {
+                asn1Buffer.clear();
+            }
+
+            if ( ( batch != null ) && ( batch.position() + encoded.remaining() > maxBatchBytes ) )
+            {
+                writeFuture = writeBatch();
+            }
+
+            if ( batch == null )
+            {
+                batch = IoBuffer.allocate( Math.min( INITIAL_BATCH_SIZE, maxBatchBytes ), false );
+                batch.setAutoExpand( true );
+                scheduleWrite();
+            }
+
+            batch.put( encoded );
+
+            if ( batch.position() >= maxBatchBytes )
+            {
+                writeFuture = writeBatch();
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+
+        if ( writeFuture != null )
+        {
+            // The batches are written in order : waiting for the last one is enough
+            connection.awaitWrite( writeFuture );
+        }
+
+        return future;
+    }
+
+
+    /**
+     * Write the current batch, and wait for it to have been written
+     *
+     * @throws LdapException If the session has been closed, or if the batch has not been
+     * written before the timeout
+     */
+    public void flush() throws LdapException
+    {
+        WriteFuture writeFuture = null;
+
+        lock.lock();
+
+        try
+        {
+            if ( batch != null )
+            {
+                writeFuture = writeBatch();
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+
+        if ( writeFuture != null )
+        {
+            connection.awaitWrite( writeFuture );
+        }
+    }
+
+
+    /**
+     * Write the current batch, and close the pipeline. The connection is not closed.
+     *
+     * @throws LdapException If the session has been closed, or if the batch has not been
+     * written before the timeout
+     */
+    @Override
+    public void close() throws LdapException
+    {
+        lock.lock();
+
+        try
+        {
+            closed = true;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+
+        flush();
+    }
+
+
+    /**
+     * Check that the pipeline has not been closed
+     */
+    private void checkOpen()
+    {
+        if ( closed )
+        {
+            throw new IllegalStateException( I18n.err( I18n.ERR_04186_PIPELINE_CLOSED ) );
+        }
+    }
+
+
+    /**
+     * Schedule the write of the batch which has just been started, if there is a linger time
+     */
+    private void scheduleWrite()
+    {
+        if ( lingerMillis > 0L )
+        {
+            lingerTask = LingerTimer.INSTANCE.schedule( this::lingerExpired, lingerMillis, TimeUnit.MILLISECONDS );
+        }
+    }
+
+
+    /**
+     * Write the current batch, as its linger time has expired. The timer thread does not
+     * wait for the write to be done.
+     */
+    private void lingerExpired()
+    {
+        lock.lock();
+
+        try
+        {
+            if ( batch != null )
+            {
+                writeBatch();
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Write the current batch, in a single buffer, and start a new one. Called with the
+     * lock held.
+     *
+     * @return The future of the write
+     */
+    private WriteFuture writeBatch()
+    {
+        if ( lingerTask != null )
+        {
+            lingerTask.cancel( false );
+            lingerTask = null;
+        }
+
+        IoBuffer written = batch;
+        batch = null;
+        written.flip();
+
+        return connection.write( written );
+    }
+}
@@ -0,0 +1,413 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api;
+
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.directory.api.i18n.I18n;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.message.Control;
+import org.apache.directory.api.ldap.model.message.Response;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchResultDone;
+import org.apache.directory.api.ldap.model.message.controls.PagedResults;
+import org.apache.directory.api.util.Strings;
+import org.apache.directory.ldap.client.api.future.SearchFuture;
+
+
+/**
+ * A search which responses are published to a single subscriber, as it requests them.
+ * The entries, references and intermediate responses are published as they are
+ * received, and the SearchResultDone is published last, before the completion.
+ * <br>
+ * The search is sent when the subscriber subscribes. When more than a given number of
+ * responses have been received and not requested yet, the reads are suspended on the
+ * connection, until the subscriber has requested the pending responses : the other
+ * operations sent on the same connection are suspended too.
+ * <br>
+ * If the SearchRequest has a PagedResults control, the next pages are requested only
+ * when the subscriber has requested more responses than the previous pages contained.
+ * The SearchRequest cookie and message ID are then updated for each page, and only the
+ * SearchResultDone of the last page is published.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class SearchPublisher implements Flow.Publisher<Response>
+{
+    /** The default number of received responses above which the reads are suspended */
+    public static final int DEFAULT_MAX_PENDING_RESPONSES = 256;
+
+    /** The connection the search is sent on */
+    private final LdapNetworkConnection connection;
+
+    /** The request */
+    private final SearchRequest searchRequest;
+
+    /** The number of received responses above which the reads are suspended */
+    private final int maxPendingResponses;
+
+    /** Set once a subscriber has subscribed */
+    private final AtomicBoolean subscribed = new AtomicBoolean( false );
+
+    /** The subscriber */
+    private Flow.Subscriber<? super Response> subscriber;
+
+    /** The number of responses requested and not yet published */
+    private final AtomicLong demand = new AtomicLong();
+
+    /** The responses received and not yet published */
+    private final Queue<Response> pendingResponses = new ConcurrentLinkedQueue<>();
+
+    /** The number of pending responses */
+    private final AtomicInteger nbPendingResponses = new AtomicInteger();
+
+    /** Serializes the calls to the subscriber : only the thread incrementing it from 0 publishes */
+    private final AtomicInteger publishing = new AtomicInteger();
+
+    /** The future of the search page being received */
+    private volatile SearchFuture searchFuture;
+
+    /** The cookie of the next page, when the current one is done */
+    private volatile byte[] nextCookie;
+
+    /** The last SearchResultDone, when the search is done */
+    private volatile SearchResultDone searchResultDone;
+
+    /** The error which stopped the search */
+    private volatile Throwable error;
+
+    /** Tells if the subscriber has cancelled its subscription */
+    private volatile boolean cancelled;
+
+    /** Tells if the subscriber has been completed, or has received an error */
+    private boolean terminated;
+
+    /** Tells if the reads have been suspended by this search */
+    private final AtomicBoolean suspended = new AtomicBoolean( false );
+
+
+    /**
+     * Creates a new SearchPublisher instance
+     *
+     * @param connection The connection to send the search on
+     * @param searchRequest The request
+     * @param maxPendingResponses The number of received responses above which the reads
+     * are suspended
+     */
+    SearchPublisher( LdapNetworkConnection connection, SearchRequest searchRequest, int maxPendingResponses )
+    {
+        this.connection = connection;
+        this.searchRequest = searchRequest;
+        this.maxPendingResponses = maxPendingResponses;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void subscribe( Flow.Subscriber<? super Response> subscriber )
+    {
+        if ( !subscribed.compareAndSet( false, true ) )
+        {
+            subscriber.onSubscribe( new Flow.Subscription()
+            {
+                @Override
+                public void request( long n )
+                {
+                    // Nothing to do
+                }
+
+
+                @Override
+                public void cancel()
+                {
+                    // Nothing to do
+                }
+            } );
+            subscriber.onError( new IllegalStateException( I18n.err( I18n.ERR_04184_ALREADY_SUBSCRIBED ) ) );
+
+            return;
+        }
+
+        this.subscriber = subscriber;
+
+        subscriber.onSubscribe( new Flow.Subscription()
+        {
+            @Override
+            public void request( long n )
+            {
+                SearchPublisher.this.request( n );
+            }
+
+
+            @Override
+            public void cancel()
+            {
+                SearchPublisher.this.cancel();
+            }
+        } );
+
+        sendPage();
+    }
+
+
+    /**
+     * Send the search request, for the first or the next page
+     */
+    private void sendPage()
+    {
+        if ( cancelled )
+        {
+            return;
+        }
+
+        try
+        {
+            SearchFuture future = connection.searchAsync( searchRequest );
+            searchFuture = future;
+            future.setResponseConsumer( this::received );
+            future.getCompletionStage().whenComplete( this::pageDone );
+        }
+        catch ( LdapException | RuntimeException e )
+        {
+            error = e;
+            publish();
+        }
+    }
+
+
+    /**
+     * Store a received response, and suspend the reads if too many are pending
+     *
+     * @param response The received response
+     */
+    private void received( Response response )
+    {
+        pendingResponses.offer( response );
+
+        if ( ( nbPendingResponses.incrementAndGet() >= maxPendingResponses ) && suspended.compareAndSet( false, true ) )
+        {
+            connection.suspendRead();
+        }
+
+        publish();
+    }
+
+
+    /**
+     * Process the end of a page
+     *
+     * @param response The SearchResultDone
+     * @param cause The error, if the search has failed
+     */
+    private void pageDone( Response response, Throwable cause )
+    {
+        if ( cause != null )
+        {
+            if ( !cancelled )
+            {
+                error = cause;
+            }
+        }
+        else
+        {
+            SearchResultDone done = ( SearchResultDone ) response;
+            byte[] cookie = getCookie( done );
+
+            if ( Strings.isEmpty( cookie ) )
+            {
+                searchResultDone = done;
+            }
+            else
+            {
+                nextCookie = cookie;
+            }
+        }
+
+        publish();
+    }
+
+
+    /**
+     * Get the cookie of the next page, if the SearchRequest and the SearchResultDone have
+     * a PagedResults control
+     *
+     * @param done The SearchResultDone
+     * @return The cookie, or null if there is no next page
+     */
+    private byte[] getCookie( SearchResultDone done )
+    {
+        if ( ( done.getLdapResult().getResultCode() != ResultCodeEnum.SUCCESS )
+            || !searchRequest.hasControl( PagedResults.OID ) )
+        {
+            return null;
+        }
+
+        Control control = done.getControl( PagedResults.OID );
+
+        if ( control instanceof PagedResults )
+        {
+            return ( ( PagedResults ) control ).getCookie();
+        }
+
+        return null;
+    }
+
+
+    /**
+     * Request more responses
+     *
+     * @param n The number of additional responses
+     */
+    private void request( long n )
+    {
+        if ( n <= 0 )
+        {
+            error = new IllegalArgumentException( I18n.err( I18n.ERR_04183_INVALID_DEMAND, n ) );
+            cancel();
+        }
+        else
+        {
+            demand.getAndAccumulate( n, ( current, added ) ->
+            {
+                long sum = current + added;
+
+                return ( sum < 0 ) ? Long.MAX_VALUE : sum;
+            } );
+        }
+
+        publish();
+    }
+
+
+    /**
+     * Stop the search
+     */
+    private void cancel()
+    {
+        cancelled = true;
+
+        SearchFuture future = searchFuture;
+
+        if ( ( future != null ) && ( searchResultDone == null ) && ( nextCookie == null ) )
+        {
+            // Abandon the search
+            future.cancel( true );
+        }
+
+        pendingResponses.clear();
+        nbPendingResponses.set( 0 );
+
+        if ( suspended.compareAndSet( true, false ) )
+        {
+            connection.resumeRead();
+        }
+    }
+
+
+    /**
+     * Publish the pending responses the subscriber has requested, then the end of the
+     * search. Only one thread publishes at a time.
+     */
+    private void publish()
+    {
+        if ( publishing.getAndIncrement() != 0 )
+        {
+            // Another thread is publishing, it will loop
+            return;
+        }
+
+        do
+        {
+            if ( terminated )
+            {
+                return;
+            }
+
+            while ( !cancelled && ( demand.get() > 0 ) && !pendingResponses.isEmpty() )
+            {
+                Response response = pendingResponses.poll();
+
+                if ( response == null )
+                {
+                    // Cleared by a cancellation
+                    break;
+                }
+
+                demand.decrementAndGet();
+
+                if ( ( nbPendingResponses.decrementAndGet() <= maxPendingResponses / 2 )
+                    && suspended.compareAndSet( true, false ) )
+                {
+                    connection.resumeRead();
+                }
+
+                subscriber.onNext( response );
+            }
+
+            publishEnd();
+        }
+        while ( publishing.decrementAndGet() != 0 );
+    }
+
+
+    /**
+     * Once the pending responses have been published, publish the end of the search, or
+     * request the next page
+     */
+    private void publishEnd()
+    {
+        if ( error != null )
+        {
+            terminated = true;
+            subscriber.onError( error );
+
+            return;
+        }
+
+        if ( cancelled || !pendingResponses.isEmpty() || ( demand.get() == 0 ) )
+        {
+            return;
+        }
+
+        if ( searchResultDone != null )
+        {
+            terminated = true;
+            demand.decrementAndGet();
+            subscriber.onNext( searchResultDone );
+            subscriber.onComplete();
+        }
+        else if ( nextCookie != null )
+        {
+            PagedResults pagedResults = ( PagedResults ) searchRequest.getControl( PagedResults.OID );
+            pagedResults.setCookie( nextCookie );
+            nextCookie = null;
+
+            sendPage();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api;
+
+
+/**
+ * The ways a {@link ServerSetLdapConnectionFactory} orders its servers when it creates a
+ * connection. The quarantined servers are always tried last.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public enum ServerSelectionStrategy
+{
+    /** Each new connection starts with the server following the one used by the previous connection */
+    ROUND_ROBIN,
+
+    /** The servers with the fewest requests waiting for their response, then with the fewest connections, come first */
+    FEWEST_OUTSTANDING_REQUESTS,
+
+    /** The servers are randomly picked, the fastest to connect and bind being the most likely */
+    LATENCY_WEIGHTED,
+
+    /** The servers are tried in the order they have been given, the first one being the preferred one */
+    FAILOVER
+}
@@ -0,0 +1,535 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api;
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.directory.api.i18n.I18n;
+import org.apache.directory.api.ldap.codec.api.LdapApiService;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapOperationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A LdapConnectionFactory spreading the connections over a set of replicated servers. The
+ * servers are ordered by a {@link ServerSelectionStrategy} each time a connection is created,
+ * and tried in turn until one of them accepts the connection and the bind.
+ * <br>
+ * A server which can't be connected to {@link #setFailureThreshold(int)} times in a row is
+ * quarantined for {@link #setQuarantineDuration(long)} milliseconds : it's only tried after
+ * all the other servers during this time. A bind rejected by a server is not a server failure,
+ * it's reported to the caller without trying the other servers.
+ * <br>
+ * All the connections share the configuration given to the constructor, except for the
+ * host and the port. The factory can be pooled :
+ * <pre>
+ * ServerSetLdapConnectionFactory factory = new ServerSetLdapConnectionFactory( config,
+ *     ServerSelectionStrategy.ROUND_ROBIN,
+ *     new LdapServer( "ldap1.example.com", 389 ),
+ *     new LdapServer( "ldap2.example.com", 389 ) );
+ * LdapConnectionPool pool = new LdapConnectionPool( new DefaultPoolableLdapConnectionFactory( factory ) );
+ * </pre>
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class ServerSetLdapConnectionFactory implements LdapConnectionFactory
+{
+    /** The logger */
+    private static final Logger LOG = LoggerFactory.getLogger( ServerSetLdapConnectionFactory.class );
+
+    /** The default time given to a server to accept a connection, in milliseconds */
+    public static final long DEFAULT_CONNECT_TIMEOUT = 5000L;
+
+    /** The default quarantine duration, in milliseconds */
+    public static final long DEFAULT_QUARANTINE_DURATION = 30000L;
+
+    /** The servers */
+    private final List<LdapServer> servers;
+
+    /** The way the servers are ordered */
+    private final ServerSelectionStrategy strategy;
+
+    /** The shared connection configuration */
+    private final LdapConnectionConfig connectionConfig;
+
+    /** The factory binding and configuring the connections */
+    private final DefaultLdapConnectionFactory delegate;
+
+    /** The counter used to rotate the servers */
+    private final AtomicInteger nextServer = new AtomicInteger();
+
+    /** The LdapApiService used by the connections */
+    private LdapApiService apiService;
+
+    /** The time given to a server to accept a connection, in milliseconds */
+    private long connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+
+    /** The number of consecutive failures leading to a quarantine */
+    private int failureThreshold = 1;
+
+    /** The quarantine duration, in milliseconds */
+    private long quarantineDuration = DEFAULT_QUARANTINE_DURATION;
+
+
+    /**
+     * Creates a new instance of ServerSetLdapConnectionFactory.
+     *
+     * @param config The configuration of the connections, which host and port are ignored
+     * @param strategy The way the servers are ordered
+     * @param servers The servers
+     */
+    public ServerSetLdapConnectionFactory( LdapConnectionConfig config, ServerSelectionStrategy strategy,
+        LdapServer... servers )
+    {
+        this( config, strategy, Arrays.asList( servers ) );
+    }
+
+
+    /**
+     * Creates a new instance of ServerSetLdapConnectionFactory.
+     *
+     * @param config The configuration of the connections, which host and port are ignored
+     * @param strategy The way the servers are ordered
+     * @param servers The servers
+     */
+    public ServerSetLdapConnectionFactory( LdapConnectionConfig config, ServerSelectionStrategy strategy,
+        List<LdapServer> servers )
+    {
+        if ( ( servers == null ) || servers.isEmpty() )
+        {
+            throw new IllegalArgumentException( I18n.err( I18n.ERR_04190_EMPTY_SERVER_SET ) );
+        }
+
+        this.connectionConfig = config;
+        this.strategy = strategy;
+        this.servers = Collections.unmodifiableList( new ArrayList<>( servers ) );
+        this.delegate = new DefaultLdapConnectionFactory( config );
+    }
+
+
+    /**
+     * @return The servers, with their health
+     */
+    public List<LdapServer> getServers()
+    {
+        return servers;
+    }
+
+
+    /**
+     * @return The way the servers are ordered
+     */
+    public ServerSelectionStrategy getStrategy()
+    {
+        return strategy;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public LdapConnection bindConnection( LdapConnection connection ) throws LdapException
+    {
+        return delegate.bindConnection( connection );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public LdapConnection configureConnection( LdapConnection connection )
+    {
+        return delegate.configureConnection( connection );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public LdapApiService getLdapApiService()
+    {
+        return apiService;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public LdapConnection newLdapConnection() throws LdapException
+    {
+        return newConnection( true );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <br>
+     * The returned connection is already connected to a server. If no server can be reached,
+     * the returned connection is not connected, and its first operation will fail.
+     */
+    @Override
+    public LdapConnection newUnboundLdapConnection()
+    {
+        try
+        {
+            return newConnection( false );
+        }
+        catch ( LdapException le )
+        {
+            return configureConnection( newNetworkConnection( selectServers().get( 0 ) ) );
+        }
+    }
+
+
+    /**
+     * Try the servers in turn until a connection is established.
+     *
+     * @param bind Tells if the connection has to be bound
+     * @return The connection
+     * @throws LdapException If no server can be connected to, or if the bind is rejected
+     */
+    private LdapConnection newConnection( boolean bind ) throws LdapException
+    {
+        List<LdapServer> candidates = selectServers();
+        LdapException lastException = null;
+
+        for ( LdapServer server : candidates )
+        {
+            LdapNetworkConnection connection = newNetworkConnection( server );
+            connection.setTimeOut( connectTimeout );
+            long start = System.nanoTime();
+
+            try
+            {
+                if ( connection.connect() )
+                {
+                    configureConnection( connection );
+
+                    if ( bind )
+                    {
+                        bindConnection( connection );
+                    }
+
+                    server.connected( connection, System.nanoTime() - start );
+
+                    return connection;
+                }
+            }
+            catch ( LdapOperationException loe )
+            {
+                // The server has answered : the request has been rejected
+                throw loe;
+            }
+            catch ( LdapException le )
+            {
+                lastException = le;
+            }
+
+            serverFailed( server, lastException );
+            closeQuietly( connection );
+        }
+
+        throw new LdapException( I18n.err( I18n.ERR_04189_NO_SERVER_AVAILABLE, servers ), lastException );
+    }
+
+
+    /**
+     * Create a connection to a server
+     *
+     * @param server The server
+     * @return The connection, not yet connected
+     */
+    private LdapNetworkConnection newNetworkConnection( LdapServer server )
+    {
+        LdapConnectionConfig serverConfig = new LdapConnectionConfig( connectionConfig );
+        serverConfig.setLdapHost( server.getHost() );
+        serverConfig.setLdapPort( server.getPort() );
+
+        if ( apiService == null )
+        {
+            return new LdapNetworkConnection( serverConfig );
+        }
+        else
+        {
+            return new LdapNetworkConnection( serverConfig, apiService );
+        }
+    }
+
+
+    /**
+     * Record a server failure, quarantining the server if needed
+     *
+     * @param server The server
+     * @param cause The failure cause, if any
+     */
+    private void serverFailed( LdapServer server, LdapException cause )
+    {
+        if ( LOG.isWarnEnabled() )
+        {
+            LOG.warn( I18n.msg( I18n.MSG_04177_SERVER_CONNECTION_FAILED, server,
+                cause == null ? null : cause.getMessage() ) );
+        }
+
+        if ( server.failed( failureThreshold, quarantineDuration ) && LOG.isWarnEnabled() )
+        {
+            LOG.warn( I18n.msg( I18n.MSG_04178_SERVER_QUARANTINED, server, quarantineDuration,
+                server.getConsecutiveFailures() ) );
+        }
+    }
+
+
+    /**
+     * Close a connection which could not be established
+     *
+     * @param connection The connection
+     */
+    private void closeQuietly( LdapConnection connection )
+    {
+        try
+        {
+            connection.close();
+        }
+        catch ( IOException ioe )
+        {
+            // Nothing to do
+        }
+    }
+
+
+    /**
+     * Order the servers to try for a new connection, the quarantined ones coming last, by
+     * quarantine end.
+     *
+     * @return The ordered servers
+     */
+    List<LdapServer> selectServers()
+    {
+        long now = System.nanoTime();
+        List<LdapServer> available = new ArrayList<>( servers.size() );
+        List<LdapServer> quarantined = new ArrayList<>();
+
+        for ( LdapServer server : servers )
+        {
+            if ( server.isQuarantined( now ) )
+            {
+                quarantined.add( server );
+            }
+            else
+            {
+                available.add( server );
+            }
+        }
+
+        switch ( strategy )
+        {
+            case ROUND_ROBIN:
+                if ( !available.isEmpty() )
+                {
+                    Collections.rotate( available, -Math.floorMod( nextServer.getAndIncrement(), available.size() ) );
+                }
+
+                break;
+
+            case FEWEST_OUTSTANDING_REQUESTS:
+                available.sort( Comparator.comparingInt( LdapServer::getOutstandingRequests )
+                    .thenComparingInt( LdapServer::getOpenConnections ) );
+                break;
+
+            case LATENCY_WEIGHTED:
+                available = weightByLatency( available );
+                break;
+
+            default:
+                break;
+        }
+
+        quarantined.sort( Comparator.comparingLong( server -> server.getQuarantineEnd() - now ) );
+        available.addAll( quarantined );
+
+        return available;
+    }
+
+
+    /**
+     * Randomly order the servers, the probability for a server to come first being inversely
+     * proportional to its latency. The servers which latency is unknown are given the lowest
+     * known latency, so that they get tried.
+     *
+     * @param candidates The servers
+     * @return The ordered servers
+     */
+    private List<LdapServer> weightByLatency( List<LdapServer> candidates )
+    {
+        double lowestLatency = Double.MAX_VALUE;
+
+        for ( LdapServer server : candidates )
+        {
+            double latency = server.getLatencyNanos();
+
+            if ( ( latency > 0d ) && ( latency < lowestLatency ) )
+            {
+                lowestLatency = latency;
+            }
+        }
+
+        List<LdapServer> remaining = new ArrayList<>( candidates );
+        List<Double> weights = new ArrayList<>( candidates.size() );
+
+        for ( LdapServer server : remaining )
+        {
+            double latency = server.getLatencyNanos();
+
+            if ( latency <= 0d )
+            {
+                latency = ( lowestLatency == Double.MAX_VALUE ) ? 1d : lowestLatency;
+            }
+
+            weights.add( 1d / latency );
+        }
+
+        List<LdapServer> ordered = new ArrayList<>( candidates.size() );
+
+        while ( !remaining.isEmpty() )
+        {
+            double total = 0d;
+
+            for ( double weight : weights )
+            {
+                total += weight;
+            }
+
+            double draw = ThreadLocalRandom.current().nextDouble() * total;
+            int selected = remaining.size() - 1;
+
+            for ( int i = 0; i < remaining.size(); i++ )
+            {
+                draw -= weights.get( i );
+
+                if ( draw < 0d )
+                {
+                    selected = i;
+                    break;
+                }
+            }
+
+            ordered.add( remaining.remove( selected ) );
+            weights.remove( selected );
+        }
+
+        return ordered;
+    }
+
+
+    /**
+     * Sets the LdapApiService (codec) to be used by the connections created
+     * by this factory.
+     *
+     * @param apiService The codec to used by connections created by this
+     * factory
+     */
+    public void setLdapApiService( LdapApiService apiService )
+    {
+        this.apiService = apiService;
+    }
+
+
+    /**
+     * Sets the timeout that will be used by all connections created by this
+     * factory.
+     *
+     * @param timeout The timeout in millis.
+     *
+     * @see LdapConnection#setTimeOut(long)
+     */
+    public void setTimeOut( long timeout )
+    {
+        delegate.setTimeOut( timeout );
+    }
+
+
+    /**
+     * @return The time given to a server to accept a connection, in milliseconds
+     */
+    public long getConnectTimeout()
+    {
+        return connectTimeout;
+    }
+
+
+    /**
+     * Sets the time given to a server to accept a connection, before trying the next one.
+     *
+     * @param connectTimeout The time given to a server to accept a connection, in milliseconds
+     */
+    public void setConnectTimeout( long connectTimeout )
+    {
+        this.connectTimeout = connectTimeout;
+    }
+
+
+    /**
+     * @return The number of consecutive failures leading to a quarantine
+     */
+    public int getFailureThreshold()
+    {
+        return failureThreshold;
+    }
+
+
+    /**
+     * @param failureThreshold The number of consecutive failures leading to a quarantine
+     */
+    public void setFailureThreshold( int failureThreshold )
+    {
+        this.failureThreshold = Math.max( 1, failureThreshold );
+    }
+
+
+    /**
+     * @return The quarantine duration, in milliseconds
+     */
+    public long getQuarantineDuration()
+    {
+        return quarantineDuration;
+    }
+
+
+    /**
+     * @param quarantineDuration The quarantine duration, in milliseconds
+     */
+    public void setQuarantineDuration( long quarantineDuration )
+    {
+        this.quarantineDuration = quarantineDuration;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api;
+
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import org.apache.directory.api.ldap.extras.extended.whoAmI.WhoAmIRequestImpl;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.message.ExtendedResponse;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+
+
+/**
+ * An implementation of {@link LdapConnectionValidator} that sends a WhoAmI extended
+ * request (RFC 4532), which the server answers without reading any entry. The server
+ * must support this extended operation.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public final class WhoAmILdapConnectionValidator implements LdapConnectionValidator, AsyncLdapConnectionValidator
+{
+    /**
+     * Returns true if <code>connection</code> is connected, authenticated, and
+     * the server successfully answers a WhoAmI request.
+     *
+     * @param connection The connection to validate
+     * @return True, if the connection is still valid
+     */
+    @Override
+    public boolean validate( LdapConnection connection )
+    {
+        try
+        {
+            return connection.isConnected()
+                && connection.isAuthenticated()
+                && isSuccess( connection.extended( new WhoAmIRequestImpl() ) );
+        }
+        catch ( LdapException e )
+        {
+            return false;
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletionStage<Boolean> validateAsync( LdapConnection connection )
+    {
+        LdapAsyncConnection asyncConnection = LdapConnectionWrapper.unwrapAsync( connection );
+
+        if ( asyncConnection == null )
+        {
+            // We can't send the request without waiting for the response
+            return CompletableFuture.completedFuture( validate( connection ) );
+        }
+
+        if ( !connection.isConnected() || !connection.isAuthenticated() )
+        {
+            return CompletableFuture.completedFuture( false );
+        }
+
+        return asyncConnection.extendedStage( new WhoAmIRequestImpl() )
+            .handle( ( response, error ) -> ( error == null ) && isSuccess( response ) );
+    }
+
+
+    /**
+     * @param response The WhoAmI response
+     * @return <code>true</code> if the request has been successfully processed
+     */
+    private static boolean isSuccess( ExtendedResponse response )
+    {
+        return ( response != null ) && ( response.getLdapResult().getResultCode() == ResultCodeEnum.SUCCESS );
+    }
+}
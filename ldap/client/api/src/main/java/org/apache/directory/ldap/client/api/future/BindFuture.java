@@ -43,6 +43,19 @@ public class BindFuture extends MultipleResponseFuture<BindResponse>
     }
 
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void set( BindResponse response ) throws InterruptedException
+    {
+        super.set( response );
+
+        // A BindResponse is always the last response of a bind operation
+        complete( response );
+    }
+
+
     /**
      * {@inheritDoc}
      */
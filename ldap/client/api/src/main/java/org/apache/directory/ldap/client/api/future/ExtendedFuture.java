@@ -83,6 +83,9 @@ public class ExtendedFuture extends MultipleResponseFuture<Response>
         }
         
         queue.add( response );
+
+        // The intermediate responses are not ExtendedResponses
+        complete( response );
     }
 
 
@@ -24,6 +24,8 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 
 /**
@@ -39,6 +41,12 @@ public class HandshakeFuture implements Future<Boolean>
     /** flag to determine if this future is cancelled */
     protected boolean cancelled = false;
 
+    /** The lock protecting the flags. The waiting threads are parked, not blocked on a monitor */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** Signaled when the handshake has completed, or when the future is cancelled */
+    private final Condition completed = lock.newCondition();
+
     /**
      * Creates a new instance of HandshakeFuture.
      */
@@ -52,24 +60,42 @@ public class HandshakeFuture implements Future<Boolean>
      * Cancel the Future
      *
      */
-    public synchronized void cancel()
+    public void cancel()
     {
-        // set the cancel flag first
-        cancelled = true;
-        
-        // Notify the future
-        notifyAll();
+        lock.lock();
+
+        try
+        {
+            // set the cancel flag first
+            cancelled = true;
+
+            // Notify the future
+            completed.signalAll();
+        }
+        finally
+        {
+            lock.unlock();
+        }
     }
 
 
     /**
      * Set the Future to done when the TLS handshake has completed
      */
-    public synchronized void secured()
+    public void secured()
     {
-        done = true;
-        
-        notifyAll();
+        lock.lock();
+
+        try
+        {
+            done = true;
+
+            completed.signalAll();
+        }
+        finally
+        {
+            lock.unlock();
+        }
     }
 
 
@@ -77,18 +103,14 @@ public class HandshakeFuture implements Future<Boolean>
      * {@inheritDoc}
      */
     @Override
-    public synchronized boolean cancel( boolean mayInterruptIfRunning )
+    public boolean cancel( boolean mayInterruptIfRunning )
     {
         if ( cancelled )
         {
             return cancelled;
         }
 
-        // set the cancel flag first
-        cancelled = true;
-
-        // Notify the future
-        notifyAll();
+        cancel();
 
         return cancelled;
     }
@@ -98,14 +120,23 @@ public class HandshakeFuture implements Future<Boolean>
      * {@inheritDoc}
      */
     @Override
-    public synchronized Boolean get() throws InterruptedException, ExecutionException
+    public Boolean get() throws InterruptedException, ExecutionException
     {
-        while ( !done && !cancelled )
+        lock.lock();
+
+        try
         {
-            wait();
+            while ( !done && !cancelled )
+            {
+                completed.await();
+            }
+
+            return done;
+        }
+        finally
+        {
+            lock.unlock();
         }
-        
-        return done;
     }
 
 
@@ -113,11 +144,25 @@ public class HandshakeFuture implements Future<Boolean>
      * {@inheritDoc}
      */
     @Override
-    public synchronized Boolean get( long timeout, TimeUnit unit ) throws InterruptedException, ExecutionException, TimeoutException
+    public Boolean get( long timeout, TimeUnit unit ) throws InterruptedException, ExecutionException, TimeoutException
     {
-        wait( unit.toMillis( timeout ) );
-        
-        return done;
+        long remaining = unit.toNanos( timeout );
+
+        lock.lock();
+
+        try
+        {
+            while ( !done && !cancelled && ( remaining > 0L ) )
+            {
+                remaining = completed.awaitNanos( remaining );
+            }
+
+            return done;
+        }
+        finally
+        {
+            lock.unlock();
+        }
     }
 
 
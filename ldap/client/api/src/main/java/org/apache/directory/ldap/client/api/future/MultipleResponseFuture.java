@@ -21,6 +21,8 @@ package org.apache.directory.ldap.client.api.future;
 
 
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
@@ -52,6 +54,9 @@ public abstract class MultipleResponseFuture<R extends Response> implements Resp
     /** The connection used by the request */
     protected LdapConnection connection;
 
+    /** Completed with the last response of the operation, or when the future is cancelled */
+    private final CompletableFuture<R> completion = new CompletableFuture<>();
+
 
     /**
      * Creates a new instance of ResponseFuture.
@@ -89,6 +94,8 @@ public abstract class MultipleResponseFuture<R extends Response> implements Resp
             queue.clear();
         }
 
+        completion.cancel( mayInterruptIfRunning );
+
         return cancelled;
     }
 
@@ -177,6 +184,32 @@ public abstract class MultipleResponseFuture<R extends Response> implements Resp
     {
         // set the cancel flag first
         cancelled = true;
+
+        completion.cancel( false );
+    }
+
+
+    /**
+     * Complete the CompletionStage with the last response of the operation
+     *
+     * @param response The last response
+     */
+    protected void complete( R response )
+    {
+        completion.complete( response );
+    }
+
+
+    /**
+     * Get a CompletionStage completed with the last response of the operation, by the
+     * thread which has received it. The stage is completed exceptionally if the future is
+     * cancelled, or if the connection is closed before the last response is received.
+     *
+     * @return The CompletionStage associated with this future
+     */
+    public CompletionStage<R> getCompletionStage()
+    {
+        return completion;
     }
 
 
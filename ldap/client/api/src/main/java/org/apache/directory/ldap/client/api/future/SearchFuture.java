@@ -20,17 +20,62 @@
 package org.apache.directory.ldap.client.api.future;
 
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import org.apache.directory.api.ldap.codec.api.LazySearchResultEntry;
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.Value;
 import org.apache.directory.api.ldap.model.message.Response;
+import org.apache.directory.api.ldap.model.message.SearchResultDone;
+import org.apache.directory.api.ldap.model.message.SearchResultEntry;
 import org.apache.directory.ldap.client.api.LdapConnection;
 
 
 /**
  * A Future to manage SerachRequest.
+ * <br>
+ * The queue of the responses not read yet may be bounded, by a number of responses and
+ * by their approximate size : once a bound is reached, the reads are suspended on the
+ * connection, until half of the queued responses have been read. The other operations
+ * sent on the same connection are suspended too.
  *
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
 public class SearchFuture extends MultipleResponseFuture<Response>
 {
+    /** The consumer of the entries, references and intermediate responses, if any */
+    private Consumer<Response> responseConsumer;
+
+    /** The approximate size of a response, besides its entry */
+    private static final long RESPONSE_OVERHEAD = 64L;
+
+    /** The lock protecting the consumer and the queue */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** The number of queued responses above which the reads are suspended, 0 for no limit */
+    private int maxQueuedResponses;
+
+    /** The approximate size of the queued responses above which the reads are suspended, 0 for no limit */
+    private long maxQueuedBytes;
+
+    /** Suspends the reads on the connection */
+    private Runnable suspendReads;
+
+    /** Resumes the reads on the connection */
+    private Runnable resumeReads;
+
+    /** The number of queued responses. Guarded by the lock */
+    private int queuedResponses;
+
+    /** The approximate size of the queued responses. Guarded by the lock */
+    private long queuedBytes;
+
+    /** Tells if the reads have been suspended by this search. Guarded by the lock */
+    private boolean suspended;
+
+
     /**
      * Creates a new instance of SearchFuture.
      *
@@ -43,6 +88,332 @@ public class SearchFuture extends MultipleResponseFuture<Response>
     }
 
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void set( Response response ) throws InterruptedException
+    {
+        if ( !( response instanceof SearchResultDone ) )
+        {
+            lock.lock();
+
+            try
+            {
+                if ( responseConsumer == null )
+                {
+                    super.set( response );
+                    queued( response );
+
+                    return;
+                }
+            }
+            finally
+            {
+                lock.unlock();
+            }
+
+            responseConsumer.accept( response );
+
+            return;
+        }
+
+        lock.lock();
+
+        try
+        {
+            // Wait for the queued responses to have been consumed
+            super.set( response );
+            queued( response );
+        }
+        finally
+        {
+            lock.unlock();
+        }
+
+        complete( response );
+    }
+
+
+    /**
+     * Pass the entries, references and intermediate responses to a consumer, instead of
+     * queuing them. The responses already queued are passed first, by the calling
+     * thread, then the next ones are passed by the thread which receives them. The
+     * SearchResultDone is still queued, and completes the CompletionStage.
+     *
+     * @param responseConsumer The consumer of the search responses
+     */
+    public void setResponseConsumer( Consumer<Response> responseConsumer )
+    {
+        lock.lock();
+
+        try
+        {
+            Response response = queue.peek();
+
+            while ( ( response != null ) && !( response instanceof SearchResultDone ) )
+            {
+                responseConsumer.accept( dequeued( queue.poll() ) );
+                response = queue.peek();
+            }
+
+            this.responseConsumer = responseConsumer;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Bound the queue of the responses not read yet. When more responses than the maximum
+     * have been queued, or when they are bigger than the maximum size, the reads are
+     * suspended, and resumed once half of the responses have been read. The suspension
+     * and resumption calls are balanced.
+     *
+     * @param maxQueuedResponses The number of queued responses above which the reads are
+     * suspended, 0 for no limit
+     * @param maxQueuedBytes The approximate size of the queued responses above which the
+     * reads are suspended, 0 for no limit
+     * @param suspendReads Suspends the reads on the connection
+     * @param resumeReads Resumes the reads on the connection
+     */
+    public void setQueueCapacity( int maxQueuedResponses, long maxQueuedBytes, Runnable suspendReads,
+        Runnable resumeReads )
+    {
+        lock.lock();
+
+        try
+        {
+            this.maxQueuedResponses = maxQueuedResponses;
+            this.maxQueuedBytes = maxQueuedBytes;
+            this.suspendReads = suspendReads;
+            this.resumeReads = resumeReads;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * @return The number of responses queued and not read yet
+     */
+    public int getQueuedResponses()
+    {
+        lock.lock();
+
+        try
+        {
+            return queuedResponses;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * @return The approximate size of the responses queued and not read yet
+     */
+    public long getQueuedBytes()
+    {
+        lock.lock();
+
+        try
+        {
+            return queuedBytes;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Response get() throws InterruptedException
+    {
+        return dequeued( super.get() );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Response get( long timeout, TimeUnit unit ) throws InterruptedException
+    {
+        return dequeued( super.get( timeout, unit ) );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean cancel( boolean mayInterruptIfRunning )
+    {
+        boolean result = super.cancel( mayInterruptIfRunning );
+        clearQueued();
+
+        return result;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void cancel()
+    {
+        super.cancel();
+        clearQueued();
+    }
+
+
+    /**
+     * Account for a queued response, and suspend the reads if the queue is full. Must be
+     * called while holding the lock.
+     */
+    private void queued( Response response )
+    {
+        queuedResponses++;
+
+        if ( ( maxQueuedResponses <= 0 ) && ( maxQueuedBytes <= 0 ) )
+        {
+            return;
+        }
+
+        queuedBytes += weigh( response );
+
+        if ( !suspended && ( ( ( maxQueuedResponses > 0 ) && ( queuedResponses >= maxQueuedResponses ) )
+            || ( ( maxQueuedBytes > 0 ) && ( queuedBytes >= maxQueuedBytes ) ) ) )
+        {
+            suspended = true;
+            suspendReads.run();
+        }
+    }
+
+
+    /**
+     * Account for a response removed from the queue, and resume the reads once half of the
+     * queue has been read
+     *
+     * @param response The response removed from the queue, if any
+     * @return The response
+     */
+    private Response dequeued( Response response )
+    {
+        if ( response == null )
+        {
+            return null;
+        }
+
+        lock.lock();
+
+        try
+        {
+            queuedResponses = Math.max( 0, queuedResponses - 1 );
+
+            if ( ( maxQueuedResponses <= 0 ) && ( maxQueuedBytes <= 0 ) )
+            {
+                return response;
+            }
+
+            queuedBytes = Math.max( 0L, queuedBytes - weigh( response ) );
+
+            if ( suspended && ( ( maxQueuedResponses <= 0 ) || ( queuedResponses <= maxQueuedResponses / 2 ) )
+                && ( ( maxQueuedBytes <= 0 ) || ( queuedBytes <= maxQueuedBytes / 2 ) ) )
+            {
+                suspended = false;
+                resumeReads.run();
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+
+        return response;
+    }
+
+
+    /**
+     * Forget the queued responses once the queue has been cleared, and resume the reads
+     */
+    private void clearQueued()
+    {
+        lock.lock();
+
+        try
+        {
+            queuedResponses = 0;
+            queuedBytes = 0L;
+
+            if ( suspended )
+            {
+                suspended = false;
+                resumeReads.run();
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Compute the approximate size of a response, from the length of the encoded entry
+     * when it has not been decoded yet, or from the length of its values
+     */
+    private static long weigh( Response response )
+    {
+        if ( !( response instanceof SearchResultEntry ) )
+        {
+            return RESPONSE_OVERHEAD;
+        }
+
+        if ( ( response instanceof LazySearchResultEntry ) && !( ( LazySearchResultEntry ) response ).isEntryLoaded() )
+        {
+            LazySearchResultEntry lazyEntry = ( LazySearchResultEntry ) response;
+
+            return RESPONSE_OVERHEAD + length( lazyEntry.getRawObjectName() ) + length( lazyEntry.getRawAttributes() );
+        }
+
+        SearchResultEntry resultEntry = ( SearchResultEntry ) response;
+        long weight = RESPONSE_OVERHEAD + resultEntry.getObjectName().getName().length();
+
+        for ( Attribute attribute : resultEntry.getEntry() )
+        {
+            weight += attribute.getUpId().length();
+
+            for ( Value value : attribute )
+            {
+                weight += value.length();
+            }
+        }
+
+        return weight;
+    }
+
+
+    /**
+     * @return The length of an array, 0 if it's null
+     */
+    private static int length( byte[] bytes )
+    {
+        return bytes == null ? 0 : bytes.length;
+    }
+
+
     /**
      * {@inheritDoc}
      */
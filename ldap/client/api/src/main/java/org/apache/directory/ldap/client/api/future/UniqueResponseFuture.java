@@ -19,7 +19,12 @@
  */
 package org.apache.directory.ldap.client.api.future;
 
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.directory.api.ldap.model.message.Response;
 import org.apache.directory.ldap.client.api.LdapConnection;
@@ -51,6 +56,15 @@ public abstract class UniqueResponseFuture<R extends Response> implements Respon
     /** A flag set to TRUE when the response has been received */
     private volatile boolean done = false;
 
+    /** Completed when the response is received, or when the future is cancelled */
+    private final CompletableFuture<R> completion = new CompletableFuture<>();
+
+    /** The lock protecting the response. The waiting threads are parked, not blocked on a monitor */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** Signaled when the response is set, or when the future is cancelled */
+    private final Condition responseSet = lock.newCondition();
+
     /**
      * Creates a new instance of UniqueResponseFuture.
      *
@@ -69,14 +83,23 @@ public abstract class UniqueResponseFuture<R extends Response> implements Respon
      * @throws InterruptedException if the operation has been cancelled by client
      */
     @Override
-    public synchronized R get() throws InterruptedException
+    public R get() throws InterruptedException
     {
-        while ( !done && !cancelled )
+        lock.lock();
+
+        try
         {
-            wait();
+            while ( !done && !cancelled )
+            {
+                responseSet.await();
+            }
+
+            return response;
+        }
+        finally
+        {
+            lock.unlock();
         }
-        
-        return response;
     }
 
 
@@ -85,11 +108,25 @@ public abstract class UniqueResponseFuture<R extends Response> implements Respon
      * @throws InterruptedException if the operation has been cancelled by client
      */
     @Override
-    public synchronized R get( long timeout, TimeUnit unit ) throws InterruptedException
+    public R get( long timeout, TimeUnit unit ) throws InterruptedException
     {
-        wait( unit.toMillis( timeout ) );
-        
-        return response;
+        long remaining = unit.toNanos( timeout );
+
+        lock.lock();
+
+        try
+        {
+            while ( !done && !cancelled && ( remaining > 0L ) )
+            {
+                remaining = responseSet.awaitNanos( remaining );
+            }
+
+            return response;
+        }
+        finally
+        {
+            lock.unlock();
+        }
     }
 
 
@@ -99,13 +136,49 @@ public abstract class UniqueResponseFuture<R extends Response> implements Respon
      * @param response The response to add into the Future
      * @throws InterruptedException if the operation has been cancelled by client
      */
-    public synchronized void set( R response ) throws InterruptedException
+    public void set( R response ) throws InterruptedException
     {
-        this.response = response;
-        
-        done = response != null;
-        
-        notifyAll();
+        lock.lock();
+
+        try
+        {
+            this.response = response;
+            
+            done = response != null;
+            
+            responseSet.signalAll();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+
+        // Complete the stage out of the lock, as it runs the dependent actions
+        if ( response != null )
+        {
+            completion.complete( response );
+        }
+        else if ( cause != null )
+        {
+            completion.completeExceptionally( cause );
+        }
+        else
+        {
+            completion.completeExceptionally( new CancellationException() );
+        }
+    }
+
+
+    /**
+     * Get a CompletionStage completed with the response, by the thread which has received
+     * it. The stage is completed exceptionally if the future is cancelled, or if the
+     * connection is closed before the response is received.
+     *
+     * @return The CompletionStage associated with this future
+     */
+    public CompletionStage<R> getCompletionStage()
+    {
+        return completion;
     }
 
 
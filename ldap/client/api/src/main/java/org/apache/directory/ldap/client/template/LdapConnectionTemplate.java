@@ -47,6 +47,7 @@ import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.ldap.client.api.EntryCursorImpl;
 import org.apache.directory.ldap.client.api.LdapConnection;
 import org.apache.directory.ldap.client.api.LdapConnectionPool;
+import org.apache.directory.ldap.client.api.LdapEntryCache;
 import org.apache.directory.ldap.client.api.search.FilterBuilder;
 import org.apache.directory.ldap.client.template.exception.LdapRequestUnsuccessfulException;
 import org.apache.directory.ldap.client.template.exception.LdapRuntimeException;
@@ -79,6 +80,7 @@ public class LdapConnectionTemplate implements LdapConnectionOperations, ModelFa
     private final PasswordPolicyResponse passwordPolicyRequestControl;
     private PasswordPolicyResponder passwordPolicyResponder;
     private ModelFactory modelFactory;
+    private LdapEntryCache entryCache;
 
 
     /**
@@ -156,6 +158,7 @@ public class LdapConnectionTemplate implements LdapConnectionOperations, ModelFa
         }
         finally
         {
+            invalidate( addRequest.getEntryDn() );
             returnLdapConnection( connection );
         }
     }
@@ -300,6 +303,12 @@ public class LdapConnectionTemplate implements LdapConnectionOperations, ModelFa
         }
         finally
         {
+            if ( entryCache != null )
+            {
+                // The request may carry a tree delete control
+                entryCache.invalidateSubtree( deleteRequest.getName() );
+            }
+
             returnLdapConnection( connection );
         }
     }
@@ -347,10 +356,31 @@ public class LdapConnectionTemplate implements LdapConnectionOperations, ModelFa
         LdapConnection connection = null;
         try
         {
+            if ( entryCache != null )
+            {
+                // A cached entry is read without borrowing a connection
+                Entry cached = entryCache.get( dn, attributes );
+
+                if ( cached != null )
+                {
+                    return entryMapper.map( cached );
+                }
+            }
+
             connection = connectionPool.getConnection();
-            Entry entry = attributes == null
-                ? connection.lookup( dn )
-                : connection.lookup( dn, attributes );
+            Entry entry;
+
+            if ( entryCache != null )
+            {
+                entry = entryCache.load( connection, dn, attributes );
+            }
+            else
+            {
+                entry = attributes == null
+                    ? connection.lookup( dn )
+                    : connection.lookup( dn, attributes );
+            }
+
             return entry == null ? null : entryMapper.map( entry );
         }
         catch ( LdapException e )
@@ -364,6 +394,18 @@ public class LdapConnectionTemplate implements LdapConnectionOperations, ModelFa
     }
 
 
+    /**
+     * Removes the entries cached for a modified Dn, if the lookups are cached
+     */
+    private void invalidate( Dn dn )
+    {
+        if ( entryCache != null )
+        {
+            entryCache.invalidate( dn );
+        }
+    }
+
+
     private void modifyPassword( final LdapConnection connection, final Dn userDn,
         final char[] newPassword ) throws PasswordException
     {
@@ -442,6 +484,7 @@ public class LdapConnectionTemplate implements LdapConnectionOperations, ModelFa
         }
         finally
         {
+            invalidate( userDn );
             returnLdapConnection( connection );
         }
     }
@@ -484,6 +527,7 @@ public class LdapConnectionTemplate implements LdapConnectionOperations, ModelFa
         }
         finally
         {
+            invalidate( modifyRequest.getName() );
             returnLdapConnection( connection );
         }
     }
@@ -971,6 +1015,19 @@ public class LdapConnectionTemplate implements LdapConnectionOperations, ModelFa
     }
 
 
+    /**
+     * Sets the cache the looked up entries are read through. The entries added, modified
+     * or deleted through this facade are invalidated. No entry is cached if the cache is null,
+     * which is the default.
+     *
+     * @param entryCache The cache, shared with other facades or connections
+     */
+    public void setEntryCache( LdapEntryCache entryCache )
+    {
+        this.entryCache = entryCache;
+    }
+
+
     /**
      * Sets the <code>modelFactory</code> implementation for this facade.
      *
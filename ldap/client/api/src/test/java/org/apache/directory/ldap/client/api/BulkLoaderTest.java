@@ -0,0 +1,378 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.StringReader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.api.ldap.extras.controls.transaction.TransactionSpecification;
+import org.apache.directory.api.ldap.extras.extended.endTransaction.EndTransactionRequest;
+import org.apache.directory.api.ldap.extras.extended.endTransaction.EndTransactionResponseImpl;
+import org.apache.directory.api.ldap.extras.extended.startTransaction.StartTransactionResponseImpl;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.ldif.LdifReader;
+import org.apache.directory.api.ldap.model.message.AddRequest;
+import org.apache.directory.api.ldap.model.message.AddResponse;
+import org.apache.directory.api.ldap.model.message.AddResponseImpl;
+import org.apache.directory.api.ldap.model.message.ExtendedRequest;
+import org.apache.directory.api.ldap.model.message.LdapResult;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.ldap.client.api.future.AddFuture;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Test the BulkLoader, against a mocked connection.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class BulkLoaderTest
+{
+    /** The mocked connection */
+    private LdapAsyncConnection connection;
+
+    /** The result codes to return for an entry, one per attempt. Success when empty */
+    private Map<String, Deque<ResultCodeEnum>> resultCodes;
+
+    /** The adds sent */
+    private List<AddRequest> addRequests;
+
+    /** The number of adds waiting for their response */
+    private int outstanding;
+
+    /** The maximum number of adds waiting for their response */
+    private int maxOutstanding;
+
+    /** The entries reported as added */
+    private List<Entry> added;
+
+    /** The results of the entries reported as failed */
+    private List<LdapResult> failed;
+
+
+    /**
+     * A future which response is computed when it's read
+     */
+    private final class ScriptedAddFuture extends AddFuture
+    {
+        /** The add */
+        private final AddRequest addRequest;
+
+        /** The add message ID */
+        private final int messageId;
+
+
+        private ScriptedAddFuture( LdapConnection connection, AddRequest addRequest, int messageId )
+        {
+            super( connection, messageId );
+            this.addRequest = addRequest;
+            this.messageId = messageId;
+        }
+
+
+        @Override
+        public AddResponse get( long timeout, TimeUnit unit ) throws InterruptedException
+        {
+            if ( !isDone() )
+            {
+                outstanding--;
+
+                Deque<ResultCodeEnum> codes = resultCodes.get( addRequest.getEntryDn().getName() );
+                AddResponse addResponse = new AddResponseImpl( messageId );
+
+                if ( ( codes != null ) && !codes.isEmpty() )
+                {
+                    addResponse.getLdapResult().setResultCode( codes.poll() );
+                }
+
+                set( addResponse );
+            }
+
+            return super.get( timeout, unit );
+        }
+    }
+
+
+    @Before
+    public void setup() throws Exception
+    {
+        connection = mock( LdapAsyncConnection.class );
+        resultCodes = new HashMap<>();
+        addRequests = new ArrayList<>();
+        outstanding = 0;
+        maxOutstanding = 0;
+        added = new ArrayList<>();
+        failed = new ArrayList<>();
+
+        when( connection.addAsync( any( AddRequest.class ) ) ).thenAnswer( invocation ->
+        {
+            AddRequest addRequest = ( AddRequest ) invocation.getArguments()[0];
+            addRequests.add( addRequest );
+            outstanding++;
+            maxOutstanding = Math.max( maxOutstanding, outstanding );
+
+            return new ScriptedAddFuture( connection, addRequest, addRequests.size() );
+        } );
+    }
+
+
+    /**
+     * Create a loader reporting to the test lists
+     *
+     * @return The loader
+     */
+    private BulkLoader newLoader()
+    {
+        BulkLoader bulkLoader = new BulkLoader( connection );
+        bulkLoader.setRetryDelay( 1L );
+        bulkLoader.setListener( new BulkLoadListener()
+        {
+            @Override
+            public void entryAdded( Entry entry )
+            {
+                added.add( entry );
+            }
+
+
+            @Override
+            public void entryFailed( Entry entry, LdapResult result )
+            {
+                failed.add( result );
+            }
+        } );
+
+        return bulkLoader;
+    }
+
+
+    /**
+     * Create some entries
+     *
+     * @param nbEntries The number of entries
+     * @return The entries
+     * @throws Exception If an entry can't be created
+     */
+    private Iterator<Entry> entries( int nbEntries ) throws Exception
+    {
+        List<Entry> entries = new ArrayList<>();
+
+        for ( int i = 0; i < nbEntries; i++ )
+        {
+            entries.add( new DefaultEntry( "cn=user" + i + ",dc=example,dc=com",
+                "objectClass: person",
+                "cn: user" + i,
+                "sn: user" + i ) );
+        }
+
+        return entries.iterator();
+    }
+
+
+    /**
+     * Make the adds of an entry get some result codes, then success
+     *
+     * @param dn The entry Dn
+     * @param codes The result codes
+     */
+    private void script( String dn, ResultCodeEnum... codes )
+    {
+        resultCodes.put( dn, new ArrayDeque<>( Arrays.asList( codes ) ) );
+    }
+
+
+    /**
+     * Test that all the entries are added, with no more adds waiting than the window size
+     */
+    @Test
+    public void testWindow() throws Exception
+    {
+        BulkLoader bulkLoader = newLoader();
+        bulkLoader.setWindowSize( 8 );
+
+        BulkLoadStatistics statistics = bulkLoader.load( entries( 100 ) );
+
+        assertEquals( 100L, statistics.getAdded() );
+        assertEquals( 0L, statistics.getFailed() );
+        assertEquals( 0L, statistics.getRetries() );
+        assertEquals( 100, added.size() );
+        assertEquals( 100, addRequests.size() );
+        assertEquals( 8, maxOutstanding );
+        assertEquals( 0, outstanding );
+    }
+
+
+    /**
+     * Test that an add rejected with a retryable result code is sent again
+     */
+    @Test
+    public void testRetry() throws Exception
+    {
+        script( "cn=user3,dc=example,dc=com", ResultCodeEnum.BUSY, ResultCodeEnum.UNAVAILABLE );
+
+        BulkLoadStatistics statistics = newLoader().load( entries( 10 ) );
+
+        assertEquals( 10L, statistics.getAdded() );
+        assertEquals( 0L, statistics.getFailed() );
+        assertEquals( 2L, statistics.getRetries() );
+        assertEquals( 12, addRequests.size() );
+        assertTrue( failed.isEmpty() );
+    }
+
+
+    /**
+     * Test that the entries which can't be added are reported
+     */
+    @Test
+    public void testFailures() throws Exception
+    {
+        script( "cn=user1,dc=example,dc=com", ResultCodeEnum.ENTRY_ALREADY_EXISTS );
+        script( "cn=user2,dc=example,dc=com", ResultCodeEnum.BUSY, ResultCodeEnum.BUSY, ResultCodeEnum.BUSY );
+
+        BulkLoader bulkLoader = newLoader();
+        bulkLoader.setMaxRetries( 2 );
+
+        BulkLoadStatistics statistics = bulkLoader.load( entries( 10 ) );
+
+        assertEquals( 8L, statistics.getAdded() );
+        assertEquals( 2L, statistics.getFailed() );
+        assertEquals( 2L, statistics.getRetries() );
+        assertEquals( 12, addRequests.size() );
+        assertEquals( ResultCodeEnum.ENTRY_ALREADY_EXISTS, failed.get( 0 ).getResultCode() );
+        assertEquals( ResultCodeEnum.BUSY, failed.get( 1 ).getResultCode() );
+    }
+
+
+    /**
+     * Test that the entries are added by transactions, and that a transaction with a
+     * rejected add is aborted
+     */
+    @Test
+    public void testTransactions() throws Exception
+    {
+        byte[] transactionId = new byte[] { 0x01, 0x02 };
+        List<EndTransactionRequest> endRequests = new ArrayList<>();
+
+        when( connection.extended( any( ExtendedRequest.class ) ) ).thenAnswer( invocation ->
+        {
+            Object request = invocation.getArguments()[0];
+
+            if ( request instanceof EndTransactionRequest )
+            {
+                endRequests.add( ( EndTransactionRequest ) request );
+
+                return new EndTransactionResponseImpl( 1 );
+            }
+
+            return new StartTransactionResponseImpl( 1, transactionId );
+        } );
+
+        script( "cn=user5,dc=example,dc=com", ResultCodeEnum.CONSTRAINT_VIOLATION );
+
+        BulkLoader bulkLoader = newLoader();
+        bulkLoader.setTransactionSize( 4 );
+
+        BulkLoadStatistics statistics = bulkLoader.load( entries( 10 ) );
+
+        // The second transaction is aborted
+        assertEquals( 6L, statistics.getAdded() );
+        assertEquals( 4L, statistics.getFailed() );
+        assertEquals( 3, endRequests.size() );
+        assertTrue( endRequests.get( 0 ).getCommit() );
+        assertEquals( false, endRequests.get( 1 ).getCommit() );
+        assertTrue( endRequests.get( 2 ).getCommit() );
+        assertEquals( ResultCodeEnum.CONSTRAINT_VIOLATION, failed.get( 0 ).getResultCode() );
+        verify( connection, times( 6 ) ).extended( any( ExtendedRequest.class ) );
+
+        for ( AddRequest addRequest : addRequests )
+        {
+            TransactionSpecification transactionSpecification = ( TransactionSpecification ) addRequest
+                .getControl( TransactionSpecification.OID );
+
+            assertNotNull( transactionSpecification );
+            assertTrue( Arrays.equals( transactionId, transactionSpecification.getIdentifier() ) );
+        }
+    }
+
+
+    /**
+     * Test that the entries of a LDIF are loaded
+     */
+    @Test
+    public void testLdif() throws Exception
+    {
+        String ldif =
+            "dn: cn=user0,dc=example,dc=com\n" +
+            "objectClass: person\n" +
+            "cn: user0\n" +
+            "sn: user0\n" +
+            "\n" +
+            "dn: cn=user1,dc=example,dc=com\n" +
+            "objectClass: person\n" +
+            "cn: user1\n" +
+            "sn: user1\n";
+
+        BulkLoadStatistics statistics;
+
+        try ( LdifReader ldifReader = new LdifReader( new StringReader( ldif ) ) )
+        {
+            statistics = newLoader().load( ldifReader );
+        }
+
+        assertEquals( 2L, statistics.getAdded() );
+        assertEquals( "cn=user1,dc=example,dc=com", added.get( 1 ).getDn().getName() );
+    }
+
+
+    /**
+     * Test that a LDIF change which is not an Add can't be loaded
+     */
+    @Test( expected = IllegalArgumentException.class )
+    public void testLdifDelete() throws Exception
+    {
+        String ldif =
+            "dn: cn=user0,dc=example,dc=com\n" +
+            "changetype: delete\n";
+
+        try ( LdifReader ldifReader = new LdifReader( new StringReader( ldif ) ) )
+        {
+            newLoader().load( ldifReader );
+        }
+    }
+}
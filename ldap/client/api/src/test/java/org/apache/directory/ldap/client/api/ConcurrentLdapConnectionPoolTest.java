@@ -0,0 +1,343 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.PooledObjectFactory;
+import org.apache.commons.pool2.impl.DefaultPooledObject;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Test the ConcurrentLdapConnectionPool, with mocked connections.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class ConcurrentLdapConnectionPoolTest
+{
+    /** The mocked factory */
+    private PooledObjectFactory<LdapConnection> factory;
+
+    /** The pool configuration */
+    private GenericObjectPoolConfig poolConfig;
+
+
+    @SuppressWarnings("unchecked")
+    @Before
+    public void setup() throws Exception
+    {
+        factory = mock( PooledObjectFactory.class );
+        when( factory.makeObject() ).thenAnswer(
+            invocation -> new DefaultPooledObject<LdapConnection>( mock( LdapConnection.class ) ) );
+        when( factory.validateObject( any( PooledObject.class ) ) ).thenReturn( true );
+
+        poolConfig = new GenericObjectPoolConfig();
+        poolConfig.setMaxTotal( 4 );
+    }
+
+
+    /**
+     * Test that a thread gets back the connection it has released
+     */
+    @Test
+    public void testThreadAffinity() throws Exception
+    {
+        ConcurrentLdapConnectionPool pool = new ConcurrentLdapConnectionPool( factory, poolConfig );
+        LdapConnection first = pool.getConnection();
+        LdapConnection second = pool.getConnection();
+
+        assertNotSame( first, second );
+
+        pool.releaseConnection( first );
+        pool.releaseConnection( second );
+
+        assertSame( second, pool.getConnection() );
+        assertSame( first, pool.getConnection() );
+        assertEquals( 2, pool.getNumActive() );
+        assertEquals( 0, pool.getNumIdle() );
+        verify( factory, times( 2 ) ).makeObject();
+    }
+
+
+    /**
+     * Test that an idle connection released by a thread is used by another thread
+     */
+    @Test
+    public void testSteal() throws Exception
+    {
+        ConcurrentLdapConnectionPool pool = new ConcurrentLdapConnectionPool( factory, poolConfig );
+        LdapConnection connection = pool.getConnection();
+        pool.releaseConnection( connection );
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try
+        {
+            assertSame( connection, executor.submit( pool::getConnection ).get() );
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+
+        verify( factory, times( 1 ) ).makeObject();
+    }
+
+
+    /**
+     * Test that a thread waits for a connection when the pool is full, and that it
+     * gets an exception when no connection is released in time
+     */
+    @Test
+    public void testExhausted() throws Exception
+    {
+        poolConfig.setMaxTotal( 1 );
+        poolConfig.setMaxWaitMillis( 50L );
+        ConcurrentLdapConnectionPool pool = new ConcurrentLdapConnectionPool( factory, poolConfig );
+        LdapConnection connection = pool.getConnection();
+
+        try
+        {
+            pool.getConnection();
+            throw new AssertionError();
+        }
+        catch ( NoSuchElementException nsee )
+        {
+            // Expected
+        }
+
+        poolConfig.setMaxWaitMillis( -1L );
+        ConcurrentLdapConnectionPool blockingPool = new ConcurrentLdapConnectionPool( factory, poolConfig );
+        LdapConnection borrowed = blockingPool.getConnection();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try
+        {
+            Future<LdapConnection> waiting = executor.submit( blockingPool::getConnection );
+            Thread.sleep( 50L );
+            blockingPool.releaseConnection( borrowed );
+
+            assertSame( borrowed, waiting.get( 10L, TimeUnit.SECONDS ) );
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+
+        pool.releaseConnection( connection );
+    }
+
+
+    /**
+     * Test that the pool never gives more connections than its maximum to concurrent threads,
+     * and never gives the same connection to two threads
+     */
+    @Test
+    public void testContention() throws Exception
+    {
+        ConcurrentLdapConnectionPool pool = new ConcurrentLdapConnectionPool( factory, poolConfig );
+        AtomicInteger borrowed = new AtomicInteger();
+        AtomicInteger maxBorrowed = new AtomicInteger();
+        List<LdapConnection> inUse = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool( 16 );
+        List<Future<?>> futures = new ArrayList<>();
+
+        for ( int i = 0; i < 16; i++ )
+        {
+            futures.add( executor.submit( () ->
+            {
+                for ( int j = 0; j < 2000; j++ )
+                {
+                    LdapConnection connection = pool.getConnection();
+                    maxBorrowed.accumulateAndGet( borrowed.incrementAndGet(), Math::max );
+
+                    synchronized ( inUse )
+                    {
+                        assertTrue( !inUse.contains( connection ) );
+                        inUse.add( connection );
+                    }
+
+                    synchronized ( inUse )
+                    {
+                        inUse.remove( connection );
+                    }
+
+                    borrowed.decrementAndGet();
+                    pool.releaseConnection( connection );
+                }
+
+                return null;
+            } ) );
+        }
+
+        for ( Future<?> future : futures )
+        {
+            future.get( 60L, TimeUnit.SECONDS );
+        }
+
+        executor.shutdown();
+
+        assertTrue( maxBorrowed.get() <= 4 );
+        assertEquals( 0, pool.getNumActive() );
+        verify( factory, times( pool.getNumIdle() ) ).makeObject();
+    }
+
+
+    /**
+     * Test that only the connections which have been idle long enough are validated, and
+     * that an invalid connection is replaced
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testValidationIdleTime() throws Exception
+    {
+        poolConfig.setTestOnBorrow( true );
+        ConcurrentLdapConnectionPool pool = new ConcurrentLdapConnectionPool( factory, poolConfig );
+        pool.setValidationIdleTime( 100L );
+
+        LdapConnection connection = pool.getConnection();
+        pool.releaseConnection( connection );
+        assertSame( connection, pool.getConnection() );
+        verify( factory, never() ).validateObject( any( PooledObject.class ) );
+
+        pool.releaseConnection( connection );
+        Thread.sleep( 150L );
+        when( factory.validateObject( any( PooledObject.class ) ) ).thenReturn( false );
+
+        LdapConnection replacement = pool.getConnection();
+
+        assertNotSame( connection, replacement );
+        verify( factory, times( 1 ) ).validateObject( any( PooledObject.class ) );
+        verify( factory, times( 1 ) ).destroyObject( any( PooledObject.class ) );
+    }
+
+
+    /**
+     * Test that releasing a connection twice is rejected, and that closing the pool
+     * destroys the connections
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testReleaseAndClose() throws Exception
+    {
+        ConcurrentLdapConnectionPool pool = new ConcurrentLdapConnectionPool( factory, poolConfig );
+        LdapConnection idle = pool.getConnection();
+        LdapConnection borrowed = pool.getConnection();
+        pool.releaseConnection( idle );
+
+        try
+        {
+            pool.releaseConnection( idle );
+            throw new AssertionError();
+        }
+        catch ( IllegalStateException ise )
+        {
+            // Expected
+        }
+
+        pool.close();
+        verify( factory, times( 1 ) ).destroyObject( any( PooledObject.class ) );
+
+        pool.releaseConnection( borrowed );
+        verify( factory, times( 2 ) ).destroyObject( any( PooledObject.class ) );
+
+        try
+        {
+            pool.getConnection();
+            throw new AssertionError();
+        }
+        catch ( IllegalStateException ise )
+        {
+            // Expected
+        }
+    }
+
+
+    /**
+     * Test that the idle connections are probed in the background, that the broken ones are
+     * destroyed, and that the sound ones are not validated when they are borrowed
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testKeepAlive() throws Exception
+    {
+        poolConfig.setTestOnBorrow( true );
+        ConcurrentLdapConnectionPool pool = new ConcurrentLdapConnectionPool( factory, poolConfig );
+        LdapConnection sound = pool.getConnection();
+        LdapConnection broken = pool.getConnection();
+        LdapConnection unanswered = pool.getConnection();
+        when( sound.isConnected() ).thenReturn( true );
+        when( broken.isConnected() ).thenReturn( true );
+        when( unanswered.isConnected() ).thenReturn( true );
+
+        AsyncLdapConnectionValidator validator = mock( AsyncLdapConnectionValidator.class );
+        when( validator.validateAsync( sound ) ).thenReturn( CompletableFuture.completedFuture( true ) );
+        when( validator.validateAsync( broken ) ).thenReturn( CompletableFuture.completedFuture( false ) );
+        when( validator.validateAsync( unanswered ) ).thenReturn( new CompletableFuture<>() );
+
+        pool.releaseConnection( sound );
+        pool.releaseConnection( broken );
+        pool.releaseConnection( unanswered );
+
+        pool.setHealthyWindow( 60000L );
+        pool.setKeepAliveValidator( validator );
+        pool.setKeepAliveInterval( 20L );
+
+        long deadline = System.currentTimeMillis() + 10000L;
+
+        while ( ( pool.getNumIdle() > 1 ) && ( System.currentTimeMillis() < deadline ) )
+        {
+            Thread.sleep( 10L );
+        }
+
+        assertEquals( 1, pool.getNumIdle() );
+        verify( factory, times( 2 ) ).destroyObject( any( PooledObject.class ) );
+
+        // The sound connection is healthy : it's not validated again
+        assertSame( sound, pool.getConnection() );
+        verify( factory, never() ).validateObject( any( PooledObject.class ) );
+
+        pool.close();
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.DefaultModification;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.ModificationOperation;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.name.Rdn;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Test the LdapEntryCache and the CachingLdapConnection, with a mocked connection.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LdapEntryCacheTest
+{
+    /** The mocked connection */
+    private LdapConnection connection;
+
+    private Dn parentDn;
+    private Dn childDn;
+    private Dn otherDn;
+
+
+    @Before
+    public void setup() throws Exception
+    {
+        connection = mock( LdapConnection.class );
+        parentDn = new Dn( "ou=groups,dc=example,dc=com" );
+        childDn = new Dn( "cn=admins,ou=groups,dc=example,dc=com" );
+        otherDn = new Dn( "cn=others,ou=groups,dc=example,dc=com" );
+
+        for ( Dn dn : new Dn[]
+            { parentDn, childDn, otherDn } )
+        {
+            when( connection.lookup( dn ) ).thenAnswer( invocation -> newEntry( dn ) );
+            when( connection.lookup( dn, "cn" ) ).thenAnswer( invocation -> newEntry( dn ) );
+        }
+    }
+
+
+    /**
+     * @return An entry, as read from the server
+     */
+    private static Entry newEntry( Dn dn ) throws Exception
+    {
+        return new DefaultEntry( dn,
+            "objectClass: top",
+            "objectClass: groupOfNames",
+            "cn: " + dn.getRdn().getValue(),
+            "member: uid=admin,ou=system" );
+    }
+
+
+    /**
+     * Test that an entry is looked up once, and that the lookups with other attributes are cached apart
+     */
+    @Test
+    public void testHitAndMiss() throws Exception
+    {
+        LdapEntryCache cache = new LdapEntryCache( 100000L, 60000L );
+
+        Entry entry = cache.lookup( connection, childDn );
+        assertNotNull( entry );
+
+        Entry cached = cache.lookup( connection, new Dn( "CN=admins, ou=groups, dc=example, dc=com" ) );
+        assertEquals( entry, cached );
+        assertNotSame( entry, cached );
+        verify( connection, times( 1 ) ).lookup( childDn );
+
+        // The returned entries are copies
+        cached.removeAttributes( "member" );
+        assertNotNull( cache.lookup( connection, childDn ).get( "member" ) );
+
+        // The same entry with other attributes
+        cache.lookup( connection, childDn, "cn" );
+        cache.lookup( connection, childDn, "CN" );
+        verify( connection, times( 1 ) ).lookup( childDn, "cn" );
+
+        assertEquals( 3L, cache.getHitCount() );
+        assertEquals( 2L, cache.getMissCount() );
+        assertEquals( 2, cache.getSize() );
+    }
+
+
+    /**
+     * Test that an expired entry is looked up again
+     */
+    @Test
+    public void testTimeToLive() throws Exception
+    {
+        LdapEntryCache cache = new LdapEntryCache( 100000L, 50L );
+
+        cache.lookup( connection, childDn );
+        Thread.sleep( 100L );
+
+        assertNull( cache.get( childDn ) );
+        assertEquals( 0, cache.getSize() );
+        assertEquals( 0L, cache.getWeight() );
+
+        cache.lookup( connection, childDn );
+        verify( connection, times( 2 ) ).lookup( childDn );
+    }
+
+
+    /**
+     * Test that the least recently read entries are evicted when the cache is full
+     */
+    @Test
+    public void testMaxWeight() throws Exception
+    {
+        LdapEntryCache measure = new LdapEntryCache( 100000L, 60000L );
+        measure.lookup( connection, childDn );
+        long weight = measure.getWeight();
+
+        // childDn and otherDn have the same size
+        LdapEntryCache cache = new LdapEntryCache( 2 * weight, 60000L );
+        cache.lookup( connection, childDn );
+        cache.lookup( connection, otherDn );
+        cache.lookup( connection, childDn );
+
+        // The parent entry is smaller : the cache is full once it's added
+        cache.lookup( connection, parentDn );
+
+        assertEquals( 1L, cache.getEvictionCount() );
+        assertNull( cache.get( otherDn ) );
+        assertNotNull( cache.get( childDn ) );
+        assertNotNull( cache.get( parentDn ) );
+        assertEquals( 2, cache.getSize() );
+
+        // An entry bigger than the cache is never cached
+        LdapEntryCache tiny = new LdapEntryCache( weight - 1, 60000L );
+        tiny.lookup( connection, childDn );
+        assertEquals( 0, tiny.getSize() );
+    }
+
+
+    /**
+     * Test that the entries modified through a CachingLdapConnection are invalidated,
+     * with their descendants when they are renamed
+     */
+    @Test
+    public void testCachingConnection() throws Exception
+    {
+        LdapEntryCache cache = new LdapEntryCache( 100000L, 60000L );
+        CachingLdapConnection cachingConnection = new CachingLdapConnection( connection, cache );
+
+        cachingConnection.lookup( childDn );
+        cachingConnection.lookup( childDn, "cn" );
+        cachingConnection.lookup( otherDn );
+        cachingConnection.lookup( parentDn );
+        assertEquals( 4, cache.getSize() );
+
+        cachingConnection.modify( childDn,
+            new DefaultModification( ModificationOperation.REMOVE_ATTRIBUTE, "member" ) );
+        verify( connection ).modify( any( Dn.class ), any( DefaultModification.class ) );
+        assertEquals( 2, cache.getSize() );
+        assertEquals( 2L, cache.getInvalidationCount() );
+
+        cachingConnection.lookup( childDn );
+        verify( connection, times( 2 ) ).lookup( childDn );
+
+        cachingConnection.rename( parentDn, new Rdn( "ou=roles" ) );
+        assertEquals( 0, cache.getSize() );
+        assertEquals( 0L, cache.getWeight() );
+    }
+
+
+    /**
+     * Test that an entry is not cached when it has been invalidated while it was being looked up
+     */
+    @Test
+    public void testInvalidatedDuringLookup() throws Exception
+    {
+        LdapEntryCache cache = new LdapEntryCache( 100000L, 60000L );
+
+        when( connection.lookup( childDn ) ).thenAnswer( invocation ->
+        {
+            // Modified by another thread after the server has read it
+            Entry entry = newEntry( childDn );
+            cache.invalidate( childDn );
+
+            return entry;
+        } );
+
+        assertNotNull( cache.lookup( connection, childDn ) );
+        assertEquals( 0, cache.getSize() );
+    }
+}
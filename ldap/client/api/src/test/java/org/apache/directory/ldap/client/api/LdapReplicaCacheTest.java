@@ -0,0 +1,336 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api;
+
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.apache.directory.api.ldap.extras.controls.SynchronizationModeEnum;
+import org.apache.directory.api.ldap.extras.controls.syncrepl.syncDone.SyncDoneValue;
+import org.apache.directory.api.ldap.extras.controls.syncrepl.syncDone.SyncDoneValueImpl;
+import org.apache.directory.api.ldap.extras.controls.syncrepl.syncRequest.SyncRequestValue;
+import org.apache.directory.api.ldap.extras.controls.syncrepl.syncState.SyncStateTypeEnum;
+import org.apache.directory.api.ldap.extras.controls.syncrepl.syncState.SyncStateValue;
+import org.apache.directory.api.ldap.extras.controls.syncrepl.syncState.SyncStateValueImpl;
+import org.apache.directory.api.ldap.extras.intermediate.syncrepl.SyncInfoValue;
+import org.apache.directory.api.ldap.extras.intermediate.syncrepl.SyncInfoValueImpl;
+import org.apache.directory.api.ldap.extras.intermediate.syncrepl.SynchronizationInfoEnum;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.message.Response;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchResultDone;
+import org.apache.directory.api.ldap.model.message.SearchResultDoneImpl;
+import org.apache.directory.api.ldap.model.message.SearchResultEntry;
+import org.apache.directory.api.ldap.model.message.SearchResultEntryImpl;
+import org.apache.directory.api.ldap.model.message.controls.ChangeType;
+import org.apache.directory.api.ldap.model.message.controls.EntryChange;
+import org.apache.directory.api.ldap.model.message.controls.EntryChangeImpl;
+import org.apache.directory.api.ldap.model.message.controls.PersistentSearch;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.util.Strings;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Test the LdapReplicaCache, with a mocked connection fed with syncrepl and persistent
+ * search responses.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LdapReplicaCacheTest
+{
+    /** The mocked replication connection */
+    private LdapAsyncConnection connection;
+
+    /** The mocked connection used for the lookups which are not answered locally */
+    private LdapConnection lookupConnection;
+
+    /** The searches sent on the replication connection */
+    private List<SearchRequest> requests;
+
+    /** The consumers of the searches responses */
+    private List<Consumer<Response>> consumers;
+
+    /** The futures completed by the searches SearchResultDone */
+    private List<CompletableFuture<SearchResultDone>> dones;
+
+    private Dn baseDn;
+    private Dn adminsDn;
+    private Dn usersDn;
+
+
+    @SuppressWarnings("unchecked")
+    @Before
+    public void setup() throws Exception
+    {
+        connection = mock( LdapAsyncConnection.class );
+        lookupConnection = mock( LdapConnection.class );
+        requests = new ArrayList<>();
+        consumers = new ArrayList<>();
+        dones = new ArrayList<>();
+
+        when( connection.searchStage( any( SearchRequest.class ), any( Consumer.class ) ) ).thenAnswer( invocation ->
+        {
+            requests.add( ( SearchRequest ) invocation.getArguments()[0] );
+            consumers.add( ( Consumer<Response> ) invocation.getArguments()[1] );
+            CompletableFuture<SearchResultDone> done = new CompletableFuture<>();
+            dones.add( done );
+
+            return done;
+        } );
+
+        baseDn = new Dn( "ou=groups,dc=example,dc=com" );
+        adminsDn = new Dn( "cn=admins,ou=groups,dc=example,dc=com" );
+        usersDn = new Dn( "cn=users,ou=groups,dc=example,dc=com" );
+    }
+
+
+    /**
+     * @return An entry sent by the server
+     */
+    private static SearchResultEntry resultEntry( Dn dn, String description ) throws Exception
+    {
+        SearchResultEntry resultEntry = new SearchResultEntryImpl();
+        resultEntry.setEntry( new DefaultEntry( dn,
+            "objectClass: groupOfNames",
+            "cn: " + dn.getRdn().getValue(),
+            "description: " + description ) );
+
+        return resultEntry;
+    }
+
+
+    /**
+     * Sends an entry in a syncrepl session
+     */
+    private void syncState( int search, SyncStateTypeEnum type, int uuid, Dn dn, String description )
+        throws Exception
+    {
+        SearchResultEntry resultEntry = resultEntry( dn, description );
+        SyncStateValue syncState = new SyncStateValueImpl();
+        syncState.setSyncStateType( type );
+        syncState.setEntryUUID( Strings.uuidToBytes( Strings.getUUID( uuid ) ) );
+        syncState.setCookie( Strings.getBytesUtf8( "cookie" + uuid ) );
+        resultEntry.addControl( syncState );
+
+        consumers.get( search ).accept( resultEntry );
+    }
+
+
+    /**
+     * Sends a syncrepl intermediate response
+     */
+    private void syncInfo( int search, SynchronizationInfoEnum type ) throws Exception
+    {
+        SyncInfoValue syncInfo = new SyncInfoValueImpl();
+        syncInfo.setSyncInfoValueType( type );
+        syncInfo.setRefreshDone( true );
+
+        consumers.get( search ).accept( syncInfo );
+    }
+
+
+    /**
+     * Ends a search
+     */
+    private void done( int search, ResultCodeEnum resultCode, byte[] cookie )
+    {
+        SearchResultDone done = new SearchResultDoneImpl();
+        done.getLdapResult().setResultCode( resultCode );
+
+        if ( cookie != null )
+        {
+            SyncDoneValue syncDone = new SyncDoneValueImpl();
+            syncDone.setCookie( cookie );
+            done.addControl( syncDone );
+        }
+
+        dones.get( search ).complete( done );
+    }
+
+
+    /**
+     * Test that the changes received in a syncrepl session are applied, and that the lookups are
+     * answered locally while the session runs
+     */
+    @Test
+    public void testSyncRepl() throws Exception
+    {
+        LdapEntryCache entryCache = new LdapEntryCache( 100000L, 60000L );
+        LdapReplicaCache replica = new LdapReplicaCache( connection, baseDn, "(objectClass=*)" );
+        replica.setEntryCache( entryCache );
+        replica.start();
+
+        SyncRequestValue syncRequest = ( SyncRequestValue ) requests.get( 0 ).getControl( SyncRequestValue.OID );
+        assertEquals( SynchronizationModeEnum.REFRESH_AND_PERSIST, syncRequest.getMode() );
+        assertNull( syncRequest.getCookie() );
+
+        syncState( 0, SyncStateTypeEnum.ADD, 1, adminsDn, "v1" );
+        syncState( 0, SyncStateTypeEnum.ADD, 2, usersDn, "v1" );
+        assertFalse( replica.isFresh() );
+
+        syncInfo( 0, SynchronizationInfoEnum.REFRESH_DELETE );
+        assertTrue( replica.awaitRefresh( 1L, TimeUnit.SECONDS ) );
+        assertTrue( replica.isFresh() );
+        assertEquals( 2, replica.getSize() );
+
+        // Read locally
+        assertEquals( "v1", replica.lookup( lookupConnection, adminsDn ).get( "description" ).getString() );
+        Entry selected = replica.lookup( lookupConnection, adminsDn, "cn" );
+        assertNotNull( selected.get( "cn" ) );
+        assertNull( selected.get( "description" ) );
+        assertEquals( 2L, replica.getHitCount() );
+
+        // Modified, renamed and deleted
+        syncState( 0, SyncStateTypeEnum.MODIFY, 1, adminsDn, "v2" );
+        assertEquals( "v2", replica.get( adminsDn ).get( "description" ).getString() );
+
+        Dn membersDn = new Dn( "cn=members,ou=groups,dc=example,dc=com" );
+        syncState( 0, SyncStateTypeEnum.MODDN, 2, membersDn, "v1" );
+        assertNull( replica.get( usersDn ) );
+        assertNotNull( replica.get( membersDn ) );
+
+        syncState( 0, SyncStateTypeEnum.DELETE, 1, adminsDn, "v2" );
+        assertNull( replica.get( adminsDn ) );
+        assertEquals( 5L, replica.getChangeCount() );
+
+        // A missing entry is looked up on the server, through the entry cache
+        when( lookupConnection.lookup( adminsDn ) ).thenReturn( resultEntry( adminsDn, "v3" ).getEntry() );
+        assertEquals( "v3", replica.lookup( lookupConnection, adminsDn ).get( "description" ).getString() );
+        assertEquals( 1L, replica.getMissCount() );
+        assertEquals( 1L, entryCache.getMissCount() );
+
+        // Once the session has stopped, the lookups are sent to the server
+        done( 0, ResultCodeEnum.SUCCESS, Strings.getBytesUtf8( "last" ) );
+        assertFalse( replica.isLive() );
+        assertFalse( replica.isFresh() );
+        replica.lookup( lookupConnection, membersDn );
+        verify( lookupConnection, times( 1 ) ).lookup( membersDn );
+
+        // The session is resumed with the last cookie
+        replica.start();
+        syncRequest = ( SyncRequestValue ) requests.get( 1 ).getControl( SyncRequestValue.OID );
+        assertArrayEquals( Strings.getBytesUtf8( "last" ), syncRequest.getCookie() );
+        assertTrue( replica.isFresh() );
+        assertNotNull( replica.lookup( lookupConnection, membersDn ) );
+        verify( lookupConnection, times( 1 ) ).lookup( membersDn );
+
+        replica.close();
+        verify( connection ).abandon( requests.get( 1 ).getMessageId() );
+        assertFalse( replica.isFresh() );
+    }
+
+
+    /**
+     * Test that the entries which have not been seen during a present phase are deleted
+     */
+    @Test
+    public void testPresentPhase() throws Exception
+    {
+        LdapReplicaCache replica = new LdapReplicaCache( connection, baseDn, "(objectClass=*)" );
+        replica.start();
+        syncState( 0, SyncStateTypeEnum.ADD, 1, adminsDn, "v1" );
+        syncState( 0, SyncStateTypeEnum.ADD, 2, usersDn, "v1" );
+        syncInfo( 0, SynchronizationInfoEnum.REFRESH_DELETE );
+        done( 0, ResultCodeEnum.SUCCESS, null );
+
+        replica.start();
+        syncState( 1, SyncStateTypeEnum.PRESENT, 1, adminsDn, "v1" );
+        syncInfo( 1, SynchronizationInfoEnum.REFRESH_PRESENT );
+
+        assertNotNull( replica.get( adminsDn ) );
+        assertNull( replica.get( usersDn ) );
+        assertEquals( 1, replica.getSize() );
+    }
+
+
+    /**
+     * Test that a persistent search is used when the server does not support syncrepl, and that
+     * the entries changed while they are loaded are not overwritten
+     */
+    @Test
+    public void testPersistentSearchFallback() throws Exception
+    {
+        LdapReplicaCache replica = new LdapReplicaCache( connection, baseDn, "(objectClass=*)", "cn", "description" );
+        replica.setMaxStaleness( 60000L );
+        replica.start();
+        done( 0, ResultCodeEnum.UNAVAILABLE_CRITICAL_EXTENSION, null );
+
+        assertEquals( LdapReplicaCache.ReplicationProtocol.PERSISTENT_SEARCH, replica.getProtocol() );
+        assertEquals( 3, requests.size() );
+        PersistentSearch persistentSearch = ( PersistentSearch ) requests.get( 1 ).getControl( PersistentSearch.OID );
+        assertTrue( persistentSearch.isChangesOnly() );
+        assertTrue( persistentSearch.isReturnECs() );
+        assertNull( requests.get( 2 ).getControl( PersistentSearch.OID ) );
+
+        // A change received while the entries are loaded
+        SearchResultEntry change = resultEntry( adminsDn, "v2" );
+        EntryChange entryChange = new EntryChangeImpl();
+        entryChange.setChangeType( ChangeType.MODIFY );
+        change.addControl( entryChange );
+        consumers.get( 1 ).accept( change );
+
+        consumers.get( 2 ).accept( resultEntry( adminsDn, "v1" ) );
+        consumers.get( 2 ).accept( resultEntry( usersDn, "v1" ) );
+        assertFalse( replica.isFresh() );
+        done( 2, ResultCodeEnum.SUCCESS, null );
+
+        assertTrue( replica.isFresh() );
+        assertEquals( "v2", replica.get( adminsDn ).get( "description" ).getString() );
+        assertEquals( 2, replica.getSize() );
+
+        SearchResultEntry delete = resultEntry( usersDn, "v1" );
+        entryChange = new EntryChangeImpl();
+        entryChange.setChangeType( ChangeType.DELETE );
+        delete.addControl( entryChange );
+        consumers.get( 1 ).accept( delete );
+        assertNull( replica.get( usersDn ) );
+
+        // An attribute which is not replicated is read on the server
+        replica.lookup( lookupConnection, adminsDn, "member" );
+        verify( lookupConnection ).lookup( adminsDn, "member" );
+
+        // The entries are still read during the maximum staleness
+        done( 1, ResultCodeEnum.UNWILLING_TO_PERFORM, null );
+        assertTrue( replica.isFresh() );
+        assertNotNull( replica.lookup( lookupConnection, adminsDn, "cn" ) );
+        verify( lookupConnection, never() ).lookup( adminsDn, "cn" );
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.message.Response;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchRequestImpl;
+import org.apache.directory.api.ldap.model.message.SearchResultDone;
+import org.apache.directory.api.ldap.model.message.SearchResultDoneImpl;
+import org.apache.directory.api.ldap.model.message.SearchResultEntry;
+import org.apache.directory.api.ldap.model.message.SearchResultEntryImpl;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.message.controls.PagedResults;
+import org.apache.directory.api.ldap.model.message.controls.PagedResultsImpl;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.util.Strings;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Test the PagedSearchCursor, with a mocked connection.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class PagedSearchCursorTest
+{
+    /** The mocked connection */
+    private LdapAsyncConnection connection;
+
+    /** The search request */
+    private SearchRequest searchRequest;
+
+    /** The cookies of the pages requested */
+    private List<String> cookies;
+
+    /** The sizes of the pages requested */
+    private List<Integer> sizes;
+
+    /** The consumers of the pages responses */
+    private List<Consumer<Response>> consumers;
+
+    /** The futures completed by the pages SearchResultDone */
+    private List<CompletableFuture<SearchResultDone>> dones;
+
+
+    @SuppressWarnings("unchecked")
+    @Before
+    public void setup() throws Exception
+    {
+        connection = mock( LdapAsyncConnection.class );
+        cookies = new ArrayList<>();
+        sizes = new ArrayList<>();
+        consumers = new ArrayList<>();
+        dones = new ArrayList<>();
+
+        when( connection.searchStage( any( SearchRequest.class ), any( Consumer.class ) ) ).thenAnswer( invocation ->
+        {
+            // The same request is sent for each page : its control is read right away
+            SearchRequest request = ( SearchRequest ) invocation.getArguments()[0];
+            request.setMessageId( consumers.size() + 1 );
+            PagedResults pagedResults = ( PagedResults ) request.getControl( PagedResults.OID );
+            cookies.add( Strings.utf8ToString( pagedResults.getCookie() ) );
+            sizes.add( pagedResults.getSize() );
+            consumers.add( ( Consumer<Response> ) invocation.getArguments()[1] );
+            CompletableFuture<SearchResultDone> done = new CompletableFuture<>();
+            dones.add( done );
+
+            return done;
+        } );
+
+        searchRequest = new SearchRequestImpl();
+        searchRequest.setBase( new Dn( "dc=example,dc=com" ) );
+        searchRequest.setScope( SearchScope.SUBTREE );
+        searchRequest.setFilter( "(objectClass=*)" );
+    }
+
+
+    /**
+     * Sends a page of entries, and its SearchResultDone with the given cookie
+     */
+    private void sendPage( int page, int first, int count, String cookie ) throws Exception
+    {
+        for ( int i = first; i < first + count; i++ )
+        {
+            SearchResultEntry resultEntry = new SearchResultEntryImpl();
+            resultEntry.setEntry( new DefaultEntry( "cn=entry" + i + ",dc=example,dc=com", "cn: entry" + i ) );
+            consumers.get( page ).accept( resultEntry );
+        }
+
+        dones.get( page ).complete( done( ResultCodeEnum.SUCCESS, cookie ) );
+    }
+
+
+    /**
+     * @return A SearchResultDone with a PagedResults control
+     */
+    private static SearchResultDone done( ResultCodeEnum resultCode, String cookie )
+    {
+        SearchResultDone done = new SearchResultDoneImpl();
+        done.getLdapResult().setResultCode( resultCode );
+        PagedResults pagedResults = new PagedResultsImpl();
+        pagedResults.setCookie( Strings.getBytesUtf8( cookie ) );
+        done.addControl( pagedResults );
+
+        return done;
+    }
+
+
+    /**
+     * Test that the next page is requested before the current one is read, and that
+     * all the entries are read in order
+     */
+    @Test
+    public void testPrefetch() throws Exception
+    {
+        PagedSearchCursor cursor = new PagedSearchCursor( connection, searchRequest, 2, 5L, TimeUnit.SECONDS );
+        assertEquals( 1, consumers.size() );
+        assertEquals( 2, sizes.get( 0 ).intValue() );
+        assertEquals( "", cookies.get( 0 ) );
+
+        sendPage( 0, 0, 2, "page2" );
+
+        // The second page is requested while the first one is still unread
+        assertEquals( 2, consumers.size() );
+        assertEquals( "page2", cookies.get( 1 ) );
+
+        sendPage( 1, 2, 1, "" );
+        assertEquals( 2, cursor.getPageCount() );
+
+        for ( int i = 0; i < 3; i++ )
+        {
+            assertTrue( cursor.next() );
+            assertTrue( cursor.isEntry() );
+            assertEquals( "cn=entry" + i + ",dc=example,dc=com", cursor.getEntry().getDn().getName() );
+        }
+
+        assertFalse( cursor.next() );
+        assertTrue( cursor.isDone() );
+        assertEquals( ResultCodeEnum.SUCCESS, cursor.getSearchResultDone().getLdapResult().getResultCode() );
+
+        cursor.close();
+        verify( connection, never() ).abandon( anyInt() );
+    }
+
+
+    /**
+     * Test that the next page is only requested once the buffered responses have been read
+     */
+    @Test
+    public void testMaxBufferedResponses() throws Exception
+    {
+        PagedSearchCursor cursor = new PagedSearchCursor( connection, searchRequest, 3, 5L, TimeUnit.SECONDS );
+        cursor.setMaxBufferedResponses( 2 );
+
+        sendPage( 0, 0, 3, "page2" );
+        assertEquals( 1, consumers.size() );
+
+        assertTrue( cursor.next() );
+        assertEquals( 1, consumers.size() );
+
+        // Only one response is left
+        assertTrue( cursor.next() );
+        assertEquals( 2, consumers.size() );
+        assertEquals( "page2", cookies.get( 1 ) );
+
+        // The last page ends on an error
+        dones.get( 1 ).complete( done( ResultCodeEnum.SIZE_LIMIT_EXCEEDED, "page3" ) );
+        assertTrue( cursor.next() );
+        assertFalse( cursor.next() );
+        assertEquals( ResultCodeEnum.SIZE_LIMIT_EXCEEDED, cursor.getSearchResultDone().getLdapResult().getResultCode() );
+        assertEquals( 2, cursor.getPageCount() );
+        cursor.close();
+    }
+
+
+    /**
+     * Test that closing the cursor abandons the page being received, or releases the paged
+     * search on the server when the next page hasn't been requested yet
+     */
+    @Test
+    public void testClose() throws Exception
+    {
+        PagedSearchCursor cursor = new PagedSearchCursor( connection, searchRequest, 2, 5L, TimeUnit.SECONDS );
+        cursor.close();
+        verify( connection ).abandon( 1 );
+
+        cursor = new PagedSearchCursor( connection, searchRequest, 2, 5L, TimeUnit.SECONDS );
+        cursor.setMaxBufferedResponses( 1 );
+        sendPage( 1, 0, 2, "page2" );
+        assertEquals( 2, consumers.size() );
+        cursor.close();
+
+        // An empty page with the cookie ends the paged search
+        assertEquals( 3, consumers.size() );
+        assertEquals( "page2", cookies.get( 2 ) );
+        assertEquals( 0, sizes.get( 2 ).intValue() );
+    }
+
+
+    /**
+     * Test that a page which can't be read fails the cursor
+     */
+    @Test
+    public void testError() throws Exception
+    {
+        PagedSearchCursor cursor = new PagedSearchCursor( connection, searchRequest, 2, 5L, TimeUnit.SECONDS );
+        dones.get( 0 ).completeExceptionally( new LdapException( "Connection lost" ) );
+
+        try
+        {
+            cursor.next();
+            fail();
+        }
+        catch ( LdapException le )
+        {
+            assertTrue( cursor.isClosed() );
+            assertNull( cursor.getSearchResultDone() );
+        }
+    }
+}
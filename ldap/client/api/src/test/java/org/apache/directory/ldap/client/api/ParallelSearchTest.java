@@ -0,0 +1,276 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.directory.api.ldap.model.cursor.SearchCursor;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.message.Response;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchRequestImpl;
+import org.apache.directory.api.ldap.model.message.SearchResultDone;
+import org.apache.directory.api.ldap.model.message.SearchResultDoneImpl;
+import org.apache.directory.api.ldap.model.message.SearchResultEntry;
+import org.apache.directory.api.ldap.model.message.SearchResultEntryImpl;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Test the ParallelSearch, with a mocked pool which connections search a small tree.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class ParallelSearchTest
+{
+    /** The mocked pool */
+    private LdapConnectionPool connectionPool;
+
+    /** The mocked connection */
+    private LdapConnection connection;
+
+    /** The entries of the tree */
+    private List<Dn> tree;
+
+    /** The searches sent */
+    private List<SearchRequest> requests;
+
+    /** The result of the searches of the ou=b subtree */
+    private ResultCodeEnum resultCodeOfB;
+
+    private Dn baseDn;
+
+
+    @Before
+    public void setup() throws Exception
+    {
+        connectionPool = mock( LdapConnectionPool.class );
+        connection = mock( LdapConnection.class );
+        requests = Collections.synchronizedList( new ArrayList<SearchRequest>() );
+        resultCodeOfB = ResultCodeEnum.SUCCESS;
+        baseDn = new Dn( "dc=example,dc=com" );
+        tree = new ArrayList<>();
+
+        for ( String dn : new String[]
+            { "dc=example,dc=com", "ou=a,dc=example,dc=com", "ou=b,dc=example,dc=com", "cn=1,ou=a,dc=example,dc=com",
+                "cn=2,ou=a,dc=example,dc=com", "cn=3,ou=b,dc=example,dc=com" } )
+        {
+            tree.add( new Dn( dn ) );
+        }
+
+        when( connectionPool.getConnection() ).thenReturn( connection );
+        when( connection.search( any( SearchRequest.class ) ) ).thenAnswer( invocation ->
+            searchTree( ( SearchRequest ) invocation.getArguments()[0] ) );
+    }
+
+
+    /**
+     * @return A cursor on the entries of the tree in the scope of the request. The filter is ignored.
+     */
+    private SearchCursor searchTree( SearchRequest request ) throws Exception
+    {
+        requests.add( request );
+        List<Response> responses = new ArrayList<>();
+        Dn base = request.getBase();
+
+        for ( Dn dn : tree )
+        {
+            boolean inScope;
+
+            switch ( request.getScope() )
+            {
+                case OBJECT:
+                    inScope = dn.equals( base );
+                    break;
+
+                case ONELEVEL:
+                    inScope = dn.getParent().equals( base );
+                    break;
+
+                default:
+                    inScope = dn.isDescendantOf( base );
+                    break;
+            }
+
+            if ( inScope )
+            {
+                SearchResultEntry resultEntry = new SearchResultEntryImpl();
+                resultEntry.setEntry( new DefaultEntry( dn ) );
+                responses.add( resultEntry );
+            }
+        }
+
+        SearchResultDone done = new SearchResultDoneImpl();
+        done.getLdapResult().setResultCode(
+            base.getName().startsWith( "ou=b" ) ? resultCodeOfB : ResultCodeEnum.SUCCESS );
+
+        SearchCursor cursor = mock( SearchCursor.class );
+        Iterator<Response> iterator = responses.iterator();
+        Response[] current = new Response[1];
+
+        when( cursor.next() ).thenAnswer( invocation ->
+        {
+            current[0] = iterator.hasNext() ? iterator.next() : null;
+
+            return current[0] != null;
+        } );
+        when( cursor.get() ).thenAnswer( invocation -> current[0] );
+        when( cursor.isEntry() ).thenAnswer( invocation -> current[0] instanceof SearchResultEntry );
+        when( cursor.getSearchResultDone() ).thenReturn( done );
+
+        return cursor;
+    }
+
+
+    /**
+     * @return The names of the entries read from the cursor
+     */
+    private static List<String> readAll( SearchCursor cursor ) throws Exception
+    {
+        List<String> names = new ArrayList<>();
+
+        while ( cursor.next() )
+        {
+            names.add( cursor.getEntry().getDn().getName() );
+        }
+
+        cursor.close();
+
+        return names;
+    }
+
+
+    /**
+     * @return A subtree search of the base
+     */
+    private SearchRequest subtreeSearch() throws Exception
+    {
+        SearchRequest searchRequest = new SearchRequestImpl();
+        searchRequest.setBase( baseDn );
+        searchRequest.setScope( SearchScope.SUBTREE );
+        searchRequest.setFilter( "(objectClass=*)" );
+        searchRequest.addAttributes( "cn" );
+
+        return searchRequest;
+    }
+
+
+    /**
+     * Test that a subtree search is split by the children of its base
+     */
+    @Test
+    public void testChildrenPartitions() throws Exception
+    {
+        ParallelSearch parallelSearch = new ParallelSearch( connectionPool );
+        parallelSearch.setParallelism( 2 );
+        SearchCursor cursor = parallelSearch.search( subtreeSearch() );
+
+        List<String> names = readAll( cursor );
+        assertEquals( tree.size(), names.size() );
+        assertEquals( tree.size(), new HashSet<>( names ).size() );
+        assertTrue( cursor.isDone() );
+        assertEquals( ResultCodeEnum.SUCCESS, cursor.getSearchResultDone().getLdapResult().getResultCode() );
+
+        // The children listing, the base entry, and the two children subtrees
+        assertEquals( 4, requests.size() );
+        assertEquals( SearchScope.ONELEVEL, requests.get( 0 ).getScope() );
+        assertEquals( Arrays.asList( "1.1" ), requests.get( 0 ).getAttributes() );
+
+        for ( SearchRequest partition : requests.subList( 1, 4 ) )
+        {
+            assertEquals( partition.getBase().equals( baseDn ) ? SearchScope.OBJECT : SearchScope.SUBTREE,
+                partition.getScope() );
+            assertEquals( Arrays.asList( "cn" ), partition.getAttributes() );
+        }
+
+        verify( connectionPool, times( 4 ) ).releaseConnection( connection );
+    }
+
+
+    /**
+     * Test that the entries found by several filter partitions are returned once
+     */
+    @Test
+    public void testFilterPartitions() throws Exception
+    {
+        ParallelSearch parallelSearch = new ParallelSearch( connectionPool );
+        SearchCursor cursor = parallelSearch.search( subtreeSearch(), "(cn<=m)", "(cn>=m)", "(cn=*)" );
+
+        List<String> names = readAll( cursor );
+        assertEquals( tree.size(), names.size() );
+        assertEquals( 3, requests.size() );
+
+        for ( SearchRequest partition : requests )
+        {
+            assertEquals( SearchScope.SUBTREE, partition.getScope() );
+            assertTrue( partition.getFilter().toString().startsWith( "(&(objectClass=*)" ) );
+        }
+
+        // Without de-duplication, each partition returns the whole tree
+        requests.clear();
+        parallelSearch.setDeduplicate( false );
+        assertEquals( 3 * tree.size(), readAll( parallelSearch.search( subtreeSearch(), "(cn<=m)", "(cn>=m)",
+            "(cn=*)" ) ).size() );
+    }
+
+
+    /**
+     * Test that the cursor ends with the result of a failed partition, and that a child
+     * deleted since it has been listed is ignored
+     */
+    @Test
+    public void testFailedPartition() throws Exception
+    {
+        ParallelSearch parallelSearch = new ParallelSearch( connectionPool );
+
+        resultCodeOfB = ResultCodeEnum.NO_SUCH_OBJECT;
+        SearchCursor cursor = parallelSearch.search( subtreeSearch() );
+        readAll( cursor );
+        assertEquals( ResultCodeEnum.SUCCESS, cursor.getSearchResultDone().getLdapResult().getResultCode() );
+
+        resultCodeOfB = ResultCodeEnum.ADMIN_LIMIT_EXCEEDED;
+        cursor = parallelSearch.search( subtreeSearch() );
+        Set<String> names = new HashSet<>( readAll( cursor ) );
+        assertTrue( names.contains( "cn=1,ou=a,dc=example,dc=com" ) );
+        assertFalse( cursor.next() );
+        assertEquals( ResultCodeEnum.ADMIN_LIMIT_EXCEEDED, cursor.getSearchResultDone().getLdapResult()
+            .getResultCode() );
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.directory.ldap.client.api;
+
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.message.Response;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchRequestImpl;
+import org.apache.directory.api.ldap.model.message.SearchResultDoneImpl;
+import org.apache.directory.api.ldap.model.message.SearchResultEntryImpl;
+import org.apache.directory.api.ldap.model.message.controls.PagedResults;
+import org.apache.directory.api.ldap.model.message.controls.PagedResultsImpl;
+import org.apache.directory.ldap.client.api.future.SearchFuture;
+import org.junit.Test;
+
+
+/**
+ * Test the SearchPublisher.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class SearchPublisherTest
+{
+    /**
+     * A subscriber keeping what it receives
+     */
+    private static class TestSubscriber implements Flow.Subscriber<Response>
+    {
+        private Flow.Subscription subscription;
+        private List<Response> responses = new ArrayList<>();
+        private Throwable error;
+        private boolean completed;
+
+
+        @Override
+        public void onSubscribe( Flow.Subscription subscription )
+        {
+            this.subscription = subscription;
+        }
+
+
+        @Override
+        public void onNext( Response item )
+        {
+            responses.add( item );
+        }
+
+
+        @Override
+        public void onError( Throwable throwable )
+        {
+            error = throwable;
+        }
+
+
+        @Override
+        public void onComplete()
+        {
+            completed = true;
+        }
+    }
+
+
+    /**
+     * Create a SearchResultDone
+     */
+    private SearchResultDoneImpl createDone( int messageId, byte[] cookie )
+    {
+        SearchResultDoneImpl done = new SearchResultDoneImpl( messageId );
+        done.getLdapResult().setResultCode( ResultCodeEnum.SUCCESS );
+
+        if ( cookie != null )
+        {
+            PagedResults pagedResults = new PagedResultsImpl();
+            pagedResults.setCookie( cookie );
+            done.addControl( pagedResults );
+        }
+
+        return done;
+    }
+
+
+    /**
+     * Test that the responses are published as requested, and that the reads are
+     * suspended while too many responses are pending
+     */
+    @Test
+    public void testDemand() throws Exception
+    {
+        LdapNetworkConnection connection = mock( LdapNetworkConnection.class );
+        SearchFuture searchFuture = new SearchFuture( connection, 1 );
+        when( connection.searchAsync( any( SearchRequest.class ) ) ).thenReturn( searchFuture );
+
+        SearchPublisher publisher = new SearchPublisher( connection, new SearchRequestImpl(), 4 );
+        TestSubscriber subscriber = new TestSubscriber();
+        publisher.subscribe( subscriber );
+
+        for ( int i = 0; i < 3; i++ )
+        {
+            searchFuture.set( new SearchResultEntryImpl( 1 ) );
+        }
+
+        assertTrue( subscriber.responses.isEmpty() );
+        verify( connection, times( 0 ) ).suspendRead();
+
+        searchFuture.set( new SearchResultEntryImpl( 1 ) );
+        verify( connection, times( 1 ) ).suspendRead();
+
+        subscriber.subscription.request( 1 );
+        assertEquals( 1, subscriber.responses.size() );
+        verify( connection, times( 0 ) ).resumeRead();
+
+        subscriber.subscription.request( 1 );
+        assertEquals( 2, subscriber.responses.size() );
+        verify( connection, times( 1 ) ).resumeRead();
+
+        SearchResultDoneImpl done = createDone( 1, null );
+        searchFuture.set( done );
+        subscriber.subscription.request( 2 );
+
+        assertEquals( 4, subscriber.responses.size() );
+        assertFalse( subscriber.completed );
+
+        subscriber.subscription.request( 1 );
+
+        assertEquals( 5, subscriber.responses.size() );
+        assertSame( done, subscriber.responses.get( 4 ) );
+        assertTrue( subscriber.completed );
+        verify( connection, times( 1 ) ).searchAsync( any( SearchRequest.class ) );
+    }
+
+
+    /**
+     * Test that the next page is requested only when the subscriber has requested more
+     * responses than the previous page contained
+     */
+    @Test
+    public void testPaging() throws Exception
+    {
+        LdapNetworkConnection connection = mock( LdapNetworkConnection.class );
+        SearchFuture page1 = new SearchFuture( connection, 1 );
+        SearchFuture page2 = new SearchFuture( connection, 2 );
+        when( connection.searchAsync( any( SearchRequest.class ) ) ).thenReturn( page1, page2 );
+
+        SearchRequest searchRequest = new SearchRequestImpl();
+        PagedResults pagedResults = new PagedResultsImpl();
+        pagedResults.setSize( 1 );
+        searchRequest.addControl( pagedResults );
+
+        SearchPublisher publisher = new SearchPublisher( connection, searchRequest, 100 );
+        TestSubscriber subscriber = new TestSubscriber();
+        publisher.subscribe( subscriber );
+        subscriber.subscription.request( 1 );
+
+        page1.set( new SearchResultEntryImpl( 1 ) );
+        page1.set( createDone( 1, new byte[] { 0x01 } ) );
+
+        assertEquals( 1, subscriber.responses.size() );
+        verify( connection, times( 1 ) ).searchAsync( any( SearchRequest.class ) );
+
+        subscriber.subscription.request( 10 );
+
+        verify( connection, times( 2 ) ).searchAsync( any( SearchRequest.class ) );
+        assertArrayEquals( new byte[] { 0x01 }, pagedResults.getCookie() );
+
+        page2.set( new SearchResultEntryImpl( 2 ) );
+        page2.set( createDone( 2, new byte[0] ) );
+
+        assertEquals( 3, subscriber.responses.size() );
+        assertEquals( 2, subscriber.responses.get( 2 ).getMessageId() );
+        assertTrue( subscriber.completed );
+    }
+
+
+    /**
+     * Test that a single subscriber is accepted, and that an invalid demand is an error
+     */
+    @Test
+    public void testErrors() throws Exception
+    {
+        LdapNetworkConnection connection = mock( LdapNetworkConnection.class );
+        when( connection.searchAsync( any( SearchRequest.class ) ) ).thenReturn( new SearchFuture( connection, 1 ) );
+
+        SearchPublisher publisher = new SearchPublisher( connection, new SearchRequestImpl(), 100 );
+        TestSubscriber subscriber = new TestSubscriber();
+        publisher.subscribe( subscriber );
+
+        TestSubscriber other = new TestSubscriber();
+        publisher.subscribe( other );
+
+        assertTrue( other.error instanceof IllegalStateException );
+
+        subscriber.subscription.request( 0 );
+
+        assertTrue( subscriber.error instanceof IllegalArgumentException );
+    }
+}
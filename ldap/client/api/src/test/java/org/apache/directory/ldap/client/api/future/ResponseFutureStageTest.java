@@ -0,0 +1,128 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.directory.ldap.client.api.future;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.directory.api.ldap.model.message.AddResponse;
+import org.apache.directory.api.ldap.model.message.AddResponseImpl;
+import org.apache.directory.api.ldap.model.message.BindResponseImpl;
+import org.apache.directory.api.ldap.model.message.Response;
+import org.apache.directory.api.ldap.model.message.SearchResultDoneImpl;
+import org.apache.directory.api.ldap.model.message.SearchResultEntryImpl;
+import org.junit.Test;
+
+
+/**
+ * Test the CompletionStages of the response futures.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class ResponseFutureStageTest
+{
+    /**
+     * Test that the stage of a single response operation is completed with the response
+     */
+    @Test
+    public void testUniqueResponse() throws Exception
+    {
+        AddFuture addFuture = new AddFuture( null, 1 );
+        CompletableFuture<AddResponse> stage = addFuture.getCompletionStage().toCompletableFuture();
+
+        assertFalse( stage.isDone() );
+
+        AddResponse addResponse = new AddResponseImpl( 1 );
+        addFuture.set( addResponse );
+
+        assertSame( addResponse, stage.get() );
+        assertSame( addResponse, addFuture.get() );
+    }
+
+
+    /**
+     * Test that the stage is completed exceptionally when the future is cancelled
+     */
+    @Test
+    public void testCancel()
+    {
+        AddFuture addFuture = new AddFuture( null, 1 );
+        addFuture.cancel();
+
+        assertTrue( addFuture.getCompletionStage().toCompletableFuture().isCompletedExceptionally() );
+
+        BindFuture bindFuture = new BindFuture( null, 2 );
+        bindFuture.cancel();
+
+        assertTrue( bindFuture.getCompletionStage().toCompletableFuture().isCancelled() );
+    }
+
+
+    /**
+     * Test that the stage of a bind is completed by the BindResponse
+     */
+    @Test
+    public void testBind() throws Exception
+    {
+        BindFuture bindFuture = new BindFuture( null, 1 );
+        BindResponseImpl bindResponse = new BindResponseImpl( 1 );
+        bindFuture.set( bindResponse );
+
+        assertSame( bindResponse, bindFuture.getCompletionStage().toCompletableFuture().get() );
+        assertSame( bindResponse, bindFuture.get() );
+    }
+
+
+    /**
+     * Test that the search responses are passed to the consumer, including the ones
+     * received before it is set, and that the stage is completed by the SearchResultDone
+     */
+    @Test
+    public void testSearchConsumer() throws Exception
+    {
+        SearchFuture searchFuture = new SearchFuture( null, 1 );
+        searchFuture.set( new SearchResultEntryImpl( 1 ) );
+
+        List<Response> responses = new ArrayList<>();
+        searchFuture.setResponseConsumer( responses::add );
+
+        assertEquals( 1, responses.size() );
+
+        searchFuture.set( new SearchResultEntryImpl( 1 ) );
+        CompletableFuture<Response> stage = searchFuture.getCompletionStage().toCompletableFuture();
+
+        assertEquals( 2, responses.size() );
+        assertFalse( stage.isDone() );
+
+        SearchResultDoneImpl searchResultDone = new SearchResultDoneImpl( 1 );
+        searchFuture.set( searchResultDone );
+
+        assertSame( searchResultDone, stage.get() );
+        assertSame( searchResultDone, searchFuture.get() );
+        assertEquals( 2, responses.size() );
+    }
+}
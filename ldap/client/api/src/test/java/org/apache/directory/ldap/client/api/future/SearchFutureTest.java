@@ -0,0 +1,166 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.ldap.client.api.future;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.message.SearchResultDone;
+import org.apache.directory.api.ldap.model.message.SearchResultDoneImpl;
+import org.apache.directory.api.ldap.model.message.SearchResultEntry;
+import org.apache.directory.api.ldap.model.message.SearchResultEntryImpl;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Test the bounded queue of the SearchFuture.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class SearchFutureTest
+{
+    /** The number of suspensions of the reads */
+    private AtomicInteger suspensions;
+
+    /** The number of resumptions of the reads */
+    private AtomicInteger resumptions;
+
+
+    @Before
+    public void setup()
+    {
+        suspensions = new AtomicInteger();
+        resumptions = new AtomicInteger();
+    }
+
+
+    /**
+     * @return An entry with a description of the given length
+     */
+    private static SearchResultEntry resultEntry( int i, int descriptionLength ) throws Exception
+    {
+        StringBuilder description = new StringBuilder();
+
+        for ( int j = 0; j < descriptionLength; j++ )
+        {
+            description.append( 'x' );
+        }
+
+        SearchResultEntry resultEntry = new SearchResultEntryImpl( 1 );
+        resultEntry.setEntry( new DefaultEntry( "cn=entry" + i + ",dc=example,dc=com",
+            "cn: entry" + i,
+            "description: " + description ) );
+
+        return resultEntry;
+    }
+
+
+    /**
+     * Test that the reads are suspended when too many responses are queued, and resumed
+     * once half of them have been read
+     */
+    @Test
+    public void testMaxQueuedResponses() throws Exception
+    {
+        SearchFuture searchFuture = new SearchFuture( null, 1 );
+        searchFuture.setQueueCapacity( 4, 0L, suspensions::incrementAndGet, resumptions::incrementAndGet );
+
+        for ( int i = 0; i < 3; i++ )
+        {
+            searchFuture.set( resultEntry( i, 10 ) );
+        }
+
+        assertEquals( 0, suspensions.get() );
+
+        // The entries received after the suspension are still queued
+        searchFuture.set( resultEntry( 3, 10 ) );
+        searchFuture.set( resultEntry( 4, 10 ) );
+        assertEquals( 1, suspensions.get() );
+        assertEquals( 5, searchFuture.getQueuedResponses() );
+
+        for ( int i = 0; i < 2; i++ )
+        {
+            searchFuture.get( 1L, TimeUnit.SECONDS );
+        }
+
+        assertEquals( 0, resumptions.get() );
+
+        searchFuture.get();
+        assertEquals( 1, resumptions.get() );
+
+        SearchResultDone done = new SearchResultDoneImpl( 1 );
+        searchFuture.set( done );
+        searchFuture.get();
+        searchFuture.get();
+        assertSame( done, searchFuture.get() );
+        assertEquals( 0, searchFuture.getQueuedResponses() );
+        assertEquals( 1, suspensions.get() );
+        assertEquals( 1, resumptions.get() );
+    }
+
+
+    /**
+     * Test that the reads are suspended when the queued entries are too big
+     */
+    @Test
+    public void testMaxQueuedBytes() throws Exception
+    {
+        SearchFuture searchFuture = new SearchFuture( null, 1 );
+        searchFuture.setQueueCapacity( 0, 10000L, suspensions::incrementAndGet, resumptions::incrementAndGet );
+
+        searchFuture.set( resultEntry( 0, 3000 ) );
+        searchFuture.set( resultEntry( 1, 3000 ) );
+        assertEquals( 0, suspensions.get() );
+        assertTrue( searchFuture.getQueuedBytes() > 6000L );
+
+        searchFuture.set( resultEntry( 2, 4000 ) );
+        assertEquals( 1, suspensions.get() );
+
+        searchFuture.get();
+        assertEquals( 0, resumptions.get() );
+        searchFuture.get();
+        assertEquals( 1, resumptions.get() );
+    }
+
+
+    /**
+     * Test that the reads are resumed when the search is abandoned
+     */
+    @Test
+    public void testCancel() throws Exception
+    {
+        SearchFuture searchFuture = new SearchFuture( null, 1 );
+        searchFuture.setQueueCapacity( 1, 0L, suspensions::incrementAndGet, resumptions::incrementAndGet );
+
+        searchFuture.set( resultEntry( 0, 10 ) );
+        assertEquals( 1, suspensions.get() );
+
+        searchFuture.cancel();
+        assertEquals( 1, resumptions.get() );
+        assertEquals( 0, searchFuture.getQueuedResponses() );
+    }
+}
@@ -21,6 +21,7 @@ package org.apache.directory.api.ldap.codec.actions.response.search.entry;
 
 
 import org.apache.directory.api.asn1.ber.grammar.GrammarAction;
+import org.apache.directory.api.ldap.codec.api.LazySearchResultEntry;
 import org.apache.directory.api.ldap.codec.api.LdapMessageContainer;
 import org.apache.directory.api.ldap.model.message.SearchResultEntry;
 import org.apache.directory.api.ldap.model.message.SearchResultEntryImpl;
@@ -51,7 +52,18 @@ public class InitSearchResultEntry extends GrammarAction<LdapMessageContainer<Se
     public void action( LdapMessageContainer<SearchResultEntry> container )
     {
         // Now, we can allocate the SearchResultEntry Object
-        SearchResultEntry searchResultEntry = new SearchResultEntryImpl( container.getMessageId() );
+        SearchResultEntry searchResultEntry;
+
+        if ( container.isLazySearchResultEntries() )
+        {
+            searchResultEntry = new LazySearchResultEntry( container.getMessageId(),
+                container.getBinaryAttributeDetector() );
+        }
+        else
+        {
+            searchResultEntry = new SearchResultEntryImpl( container.getMessageId() );
+        }
+
         container.setMessage( searchResultEntry );
     }
 }
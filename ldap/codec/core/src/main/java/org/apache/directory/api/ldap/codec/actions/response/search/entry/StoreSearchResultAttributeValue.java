@@ -69,7 +69,15 @@ public class StoreSearchResultAttributeValue extends GrammarAction<LdapMessageCo
         // Store the value
         try
         {
-            if ( tlv.getLength() == 0 )
+            if ( tlv.getValue().isStreamed() )
+            {
+                // The value has been written in the LargeValueHandler sink
+                if ( LOG.isDebugEnabled() )
+                {
+                    LOG.debug( I18n.msg( I18n.MSG_05311_STREAMED_ATTRIBUTE_VALUE, tlv.getLength() ) );
+                }
+            }
+            else if ( tlv.getLength() == 0 )
             {
                 currentAttribute.add( "" );
 
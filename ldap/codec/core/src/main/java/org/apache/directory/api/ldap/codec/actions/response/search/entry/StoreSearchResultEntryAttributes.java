@@ -0,0 +1,83 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.ldap.codec.actions.response.search.entry;
+
+
+import org.apache.directory.api.asn1.ber.grammar.GrammarAction;
+import org.apache.directory.api.asn1.ber.tlv.TLV;
+import org.apache.directory.api.i18n.I18n;
+import org.apache.directory.api.ldap.codec.api.LazySearchResultEntry;
+import org.apache.directory.api.ldap.codec.api.LdapMessageContainer;
+import org.apache.directory.api.ldap.model.message.SearchResultEntry;
+import org.apache.directory.api.util.Strings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * The action used when the SearchResultEntry attributes start. When the entry is
+ * decoded lazily, the whole PartialAttributeList has been gathered, and is stored
+ * as is in the {@link LazySearchResultEntry}.
+ * <pre>
+ * SearchResultEntry ::= [APPLICATION 4] SEQUENCE { ...
+ *         ...
+ *         attributes      PartialAttributeList }
+ * </pre>
+ * In any case, the grammar can end here, as we may have no attribute.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class StoreSearchResultEntryAttributes extends GrammarAction<LdapMessageContainer<SearchResultEntry>>
+{
+    /** The logger */
+    private static final Logger LOG = LoggerFactory.getLogger( StoreSearchResultEntryAttributes.class );
+
+    /**
+     * Instantiates a new action.
+     */
+    public StoreSearchResultEntryAttributes()
+    {
+        super( "Store SearchResultEntry attributes" );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void action( LdapMessageContainer<SearchResultEntry> container )
+    {
+        if ( container.isGathering() )
+        {
+            TLV tlv = container.getCurrentTLV();
+            byte[] attributes = tlv.getLength() == 0 ? Strings.EMPTY_BYTES : tlv.getValue().getData();
+
+            ( ( LazySearchResultEntry ) container.getMessage() ).setRawAttributes( attributes );
+            container.setGathering( false );
+
+            if ( LOG.isDebugEnabled() )
+            {
+                LOG.debug( I18n.msg( I18n.MSG_05312_RAW_ATTRIBUTES, attributes.length ) );
+            }
+        }
+
+        // We may have no attribute
+        container.setGrammarEndAllowed( true );
+    }
+}
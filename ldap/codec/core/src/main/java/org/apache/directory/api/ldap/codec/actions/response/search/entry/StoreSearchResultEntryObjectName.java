@@ -24,6 +24,7 @@ import org.apache.directory.api.asn1.DecoderException;
 import org.apache.directory.api.asn1.ber.grammar.GrammarAction;
 import org.apache.directory.api.asn1.ber.tlv.TLV;
 import org.apache.directory.api.i18n.I18n;
+import org.apache.directory.api.ldap.codec.api.LazySearchResultEntry;
 import org.apache.directory.api.ldap.codec.api.LdapMessageContainer;
 import org.apache.directory.api.ldap.model.exception.LdapInvalidDnException;
 import org.apache.directory.api.ldap.model.message.SearchResultEntry;
@@ -67,6 +68,21 @@ public class StoreSearchResultEntryObjectName extends GrammarAction<LdapMessageC
 
         TLV tlv = container.getCurrentTLV();
 
+        if ( searchResultEntry instanceof LazySearchResultEntry )
+        {
+            // Keep the name as is, and gather the attributes : they will be decoded on demand
+            byte[] dnBytes = tlv.getLength() == 0 ? Strings.EMPTY_BYTES : tlv.getValue().getData();
+            ( ( LazySearchResultEntry ) searchResultEntry ).setRawObjectName( dnBytes );
+            container.setGathering( true );
+
+            if ( LOG.isDebugEnabled() )
+            {
+                LOG.debug( I18n.msg( I18n.MSG_05182_SEARCH_RESULT_ENTRY_DN, Strings.utf8ToString( dnBytes ) ) );
+            }
+
+            return;
+        }
+
         // Store the value.
         if ( tlv.getLength() == 0 )
         {
@@ -0,0 +1,56 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.ldap.codec.api;
+
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.message.SearchResultEntry;
+
+
+/**
+ * A handler receiving the big attribute values of the SearchResultEntries being decoded.
+ * Instead of being accumulated in memory, a value which is at least as long as the
+ * threshold configured in the {@link LdapMessageContainer} is written into the channel
+ * returned by this handler, chunk by chunk, as the bytes are received. The channel is
+ * closed once the last byte of the value has been written.
+ * <br>
+ * A streamed value is not added to its attribute. An OutputStream can be used as a sink
+ * through {@link java.nio.channels.Channels#newChannel(java.io.OutputStream)}.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public interface LargeValueHandler
+{
+    /**
+     * Called when a big attribute value is about to be read.
+     *
+     * @param entry The SearchResultEntry being decoded. Its Dn and the previous
+     * attributes are already available
+     * @param attribute The attribute the value belongs to
+     * @param length The value length
+     * @return The channel the value bytes will be written into, or null if the value
+     * has to be stored in the attribute as usual
+     * @throws IOException If the channel can't be opened
+     */
+    WritableByteChannel open( SearchResultEntry entry, Attribute attribute, int length ) throws IOException;
+}
@@ -0,0 +1,503 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.ldap.codec.api;
+
+
+import java.util.Arrays;
+
+import org.apache.directory.api.asn1.ber.tlv.UniversalTag;
+import org.apache.directory.api.i18n.I18n;
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.DefaultAttribute;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapInvalidDnException;
+import org.apache.directory.api.ldap.model.message.AbstractResponse;
+import org.apache.directory.api.ldap.model.message.MessageTypeEnum;
+import org.apache.directory.api.ldap.model.message.SearchResultEntry;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.util.Strings;
+
+
+/**
+ * A SearchResultEntry which keeps the objectName and the attributes as they have been
+ * received, and decodes them on demand :
+ * <ul>
+ *   <li>the Dn is parsed on the first call to {@link #getObjectName()}</li>
+ *   <li>{@link #getAttribute(String)} decodes the values of a single attribute, and
+ *   skips the other ones</li>
+ *   <li>the {@link Entry} is built on the first call to {@link #getEntry()}</li>
+ * </ul>
+ * As long as the Entry has not been built, the attributes can't have been modified,
+ * and the encoder re-emits the received bytes as is. The same is true for the objectName
+ * until the Entry is built, as its Dn can then be changed, or {@link #setObjectName(Dn)}
+ * is called.
+ * <br>
+ * As the decoding is deferred, an invalid Dn or attribute is only detected when it's
+ * accessed, and reported with an IllegalStateException.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LazySearchResultEntry extends AbstractResponse implements SearchResultEntry
+{
+    static final long serialVersionUID = 1L;
+
+    /** The detector used to decide if an attribute value is a String or a byte[] */
+    private transient BinaryAttributeDetector binaryAttributeDetector;
+
+    /** The received objectName, null if the Dn has been replaced or the entry built */
+    private byte[] rawObjectName;
+
+    /** The received PartialAttributeList value, null once the entry has been built */
+    private byte[] rawAttributes;
+
+    /** The parsed or replaced Dn */
+    private Dn objectName;
+
+    /** The entry, built on demand */
+    private Entry entry;
+
+
+    /**
+     * Creates a new LazySearchResultEntry instance
+     *
+     * @param id The message ID
+     * @param binaryAttributeDetector The detector used to decide if an attribute value is binary
+     */
+    public LazySearchResultEntry( int id, BinaryAttributeDetector binaryAttributeDetector )
+    {
+        super( id, MessageTypeEnum.SEARCH_RESULT_ENTRY );
+        this.binaryAttributeDetector = binaryAttributeDetector;
+    }
+
+
+    /**
+     * @return The received objectName, or null if the Dn has been replaced or the entry
+     * has been built
+     */
+    public byte[] getRawObjectName()
+    {
+        return rawObjectName;
+    }
+
+
+    /**
+     * Store the received objectName. It will be parsed when the Dn is accessed.
+     *
+     * @param rawObjectName The objectName bytes
+     */
+    public void setRawObjectName( byte[] rawObjectName )
+    {
+        this.rawObjectName = rawObjectName;
+        objectName = null;
+    }
+
+
+    /**
+     * @return The received PartialAttributeList value, without its SEQUENCE tag and length,
+     * or null if the entry has been built
+     */
+    public byte[] getRawAttributes()
+    {
+        return rawAttributes;
+    }
+
+
+    /**
+     * Store the received attributes. They will be decoded when the entry is accessed.
+     *
+     * @param rawAttributes The PartialAttributeList value, without its SEQUENCE tag and length
+     */
+    public void setRawAttributes( byte[] rawAttributes )
+    {
+        this.rawAttributes = rawAttributes;
+        entry = null;
+    }
+
+
+    /**
+     * @return <code>true</code> if the entry has been built, or set
+     */
+    public boolean isEntryLoaded()
+    {
+        return entry != null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Dn getObjectName()
+    {
+        if ( entry != null )
+        {
+            return entry.getDn();
+        }
+
+        if ( ( objectName == null ) && ( rawObjectName != null ) )
+        {
+            if ( rawObjectName.length == 0 )
+            {
+                objectName = Dn.EMPTY_DN;
+            }
+            else
+            {
+                try
+                {
+                    objectName = new Dn( Strings.utf8ToString( rawObjectName ) );
+                }
+                catch ( LdapInvalidDnException lide )
+                {
+                    throw new IllegalStateException( I18n.err( I18n.ERR_05157_INVALID_DN,
+                        Strings.dumpBytes( rawObjectName ), lide.getMessage() ), lide );
+                }
+            }
+        }
+
+        return objectName;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setObjectName( Dn objectName )
+    {
+        if ( entry != null )
+        {
+            entry.setDn( objectName );
+        }
+
+        this.objectName = objectName;
+        rawObjectName = null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * The entry is built on the first call. From then on, the received objectName and
+     * attributes are not used anymore, and the encoder will encode the entry, with its Dn.
+     */
+    @Override
+    public Entry getEntry()
+    {
+        if ( ( entry == null ) && ( rawAttributes != null ) )
+        {
+            Dn dn = getObjectName();
+            Entry loaded = new DefaultEntry( dn == null ? Dn.EMPTY_DN : dn );
+            decodeAttributes( null, loaded );
+            entry = loaded;
+            rawAttributes = null;
+            rawObjectName = null;
+            objectName = null;
+        }
+
+        return entry;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setEntry( Entry entry )
+    {
+        this.entry = entry;
+        rawAttributes = null;
+        rawObjectName = null;
+        objectName = null;
+    }
+
+
+    /**
+     * Get an attribute. If the entry has not been built, only this attribute values
+     * are decoded, and the returned attribute is a copy : modifying it does not modify
+     * the SearchResultEntry. The entry is not built.
+     *
+     * @param id The attribute ID
+     * @return The attribute, or null if the entry has no such attribute
+     */
+    public Attribute getAttribute( String id )
+    {
+        if ( entry != null )
+        {
+            return entry.get( id );
+        }
+
+        if ( ( rawAttributes == null ) || ( id == null ) )
+        {
+            return null;
+        }
+
+        return decodeAttributes( Strings.trim( id ), null );
+    }
+
+
+    /**
+     * Decode the received attributes. If an ID is given, only this attribute is decoded
+     * and returned, otherwise all the attributes are decoded and added into the entry.
+     * <pre>
+     * PartialAttributeList ::= SEQUENCE OF partialAttribute SEQUENCE {
+     *     type       AttributeDescription,
+     *     vals       SET OF value AttributeValue }
+     * </pre>
+     *
+     * @param id The ID of the attribute to decode, or null
+     * @param target The entry the attributes are added into, if no ID is given
+     * @return The attribute with the given ID, or null
+     */
+    private Attribute decodeAttributes( String id, Entry target )
+    {
+        byte[] bytes = rawAttributes;
+        int[] pos = new int[1];
+
+        while ( pos[0] < bytes.length )
+        {
+            int attributeLength = readLength( bytes, pos, UniversalTag.SEQUENCE.getValue() );
+            int attributeEnd = pos[0] + attributeLength;
+            int typeLength = readLength( bytes, pos, UniversalTag.OCTET_STRING.getValue() );
+
+            if ( typeLength == 0 )
+            {
+                // The type can't be null
+                throw new IllegalStateException( I18n.err( I18n.ERR_05147_NULL_ATTRIBUTE_TYPE ) );
+            }
+
+            byte[] type = Arrays.copyOfRange( bytes, pos[0], pos[0] + typeLength );
+            pos[0] += typeLength;
+
+            if ( ( id != null ) && !id.equalsIgnoreCase( Strings.utf8ToString( type ) ) )
+            {
+                // Skip the values
+                pos[0] = attributeEnd;
+                continue;
+            }
+
+            Attribute attribute = new DefaultAttribute( type );
+            boolean isBinary = ( binaryAttributeDetector != null )
+                && binaryAttributeDetector.isBinary( attribute.getId() );
+            int valsEnd = readLength( bytes, pos, UniversalTag.SET.getValue() ) + pos[0];
+
+            if ( valsEnd != attributeEnd )
+            {
+                throw new IllegalStateException( I18n.err( I18n.ERR_05311_INVALID_RAW_ATTRIBUTES, pos[0] ) );
+            }
+
+            while ( pos[0] < valsEnd )
+            {
+                int valueLength = readLength( bytes, pos, UniversalTag.OCTET_STRING.getValue() );
+                addValue( attribute, bytes, pos[0], valueLength, isBinary );
+                pos[0] += valueLength;
+            }
+
+            if ( id != null )
+            {
+                return attribute;
+            }
+
+            try
+            {
+                target.put( attribute );
+            }
+            catch ( LdapException le )
+            {
+                throw new IllegalStateException( I18n.err( I18n.ERR_05156_INVALID_ATTRIBUTE_TYPE,
+                    attribute.getUpId(), le.getMessage() ), le );
+            }
+        }
+
+        return null;
+    }
+
+
+    /**
+     * Add a value to an attribute, as the StoreSearchResultAttributeValue action does
+     *
+     * @param attribute The attribute
+     * @param bytes The received bytes
+     * @param start The value position
+     * @param length The value length
+     * @param isBinary If the value is binary
+     */
+    private static void addValue( Attribute attribute, byte[] bytes, int start, int length, boolean isBinary )
+    {
+        try
+        {
+            if ( length == 0 )
+            {
+                attribute.add( "" );
+            }
+            else if ( isBinary )
+            {
+                attribute.add( Arrays.copyOfRange( bytes, start, start + length ) );
+            }
+            else
+            {
+                attribute.add( Strings.utf8ToString( bytes, start, length ) );
+            }
+        }
+        catch ( LdapException le )
+        {
+            // Just swallow the exception, it can't occur here
+        }
+    }
+
+
+    /**
+     * Read a tag and a length, and check that the value fits in the received bytes
+     *
+     * @param bytes The received bytes
+     * @param pos The current position, moved to the value start
+     * @param tag The expected tag
+     * @return The value length
+     */
+    private static int readLength( byte[] bytes, int[] pos, byte tag )
+    {
+        int start = pos[0];
+
+        if ( ( start + 2 > bytes.length ) || ( bytes[start] != tag ) )
+        {
+            throw new IllegalStateException( I18n.err( I18n.ERR_05311_INVALID_RAW_ATTRIBUTES, start ) );
+        }
+
+        int current = start + 1;
+        int length = bytes[current++] & 0x00FF;
+
+        if ( length > 0x7F )
+        {
+            int nbBytes = length & 0x7F;
+
+            if ( ( nbBytes > 4 ) || ( current + nbBytes > bytes.length ) )
+            {
+                throw new IllegalStateException( I18n.err( I18n.ERR_05311_INVALID_RAW_ATTRIBUTES, start ) );
+            }
+
+            length = 0;
+
+            for ( int i = 0; i < nbBytes; i++ )
+            {
+                length = ( length << 8 ) | ( bytes[current++] & 0x00FF );
+            }
+        }
+
+        if ( ( length < 0 ) || ( length > bytes.length - current ) )
+        {
+            throw new IllegalStateException( I18n.err( I18n.ERR_05311_INVALID_RAW_ATTRIBUTES, start ) );
+        }
+
+        pos[0] = current;
+
+        return length;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * The entry is built if needed.
+     */
+    @Override
+    public int hashCode()
+    {
+        int hash = 37;
+        Entry current = getEntry();
+
+        if ( current != null )
+        {
+            hash = hash * 17 + current.hashCode();
+        }
+
+        hash = hash * 17 + super.hashCode();
+
+        return hash;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * The entry is built if needed.
+     */
+    @Override
+    public boolean equals( Object obj )
+    {
+        if ( this == obj )
+        {
+            return true;
+        }
+
+        if ( !super.equals( obj ) )
+        {
+            return false;
+        }
+
+        if ( !( obj instanceof SearchResultEntry ) )
+        {
+            return false;
+        }
+
+        Entry current = getEntry();
+        Entry other = ( ( SearchResultEntry ) obj ).getEntry();
+
+        return ( current == null ) ? ( other == null ) : current.equals( other );
+    }
+
+
+    /**
+     * Return a string representation of a SearchResultEntry, without building the entry
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append( "    Search Result Entry\n" );
+
+        if ( entry != null )
+        {
+            sb.append( entry );
+        }
+        else if ( rawAttributes != null )
+        {
+            sb.append( "            Dn: " );
+
+            if ( rawObjectName != null )
+            {
+                sb.append( Strings.utf8ToString( rawObjectName ) );
+            }
+            else
+            {
+                sb.append( objectName );
+            }
+
+            sb.append( "\n            " ).append( rawAttributes.length ).append( " bytes of attributes\n" );
+        }
+        else
+        {
+            sb.append( "            No entry\n" );
+        }
+
+        return super.toString( sb.toString() );
+    }
+}
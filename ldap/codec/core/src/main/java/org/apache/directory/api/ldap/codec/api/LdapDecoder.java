@@ -25,9 +25,12 @@ import java.nio.ByteBuffer;
 
 import org.apache.directory.api.asn1.DecoderException;
 import org.apache.directory.api.asn1.ber.Asn1Decoder;
+import org.apache.directory.api.asn1.ber.tlv.TLV;
 import org.apache.directory.api.asn1.ber.tlv.TLVStateEnum;
+import org.apache.directory.api.asn1.ber.tlv.UniversalTag;
 import org.apache.directory.api.i18n.I18n;
 import org.apache.directory.api.ldap.model.message.Message;
+import org.apache.directory.api.ldap.model.message.MessageTypeEnum;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -48,6 +51,9 @@ public class LdapDecoder
     /** The maximum PDU size, stored into the LDAPSession's attribute */
     public static final String MAX_PDU_SIZE_ATTR = "LDAP-maxPduSize";
 
+    /** Tells the decoder to read the values of the LDAPSession without copying them, when set to true */
+    public static final String ZERO_COPY_ATTR = "LDAP-zeroCopy";
+
 
     /**
      * Creates an instance of a Ldap Decoder implementation.
@@ -109,4 +115,178 @@ public class LdapDecoder
             throw new DecoderException( I18n.err( I18n.ERR_05206_INPUT_STREAM_TOO_SHORT_PDU ) );
         }
     }
+
+
+    /**
+     * Get the position of the messageID INTEGER in a LDAPMessage PDU
+     *
+     * @param frame The PDU
+     * @return The messageID TLV position, or -1 if the PDU does not start with a messageID
+     */
+    private static int getMessageIdPosition( ByteBuffer frame )
+    {
+        int position = frame.position();
+        int limit = frame.limit();
+
+        if ( ( limit - position < 2 ) || ( frame.get( position ) != UniversalTag.SEQUENCE.getValue() ) )
+        {
+            return -1;
+        }
+
+        byte octet = frame.get( position + 1 );
+        position += 2;
+
+        if ( ( octet & TLV.LENGTH_LONG_FORM ) != 0 )
+        {
+            position += octet & TLV.LENGTH_SHORT_MASK;
+        }
+
+        if ( ( position + 2 > limit ) || ( frame.get( position ) != UniversalTag.INTEGER.getValue() ) )
+        {
+            return -1;
+        }
+
+        int length = frame.get( position + 1 );
+
+        if ( ( length < 1 ) || ( length > 4 ) || ( position + 2 + length > limit ) )
+        {
+            return -1;
+        }
+
+        return position;
+    }
+
+
+    /**
+     * Read the message ID of a LDAPMessage PDU, without decoding it. This is meant to
+     * route the PDUs : the PDU is only checked when it's decoded.
+     * <pre>
+     * LDAPMessage ::= SEQUENCE {
+     *     messageID       MessageID,
+     *     ...
+     * </pre>
+     *
+     * @param frame The PDU, starting at the buffer position. The position is not moved.
+     * @return The message ID, or -1 if the PDU does not start with a messageID
+     */
+    public static int peekMessageId( ByteBuffer frame )
+    {
+        int position = getMessageIdPosition( frame );
+
+        if ( position == -1 )
+        {
+            return -1;
+        }
+
+        int length = frame.get( position + 1 );
+        int messageId = 0;
+
+        for ( int i = 0; i < length; i++ )
+        {
+            messageId = ( messageId << 8 ) | ( frame.get( position + 2 + i ) & 0x00FF );
+        }
+
+        return messageId;
+    }
+
+
+    /**
+     * Read the type of a LDAPMessage PDU from its protocolOp tag, without decoding it.
+     * This is meant to route the PDUs : the PDU is only checked when it's decoded.
+     * <pre>
+     * LDAPMessage ::= SEQUENCE {
+     *     messageID       MessageID,
+     *     protocolOp      CHOICE {
+     *     ...
+     * </pre>
+     *
+     * @param frame The PDU, starting at the buffer position. The position is not moved.
+     * @return The message type, or null if the PDU does not start with a messageID and
+     * a known protocolOp tag
+     */
+    public static MessageTypeEnum peekMessageType( ByteBuffer frame )
+    {
+        int position = getMessageIdPosition( frame );
+
+        if ( position == -1 )
+        {
+            return null;
+        }
+
+        position += 2 + frame.get( position + 1 );
+
+        if ( position >= frame.limit() )
+        {
+            return null;
+        }
+
+        switch ( frame.get( position ) )
+        {
+            case LdapCodecConstants.ABANDON_REQUEST_TAG:
+                return MessageTypeEnum.ABANDON_REQUEST;
+
+            case LdapCodecConstants.ADD_REQUEST_TAG:
+                return MessageTypeEnum.ADD_REQUEST;
+
+            case LdapCodecConstants.ADD_RESPONSE_TAG:
+                return MessageTypeEnum.ADD_RESPONSE;
+
+            case LdapCodecConstants.BIND_REQUEST_TAG:
+                return MessageTypeEnum.BIND_REQUEST;
+
+            case LdapCodecConstants.BIND_RESPONSE_TAG:
+                return MessageTypeEnum.BIND_RESPONSE;
+
+            case LdapCodecConstants.COMPARE_REQUEST_TAG:
+                return MessageTypeEnum.COMPARE_REQUEST;
+
+            case LdapCodecConstants.COMPARE_RESPONSE_TAG:
+                return MessageTypeEnum.COMPARE_RESPONSE;
+
+            case LdapCodecConstants.DEL_REQUEST_TAG:
+                return MessageTypeEnum.DEL_REQUEST;
+
+            case LdapCodecConstants.DEL_RESPONSE_TAG:
+                return MessageTypeEnum.DEL_RESPONSE;
+
+            case LdapCodecConstants.EXTENDED_REQUEST_TAG:
+                return MessageTypeEnum.EXTENDED_REQUEST;
+
+            case LdapCodecConstants.EXTENDED_RESPONSE_TAG:
+                return MessageTypeEnum.EXTENDED_RESPONSE;
+
+            case LdapCodecConstants.INTERMEDIATE_RESPONSE_TAG:
+                return MessageTypeEnum.INTERMEDIATE_RESPONSE;
+
+            case LdapCodecConstants.MODIFY_DN_REQUEST_TAG:
+                return MessageTypeEnum.MODIFYDN_REQUEST;
+
+            case LdapCodecConstants.MODIFY_DN_RESPONSE_TAG:
+                return MessageTypeEnum.MODIFYDN_RESPONSE;
+
+            case LdapCodecConstants.MODIFY_REQUEST_TAG:
+                return MessageTypeEnum.MODIFY_REQUEST;
+
+            case LdapCodecConstants.MODIFY_RESPONSE_TAG:
+                return MessageTypeEnum.MODIFY_RESPONSE;
+
+            case LdapCodecConstants.SEARCH_REQUEST_TAG:
+                return MessageTypeEnum.SEARCH_REQUEST;
+
+            case LdapCodecConstants.SEARCH_RESULT_DONE_TAG:
+                return MessageTypeEnum.SEARCH_RESULT_DONE;
+
+            case LdapCodecConstants.SEARCH_RESULT_ENTRY_TAG:
+                return MessageTypeEnum.SEARCH_RESULT_ENTRY;
+
+            case LdapCodecConstants.SEARCH_RESULT_REFERENCE_TAG:
+                return MessageTypeEnum.SEARCH_RESULT_REFERENCE;
+
+            case LdapCodecConstants.UNBIND_REQUEST_TAG:
+                return MessageTypeEnum.UNBIND_REQUEST;
+
+            default:
+                return null;
+        }
+    }
 }
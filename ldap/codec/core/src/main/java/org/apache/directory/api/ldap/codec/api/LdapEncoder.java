@@ -20,7 +20,9 @@
 package org.apache.directory.api.ldap.codec.api;
 
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.util.Iterator;
 import java.util.Map;
 
@@ -28,6 +30,7 @@ import org.apache.directory.api.asn1.EncoderException;
 import org.apache.directory.api.asn1.ber.tlv.BerValue;
 import org.apache.directory.api.asn1.ber.tlv.UniversalTag;
 import org.apache.directory.api.asn1.util.Asn1Buffer;
+import org.apache.directory.api.asn1.util.StreamingAsn1Buffer;
 import org.apache.directory.api.i18n.I18n;
 import org.apache.directory.api.ldap.codec.factory.AbandonRequestFactory;
 import org.apache.directory.api.ldap.codec.factory.AddRequestFactory;
@@ -273,6 +276,120 @@ public final class LdapEncoder
      * @throws EncoderException If anything goes wrong.
      */
     public static ByteBuffer encodeMessage( Asn1Buffer buffer, LdapApiService codec, Message message ) throws EncoderException
+    {
+        encode( buffer, codec, message );
+
+        return buffer.getBytes();
+    }
+
+
+    /**
+     * Generate the PDU of a pre-encoded message. Only the message ID is encoded, the
+     * protocolOp and the controls are copied.
+     *
+     * @param buffer The Asn1Buffer instance in which we store the temporary result
+     * @param message The pre-encoded message
+     * @return A ByteBuffer that contains the PDU
+     */
+    public static ByteBuffer encodeMessage( Asn1Buffer buffer, PreEncodedMessage message )
+    {
+        message.encode( buffer );
+
+        return buffer.getBytes();
+    }
+
+
+    /**
+     * Encode the protocolOp and the controls of a message once, so that the same
+     * request can be sent many times with only its message ID being encoded. The message
+     * must not be modified anymore : its later modifications are not taken into account.
+     *
+     * @param codec The LdapApiService instance
+     * @param message The message to pre-encode
+     * @return The pre-encoded message, with the message ID of the given message
+     * @throws EncoderException If the message can't be encoded
+     */
+    public static PreEncodedMessage preEncode( LdapApiService codec, Message message ) throws EncoderException
+    {
+        Asn1Buffer buffer = new Asn1Buffer();
+        encodeBody( buffer, codec, message );
+
+        // The returned buffer has the exact size of the encoded bytes
+        byte[] body = buffer.getBytes().array();
+
+        return new PreEncodedMessage( message.getType(), body, message.getMessageId() );
+    }
+
+
+    /**
+     * Encode a message and write it into a channel, using the given strategy. The
+     * written bytes are the same whatever the strategy.
+     * <br>
+     * With the {@link LdapEncodingStrategy#FORWARD} strategy, the lengths are computed
+     * first, then the PDU is written front to back through the chunk, which is flushed
+     * in the channel each time it is full. The big values are never copied in an
+     * intermediate buffer.
+     *
+     * @param channel The channel to write the PDU into
+     * @param chunk The buffer used to gather the bytes before writing them in the channel
+     * @param codec The LdapApiService instance
+     * @param message The message to encode
+     * @param strategy The encoding strategy
+     * @throws EncoderException If the message can't be encoded
+     * @throws IOException If the channel can't be written
+     */
+    public static void encodeMessage( WritableByteChannel channel, ByteBuffer chunk, LdapApiService codec,
+        Message message, LdapEncodingStrategy strategy ) throws EncoderException, IOException
+    {
+        if ( strategy == LdapEncodingStrategy.FORWARD )
+        {
+            StreamingAsn1Buffer buffer = new StreamingAsn1Buffer();
+            encode( buffer, codec, message );
+            buffer.writeTo( channel, chunk );
+        }
+        else
+        {
+            Asn1Buffer buffer = new Asn1Buffer();
+            encode( buffer, codec, message );
+            ByteBuffer bytes = buffer.getBytes();
+
+            while ( bytes.hasRemaining() )
+            {
+                channel.write( bytes );
+            }
+        }
+    }
+
+
+    /**
+     * Encode a message backward in a buffer
+     *
+     * @param buffer The Asn1Buffer instance in which we store the result
+     * @param codec The LdapApiService instance
+     * @param message The message to encode
+     * @throws EncoderException If anything goes wrong.
+     */
+    private static void encode( Asn1Buffer buffer, LdapApiService codec, Message message ) throws EncoderException
+    {
+        encodeBody( buffer, codec, message );
+
+        // The message Id
+        BerValue.encodeInteger( buffer, message.getMessageId() );
+
+        // The LdapMessage Sequence
+        BerValue.encodeSequence( buffer );
+    }
+
+
+    /**
+     * Encode the protocolOp and the controls of a message backward in a buffer
+     *
+     * @param buffer The Asn1Buffer instance in which we store the result
+     * @param codec The LdapApiService instance
+     * @param message The message to encode
+     * @throws EncoderException If anything goes wrong.
+     */
+    private static void encodeBody( Asn1Buffer buffer, LdapApiService codec, Message message ) throws EncoderException
     {
         int start = buffer.getPos();
 
@@ -289,13 +406,5 @@ public final class LdapEncoder
 
         // The protocolOp part
         encodeProtocolOp( buffer, codec, message );
-
-        // The message Id
-        BerValue.encodeInteger( buffer, message.getMessageId() );
-
-        // The LdapMessage Sequence
-        BerValue.encodeSequence( buffer );
-
-        return buffer.getBytes();
     }
 }
@@ -0,0 +1,43 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.ldap.codec.api;
+
+
+/**
+ * The strategies the {@link LdapEncoder} can use to write a message into a channel.
+ * Both produce the exact same PDU.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public enum LdapEncodingStrategy
+{
+    /**
+     * The message is encoded backward in a contiguous buffer, which is then
+     * written. The memory used is proportional to the PDU size.
+     */
+    REVERSE,
+
+    /**
+     * The message lengths are computed first, keeping references on the big values,
+     * then the PDU is written front to back through a fixed size chunk. The memory
+     * used is proportional to the number of TLVs, not to the values size.
+     */
+    FORWARD
+}
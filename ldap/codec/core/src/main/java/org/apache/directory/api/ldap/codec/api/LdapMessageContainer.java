@@ -20,9 +20,13 @@
 package org.apache.directory.api.ldap.codec.api;
 
 
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
 import org.apache.directory.api.asn1.DecoderException;
 import org.apache.directory.api.asn1.ber.AbstractContainer;
 import org.apache.directory.api.asn1.ber.tlv.TLV;
+import org.apache.directory.api.asn1.ber.tlv.UniversalTag;
 import org.apache.directory.api.ldap.codec.LdapMessageGrammar;
 import org.apache.directory.api.ldap.codec.LdapStatesEnum;
 import org.apache.directory.api.ldap.codec.search.ConnectorFilter;
@@ -35,6 +39,7 @@ import org.apache.directory.api.ldap.model.message.ExtendedResponse;
 import org.apache.directory.api.ldap.model.message.LdapResult;
 import org.apache.directory.api.ldap.model.message.Message;
 import org.apache.directory.api.ldap.model.message.ResultResponse;
+import org.apache.directory.api.ldap.model.message.SearchResultEntry;
 
 
 /**
@@ -93,6 +98,15 @@ public class LdapMessageContainer<E extends Message> extends AbstractContainer
     /** The global filter. This is used while decoding a PDU */
     private Filter topFilter;
 
+    /** The handler the big SearchResultEntry attribute values are streamed to, if any */
+    private LargeValueHandler largeValueHandler;
+
+    /** The minimal length of a value to be streamed to the handler */
+    private int largeValueThreshold = Integer.MAX_VALUE;
+
+    /** Tells if the SearchResultEntries are decoded lazily */
+    private boolean lazySearchResultEntries;
+
 
     /**
      * Creates a new LdapMessageContainer object. We will store ten grammars,
@@ -122,6 +136,39 @@ public class LdapMessageContainer<E extends Message> extends AbstractContainer
     }
 
 
+    /**
+     * Creates a new container with the same configuration as this one : the codec, the
+     * binary attribute detector, the maximum PDU size, the large value handler and the lazy
+     * SearchResultEntries flag. The decoding state is not copied.
+     *
+     * @return The new container
+     */
+    public LdapMessageContainer<E> newInstance()
+    {
+        LdapMessageContainer<E> container = new LdapMessageContainer<>( codec, binaryAttributeDetector );
+        container.setConfiguration( this );
+
+        return container;
+    }
+
+
+    /**
+     * Copies the configuration of another container into this one : the binary attribute
+     * detector, the maximum PDU size, the large value handler and the lazy
+     * SearchResultEntries flag. The codec and the decoding state are not copied.
+     *
+     * @param container The container which configuration is copied
+     */
+    public void setConfiguration( LdapMessageContainer<?> container )
+    {
+        binaryAttributeDetector = container.binaryAttributeDetector;
+        setMaxPDUSize( container.getMaxPDUSize() );
+        largeValueHandler = container.largeValueHandler;
+        largeValueThreshold = container.largeValueThreshold;
+        lazySearchResultEntries = container.lazySearchResultEntries;
+    }
+
+
     /**
      * Gets the {@link LdapApiService} associated with this Container.
      *
@@ -539,4 +586,92 @@ public class LdapMessageContainer<E extends Message> extends AbstractContainer
     {
         this.extendedFactory = extendedFactory;
     }
+
+
+    /**
+     * Set the handler the big SearchResultEntry attribute values will be streamed to.
+     * The handler is kept when the container is cleaned.
+     *
+     * @param largeValueHandler The handler, or null to store all the values
+     * @param largeValueThreshold The minimal length of a value to be streamed
+     */
+    public void setLargeValueHandler( LargeValueHandler largeValueHandler, int largeValueThreshold )
+    {
+        this.largeValueHandler = largeValueHandler;
+        this.largeValueThreshold = largeValueThreshold;
+    }
+
+
+    /**
+     * @return The handler the big SearchResultEntry attribute values are streamed to, if any
+     */
+    public LargeValueHandler getLargeValueHandler()
+    {
+        return largeValueHandler;
+    }
+
+
+    /**
+     * @return The minimal length of a value to be streamed to the handler
+     */
+    public int getLargeValueThreshold()
+    {
+        return largeValueThreshold;
+    }
+
+
+    /**
+     * Tells the decoder to produce {@link LazySearchResultEntry} instances, which keep
+     * the received objectName and attributes and decode them on demand. The attribute
+     * values are then never streamed to the {@link LargeValueHandler}. The flag is kept
+     * when the container is cleaned.
+     *
+     * @param lazySearchResultEntries <code>true</code> to decode the SearchResultEntries lazily
+     */
+    public void setLazySearchResultEntries( boolean lazySearchResultEntries )
+    {
+        this.lazySearchResultEntries = lazySearchResultEntries;
+    }
+
+
+    /**
+     * @return <code>true</code> if the SearchResultEntries are decoded lazily
+     */
+    public boolean isLazySearchResultEntries()
+    {
+        return lazySearchResultEntries;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * The SearchResultEntry attribute values which are at least as long as the
+     * threshold are streamed to the {@link LargeValueHandler}, if one has been set.
+     */
+    @Override
+    public WritableByteChannel openValueSink() throws IOException
+    {
+        if ( largeValueHandler == null )
+        {
+            return null;
+        }
+
+        TLV tlv = getCurrentTLV();
+
+        if ( ( tlv.getLength() < largeValueThreshold ) || ( tlv.getTag() != UniversalTag.OCTET_STRING.getValue() ) )
+        {
+            return null;
+        }
+
+        // The current transition is the one preceding the value
+        Enum<?> transition = getTransition();
+
+        if ( ( transition != LdapStatesEnum.VALS_SR_STATE ) && ( transition != LdapStatesEnum.ATTRIBUTE_VALUE_SR_STATE ) )
+        {
+            return null;
+        }
+
+        return largeValueHandler.open( ( SearchResultEntry ) message, currentAttribute, tlv.getLength() );
+    }
 }
@@ -0,0 +1,182 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.ldap.codec.api;
+
+
+import java.nio.ByteBuffer;
+
+import org.apache.directory.api.asn1.ber.tlv.BerValue;
+import org.apache.directory.api.asn1.ber.tlv.TLV;
+import org.apache.directory.api.asn1.ber.tlv.UniversalTag;
+import org.apache.directory.api.asn1.util.Asn1Buffer;
+import org.apache.directory.api.ldap.model.message.MessageTypeEnum;
+
+
+/**
+ * A LDAPMessage which protocolOp and controls have been encoded once, by
+ * {@link LdapEncoder#preEncode(LdapApiService, org.apache.directory.api.ldap.model.message.Message)}.
+ * Only the messageID is encoded each time the PDU is produced, the rest of the PDU
+ * is copied as is :
+ * <pre>
+ * 0x30 LL
+ *   0x02 LL messageID          encoded for each PDU
+ *   protocolOp                 pre-encoded
+ *   [0xA0 LL controls]         pre-encoded
+ * </pre>
+ * The message the instance has been created from is not referenced anymore, so its
+ * later modifications are not taken into account. An instance is immutable, and can be
+ * shared by many threads.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public final class PreEncodedMessage
+{
+    /** The message type */
+    private final MessageTypeEnum messageType;
+
+    /** The encoded protocolOp and controls */
+    private final byte[] body;
+
+    /** The message ID */
+    private final int messageId;
+
+
+    /**
+     * Creates a new PreEncodedMessage instance
+     *
+     * @param messageType The message type
+     * @param body The encoded protocolOp and controls
+     * @param messageId The message ID
+     */
+    PreEncodedMessage( MessageTypeEnum messageType, byte[] body, int messageId )
+    {
+        this.messageType = messageType;
+        this.body = body;
+        this.messageId = messageId;
+    }
+
+
+    /**
+     * @return The type of the pre-encoded message
+     */
+    public MessageTypeEnum getMessageType()
+    {
+        return messageType;
+    }
+
+
+    /**
+     * @return The message ID encoded in the PDU
+     */
+    public int getMessageId()
+    {
+        return messageId;
+    }
+
+
+    /**
+     * @return The length of the pre-encoded protocolOp and controls
+     */
+    public int getBodyLength()
+    {
+        return body.length;
+    }
+
+
+    /**
+     * Get the same pre-encoded message, with another message ID. The pre-encoded bytes
+     * are shared, not copied.
+     *
+     * @param messageId The new message ID
+     * @return A PreEncodedMessage with the given message ID
+     */
+    public PreEncodedMessage withMessageId( int messageId )
+    {
+        if ( messageId == this.messageId )
+        {
+            return this;
+        }
+
+        return new PreEncodedMessage( messageType, body, messageId );
+    }
+
+
+    /**
+     * Encode the PDU backward in a buffer, as the {@link LdapEncoder} does
+     *
+     * @param buffer The buffer in which the PDU is encoded
+     */
+    void encode( Asn1Buffer buffer )
+    {
+        buffer.put( body );
+
+        // The message Id
+        BerValue.encodeInteger( buffer, messageId );
+
+        // The LdapMessage Sequence
+        BerValue.encodeSequence( buffer );
+    }
+
+
+    /**
+     * Produce the PDU with the given message ID, in a new buffer of the exact PDU size
+     *
+     * @param messageId The message ID to splice in the PDU
+     * @return A ByteBuffer that contains the PDU
+     */
+    public ByteBuffer encode( int messageId )
+    {
+        byte[] id = BerValue.getBytes( messageId );
+        int length = 1 + TLV.getNbBytes( id.length ) + id.length + body.length;
+        byte[] pduLength = TLV.getBytes( length );
+        ByteBuffer pdu = ByteBuffer.allocate( 1 + pduLength.length + length );
+
+        pdu.put( UniversalTag.SEQUENCE.getValue() );
+        pdu.put( pduLength );
+        pdu.put( UniversalTag.INTEGER.getValue() );
+        pdu.put( TLV.getBytes( id.length ) );
+        pdu.put( id );
+        pdu.put( body );
+        pdu.flip();
+
+        return pdu;
+    }
+
+
+    /**
+     * Produce the PDU with the message ID of this instance
+     *
+     * @return A ByteBuffer that contains the PDU
+     */
+    public ByteBuffer encode()
+    {
+        return encode( messageId );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return "Pre-encoded " + messageType + ", messageId " + messageId + ", " + body.length + " bytes";
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.ldap.codec.api;
+
+
+import org.apache.mina.core.session.AttributeKey;
+import org.apache.mina.core.session.IoSession;
+
+
+/**
+ * Counts the suspensions of the reads of a session. A session may be suspended by several
+ * parties at the same time, for instance the parallel decoder and a search which responses
+ * are not read fast enough, while MINA only knows if the reads are suspended or not : the
+ * reads are resumed once each suspension has been followed by a resumption.
+ * <br>
+ * The count is stored in the session, so it's dropped with it : a new session starts with
+ * its reads enabled, whatever the suspensions which have not been released on the previous
+ * one.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public final class ReadSuspensions
+{
+    /** The session attribute storing the count */
+    private static final AttributeKey READ_SUSPENSIONS = new AttributeKey( ReadSuspensions.class, "count" );
+
+    /** The number of suspensions which have not been released */
+    private int count;
+
+
+    /**
+     * Private constructor
+     */
+    private ReadSuspensions()
+    {
+    }
+
+
+    /**
+     * Get the suspensions of a session, creating them if needed
+     *
+     * @param session The session
+     * @return The session's suspensions
+     */
+    private static ReadSuspensions get( IoSession session )
+    {
+        ReadSuspensions suspensions = ( ReadSuspensions ) session.getAttribute( READ_SUSPENSIONS );
+
+        if ( suspensions == null )
+        {
+            ReadSuspensions created = new ReadSuspensions();
+            suspensions = ( ReadSuspensions ) session.setAttributeIfAbsent( READ_SUSPENSIONS, created );
+
+            if ( suspensions == null )
+            {
+                suspensions = created;
+            }
+        }
+
+        return suspensions;
+    }
+
+
+    /**
+     * Stop reading the session, until {@link #resumeRead(IoSession)} is called.
+     *
+     * @param session The session
+     */
+    public static void suspendRead( IoSession session )
+    {
+        ReadSuspensions suspensions = get( session );
+
+        synchronized ( suspensions )
+        {
+            suspensions.count++;
+
+            if ( suspensions.count == 1 )
+            {
+                session.suspendRead();
+            }
+        }
+    }
+
+
+    /**
+     * Release a suspension of the reads of the session, resuming them if no other one is
+     * pending.
+     *
+     * @param session The session
+     */
+    public static void resumeRead( IoSession session )
+    {
+        ReadSuspensions suspensions = get( session );
+
+        synchronized ( suspensions )
+        {
+            if ( suspensions.count == 0 )
+            {
+                return;
+            }
+
+            suspensions.count--;
+
+            if ( suspensions.count == 0 )
+            {
+                session.resumeRead();
+            }
+        }
+    }
+
+
+    /**
+     * @param session The session
+     * @return The number of suspensions of the reads of the session which have not been released
+     */
+    public static int getSuspensions( IoSession session )
+    {
+        ReadSuspensions suspensions = get( session );
+
+        synchronized ( suspensions )
+        {
+            return suspensions.count;
+        }
+    }
+}
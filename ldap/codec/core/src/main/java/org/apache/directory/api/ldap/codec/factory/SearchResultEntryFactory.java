@@ -23,6 +23,7 @@ import java.util.Iterator;
 
 import org.apache.directory.api.asn1.ber.tlv.BerValue;
 import org.apache.directory.api.asn1.util.Asn1Buffer;
+import org.apache.directory.api.ldap.codec.api.LazySearchResultEntry;
 import org.apache.directory.api.ldap.codec.api.LdapApiService;
 import org.apache.directory.api.ldap.codec.api.LdapCodecConstants;
 import org.apache.directory.api.ldap.model.entry.Attribute;
@@ -156,21 +157,47 @@ public final class SearchResultEntryFactory extends ResponseFactory
         int start = buffer.getPos();
 
         SearchResultEntry searchResultEntry = ( SearchResultEntry ) message;
+        byte[] rawObjectName = null;
+        byte[] rawAttributes = null;
 
-        // The partial attribute list
-        Entry entry = searchResultEntry.getEntry();
+        if ( ( searchResultEntry instanceof LazySearchResultEntry )
+            && !( ( LazySearchResultEntry ) searchResultEntry ).isEntryLoaded() )
+        {
+            // The parts which have not been modified are copied as they have been received.
+            // Once the entry is built, it may have been modified, including its Dn
+            LazySearchResultEntry lazySearchResultEntry = ( LazySearchResultEntry ) searchResultEntry;
+            rawObjectName = lazySearchResultEntry.getRawObjectName();
+            rawAttributes = lazySearchResultEntry.getRawAttributes();
+        }
 
-        // The attributes, recursively, if we have any
-        if ( ( entry != null ) && ( entry.size() != 0 ) )
+        if ( rawAttributes != null )
         {
-            encodeAttributes( buffer, entry.iterator() );
+            buffer.put( rawAttributes );
+        }
+        else
+        {
+            // The partial attribute list
+            Entry entry = searchResultEntry.getEntry();
+
+            // The attributes, recursively, if we have any
+            if ( ( entry != null ) && ( entry.size() != 0 ) )
+            {
+                encodeAttributes( buffer, entry.iterator() );
+            }
         }
 
         // The attributes sequence
         BerValue.encodeSequence( buffer, start );
 
         // The objectName
-        BerValue.encodeOctetString( buffer, searchResultEntry.getObjectName().getName() );
+        if ( rawObjectName != null )
+        {
+            BerValue.encodeOctetString( buffer, rawObjectName );
+        }
+        else
+        {
+            BerValue.encodeOctetString( buffer, searchResultEntry.getObjectName().getName() );
+        }
 
         // The SearchResultEntry tag
         BerValue.encodeSequence( buffer, LdapCodecConstants.SEARCH_RESULT_ENTRY_TAG, start );
@@ -27,6 +27,7 @@ import static org.junit.Assert.assertTrue;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.apache.directory.api.asn1.DecoderException;
@@ -34,6 +35,7 @@ import org.apache.directory.api.asn1.EncoderException;
 import org.apache.directory.api.asn1.ber.Asn1Decoder;
 import org.apache.directory.api.asn1.ber.tlv.TLVStateEnum;
 import org.apache.directory.api.asn1.util.Asn1Buffer;
+import org.apache.directory.api.asn1.util.RefCountedBuffer;
 import org.apache.directory.api.ldap.codec.api.LdapDecoder;
 import org.apache.directory.api.ldap.codec.api.LdapEncoder;
 import org.apache.directory.api.ldap.codec.api.LdapMessageContainer;
@@ -42,6 +44,8 @@ import org.apache.directory.api.ldap.codec.osgi.AbstractCodecServiceTest;
 import org.apache.directory.api.ldap.model.exception.ResponseCarryingMessageException;
 import org.apache.directory.api.ldap.model.message.BindRequest;
 import org.apache.directory.api.ldap.model.message.Message;
+import org.apache.directory.api.ldap.model.message.MessageTypeEnum;
+import org.apache.directory.api.ldap.model.message.SearchResultDoneImpl;
 import org.apache.directory.api.util.Strings;
 import org.apache.mina.core.session.DummySession;
 import org.apache.mina.core.session.IoSession;
@@ -167,6 +171,59 @@ public class LdapDecoderTest extends AbstractCodecServiceTest
     }
 
 
+    /**
+     * Test the decoding of a full PDU, the values pointing into the incoming buffer
+     */
+    @Test
+    public void testDecodeFullZeroCopy() throws DecoderException
+    {
+        LdapMessageContainer<Message> container = new LdapMessageContainer<>( codec );
+
+        ByteBuffer stream = ByteBuffer.allocate( 0x35 );
+        stream.put( new byte[]
+            {
+                0x30, 0x33,                 // LDAPMessage ::=SEQUENCE {
+                  0x02, 0x01, 0x01,         // messageID MessageID
+                  0x60, 0x2E,               // CHOICE { ..., bindRequest BindRequest, ...
+                                            // BindRequest ::= APPLICATION[0] SEQUENCE {
+                    0x02, 0x01, 0x03,       // version INTEGER (1..127),
+                    0x04, 0x1F,             // name LDAPDN,
+                      'u', 'i', 'd', '=', 'a', 'k', 'a', 'r', 'a', 's', 'u', 'l', 'u', ',',
+                      'd', 'c', '=', 'e', 'x', 'a', 'm', 'p', 'l', 'e', ',', 'd', 'c', '=', 'c', 'o', 'm',
+                    ( byte ) 0x80, 0x08,    // authentication
+                                            // AuthenticationChoice
+                                            // AuthenticationChoice ::= CHOICE { simple [0] OCTET STRING,
+                                            // ...
+                      'p', 'a', 's', 's', 'w', 'o', 'r', 'd'
+            } );
+
+        stream.flip();
+
+        RefCountedBuffer sharedStream = new RefCountedBuffer( stream );
+        container.setSharedStream( sharedStream );
+
+        // Decode a BindRequest PDU
+        Asn1Decoder.decode( stream, container );
+
+        assertEquals( TLVStateEnum.PDU_DECODED, container.getState() );
+
+        // No value should still point into the stream
+        assertEquals( 1, sharedStream.refCount() );
+        assertTrue( sharedStream.release() );
+
+        // Overwrite the stream : the decoded message must not be impacted
+        Arrays.fill( stream.array(), ( byte ) 0x00 );
+
+        BindRequest bindRequest = ( BindRequest ) container.getMessage();
+
+        assertEquals( 1, bindRequest.getMessageId() );
+        assertTrue( bindRequest.isVersion3() );
+        assertEquals( "uid=akarasulu,dc=example,dc=com", bindRequest.getName().toString() );
+        assertTrue( bindRequest.isSimple() );
+        assertEquals( "password", Strings.utf8ToString( bindRequest.getCredentials() ) );
+    }
+
+
     /**
      * Test the decoding of two messages in a PDU
      */
@@ -512,4 +569,41 @@ public class LdapDecoderTest extends AbstractCodecServiceTest
         // Check the decoded length
         assertEquals( 384, container.getCurrentTLV().getLength() );
     }
+
+
+    /**
+     * Test that the message ID and the type are read from a PDU without decoding it
+     */
+    @Test
+    public void testPeekMessageIdAndType() throws EncoderException
+    {
+        SearchResultDoneImpl searchResultDone = new SearchResultDoneImpl( 300000 );
+        ByteBuffer pdu = LdapEncoder.encodeMessage( new Asn1Buffer(), codec, searchResultDone );
+        int position = pdu.position();
+
+        assertEquals( 300000, LdapDecoder.peekMessageId( pdu ) );
+        assertEquals( MessageTypeEnum.SEARCH_RESULT_DONE, LdapDecoder.peekMessageType( pdu ) );
+        assertEquals( position, pdu.position() );
+
+        // An UnbindRequest, with a long form length
+        ByteBuffer unbind = ByteBuffer.wrap( new byte[]
+            { 0x30, ( byte ) 0x81, 0x05, 0x02, 0x01, 0x07, 0x42, 0x00 } );
+
+        assertEquals( 7, LdapDecoder.peekMessageId( unbind ) );
+        assertEquals( MessageTypeEnum.UNBIND_REQUEST, LdapDecoder.peekMessageType( unbind ) );
+
+        // No messageID
+        ByteBuffer invalid = ByteBuffer.wrap( new byte[]
+            { 0x30, 0x03, 0x04, 0x01, 0x07 } );
+
+        assertEquals( -1, LdapDecoder.peekMessageId( invalid ) );
+        assertNull( LdapDecoder.peekMessageType( invalid ) );
+
+        // Unknown protocolOp
+        ByteBuffer unknown = ByteBuffer.wrap( new byte[]
+            { 0x30, 0x05, 0x02, 0x01, 0x07, 0x04, 0x00 } );
+
+        assertEquals( 7, LdapDecoder.peekMessageId( unknown ) );
+        assertNull( LdapDecoder.peekMessageType( unknown ) );
+    }
 }
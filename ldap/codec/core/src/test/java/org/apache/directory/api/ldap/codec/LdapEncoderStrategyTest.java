@@ -0,0 +1,210 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.ldap.codec;
+
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.directory.api.asn1.util.Asn1Buffer;
+import org.apache.directory.api.ldap.codec.api.LdapEncoder;
+import org.apache.directory.api.ldap.codec.api.LdapEncodingStrategy;
+import org.apache.directory.api.ldap.codec.osgi.AbstractCodecServiceTest;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.DefaultModification;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.ModificationOperation;
+import org.apache.directory.api.ldap.model.message.AddRequestImpl;
+import org.apache.directory.api.ldap.model.message.BindRequestImpl;
+import org.apache.directory.api.ldap.model.message.DeleteResponseImpl;
+import org.apache.directory.api.ldap.model.message.Message;
+import org.apache.directory.api.ldap.model.message.ModifyRequestImpl;
+import org.apache.directory.api.ldap.model.message.Referral;
+import org.apache.directory.api.ldap.model.message.ReferralImpl;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.message.SearchRequestImpl;
+import org.apache.directory.api.ldap.model.message.SearchResultEntryImpl;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.message.controls.ManageDsaITImpl;
+import org.apache.directory.api.ldap.model.message.controls.PagedResultsImpl;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.util.Strings;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.mycila.junit.concurrent.Concurrency;
+import com.mycila.junit.concurrent.ConcurrentJunitRunner;
+
+
+/**
+ * Check that the forward encoding strategy produces the same PDUs as the reverse one.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@RunWith(ConcurrentJunitRunner.class)
+@Concurrency()
+public class LdapEncoderStrategyTest extends AbstractCodecServiceTest
+{
+    /** The chunk sizes we use to write the PDUs */
+    private static final int[] CHUNK_SIZES = new int[] { 1, 7, 1024, 65536 };
+
+
+    /**
+     * Create a set of messages covering small and big values, and controls
+     */
+    private List<Message> createMessages() throws Exception
+    {
+        List<Message> messages = new ArrayList<>();
+
+        BindRequestImpl bindRequest = new BindRequestImpl();
+        bindRequest.setMessageId( 1 );
+        bindRequest.setName( "uid=admin,ou=system" );
+        bindRequest.setSimple( true );
+        bindRequest.setCredentials( "secret" );
+        messages.add( bindRequest );
+
+        SearchRequestImpl searchRequest = new SearchRequestImpl();
+        searchRequest.setMessageId( 2 );
+        searchRequest.setBase( new Dn( "dc=example,dc=com" ) );
+        searchRequest.setScope( SearchScope.SUBTREE );
+        searchRequest.setFilter( "(&(objectClass=person)(|(cn=a*b*c)(sn>=z)))" );
+        searchRequest.addAttributes( "cn", "sn", "jpegPhoto" );
+        PagedResultsImpl pagedResults = new PagedResultsImpl();
+        pagedResults.setSize( 100 );
+        pagedResults.setCookie( new byte[300] );
+        searchRequest.addControl( pagedResults );
+        searchRequest.addControl( new ManageDsaITImpl() );
+        messages.add( searchRequest );
+
+        byte[] photo = new byte[300000];
+
+        for ( int i = 0; i < photo.length; i++ )
+        {
+            photo[i] = ( byte ) ( i * 7 );
+        }
+
+        Entry entry = new DefaultEntry( "cn=test,dc=example,dc=com",
+            "objectClass: top",
+            "objectClass: person",
+            "cn: test",
+            "sn: a surname that is long enough to be stored as a reference in the streaming buffer, "
+                + "because it is longer than the default threshold of the streaming buffer, which is "
+                + "256 bytes long. It is made of a few sentences, nothing more, and is just a filler.",
+            "description: a small one" );
+        entry.add( "jpegPhoto", photo );
+        entry.add( "userCertificate", new byte[256] );
+
+        SearchResultEntryImpl searchResultEntry = new SearchResultEntryImpl( 3 );
+        searchResultEntry.setEntry( entry );
+        messages.add( searchResultEntry );
+
+        AddRequestImpl addRequest = new AddRequestImpl();
+        addRequest.setMessageId( 4 );
+        addRequest.setEntry( entry );
+        messages.add( addRequest );
+
+        ModifyRequestImpl modifyRequest = new ModifyRequestImpl();
+        modifyRequest.setMessageId( 5 );
+        modifyRequest.setName( entry.getDn() );
+        modifyRequest.addModification( new DefaultModification( ModificationOperation.REPLACE_ATTRIBUTE,
+            "jpegPhoto", photo ) );
+        modifyRequest.addModification( new DefaultModification( ModificationOperation.REMOVE_ATTRIBUTE,
+            "description" ) );
+        messages.add( modifyRequest );
+
+        DeleteResponseImpl deleteResponse = new DeleteResponseImpl( 6 );
+        deleteResponse.getLdapResult().setResultCode( ResultCodeEnum.REFERRAL );
+        deleteResponse.getLdapResult().setMatchedDn( new Dn( "dc=example,dc=com" ) );
+        deleteResponse.getLdapResult().setDiagnosticMessage( "See the referrals" );
+        Referral referral = new ReferralImpl();
+        referral.addLdapUrl( "ldap://remote:10389/dc=example,dc=com" );
+        deleteResponse.getLdapResult().setReferral( referral );
+        messages.add( deleteResponse );
+
+        return messages;
+    }
+
+
+    /**
+     * Encode a message with a given strategy
+     */
+    private byte[] encode( Message message, LdapEncodingStrategy strategy, int chunkSize ) throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WritableByteChannel channel = Channels.newChannel( out );
+
+        LdapEncoder.encodeMessage( channel, ByteBuffer.allocate( chunkSize ), codec, message, strategy );
+
+        return out.toByteArray();
+    }
+
+
+    /**
+     * Test that both strategies produce the same PDU as the reverse encoder
+     */
+    @Test
+    public void testSameWireOutput() throws Exception
+    {
+        for ( Message message : createMessages() )
+        {
+            ByteBuffer reference = LdapEncoder.encodeMessage( new Asn1Buffer(), codec, message );
+            byte[] expected = new byte[reference.remaining()];
+            reference.get( expected );
+
+            for ( int chunkSize : CHUNK_SIZES )
+            {
+                assertArrayEquals( message.getType() + " / " + chunkSize, expected,
+                    encode( message, LdapEncodingStrategy.FORWARD, chunkSize ) );
+                assertArrayEquals( message.getType() + " / " + chunkSize, expected,
+                    encode( message, LdapEncodingStrategy.REVERSE, chunkSize ) );
+            }
+        }
+    }
+
+
+    /**
+     * Test that a direct chunk can be used
+     */
+    @Test
+    public void testDirectChunk() throws Exception
+    {
+        BindRequestImpl bindRequest = new BindRequestImpl();
+        bindRequest.setMessageId( 1 );
+        bindRequest.setName( "uid=admin,ou=system" );
+        bindRequest.setSimple( true );
+        bindRequest.setCredentials( Strings.getBytesUtf8( "secret" ) );
+
+        ByteBuffer reference = LdapEncoder.encodeMessage( new Asn1Buffer(), codec, bindRequest );
+        byte[] expected = new byte[reference.remaining()];
+        reference.get( expected );
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        LdapEncoder.encodeMessage( Channels.newChannel( out ), ByteBuffer.allocateDirect( 16 ), codec, bindRequest,
+            LdapEncodingStrategy.FORWARD );
+
+        assertArrayEquals( expected, out.toByteArray() );
+    }
+}
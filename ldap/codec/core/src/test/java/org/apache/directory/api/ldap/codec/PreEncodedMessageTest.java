@@ -0,0 +1,126 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.ldap.codec;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.nio.ByteBuffer;
+
+import org.apache.directory.api.asn1.util.Asn1Buffer;
+import org.apache.directory.api.ldap.codec.api.LdapEncoder;
+import org.apache.directory.api.ldap.codec.api.PreEncodedMessage;
+import org.apache.directory.api.ldap.codec.osgi.AbstractCodecServiceTest;
+import org.apache.directory.api.ldap.model.message.AliasDerefMode;
+import org.apache.directory.api.ldap.model.message.MessageTypeEnum;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchRequestImpl;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.message.controls.ManageDsaITImpl;
+import org.apache.directory.api.ldap.model.message.controls.PagedResultsImpl;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.mycila.junit.concurrent.Concurrency;
+import com.mycila.junit.concurrent.ConcurrentJunitRunner;
+
+
+/**
+ * Check that a pre-encoded message produces the same PDUs as the LdapEncoder.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@RunWith(ConcurrentJunitRunner.class)
+@Concurrency()
+public class PreEncodedMessageTest extends AbstractCodecServiceTest
+{
+    /** The message IDs covering the different encoded lengths */
+    private static final int[] MESSAGE_IDS = new int[] { 1, 127, 128, 255, 256, 65535, 300000, Integer.MAX_VALUE };
+
+
+    /**
+     * Create a SearchRequest with a filter and controls
+     */
+    private SearchRequest createSearchRequest() throws Exception
+    {
+        SearchRequest searchRequest = new SearchRequestImpl();
+        searchRequest.setMessageId( 1 );
+        searchRequest.setBase( new Dn( "dc=example,dc=com" ) );
+        searchRequest.setScope( SearchScope.SUBTREE );
+        searchRequest.setDerefAliases( AliasDerefMode.NEVER_DEREF_ALIASES );
+        searchRequest.setSizeLimit( 1000 );
+        searchRequest.setFilter( "(&(objectClass=person)(|(cn=a*b)(sn>=z)))" );
+        searchRequest.addAttributes( "cn", "sn", "mail" );
+
+        PagedResultsImpl pagedResults = new PagedResultsImpl();
+        pagedResults.setSize( 100 );
+        searchRequest.addControl( pagedResults );
+        searchRequest.addControl( new ManageDsaITImpl() );
+
+        return searchRequest;
+    }
+
+
+    /**
+     * Test that the PDUs are the ones the LdapEncoder produces, whatever the message ID
+     */
+    @Test
+    public void testSameAsEncoder() throws Exception
+    {
+        SearchRequest searchRequest = createSearchRequest();
+        PreEncodedMessage preEncoded = LdapEncoder.preEncode( codec, searchRequest );
+
+        assertEquals( MessageTypeEnum.SEARCH_REQUEST, preEncoded.getMessageType() );
+        assertEquals( 1, preEncoded.getMessageId() );
+
+        for ( int messageId : MESSAGE_IDS )
+        {
+            searchRequest.setMessageId( messageId );
+            ByteBuffer expected = LdapEncoder.encodeMessage( new Asn1Buffer(), codec, searchRequest );
+
+            assertEquals( expected, preEncoded.encode( messageId ) );
+            assertEquals( expected, LdapEncoder.encodeMessage( new Asn1Buffer(),
+                preEncoded.withMessageId( messageId ) ) );
+        }
+    }
+
+
+    /**
+     * Test that the modifications done on the request once it has been pre-encoded are
+     * not taken into account
+     */
+    @Test
+    public void testFrozenRequest() throws Exception
+    {
+        SearchRequest searchRequest = createSearchRequest();
+        PreEncodedMessage preEncoded = LdapEncoder.preEncode( codec, searchRequest );
+        ByteBuffer expected = LdapEncoder.encodeMessage( new Asn1Buffer(), codec, searchRequest );
+
+        searchRequest.setFilter( "(cn=other)" );
+        searchRequest.setMessageId( 2 );
+
+        assertEquals( expected, preEncoded.encode() );
+        assertSame( preEncoded, preEncoded.withMessageId( 1 ) );
+        assertEquals( 2, preEncoded.withMessageId( 2 ).getMessageId() );
+        assertEquals( 1, preEncoded.getMessageId() );
+    }
+}
@@ -0,0 +1,312 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.ldap.codec.search;
+
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+
+import org.apache.directory.api.asn1.ber.Asn1Decoder;
+import org.apache.directory.api.asn1.util.Asn1Buffer;
+import org.apache.directory.api.ldap.codec.api.LazySearchResultEntry;
+import org.apache.directory.api.ldap.codec.api.LdapEncoder;
+import org.apache.directory.api.ldap.codec.api.LdapMessageContainer;
+import org.apache.directory.api.ldap.codec.osgi.AbstractCodecServiceTest;
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.message.Message;
+import org.apache.directory.api.ldap.model.message.SearchResultEntry;
+import org.apache.directory.api.ldap.model.message.SearchResultEntryImpl;
+import org.apache.directory.api.ldap.model.message.controls.PagedResults;
+import org.apache.directory.api.ldap.model.message.controls.PagedResultsImpl;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.mycila.junit.concurrent.Concurrency;
+import com.mycila.junit.concurrent.ConcurrentJunitRunner;
+
+
+/**
+ * Test the lazy decoding of the SearchResultEntries
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@RunWith(ConcurrentJunitRunner.class)
+@Concurrency()
+public class LazySearchResultEntryTest extends AbstractCodecServiceTest
+{
+    /**
+     * Create the entry used in the tests
+     */
+    private Entry createEntry() throws Exception
+    {
+        Entry entry = new DefaultEntry( "cn=Test,dc=example,dc=com",
+            "objectClass: top",
+            "objectClass: person",
+            "cn: Test",
+            "sn: test",
+            "description:" );
+        entry.add( "jpegPhoto", new byte[]
+            { 0x01, 0x02, ( byte ) 0xFF } );
+
+        return entry;
+    }
+
+
+    /**
+     * Create the control added to the SearchResultEntry
+     */
+    private PagedResults createPagedResults()
+    {
+        PagedResults pagedResults = new PagedResultsImpl();
+        pagedResults.setSize( 10 );
+        pagedResults.setCookie( new byte[]
+            { 0x01, 0x02 } );
+
+        return pagedResults;
+    }
+
+
+    /**
+     * Encode a message
+     */
+    private byte[] encode( Message message ) throws Exception
+    {
+        ByteBuffer encoded = LdapEncoder.encodeMessage( new Asn1Buffer(), codec, message );
+        byte[] bytes = new byte[encoded.remaining()];
+        encoded.get( bytes );
+
+        return bytes;
+    }
+
+
+    /**
+     * Create the encoded SearchResultEntry used in the tests
+     */
+    private byte[] createPdu( int messageId ) throws Exception
+    {
+        SearchResultEntryImpl searchResultEntry = new SearchResultEntryImpl( messageId );
+        searchResultEntry.setEntry( createEntry() );
+        searchResultEntry.addControl( createPagedResults() );
+
+        return encode( searchResultEntry );
+    }
+
+
+    /**
+     * Decode a PDU lazily, by chunks of the given size
+     */
+    private LazySearchResultEntry decodeLazily( byte[] pdu, int chunkSize ) throws Exception
+    {
+        LdapMessageContainer<SearchResultEntry> container = new LdapMessageContainer<>( codec );
+        container.setLazySearchResultEntries( true );
+
+        for ( int pos = 0; pos < pdu.length; pos += chunkSize )
+        {
+            Asn1Decoder.decode( ByteBuffer.wrap( pdu, pos, Math.min( chunkSize, pdu.length - pos ) ), container );
+        }
+
+        assertTrue( container.getMessage() instanceof LazySearchResultEntry );
+
+        return ( LazySearchResultEntry ) container.getMessage();
+    }
+
+
+    /**
+     * Test that the Dn and single attributes can be read without building the entry,
+     * and that the received bytes are encoded back as is
+     */
+    @Test
+    public void testReadWithoutLoading() throws Exception
+    {
+        byte[] pdu = createPdu( 3 );
+        LazySearchResultEntry searchResultEntry = decodeLazily( pdu, pdu.length );
+
+        assertEquals( 3, searchResultEntry.getMessageId() );
+        assertTrue( searchResultEntry.getControls().containsKey( PagedResults.OID ) );
+        assertEquals( new Dn( "cn=Test,dc=example,dc=com" ), searchResultEntry.getObjectName() );
+
+        Attribute cn = searchResultEntry.getAttribute( "CN" );
+        assertEquals( 1, cn.size() );
+        assertTrue( cn.contains( "Test" ) );
+        assertTrue( searchResultEntry.getAttribute( "objectclass" ).contains( "top", "person" ) );
+        assertTrue( searchResultEntry.getAttribute( "description" ).contains( "" ) );
+        assertTrue( searchResultEntry.getAttribute( "jpegPhoto" ).contains( new byte[]
+            { 0x01, 0x02, ( byte ) 0xFF } ) );
+        assertNull( searchResultEntry.getAttribute( "mail" ) );
+
+        // Modifying the returned attribute does not change the entry
+        cn.add( "Other" );
+        assertFalse( searchResultEntry.isEntryLoaded() );
+        assertArrayEquals( pdu, encode( searchResultEntry ) );
+
+        // The message ID can be changed
+        searchResultEntry.setMessageId( 5 );
+        assertArrayEquals( createPdu( 5 ), encode( searchResultEntry ) );
+    }
+
+
+    /**
+     * Test that the entry is built on demand, and encoded once it has been modified
+     */
+    @Test
+    public void testLoadEntry() throws Exception
+    {
+        byte[] pdu = createPdu( 3 );
+        LazySearchResultEntry searchResultEntry = decodeLazily( pdu, pdu.length );
+
+        // Decode the same PDU eagerly
+        LdapMessageContainer<SearchResultEntry> container = new LdapMessageContainer<>( codec );
+        Asn1Decoder.decode( ByteBuffer.wrap( pdu ), container );
+        SearchResultEntry expected = container.getMessage();
+
+        Entry entry = searchResultEntry.getEntry();
+
+        assertTrue( searchResultEntry.isEntryLoaded() );
+        assertNull( searchResultEntry.getRawAttributes() );
+        assertEquals( expected.getEntry(), entry );
+        assertEquals( expected, searchResultEntry );
+        assertArrayEquals( pdu, encode( searchResultEntry ) );
+
+        entry.add( "mail", "test@example.com" );
+        expected.getEntry().add( "mail", "test@example.com" );
+
+        assertArrayEquals( encode( expected ), encode( searchResultEntry ) );
+    }
+
+
+    /**
+     * Test that a new Dn is encoded while the attributes are still copied
+     */
+    @Test
+    public void testSetObjectName() throws Exception
+    {
+        byte[] pdu = createPdu( 3 );
+        LazySearchResultEntry searchResultEntry = decodeLazily( pdu, pdu.length );
+
+        searchResultEntry.setObjectName( new Dn( "cn=Other,dc=example,dc=com" ) );
+
+        assertNull( searchResultEntry.getRawObjectName() );
+        assertEquals( "cn=Other,dc=example,dc=com", searchResultEntry.getObjectName().getName() );
+
+        SearchResultEntryImpl expected = new SearchResultEntryImpl( 3 );
+        expected.setEntry( createEntry() );
+        expected.setObjectName( new Dn( "cn=Other,dc=example,dc=com" ) );
+        expected.addControl( createPagedResults() );
+
+        assertFalse( searchResultEntry.isEntryLoaded() );
+        assertArrayEquals( encode( expected ), encode( searchResultEntry ) );
+        assertEquals( "cn=Other,dc=example,dc=com", searchResultEntry.getEntry().getDn().getName() );
+    }
+
+
+    /**
+     * Test that a Dn changed through the built entry is encoded
+     */
+    @Test
+    public void testChangeEntryDn() throws Exception
+    {
+        byte[] pdu = createPdu( 3 );
+        LazySearchResultEntry searchResultEntry = decodeLazily( pdu, pdu.length );
+
+        Dn newDn = new Dn( "cn=Other,dc=example,dc=com" );
+        searchResultEntry.getEntry().setDn( newDn );
+
+        assertNull( searchResultEntry.getRawObjectName() );
+        assertEquals( newDn, searchResultEntry.getObjectName() );
+
+        SearchResultEntryImpl expected = new SearchResultEntryImpl( 3 );
+        expected.setEntry( createEntry() );
+        expected.setObjectName( newDn );
+        expected.addControl( createPagedResults() );
+
+        byte[] encoded = encode( searchResultEntry );
+        assertArrayEquals( encode( expected ), encoded );
+
+        // Decoding the PDU gives back the new Dn
+        assertEquals( newDn, decodeLazily( encoded, encoded.length ).getObjectName() );
+    }
+
+
+    /**
+     * Test that the attributes are gathered when the PDU is received byte per byte, and
+     * that an entry without attributes is decoded
+     */
+    @Test
+    public void testDecodeByChunks() throws Exception
+    {
+        byte[] pdu = createPdu( 3 );
+        LazySearchResultEntry searchResultEntry = decodeLazily( pdu, 1 );
+
+        assertTrue( searchResultEntry.getControls().containsKey( PagedResults.OID ) );
+        assertArrayEquals( pdu, encode( searchResultEntry ) );
+
+        SearchResultEntryImpl empty = new SearchResultEntryImpl( 4 );
+        empty.setEntry( new DefaultEntry( "" ) );
+        pdu = encode( empty );
+        searchResultEntry = decodeLazily( pdu, 1 );
+
+        assertEquals( 0, searchResultEntry.getRawAttributes().length );
+        assertEquals( Dn.EMPTY_DN, searchResultEntry.getObjectName() );
+        assertArrayEquals( pdu, encode( searchResultEntry ) );
+        assertEquals( 0, searchResultEntry.getEntry().size() );
+    }
+
+
+    /**
+     * Test that an invalid attribute list is detected when it's decoded
+     */
+    @Test
+    public void testInvalidAttributes() throws Exception
+    {
+        byte[] pdu = new byte[]
+            {
+                0x30, 0x15,
+                  0x02, 0x01, 0x01,
+                  0x64, 0x10,
+                    0x04, 0x00,
+                    0x30, 0x0C,
+                      0x30, 0x0A,
+                        0x04, 0x02, 'c', 'n',
+                        0x31, 0x04,
+                          0x05, 0x02, 'a', 'b'
+            };
+
+        LazySearchResultEntry searchResultEntry = decodeLazily( pdu, pdu.length );
+
+        try
+        {
+            searchResultEntry.getEntry();
+            fail();
+        }
+        catch ( IllegalStateException ise )
+        {
+            assertTrue( ise.getMessage().contains( "position 8" ) );
+        }
+    }
+}
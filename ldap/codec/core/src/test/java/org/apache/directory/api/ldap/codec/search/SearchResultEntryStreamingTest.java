@@ -0,0 +1,200 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.ldap.codec.search;
+
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.directory.api.asn1.DecoderException;
+import org.apache.directory.api.asn1.ber.Asn1Decoder;
+import org.apache.directory.api.asn1.util.Asn1Buffer;
+import org.apache.directory.api.ldap.codec.api.LdapEncoder;
+import org.apache.directory.api.ldap.codec.api.LdapMessageContainer;
+import org.apache.directory.api.ldap.codec.osgi.AbstractCodecServiceTest;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.message.SearchResultEntry;
+import org.apache.directory.api.ldap.model.message.SearchResultEntryImpl;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.mycila.junit.concurrent.Concurrency;
+import com.mycila.junit.concurrent.ConcurrentJunitRunner;
+
+
+/**
+ * Test the streaming of the big SearchResultEntry attribute values
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@RunWith(ConcurrentJunitRunner.class)
+@Concurrency()
+public class SearchResultEntryStreamingTest extends AbstractCodecServiceTest
+{
+    /**
+     * Create a SearchResultEntry PDU with two big values and a few small ones
+     */
+    private ByteBuffer createPdu( byte[] photo, byte[] certificate ) throws Exception
+    {
+        Entry entry = new DefaultEntry( "cn=test,dc=example,dc=com",
+            "objectClass: top",
+            "objectClass: person",
+            "cn: test",
+            "sn: test" );
+        entry.add( "jpegPhoto", photo );
+        entry.add( "userCertificate", new byte[]
+            { 0x01, 0x02 }, certificate );
+
+        SearchResultEntryImpl searchResultEntry = new SearchResultEntryImpl( 3 );
+        searchResultEntry.setEntry( entry );
+
+        return LdapEncoder.encodeMessage( new Asn1Buffer(), codec, searchResultEntry );
+    }
+
+
+    /**
+     * Create an array of bytes
+     */
+    private byte[] createBytes( int length, int seed )
+    {
+        byte[] bytes = new byte[length];
+
+        for ( int i = 0; i < length; i++ )
+        {
+            bytes[i] = ( byte ) ( i * seed );
+        }
+
+        return bytes;
+    }
+
+
+    /**
+     * Test that the big values are streamed to the handler, in small chunks, while the
+     * small ones are stored in the entry
+     */
+    @Test
+    public void testStreamBigValues() throws Exception
+    {
+        byte[] photo = createBytes( 200000, 7 );
+        byte[] certificate = createBytes( 20000, 13 );
+        ByteBuffer pdu = createPdu( photo, certificate );
+
+        List<String> attributes = new ArrayList<>();
+        List<ByteArrayOutputStream> sinks = new ArrayList<>();
+
+        LdapMessageContainer<SearchResultEntry> container = new LdapMessageContainer<>( codec );
+        container.setLargeValueHandler( ( entry, attribute, length ) ->
+        {
+            assertEquals( "cn=test,dc=example,dc=com", entry.getObjectName().getName() );
+            attributes.add( attribute.getUpId() );
+            ByteArrayOutputStream sink = new ByteArrayOutputStream();
+            sinks.add( sink );
+
+            return Channels.newChannel( sink );
+        }, 10000 );
+
+        // Feed the decoder with 1000 bytes chunks : the stored bytes stay well below the
+        // max PDU size, the streamed ones are not counted
+        container.setMaxPDUSize( 5000 );
+
+        while ( pdu.hasRemaining() )
+        {
+            ByteBuffer chunk = pdu.slice();
+            chunk.limit( Math.min( 1000, pdu.remaining() ) );
+            pdu.position( pdu.position() + chunk.limit() );
+
+            Asn1Decoder.decode( chunk, container );
+        }
+
+        SearchResultEntry searchResultEntry = container.getMessage();
+        Entry entry = searchResultEntry.getEntry();
+
+        assertEquals( 2, attributes.size() );
+        assertEquals( "jpegPhoto", attributes.get( 0 ) );
+        assertEquals( "userCertificate", attributes.get( 1 ) );
+        assertArrayEquals( photo, sinks.get( 0 ).toByteArray() );
+        assertArrayEquals( certificate, sinks.get( 1 ).toByteArray() );
+
+        // The streamed values are not stored
+        assertEquals( 0, entry.get( "jpegPhoto" ).size() );
+        assertEquals( 1, entry.get( "userCertificate" ).size() );
+        assertTrue( entry.contains( "userCertificate", new byte[]
+            { 0x01, 0x02 } ) );
+        assertTrue( entry.contains( "cn", "test" ) );
+        assertTrue( entry.contains( "objectClass", "top", "person" ) );
+    }
+
+
+    /**
+     * Test that a value is stored when the handler returns no sink
+     */
+    @Test
+    public void testHandlerDeclines() throws Exception
+    {
+        byte[] photo = createBytes( 200000, 7 );
+        byte[] certificate = createBytes( 20000, 13 );
+        ByteBuffer pdu = createPdu( photo, certificate );
+
+        LdapMessageContainer<SearchResultEntry> container = new LdapMessageContainer<>( codec );
+        container.setLargeValueHandler( ( entry, attribute, length ) -> null, 10000 );
+
+        Asn1Decoder.decode( pdu, container );
+
+        Entry entry = container.getMessage().getEntry();
+        assertTrue( entry.contains( "jpegPhoto", photo ) );
+        assertTrue( entry.contains( "userCertificate", certificate ) );
+    }
+
+
+    /**
+     * Test that a failing sink aborts the decoding
+     */
+    @Test
+    public void testFailingSink() throws Exception
+    {
+        ByteBuffer pdu = createPdu( createBytes( 200000, 7 ), createBytes( 20000, 13 ) );
+
+        LdapMessageContainer<SearchResultEntry> container = new LdapMessageContainer<>( codec );
+        container.setLargeValueHandler( ( entry, attribute, length ) ->
+        {
+            throw new IOException( "No space left" );
+        }, 10000 );
+
+        try
+        {
+            Asn1Decoder.decode( pdu, container );
+            fail();
+        }
+        catch ( DecoderException de )
+        {
+            assertTrue( de.getCause() instanceof IOException );
+        }
+    }
+}
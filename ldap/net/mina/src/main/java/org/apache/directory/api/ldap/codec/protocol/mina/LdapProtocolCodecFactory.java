@@ -20,6 +20,8 @@
 package org.apache.directory.api.ldap.codec.protocol.mina;
 
 
+import java.util.concurrent.Executor;
+
 import org.apache.directory.api.ldap.codec.api.LdapApiService;
 import org.apache.directory.api.ldap.codec.api.LdapApiServiceFactory;
 import org.apache.mina.core.session.IoSession;
@@ -59,7 +61,21 @@ public class LdapProtocolCodecFactory implements ProtocolCodecFactory
      */
     public LdapProtocolCodecFactory( LdapApiService ldapApiService ) 
     {
-        ldapDecoder = new LdapProtocolDecoder();
+        this( ldapApiService, null );
+    }
+
+
+    /**
+     * Creates a new instance of LdapProtocolCodecFactory, which decoder decodes the
+     * received messages in parallel.
+     *
+     * @param ldapApiService The associated LdapApiService instance
+     * @param decodingExecutor The executor decoding the messages, or null to decode them
+     * on the I/O thread
+     */
+    public LdapProtocolCodecFactory( LdapApiService ldapApiService, Executor decodingExecutor )
+    {
+        ldapDecoder = new LdapProtocolDecoder( false, decodingExecutor );
         ldapEncoder = new LdapProtocolEncoder( ldapApiService );
     }
     
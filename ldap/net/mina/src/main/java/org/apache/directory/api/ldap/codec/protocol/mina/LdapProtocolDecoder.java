@@ -23,10 +23,12 @@ package org.apache.directory.api.ldap.codec.protocol.mina;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 import org.apache.directory.api.asn1.DecoderException;
 import org.apache.directory.api.asn1.ber.Asn1Decoder;
 import org.apache.directory.api.asn1.ber.tlv.TLVStateEnum;
+import org.apache.directory.api.asn1.util.RefCountedBuffer;
 import org.apache.directory.api.i18n.I18n;
 import org.apache.directory.api.ldap.codec.api.LdapDecoder;
 import org.apache.directory.api.ldap.codec.api.LdapMessageContainer;
@@ -37,6 +39,7 @@ import org.apache.directory.api.ldap.model.message.AbstractMessage;
 import org.apache.directory.api.ldap.model.message.Message;
 import org.apache.directory.api.util.Strings;
 import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.session.AttributeKey;
 import org.apache.mina.core.session.IoSession;
 import org.apache.mina.filter.codec.ProtocolDecoder;
 import org.apache.mina.filter.codec.ProtocolDecoderOutput;
@@ -46,6 +49,17 @@ import org.slf4j.LoggerFactory;
 
 /**
  * A LDAP message decoder. It is based on api-ldap decoder.
+ * <br>
+ * By default, the received messages are decoded on the I/O thread. When an
+ * {@link Executor} is given, the I/O thread only splits the received bytes into
+ * LDAPMessage frames, reading the outer SEQUENCE length, and the frames are decoded
+ * in parallel by the executor. The decoded messages are then passed directly to the
+ * filter following the codec filter, possibly from several threads at the same time :
+ * the messages with the same message ID are delivered in the order they have been
+ * received, but the messages with different IDs may be delivered in any order. A
+ * frame is fully buffered before being decoded, so the big values are not streamed
+ * to a LargeValueHandler in this mode. The reads of the session are suspended while
+ * too many frames are being decoded or waiting to be delivered.
  *
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
@@ -54,11 +68,83 @@ public class LdapProtocolDecoder implements ProtocolDecoder
     /** The logger */
     private static final Logger CODEC_LOG = LoggerFactory.getLogger( Loggers.CODEC_LOG.getName() );
 
+    /** The session attribute storing the parallel decoding state */
+    private static final AttributeKey PARALLEL_DECODING_SESSION =
+        new AttributeKey( LdapProtocolDecoder.class, "parallelDecodingSession" );
+
+    /** The default number of frames in flight above which the reads are suspended */
+    public static final int DEFAULT_MAX_FRAMES_IN_FLIGHT = 1024;
+
+    /** Tells if the decoded values are read from the incoming buffer without being copied */
+    private boolean zeroCopy;
+
+    /** The executor decoding the frames, or null if they are decoded on the I/O thread */
+    private Executor decodingExecutor;
+
+    /** The number of frames in flight above which the reads are suspended */
+    private int maxFramesInFlight = DEFAULT_MAX_FRAMES_IN_FLIGHT;
+
     /**
-     * Creates a new instance of LdapProtocolEncoder.
+     * Creates a new instance of LdapProtocolDecoder, copying the decoded values unless
+     * the {@link LdapDecoder#ZERO_COPY_ATTR} attribute of the session is set to true.
      */
     public LdapProtocolDecoder()
     {
+        this( false );
+    }
+
+
+    /**
+     * Creates a new instance of LdapProtocolDecoder.
+     *
+     * @param zeroCopy If true, the primitive values point into the incoming buffer
+     * instead of being copied, and a byte[] is only created when an action needs it.
+     * If false, this is still done for the sessions which {@link LdapDecoder#ZERO_COPY_ATTR}
+     * attribute is set to true
+     */
+    public LdapProtocolDecoder( boolean zeroCopy )
+    {
+        this( zeroCopy, null );
+    }
+
+
+    /**
+     * Creates a new instance of LdapProtocolDecoder.
+     *
+     * @param zeroCopy If true, the primitive values point into the received bytes
+     * instead of being copied, and a byte[] is only created when an action needs it.
+     * If false, this is still done for the sessions which {@link LdapDecoder#ZERO_COPY_ATTR}
+     * attribute is set to true
+     * @param decodingExecutor The executor decoding the messages in parallel, or null to
+     * decode them on the I/O thread
+     */
+    public LdapProtocolDecoder( boolean zeroCopy, Executor decodingExecutor )
+    {
+        this.zeroCopy = zeroCopy;
+        this.decodingExecutor = decodingExecutor;
+    }
+
+
+    /**
+     * @return The number of frames being decoded in parallel, or waiting to be delivered,
+     * above which the reads of a session are suspended
+     */
+    public int getMaxFramesInFlight()
+    {
+        return maxFramesInFlight;
+    }
+
+
+    /**
+     * Set the number of frames being decoded in parallel, or waiting to be delivered,
+     * above which the reads of a session are suspended. They are resumed once half of
+     * those frames have been delivered. This is only used when an executor is given.
+     *
+     * @param maxFramesInFlight The maximum number of frames in flight, at least 1
+     */
+    public void setMaxFramesInFlight( int maxFramesInFlight )
+    {
+        this.maxFramesInFlight = Math.max( 1, maxFramesInFlight );
     }
 
 
@@ -80,10 +166,48 @@ public class LdapProtocolDecoder implements ProtocolDecoder
             messageContainer.setMaxPDUSize( maxPDUSize );
         }
 
-        List<Message> decodedMessages = new ArrayList<>();
         ByteBuffer buf = in.buf();
+        boolean sessionZeroCopy = zeroCopy || Boolean.TRUE.equals( session.getAttribute( LdapDecoder.ZERO_COPY_ATTR ) );
 
-        decode( buf, messageContainer, decodedMessages );
+        if ( decodingExecutor != null )
+        {
+            ParallelDecodingSession parallelDecodingSession =
+                ( ParallelDecodingSession ) session.getAttribute( PARALLEL_DECODING_SESSION );
+
+            if ( parallelDecodingSession == null )
+            {
+                parallelDecodingSession = new ParallelDecodingSession( session, decodingExecutor, sessionZeroCopy,
+                    maxFramesInFlight );
+                session.setAttribute( PARALLEL_DECODING_SESSION, parallelDecodingSession );
+            }
+
+            parallelDecodingSession.decode( buf, messageContainer );
+
+            return;
+        }
+
+        List<Message> decodedMessages = new ArrayList<>();
+
+        if ( sessionZeroCopy )
+        {
+            // The decoded values point into the incoming buffer until they are used
+            RefCountedBuffer sharedStream = new RefCountedBuffer( buf );
+            messageContainer.setSharedStream( sharedStream );
+
+            try
+            {
+                decode( buf, messageContainer, decodedMessages );
+            }
+            finally
+            {
+                messageContainer.setSharedStream( null );
+                sharedStream.release();
+            }
+        }
+        else
+        {
+            decode( buf, messageContainer, decodedMessages );
+        }
 
         for ( Message message : decodedMessages )
         {
@@ -189,6 +313,6 @@ public class LdapProtocolDecoder implements ProtocolDecoder
     @Override
     public void dispose( IoSession session ) throws Exception
     {
-        // Nothing to do
+        session.removeAttribute( PARALLEL_DECODING_SESSION );
     }
 }
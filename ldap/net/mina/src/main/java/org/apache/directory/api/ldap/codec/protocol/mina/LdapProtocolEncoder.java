@@ -21,18 +21,31 @@ package org.apache.directory.api.ldap.codec.protocol.mina;
 
 
 import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.directory.api.asn1.EncoderException;
 import org.apache.directory.api.asn1.util.Asn1Buffer;
+import org.apache.directory.api.asn1.util.Asn1BufferPool;
+import org.apache.directory.api.asn1.util.PooledAsn1Buffer;
 import org.apache.directory.api.i18n.I18n;
 import org.apache.directory.api.ldap.codec.api.LdapApiService;
 import org.apache.directory.api.ldap.codec.api.LdapApiServiceFactory;
 import org.apache.directory.api.ldap.codec.api.LdapEncoder;
+import org.apache.directory.api.ldap.codec.api.PreEncodedMessage;
 import org.apache.directory.api.ldap.model.constants.Loggers;
 import org.apache.directory.api.ldap.model.message.Message;
 import org.apache.directory.api.util.Strings;
 import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.filterchain.IoFilter;
+import org.apache.mina.core.filterchain.IoFilterAdapter;
+import org.apache.mina.core.filterchain.IoFilterChain;
+import org.apache.mina.core.session.AttributeKey;
 import org.apache.mina.core.session.IoSession;
+import org.apache.mina.core.write.WriteRequest;
+import org.apache.mina.filter.codec.ProtocolCodecFilter;
 import org.apache.mina.filter.codec.ProtocolEncoder;
 import org.apache.mina.filter.codec.ProtocolEncoderOutput;
 import org.slf4j.Logger;
@@ -41,6 +54,19 @@ import org.slf4j.LoggerFactory;
 
 /**
  * A LDAP message encoder. It is based on api-ldap encoder.
+ * <br>
+ * When an {@link Asn1BufferPool} is used (the default), messages are encoded in
+ * pooled direct segments, and the resulting direct buffer is handed to MINA without
+ * being copied into a heap buffer. A filter is added between the codec filter of the
+ * session and the filters closer to the I/O processor, such as the SslFilter, to be
+ * informed of the sent buffers. As those filters may replace the message of the write
+ * request (the SslFilter writes an encrypted copy), the buffers are tracked by their
+ * write request : a buffer is given back to the pool when the next one has been sent,
+ * as MINA still reads it after having sent it, or when the session is closed. The
+ * buffers of a session which has no codec filter are not pooled.
+ * <br>
+ * A {@link PreEncodedMessage} can be written instead of a {@link Message} : only its
+ * message ID is then encoded.
  *
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
@@ -49,12 +75,68 @@ public class LdapProtocolEncoder implements ProtocolEncoder
     /** logger for reporting errors that might not be handled properly upstream */
     private static final Logger CODEC_LOG = LoggerFactory.getLogger( Loggers.CODEC_LOG.getName() );
 
+    /** The session attribute storing the pooled buffers MINA has not yet written */
+    private static final AttributeKey PENDING_BUFFERS = new AttributeKey( LdapProtocolEncoder.class, "pendingBuffers" );
+
+    /** The name of the filter informed of the sent buffers */
+    private static final String BUFFER_RELEASE_FILTER = "ldapBufferRelease";
+
     /** The LDAP API Service instance */
     private LdapApiService codec;
     
+    /** The pool the encoding buffers are taken from, if any */
+    private Asn1BufferPool pool;
+    
     /** A thread local storage used to store the Asn1Buffer instance */
     private ThreadLocal<Asn1Buffer> threadLocalStorage = new ThreadLocal<>();
-    
+
+    /** The filter giving back the sent buffers to the pool */
+    private final IoFilter bufferReleaseFilter = new IoFilterAdapter()
+    {
+        @Override
+        public void filterWrite( NextFilter nextFilter, IoSession session, WriteRequest writeRequest ) throws Exception
+        {
+            bufferWritten( session, writeRequest );
+
+            nextFilter.filterWrite( session, writeRequest );
+        }
+
+
+        @Override
+        public void messageSent( NextFilter nextFilter, IoSession session, WriteRequest writeRequest ) throws Exception
+        {
+            bufferSent( session, writeRequest );
+
+            nextFilter.messageSent( session, writeRequest );
+        }
+
+
+        @Override
+        public void sessionClosed( NextFilter nextFilter, IoSession session ) throws Exception
+        {
+            // The codec filter does not always dispose its encoder
+            releasePendingBuffers( session );
+
+            nextFilter.sessionClosed( session );
+        }
+    };
+
+
+    /**
+     * The pooled buffers of a session
+     */
+    private static final class PendingBuffers
+    {
+        /** The buffers handed to MINA which have not reached the release filter yet */
+        private final Set<IoBuffer> unsent = Collections.newSetFromMap( new IdentityHashMap<IoBuffer, Boolean>() );
+
+        /** The buffers being written, by write request */
+        private final Map<WriteRequest, IoBuffer> inFlight = new IdentityHashMap<>();
+
+        /** The last sent buffer, which MINA may still be reading */
+        private IoBuffer lastSent;
+    }
+
     /**
      * Creates a new instance of LdapProtocolEncoder.
      */
@@ -64,13 +146,27 @@ public class LdapProtocolEncoder implements ProtocolEncoder
     }
 
     /**
-     * Creates a new instance of LdapProtocolEncoder.
+     * Creates a new instance of LdapProtocolEncoder, using the default buffer pool.
      *
      * @param ldapApiService The Service to use
      */
     public LdapProtocolEncoder( LdapApiService ldapApiService )
+    {
+        this( ldapApiService, Asn1BufferPool.getDefault() );
+    }
+
+
+    /**
+     * Creates a new instance of LdapProtocolEncoder.
+     *
+     * @param ldapApiService The Service to use
+     * @param pool The pool to take the encoding buffers from. If null, the messages
+     * are encoded in heap buffers.
+     */
+    public LdapProtocolEncoder( LdapApiService ldapApiService, Asn1BufferPool pool )
     {
         codec = ldapApiService;
+        this.pool = pool;
     }
 
 
@@ -84,7 +180,15 @@ public class LdapProtocolEncoder implements ProtocolEncoder
         
         if ( asn1Buffer == null )
         {
-            asn1Buffer = new Asn1Buffer();
+            if ( pool == null )
+            {
+                asn1Buffer = new Asn1Buffer();
+            }
+            else
+            {
+                asn1Buffer = new PooledAsn1Buffer( pool );
+            }
+
             threadLocalStorage.set( asn1Buffer );
         }
 
@@ -92,8 +196,23 @@ public class LdapProtocolEncoder implements ProtocolEncoder
         
         try
         { 
-            LdapEncoder.encodeMessage( asn1Buffer, codec, ( Message ) message );
-            encoded = asn1Buffer.getBytes();
+            if ( message instanceof PreEncodedMessage )
+            {
+                LdapEncoder.encodeMessage( asn1Buffer, ( PreEncodedMessage ) message );
+            }
+            else
+            {
+                LdapEncoder.encodeMessage( asn1Buffer, codec, ( Message ) message );
+            }
+            
+            if ( pool == null )
+            {
+                encoded = asn1Buffer.getBytes();
+            }
+            else
+            {
+                encoded = ( ( PooledAsn1Buffer ) asn1Buffer ).detach();
+            }
         }
         catch ( EncoderException e )
         {
@@ -109,22 +228,187 @@ public class LdapProtocolEncoder implements ProtocolEncoder
     
         if ( CODEC_LOG.isDebugEnabled() )
         {
-            byte[] dumpBuffer = new byte[encoded.limit()];
-            encoded.get( dumpBuffer );
-            encoded.flip();
+            ByteBuffer dump = encoded.duplicate();
+            byte[] dumpBuffer = new byte[dump.remaining()];
+            dump.get( dumpBuffer );
             CODEC_LOG.debug( I18n.msg( I18n.MSG_14003_ENCODED_LDAP_MESSAGE, message, Strings.dumpBytes( dumpBuffer ) ) );
         }
 
+        if ( pool != null )
+        {
+            // Keep a track of the buffer, until MINA has sent it
+            PendingBuffers pendingBuffers = getPendingBuffers( session );
+
+            if ( pendingBuffers != null )
+            {
+                synchronized ( pendingBuffers )
+                {
+                    pendingBuffers.unsent.add( ioBuffer );
+                }
+            }
+        }
+
         out.write( ioBuffer );
     }
 
 
+    /**
+     * Get the pooled buffers of a session, creating them and adding the release filter
+     * before the codec filter, on the I/O processor side, if needed.
+     *
+     * @param session The session
+     * @return The session's pending buffers, or null if the session has no codec filter
+     */
+    private PendingBuffers getPendingBuffers( IoSession session )
+    {
+        PendingBuffers pendingBuffers = ( PendingBuffers ) session.getAttribute( PENDING_BUFFERS );
+
+        if ( pendingBuffers != null )
+        {
+            return pendingBuffers;
+        }
+
+        IoFilterChain filterChain = session.getFilterChain();
+        IoFilterChain.Entry codecEntry = filterChain.getEntry( ProtocolCodecFilter.class );
+
+        if ( codecEntry == null )
+        {
+            // No one would tell us when the buffers have been sent
+            return null;
+        }
+
+        pendingBuffers = new PendingBuffers();
+        PendingBuffers existing = ( PendingBuffers ) session.setAttributeIfAbsent( PENDING_BUFFERS, pendingBuffers );
+
+        if ( existing != null )
+        {
+            return existing;
+        }
+
+        if ( !filterChain.contains( BUFFER_RELEASE_FILTER ) )
+        {
+            filterChain.addBefore( codecEntry.getName(), BUFFER_RELEASE_FILTER, bufferReleaseFilter );
+        }
+
+        return pendingBuffers;
+    }
+
+
+    /**
+     * Called when an encoded message goes past the codec filter. If it's one of our
+     * buffers, it's associated with its write request, which is the only thing the
+     * next filters keep : they may replace its message.
+     *
+     * @param session The session
+     * @param writeRequest The request writing the message
+     */
+    private void bufferWritten( IoSession session, WriteRequest writeRequest )
+    {
+        PendingBuffers pendingBuffers = ( PendingBuffers ) session.getAttribute( PENDING_BUFFERS );
+
+        if ( pendingBuffers == null )
+        {
+            return;
+        }
+
+        Object message = writeRequest.getMessage();
+
+        synchronized ( pendingBuffers )
+        {
+            if ( pendingBuffers.unsent.remove( message ) )
+            {
+                pendingBuffers.inFlight.put( writeRequest, ( IoBuffer ) message );
+            }
+        }
+    }
+
+
+    /**
+     * Called by the I/O processor once a message has been sent. If it's one of our
+     * buffers, the previously sent one is given back to the pool : the processor is
+     * done with it, while it still checks the buffer it has just sent.
+     *
+     * @param session The session
+     * @param writeRequest The request which message has been sent
+     */
+    private void bufferSent( IoSession session, WriteRequest writeRequest )
+    {
+        PendingBuffers pendingBuffers = ( PendingBuffers ) session.getAttribute( PENDING_BUFFERS );
+
+        if ( pendingBuffers == null )
+        {
+            return;
+        }
+
+        IoBuffer released = null;
+
+        synchronized ( pendingBuffers )
+        {
+            IoBuffer sent = pendingBuffers.inFlight.remove( writeRequest );
+
+            if ( sent != null )
+            {
+                released = pendingBuffers.lastSent;
+                pendingBuffers.lastSent = sent;
+            }
+        }
+
+        if ( released != null )
+        {
+            pool.release( released.buf() );
+        }
+    }
+
+
     /**
      * {@inheritDoc}
      */
     @Override
     public void dispose( IoSession session ) throws Exception
     {
-        // Nothing to do
+        releasePendingBuffers( session );
+    }
+
+
+    /**
+     * Give back all the pooled buffers of a session to the pool.
+     *
+     * @param session The closed session
+     */
+    private void releasePendingBuffers( IoSession session )
+    {
+        if ( pool == null )
+        {
+            return;
+        }
+
+        // The session is closed : the remaining buffers won't be written anymore
+        PendingBuffers pendingBuffers = ( PendingBuffers ) session.removeAttribute( PENDING_BUFFERS );
+
+        if ( pendingBuffers != null )
+        {
+            synchronized ( pendingBuffers )
+            {
+                for ( IoBuffer ioBuffer : pendingBuffers.unsent )
+                {
+                    pool.release( ioBuffer.buf() );
+                }
+
+                pendingBuffers.unsent.clear();
+
+                for ( IoBuffer ioBuffer : pendingBuffers.inFlight.values() )
+                {
+                    pool.release( ioBuffer.buf() );
+                }
+
+                pendingBuffers.inFlight.clear();
+
+                if ( pendingBuffers.lastSent != null )
+                {
+                    pool.release( pendingBuffers.lastSent.buf() );
+                    pendingBuffers.lastSent = null;
+                }
+            }
+        }
     }
 }
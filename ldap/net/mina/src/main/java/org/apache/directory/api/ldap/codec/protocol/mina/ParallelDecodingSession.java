@@ -0,0 +1,370 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.api.ldap.codec.protocol.mina;
+
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+
+import org.apache.directory.api.asn1.DecoderException;
+import org.apache.directory.api.asn1.ber.Asn1Decoder;
+import org.apache.directory.api.asn1.ber.Asn1Framer;
+import org.apache.directory.api.asn1.ber.tlv.TLVStateEnum;
+import org.apache.directory.api.asn1.ber.tlv.UniversalTag;
+import org.apache.directory.api.asn1.util.RefCountedBuffer;
+import org.apache.directory.api.i18n.I18n;
+import org.apache.directory.api.ldap.codec.api.LdapDecoder;
+import org.apache.directory.api.ldap.codec.api.LdapMessageContainer;
+import org.apache.directory.api.ldap.codec.api.ReadSuspensions;
+import org.apache.directory.api.ldap.codec.api.ResponseCarryingException;
+import org.apache.directory.api.ldap.model.constants.Loggers;
+import org.apache.directory.api.ldap.model.exception.ResponseCarryingMessageException;
+import org.apache.directory.api.ldap.model.message.AbstractMessage;
+import org.apache.directory.api.ldap.model.message.Message;
+import org.apache.mina.core.filterchain.IoFilter.NextFilter;
+import org.apache.mina.core.filterchain.IoFilterChain;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.filter.codec.ProtocolCodecFilter;
+import org.apache.mina.filter.codec.ProtocolDecoderException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * The parallel decoding state of a session. The I/O thread only splits the incoming
+ * bytes into LDAPMessage frames with an {@link Asn1Framer}, and each
+ * complete frame is decoded by the executor. The decoded messages are passed to the
+ * filter following the codec filter : the messages with the same message ID are
+ * delivered in the order they have been received, the other ones as soon as they are
+ * decoded. The LargeValueHandler of the session container, if any, is not used.
+ * <br>
+ * The number of frames being decoded or waiting to be delivered is bounded : the reads
+ * of the session are suspended when the bound is reached, and resumed once half of
+ * those frames have been delivered.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+final class ParallelDecodingSession
+{
+    /** The logger */
+    private static final Logger CODEC_LOG = LoggerFactory.getLogger( Loggers.CODEC_LOG.getName() );
+
+    /** The session */
+    private final IoSession session;
+
+    /** The executor decoding the frames */
+    private final Executor executor;
+
+    /** Tells if the decoded values are read from the frame without being copied */
+    private final boolean zeroCopy;
+
+    /** The number of frames in flight above which the reads are suspended */
+    private final int maxFramesInFlight;
+
+    /** The number of frames submitted which have not been delivered */
+    private int framesInFlight;
+
+    /** Tells if the reads have been suspended because of the frames in flight */
+    private boolean readSuspended;
+
+    /** The containers which are not used by a decoding task */
+    private final Queue<LdapMessageContainer<AbstractMessage>> containers = new ConcurrentLinkedQueue<>();
+
+    /** The last delivery of each message ID, until it's done */
+    private final Map<Integer, CompletableFuture<Void>> lastDeliveries = new HashMap<>();
+
+    /** The framer splitting the incoming bytes into LDAPMessages */
+    private final Asn1Framer framer = new Asn1Framer( UniversalTag.SEQUENCE.getValue() );
+
+
+    /**
+     * Creates a new ParallelDecodingSession instance
+     *
+     * @param session The session
+     * @param executor The executor decoding the frames
+     * @param zeroCopy If the decoded values point into the frame instead of being copied
+     * @param maxFramesInFlight The number of frames in flight above which the reads are suspended
+     */
+    ParallelDecodingSession( IoSession session, Executor executor, boolean zeroCopy, int maxFramesInFlight )
+    {
+        this.session = session;
+        this.executor = executor;
+        this.zeroCopy = zeroCopy;
+        this.maxFramesInFlight = maxFramesInFlight;
+    }
+
+
+    /**
+     * Split the incoming bytes into frames, and submit each complete frame for decoding.
+     * The incomplete frame is kept until the next bytes are received.
+     *
+     * @param buffer The incoming bytes
+     * @param template The session container, which configuration is used to decode the frames
+     * @throws DecoderException If the bytes are not a LDAPMessage, or if it is too long
+     */
+    void decode( ByteBuffer buffer, LdapMessageContainer<AbstractMessage> template ) throws DecoderException
+    {
+        framer.setMaxPDUSize( template.getMaxPDUSize() );
+
+        try
+        {
+            while ( buffer.hasRemaining() )
+            {
+                ByteBuffer frame = framer.nextFrame( buffer );
+
+                if ( frame == null )
+                {
+                    break;
+                }
+
+                submit( getBytes( frame, buffer ), template );
+            }
+        }
+        catch ( DecoderException de )
+        {
+            buffer.clear();
+
+            throw new ResponseCarryingException( de.getMessage(), de );
+        }
+    }
+
+
+    /**
+     * Get the bytes of a frame. A frame which is a view on the incoming buffer is copied,
+     * as the buffer is reused once the I/O thread is done with it.
+     *
+     * @param frame The frame
+     * @param buffer The incoming buffer
+     * @return The frame bytes
+     */
+    private static byte[] getBytes( ByteBuffer frame, ByteBuffer buffer )
+    {
+        if ( frame.hasArray() && ( !buffer.hasArray() || ( frame.array() != buffer.array() ) ) )
+        {
+            // The framer has gathered the frame in its own array
+            return frame.array();
+        }
+
+        byte[] bytes = new byte[frame.remaining()];
+        frame.get( bytes );
+
+        return bytes;
+    }
+
+
+    /**
+     * Decode a frame in the executor, and deliver the result after the previous
+     * messages with the same ID.
+     *
+     * @param bytes The frame
+     * @param template The session container
+     */
+    private void submit( byte[] bytes, LdapMessageContainer<AbstractMessage> template )
+    {
+        Integer messageId = LdapDecoder.peekMessageId( ByteBuffer.wrap( bytes ) );
+        int maxPDUSize = template.getMaxPDUSize();
+        frameSubmitted();
+
+        CompletableFuture<Message> decoded = CompletableFuture.supplyAsync(
+            () -> decodeFrame( bytes, template, maxPDUSize ), executor );
+
+        CompletableFuture<Void> delivered;
+
+        synchronized ( lastDeliveries )
+        {
+            CompletableFuture<Void> previous = lastDeliveries.get( messageId );
+            CompletableFuture<Message> ordered = ( previous == null ) ? decoded
+                : previous.thenCompose( done -> decoded );
+
+            delivered = ordered.handle( this::deliver );
+            lastDeliveries.put( messageId, delivered );
+        }
+
+        delivered.whenComplete( ( done, error ) ->
+        {
+            synchronized ( lastDeliveries )
+            {
+                lastDeliveries.remove( messageId, delivered );
+            }
+
+            frameDelivered();
+        } );
+    }
+
+
+    /**
+     * Count a submitted frame, suspending the reads if too many frames are in flight.
+     * The frames already received are still decoded.
+     */
+    private synchronized void frameSubmitted()
+    {
+        framesInFlight++;
+
+        if ( !readSuspended && ( framesInFlight >= maxFramesInFlight ) )
+        {
+            readSuspended = true;
+            ReadSuspensions.suspendRead( session );
+        }
+    }
+
+
+    /**
+     * Count a delivered frame, resuming the reads once half of the frames in flight
+     * have been delivered.
+     */
+    private synchronized void frameDelivered()
+    {
+        framesInFlight--;
+
+        if ( readSuspended && ( framesInFlight <= maxFramesInFlight / 2 ) )
+        {
+            readSuspended = false;
+            ReadSuspensions.resumeRead( session );
+        }
+    }
+
+
+    /**
+     * Decode a frame with a container of the pool
+     *
+     * @param bytes The frame
+     * @param template The session container, which current configuration is used
+     * @param maxPDUSize The maximum PDU size
+     * @return The decoded message
+     */
+    private Message decodeFrame( byte[] bytes, LdapMessageContainer<AbstractMessage> template, int maxPDUSize )
+    {
+        LdapMessageContainer<AbstractMessage> container = containers.poll();
+
+        if ( ( container == null ) || ( container.getLdapCodecService() != template.getLdapCodecService() ) )
+        {
+            container = template.newInstance();
+        }
+        else
+        {
+            // The session container may have been reconfigured, or replaced, since the
+            // pooled container has been created
+            container.setConfiguration( template );
+        }
+
+        // The frames are fully buffered, and decoded concurrently : the big values are
+        // stored in the entries instead of being streamed to the session LargeValueHandler
+        container.setLargeValueHandler( null, Integer.MAX_VALUE );
+        container.setMaxPDUSize( maxPDUSize );
+
+        ByteBuffer buffer = ByteBuffer.wrap( bytes );
+        RefCountedBuffer sharedStream = null;
+
+        if ( zeroCopy )
+        {
+            sharedStream = new RefCountedBuffer( buffer );
+            container.setSharedStream( sharedStream );
+        }
+
+        try
+        {
+            Asn1Decoder.decode( buffer, container );
+
+            if ( container.getState() != TLVStateEnum.PDU_DECODED )
+            {
+                throw new DecoderException( I18n.err( I18n.ERR_01005_TRUNCATED_PDU ) );
+            }
+
+            Message message = container.getMessage();
+
+            if ( CODEC_LOG.isDebugEnabled() )
+            {
+                CODEC_LOG.debug( I18n.msg( I18n.MSG_14002_DECODED_LDAP_MESSAGE, message ) );
+            }
+
+            return message;
+        }
+        catch ( ResponseCarryingException rce )
+        {
+            // Transform the DecoderException message to a MessageException
+            ResponseCarryingMessageException rcme = new ResponseCarryingMessageException( rce.getMessage(), rce );
+            rcme.setResponse( rce.getResponse() );
+
+            throw new CompletionException( rcme );
+        }
+        catch ( DecoderException de )
+        {
+            throw new CompletionException( new ResponseCarryingException( de.getMessage(), de ) );
+        }
+        finally
+        {
+            if ( sharedStream != null )
+            {
+                container.setSharedStream( null );
+                sharedStream.release();
+            }
+
+            container.clean();
+            containers.offer( container );
+        }
+    }
+
+
+    /**
+     * Pass a decoded message, or the decoding error, to the filter following the codec.
+     *
+     * @param message The decoded message
+     * @param error The decoding error, if any
+     * @return Nothing
+     */
+    private Void deliver( Message message, Throwable error )
+    {
+        IoFilterChain.Entry entry = session.getFilterChain().getEntry( ProtocolCodecFilter.class );
+
+        if ( entry == null )
+        {
+            // The codec has been removed, the session is being closed
+            return null;
+        }
+
+        NextFilter nextFilter = entry.getNextFilter();
+
+        try
+        {
+            if ( error == null )
+            {
+                nextFilter.messageReceived( session, message );
+            }
+            else
+            {
+                Throwable cause = ( error instanceof CompletionException ) ? error.getCause() : error;
+                nextFilter.exceptionCaught( session, new ProtocolDecoderException( cause ) );
+            }
+        }
+        catch ( RuntimeException re )
+        {
+            // Don't break the delivery of the next messages
+            nextFilter.exceptionCaught( session, re );
+        }
+
+        return null;
+    }
+}